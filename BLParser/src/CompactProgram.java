@@ -0,0 +1,707 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+
+import components.map.Map;
+import components.program.Program;
+import components.statement.Statement;
+import components.statement.StatementKernel.Condition;
+import components.statement.StatementKernel.Kind;
+
+/**
+ * Immutable, flat representation of a BL program: its statements are the
+ * nodes {@code 0 .. nodeCount()-1} of a tree described by parallel
+ * {@code int} arrays (kind, condition, first child and number of children, and
+ * called instruction), instead of a tree of {@code Statement} objects.
+ *
+ * <p>
+ * The nodes of each instruction body and of the program body are numbered
+ * breadth first, so the children of a node are consecutive: the statements of
+ * a BLOCK, the block of an IF or WHILE, and the two blocks of an IF_ELSE. The
+ * names of the instructions called are interned, and each call knows the
+ * instruction it calls, so the tree can be read, by any number of threads at
+ * once, without taking statements apart and putting them back together.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class CompactProgram {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * The kinds of statements, by ordinal.
+     */
+    private static final Kind[] KINDS = Kind.values();
+
+    /**
+     * The conditions, by ordinal.
+     */
+    private static final Condition[] CONDITIONS = Condition.values();
+
+    /**
+     * No condition or no instruction.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * Builder of the nodes of a {@code CompactProgram}.
+     */
+    private static final class Builder {
+
+        /**
+         * Initial capacity of the node arrays.
+         */
+        private static final int INITIAL_CAPACITY = 64;
+
+        /**
+         * Whether the statements flattened are put back together.
+         */
+        private final boolean restore;
+
+        /**
+         * Kind of each node, by ordinal.
+         */
+        private int[] kinds = new int[INITIAL_CAPACITY];
+
+        /**
+         * Condition of each node, by ordinal, or {@code NONE}.
+         */
+        private int[] conditions = new int[INITIAL_CAPACITY];
+
+        /**
+         * First child of each node.
+         */
+        private int[] firsts = new int[INITIAL_CAPACITY];
+
+        /**
+         * Number of children of each node.
+         */
+        private int[] lengths = new int[INITIAL_CAPACITY];
+
+        /**
+         * Call of each node, or {@code NONE}.
+         */
+        private int[] calls = new int[INITIAL_CAPACITY];
+
+        /**
+         * Number of nodes.
+         */
+        private int nodes;
+
+        /**
+         * Number of each name called, by name.
+         */
+        private final java.util.Map<String, Integer> callNumbers = new HashMap<>();
+
+        /**
+         * Names called, by number.
+         */
+        private final List<String> callNames = new ArrayList<>();
+
+        /**
+         * Constructor.
+         *
+         * @param restore
+         *            whether the statements flattened are put back together
+         */
+        Builder(boolean restore) {
+            this.restore = restore;
+        }
+
+        /**
+         * Adds {@code count} nodes.
+         *
+         * @param count
+         *            the number of nodes
+         * @return the first node added
+         */
+        private int reserve(int count) {
+            int first = this.nodes;
+            int needed = first + count;
+            if (needed > this.kinds.length) {
+                int capacity = Math.max(needed, 2 * this.kinds.length);
+                this.kinds = Arrays.copyOf(this.kinds, capacity);
+                this.conditions = Arrays.copyOf(this.conditions, capacity);
+                this.firsts = Arrays.copyOf(this.firsts, capacity);
+                this.lengths = Arrays.copyOf(this.lengths, capacity);
+                this.calls = Arrays.copyOf(this.calls, capacity);
+            }
+            this.nodes = needed;
+            return first;
+        }
+
+        /**
+         * Returns the number of the name {@code call}, numbering it if it has
+         * not been called before.
+         *
+         * @param call
+         *            the name called
+         * @return the number of the name
+         */
+        private int callNumber(String call) {
+            Integer number = this.callNumbers.get(call);
+            if (number == null) {
+                number = this.callNames.size();
+                this.callNumbers.put(call, number);
+                this.callNames.add(call);
+            }
+            return number;
+        }
+
+        /**
+         * Adds the nodes of {@code s}, breadth first. The statements are taken
+         * apart with a queue instead of recursively and, if {@code restore},
+         * put back together afterwards, from the innermost ones out.
+         *
+         * @param s
+         *            the statement
+         * @return the node of s
+         * @updates s
+         * @ensures if restore then s = #s
+         */
+        int flatten(Statement s) {
+            Deque<Statement> pending = new ArrayDeque<>();
+            List<Statement> taken = new ArrayList<>();
+            List<Integer> takenNodes = new ArrayList<>();
+            List<Statement[]> parts = new ArrayList<>();
+            int root = this.reserve(1);
+            int node = root;
+            pending.add(s);
+            while (!pending.isEmpty()) {
+                Statement t = pending.remove();
+                Kind kind = t.kind();
+                Condition c = null;
+                Statement[] p;
+                this.calls[node] = NONE;
+                switch (kind) {
+                    case BLOCK: {
+                        p = new Statement[t.lengthOfBlock()];
+                        for (int i = p.length - 1; i >= 0; i--) {
+                            p[i] = t.removeFromBlock(i);
+                        }
+                        break;
+                    }
+                    case IF: {
+                        p = new Statement[] { t.newInstance() };
+                        c = t.disassembleIf(p[0]);
+                        break;
+                    }
+                    case IF_ELSE: {
+                        p = new Statement[] { t.newInstance(),
+                                t.newInstance() };
+                        c = t.disassembleIfElse(p[0], p[1]);
+                        break;
+                    }
+                    case WHILE: {
+                        p = new Statement[] { t.newInstance() };
+                        c = t.disassembleWhile(p[0]);
+                        break;
+                    }
+                    default: {
+                        String call = t.disassembleCall();
+                        this.calls[node] = this.callNumber(call);
+                        if (this.restore) {
+                            t.assembleCall(call);
+                        }
+                        p = new Statement[0];
+                        break;
+                    }
+                }
+                this.kinds[node] = kind.ordinal();
+                this.conditions[node] = NONE;
+                if (c != null) {
+                    this.conditions[node] = c.ordinal();
+                }
+                /*
+                 * Reserve the children first: it may replace the arrays
+                 */
+                int first = this.reserve(p.length);
+                this.firsts[node] = first;
+                this.lengths[node] = p.length;
+                for (Statement part : p) {
+                    pending.add(part);
+                }
+                if (this.restore && p.length > 0) {
+                    taken.add(t);
+                    takenNodes.add(node);
+                    parts.add(p);
+                }
+                node++;
+            }
+            for (int i = taken.size() - 1; i >= 0; i--) {
+                this.restore(taken.get(i), takenNodes.get(i), parts.get(i));
+            }
+            return root;
+        }
+
+        /**
+         * Puts back together the statement {@code t} of {@code node}, taken
+         * apart into {@code p}.
+         *
+         * @param t
+         *            the statement taken apart
+         * @param node
+         *            the node of t
+         * @param p
+         *            its parts
+         * @updates t
+         */
+        private void restore(Statement t, int node, Statement[] p) {
+            Condition c = null;
+            if (this.conditions[node] != NONE) {
+                c = CONDITIONS[this.conditions[node]];
+            }
+            switch (KINDS[this.kinds[node]]) {
+                case BLOCK: {
+                    for (int i = 0; i < p.length; i++) {
+                        t.addToBlock(i, p[i]);
+                    }
+                    break;
+                }
+                case IF: {
+                    t.assembleIf(c, p[0]);
+                    break;
+                }
+                case IF_ELSE: {
+                    t.assembleIfElse(c, p[0], p[1]);
+                    break;
+                }
+                default: {
+                    t.assembleWhile(c, p[0]);
+                    break;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * The name of the program.
+     */
+    private final String name;
+
+    /**
+     * Kind of each node, by ordinal.
+     */
+    private final int[] kinds;
+
+    /**
+     * Condition of each node, by ordinal, or {@code NONE}.
+     */
+    private final int[] conditions;
+
+    /**
+     * First child of each node.
+     */
+    private final int[] firsts;
+
+    /**
+     * Number of children of each node.
+     */
+    private final int[] lengths;
+
+    /**
+     * Number of the name called by each CALL node, or {@code NONE}.
+     */
+    private final int[] calls;
+
+    /**
+     * Names called, by number.
+     */
+    private final String[] callNames;
+
+    /**
+     * Number of the instruction named by each name called, or {@code NONE}.
+     */
+    private final int[] callInstructions;
+
+    /**
+     * Names of the instructions, by number.
+     */
+    private final String[] instructionNames;
+
+    /**
+     * Node of the body of each instruction, by number.
+     */
+    private final int[] instructionBodies;
+
+    /**
+     * Node of the body of the program.
+     */
+    private final int body;
+
+    /**
+     * Builds the compact representation of {@code p}.
+     *
+     * @param p
+     *            the program
+     * @param restore
+     *            whether to leave p as it was
+     * @return the compact representation of p
+     * @updates p
+     * @ensures if restore then p = #p
+     */
+    private static CompactProgram build(Program p, boolean restore) {
+        Builder builder = new Builder(restore);
+        Map<String, Statement> context = p.newContext();
+        p.swapContext(context);
+        List<String> names = new ArrayList<>();
+        for (Map.Pair<String, Statement> instruction : context) {
+            names.add(instruction.key());
+        }
+        int[] bodies = new int[names.size()];
+        for (int i = 0; i < bodies.length; i++) {
+            Map.Pair<String, Statement> instruction = context
+                    .remove(names.get(i));
+            bodies[i] = builder.flatten(instruction.value());
+            context.add(instruction.key(), instruction.value());
+        }
+        Statement b = p.newBody();
+        p.swapBody(b);
+        int bodyNode = builder.flatten(b);
+        if (restore) {
+            p.swapContext(context);
+            p.swapBody(b);
+        }
+        return new CompactProgram(p.name(), builder,
+                names.toArray(new String[0]), bodies, bodyNode);
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor.
+     *
+     * @param name
+     *            the name of the program
+     * @param builder
+     *            the builder of the nodes
+     * @param instructionNames
+     *            the names of the instructions
+     * @param instructionBodies
+     *            the nodes of the bodies of the instructions
+     * @param body
+     *            the node of the body of the program
+     */
+    private CompactProgram(String name, Builder builder,
+            String[] instructionNames, int[] instructionBodies, int body) {
+        this.name = name;
+        int n = builder.nodes;
+        this.kinds = Arrays.copyOf(builder.kinds, n);
+        this.conditions = Arrays.copyOf(builder.conditions, n);
+        this.firsts = Arrays.copyOf(builder.firsts, n);
+        this.lengths = Arrays.copyOf(builder.lengths, n);
+        this.calls = Arrays.copyOf(builder.calls, n);
+        this.callNames = builder.callNames.toArray(new String[0]);
+        this.instructionNames = instructionNames;
+        this.instructionBodies = instructionBodies;
+        this.body = body;
+        java.util.Map<String, Integer> numbers = new HashMap<>();
+        for (int i = 0; i < instructionNames.length; i++) {
+            numbers.put(instructionNames[i], i);
+        }
+        this.callInstructions = new int[this.callNames.length];
+        for (int i = 0; i < this.callNames.length; i++) {
+            Integer instruction = numbers.get(this.callNames[i]);
+            this.callInstructions[i] = NONE;
+            if (instruction != null) {
+                this.callInstructions[i] = instruction;
+            }
+        }
+    }
+
+    /*
+     * Package-private members ------------------------------------------------
+     */
+
+    /**
+     * Returns the compact representation of {@code p}, taking its statements
+     * apart without putting them back together, for a program that is not
+     * used afterwards.
+     *
+     * @param p
+     *            the program
+     * @return the compact representation of #p
+     * @clears p
+     */
+    static CompactProgram takeFrom(Program p) {
+        CompactProgram compact = build(p, false);
+        p.clear();
+        return compact;
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Returns the compact representation of {@code p}.
+     *
+     * @param p
+     *            the program
+     * @return the compact representation of p
+     * @ensures of = [the statements of p, numbered breadth first]
+     */
+    public static CompactProgram of(Program p) {
+        assert p != null : "Violation of: p is not null";
+        return build(p, true);
+    }
+
+    /**
+     * Reports the name of the program.
+     *
+     * @return the name of the program
+     */
+    public String name() {
+        return this.name;
+    }
+
+    /**
+     * Reports the number of statements of the program, in all the bodies.
+     *
+     * @return the number of nodes
+     */
+    public int nodeCount() {
+        return this.kinds.length;
+    }
+
+    /**
+     * Reports the node of the body of the program.
+     *
+     * @return the node of the body, a BLOCK
+     */
+    public int body() {
+        return this.body;
+    }
+
+    /**
+     * Reports the number of user-defined instructions of the program.
+     *
+     * @return the number of instructions
+     */
+    public int instructionCount() {
+        return this.instructionNames.length;
+    }
+
+    /**
+     * Reports the name of the {@code i}-th instruction.
+     *
+     * @param i
+     *            the number of the instruction
+     * @return the name of the instruction
+     * @requires 0 <= i < instructionCount()
+     */
+    public String instructionName(int i) {
+        assert 0 <= i && i < this.instructionNames.length : ""
+                + "Violation of: 0 <= i < instructionCount()";
+        return this.instructionNames[i];
+    }
+
+    /**
+     * Reports the node of the body of the {@code i}-th instruction.
+     *
+     * @param i
+     *            the number of the instruction
+     * @return the node of the body, a BLOCK
+     * @requires 0 <= i < instructionCount()
+     */
+    public int instructionBody(int i) {
+        assert 0 <= i && i < this.instructionNames.length : ""
+                + "Violation of: 0 <= i < instructionCount()";
+        return this.instructionBodies[i];
+    }
+
+    /**
+     * Reports the kind of the statement {@code node}.
+     *
+     * @param node
+     *            the node
+     * @return the kind of the statement
+     * @requires 0 <= node < nodeCount()
+     */
+    public Kind kind(int node) {
+        assert 0 <= node && node < this.kinds.length : ""
+                + "Violation of: 0 <= node < nodeCount()";
+        return KINDS[this.kinds[node]];
+    }
+
+    /**
+     * Reports the condition of the IF, IF_ELSE or WHILE statement
+     * {@code node}.
+     *
+     * @param node
+     *            the node
+     * @return the condition of the statement
+     * @requires <pre>
+     * 0 <= node < nodeCount()  and
+     * kind(node) is IF, IF_ELSE or WHILE
+     * </pre>
+     */
+    public Condition condition(int node) {
+        assert 0 <= node && node < this.kinds.length : ""
+                + "Violation of: 0 <= node < nodeCount()";
+        assert this.conditions[node] != NONE : ""
+                + "Violation of: kind(node) is IF, IF_ELSE or WHILE";
+        return CONDITIONS[this.conditions[node]];
+    }
+
+    /**
+     * Reports the number of children of the statement {@code node}.
+     *
+     * @param node
+     *            the node
+     * @return the number of statements of a BLOCK, 1 for an IF or WHILE, 2 for
+     *         an IF_ELSE, and 0 for a CALL
+     * @requires 0 <= node < nodeCount()
+     */
+    public int length(int node) {
+        assert 0 <= node && node < this.kinds.length : ""
+                + "Violation of: 0 <= node < nodeCount()";
+        return this.lengths[node];
+    }
+
+    /**
+     * Reports the {@code i}-th child of the statement {@code node}.
+     *
+     * @param node
+     *            the node
+     * @param i
+     *            the position of the child
+     * @return the node of the child
+     * @requires 0 <= node < nodeCount()  and  0 <= i < length(node)
+     */
+    public int child(int node, int i) {
+        assert 0 <= node && node < this.kinds.length : ""
+                + "Violation of: 0 <= node < nodeCount()";
+        assert 0 <= i && i < this.lengths[node] : ""
+                + "Violation of: 0 <= i < length(node)";
+        return this.firsts[node] + i;
+    }
+
+    /**
+     * Reports the name of the instruction called by the CALL statement
+     * {@code node}. Equal names are the same {@code String}.
+     *
+     * @param node
+     *            the node
+     * @return the name of the instruction called
+     * @requires 0 <= node < nodeCount()  and  kind(node) = CALL
+     */
+    public String call(int node) {
+        assert 0 <= node && node < this.kinds.length : ""
+                + "Violation of: 0 <= node < nodeCount()";
+        assert this.calls[node] != NONE : "Violation of: kind(node) = CALL";
+        return this.callNames[this.calls[node]];
+    }
+
+    /**
+     * Reports the user-defined instruction called by the CALL statement
+     * {@code node}.
+     *
+     * @param node
+     *            the node
+     * @return the number of the instruction called, or -1 if call(node) is
+     *         not the name of an instruction of the program
+     * @requires 0 <= node < nodeCount()  and  kind(node) = CALL
+     */
+    public int calledInstruction(int node) {
+        assert 0 <= node && node < this.kinds.length : ""
+                + "Violation of: 0 <= node < nodeCount()";
+        assert this.calls[node] != NONE : "Violation of: kind(node) = CALL";
+        return this.callInstructions[this.calls[node]];
+    }
+
+    /**
+     * Walks the statement {@code node} and the statements nested in it, in
+     * the order they appear in the program text, telling {@code visitor}
+     * about each one. The statements are visited with a stack of their nodes
+     * instead of recursively, and {@code this} is not changed, so several
+     * threads can walk it at once.
+     *
+     * @param node
+     *            the node of the statement
+     * @param visitor
+     *            the visitor
+     * @updates visitor
+     * @requires 0 <= node < nodeCount()
+     * @ensures <pre>
+     * [visitor has been told about the statements of node, in order]
+     * </pre>
+     */
+    public void walk(int node, StatementVisitor visitor) {
+        assert 0 <= node && node < this.kinds.length : ""
+                + "Violation of: 0 <= node < nodeCount()";
+        assert visitor != null : "Violation of: visitor is not null";
+
+        /*
+         * For each statement on the stack: its node and the number of its
+         * parts visited
+         */
+        int[] nodes = { node };
+        int[] positions = { 0 };
+        int depth = 1;
+        while (depth > 0) {
+            int top = depth - 1;
+            int n = nodes[top];
+            int position = positions[top];
+            int length = this.lengths[n];
+            switch (KINDS[this.kinds[n]]) {
+                case IF: {
+                    if (position == 0) {
+                        visitor.beginIf(n, this.condition(n));
+                    } else {
+                        visitor.endIf(n);
+                    }
+                    break;
+                }
+                case IF_ELSE: {
+                    if (position == 0) {
+                        visitor.beginIf(n, this.condition(n));
+                    } else if (position == 1) {
+                        visitor.beginElse(n);
+                    } else {
+                        visitor.endIf(n);
+                    }
+                    break;
+                }
+                case WHILE: {
+                    if (position == 0) {
+                        visitor.beginWhile(n, this.condition(n));
+                    } else {
+                        visitor.endWhile(n);
+                    }
+                    break;
+                }
+                case CALL: {
+                    visitor.call(n, this.callNames[this.calls[n]]);
+                    break;
+                }
+                default: {
+                    // a BLOCK only has its statements visited
+                    break;
+                }
+            }
+            if (position < length) {
+                positions[top]++;
+                if (depth == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, 2 * depth);
+                    positions = Arrays.copyOf(positions, 2 * depth);
+                }
+                nodes[depth] = this.firsts[n] + position;
+                positions[depth] = 0;
+                depth++;
+            } else {
+                depth--;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,344 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import components.statement.Statement;
+import components.statement.StatementKernel.Kind;
+
+/**
+ * Index of the user-defined instructions of a BL program being parsed: their
+ * names, hashed so that a duplicate definition is found in constant time, and
+ * the instructions each one calls, so that calls to undefined instructions and
+ * recursion are reported when the program is parsed instead of when its code
+ * is generated. As when its code is generated, only the instructions the body
+ * of the program calls, directly or through other instructions, are checked:
+ * an instruction that is never called may call undefined instructions or be
+ * recursive.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+final class InstructionIndex {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Names of the primitive instructions of BL.
+     */
+    private static final String[] PRIMITIVES = { "move", "turnleft",
+            "turnright", "infect", "skip" };
+
+    /**
+     * Number of each instruction, by name.
+     */
+    private final Map<String, Integer> numbers = new HashMap<>();
+
+    /**
+     * Name of each instruction, by number.
+     */
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * Position ({line, column}) of the definition of each instruction, by
+     * number.
+     */
+    private final List<int[]> positions = new ArrayList<>();
+
+    /**
+     * Names of the user-defined instructions called by each instruction, by
+     * number, in order of first call.
+     */
+    private final List<String[]> calls = new ArrayList<>();
+
+    /**
+     * Names of the user-defined instructions called by the body of the
+     * program.
+     */
+    private String[] bodyCalls = new String[0];
+
+    /**
+     * Position ({line, column}) of the body of the program.
+     */
+    private int[] bodyPosition = { 0, 0 };
+
+    /**
+     * Adds the names of the user-defined instructions called in {@code s} to
+     * {@code called}. The statements nested in {@code s} are visited with a
+     * stack of frames instead of recursively.
+     *
+     * @param s
+     *            the statement
+     * @param called
+     *            the names of the instructions called
+     * @updates called
+     * @ensures called = #called union [the non-primitive calls in s]
+     */
+    private static void addCalls(Statement s, Set<String> called) {
+        Deque<StatementFrame> stack = new ArrayDeque<>();
+        stack.push(new StatementFrame(s, false));
+        while (!stack.isEmpty()) {
+            StatementFrame f = stack.peek();
+            if (f.kind() == Kind.CALL && !isPrimitive(f.call())) {
+                called.add(f.call());
+            }
+            Statement part = f.next();
+            if (part == null) {
+                stack.pop();
+            } else {
+                stack.push(new StatementFrame(part, false));
+            }
+        }
+    }
+
+    /**
+     * Returns the names of the user-defined instructions called in {@code s}.
+     *
+     * @param s
+     *            the statement
+     * @return the names of the instructions called, in order of first call
+     */
+    private static String[] calls(Statement s) {
+        Set<String> called = new LinkedHashSet<>();
+        addCalls(s, called);
+        return called.toArray(new String[called.size()]);
+    }
+
+    /**
+     * Reports the recursion closed by the call from the last instruction on
+     * {@code path} to the instruction numbered {@code callee}, which is on
+     * {@code path}.
+     *
+     * @param path
+     *            the numbers of the instructions on the current call path
+     * @param depth
+     *            the length of the path
+     * @param callee
+     *            the number of the instruction called
+     * @param errors
+     *            the diagnostics of the parse, or null to report the error
+     *            and terminate the client
+     * @updates errors
+     */
+    private void reportRecursion(int[] path, int depth, int callee,
+            ParseResult errors) {
+        int start = depth - 1;
+        while (path[start] != callee) {
+            start--;
+        }
+        StringBuilder cycle = new StringBuilder();
+        for (int i = start; i < depth; i++) {
+            cycle.append(this.names.get(path[i])).append(" -> ");
+        }
+        cycle.append(this.names.get(callee));
+        int[] position = this.positions.get(callee);
+        Statement1Parse1.error(position[0], position[1], "Instruction "
+                + this.names.get(callee) + " is recursive: " + cycle, errors);
+    }
+
+    /**
+     * Resolves the calls of a caller to instruction numbers, reporting
+     * calls to undefined instructions.
+     *
+     * @param caller
+     *            the description of the caller, for error messages
+     * @param called
+     *            the names of the instructions called
+     * @param position
+     *            the position of the caller
+     * @param errors
+     *            the diagnostics of the parse, or null to report the first
+     *            error and terminate the client
+     * @return the numbers of the defined instructions called
+     * @updates errors
+     */
+    private int[] resolve(String caller, String[] called, int[] position,
+            ParseResult errors) {
+        int[] callees = new int[called.length];
+        int n = 0;
+        for (String name : called) {
+            Integer callee = this.numbers.get(name);
+            if (callee == null) {
+                Statement1Parse1.error(position[0], position[1], caller
+                        + " calls undefined instruction " + name, errors);
+            } else {
+                callees[n] = callee;
+                n++;
+            }
+        }
+        int[] result = new int[n];
+        System.arraycopy(callees, 0, result, 0, n);
+        return result;
+    }
+
+    /**
+     * Returns which instructions the body of the program calls, directly or
+     * through other instructions.
+     *
+     * @return whether each instruction, by number, is called
+     */
+    private boolean[] reachable() {
+        boolean[] reachable = new boolean[this.names.size()];
+        Deque<String[]> pending = new ArrayDeque<>();
+        pending.push(this.bodyCalls);
+        while (!pending.isEmpty()) {
+            for (String name : pending.pop()) {
+                Integer callee = this.numbers.get(name);
+                if (callee != null && !reachable[callee]) {
+                    reachable[callee] = true;
+                    pending.push(this.calls.get(callee));
+                }
+            }
+        }
+        return reachable;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor of an index with no instructions.
+     */
+    InstructionIndex() {
+    }
+
+    /*
+     * Package-private members ------------------------------------------------
+     */
+
+    /**
+     * Reports whether {@code name} is the name of a primitive instruction.
+     *
+     * @param name
+     *            the name
+     * @return true iff name is a primitive instruction of BL
+     */
+    static boolean isPrimitive(String name) {
+        boolean primitive = false;
+        for (int i = 0; i < PRIMITIVES.length && !primitive; i++) {
+            primitive = PRIMITIVES[i].equals(name);
+        }
+        return primitive;
+    }
+
+    /**
+     * Adds the instruction with the given name and body, unless an instruction
+     * with that name is already in {@code this}.
+     *
+     * @param name
+     *            the name of the instruction
+     * @param body
+     *            the body of the instruction
+     * @param line
+     *            the line where the instruction is defined
+     * @param column
+     *            the column where the instruction is defined
+     * @return true iff the instruction was added
+     * @updates this
+     */
+    boolean define(String name, Statement body, int line, int column) {
+        boolean added = !this.numbers.containsKey(name);
+        if (added) {
+            this.numbers.put(name, this.names.size());
+            this.names.add(name);
+            this.positions.add(new int[] { line, column });
+            this.calls.add(calls(body));
+        }
+        return added;
+    }
+
+    /**
+     * Records the body of the program.
+     *
+     * @param body
+     *            the body of the program
+     * @param line
+     *            the line where the body starts
+     * @param column
+     *            the column where the body starts
+     * @updates this
+     */
+    void setBody(Statement body, int line, int column) {
+        this.bodyCalls = calls(body);
+        this.bodyPosition = new int[] { line, column };
+    }
+
+    /**
+     * Checks that every instruction called is defined and that no instruction
+     * calls itself, directly or through other instructions, among the
+     * instructions the body of the program calls, directly or through other
+     * instructions.
+     *
+     * @param errors
+     *            the diagnostics of the parse, or null to report the first
+     *            error and terminate the client
+     * @updates errors
+     * @ensures <pre>
+     * if [some instruction called by the body, or by an instruction it calls
+     *     directly or through other instructions, is not defined]  or
+     *    [the instructions it calls include a calling cycle, i.e., recursion]
+     * then
+     *  [reports an appropriate error message]
+     * </pre>
+     */
+    void check(ParseResult errors) {
+        int count = this.names.size();
+        boolean[] reachable = this.reachable();
+        int[][] callees = new int[count][];
+        for (int i = 0; i < count; i++) {
+            if (reachable[i]) {
+                callees[i] = this.resolve("Instruction " + this.names.get(i),
+                        this.calls.get(i), this.positions.get(i), errors);
+            }
+        }
+        this.resolve("The program", this.bodyCalls, this.bodyPosition,
+                errors);
+
+        /*
+         * Depth-first search with an explicit stack, so that long chains of
+         * calls do not overflow the call stack; a call to an instruction on
+         * the current path closes a cycle; the instructions called by a
+         * reachable one are reachable, so the search stays among them
+         */
+        final int unvisited = 0;
+        final int onPath = 1;
+        final int done = 2;
+        int[] state = new int[count];
+        int[] path = new int[count];
+        int[] next = new int[count];
+        for (int root = 0; root < count; root++) {
+            if (reachable[root] && state[root] == unvisited) {
+                int depth = 1;
+                path[0] = root;
+                next[0] = 0;
+                state[root] = onPath;
+                while (depth > 0) {
+                    int i = path[depth - 1];
+                    if (next[depth - 1] < callees[i].length) {
+                        int callee = callees[i][next[depth - 1]];
+                        next[depth - 1]++;
+                        if (state[callee] == onPath) {
+                            this.reportRecursion(path, depth, callee, errors);
+                        } else if (state[callee] == unvisited) {
+                            state[callee] = onPath;
+                            path[depth] = callee;
+                            next[depth] = 0;
+                            depth++;
+                        }
+                    } else {
+                        state[i] = done;
+                        depth--;
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,185 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of parsing a BL program while collecting diagnostics instead of
+ * terminating the client at the first syntax error: the errors found, each
+ * with the line and column of the token where it was found, in the order they
+ * were found.
+ *
+ * <p>
+ * At most one syntax error is kept per token position, so an error that makes
+ * several enclosing constructs fail at the same token (e.g., a missing
+ * {@code END} at the end of the input) is reported once.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class ParseResult {
+
+    /**
+     * A syntax error found in a BL program.
+     */
+    public static final class Diagnostic {
+
+        /**
+         * The line of the token where the error was found.
+         */
+        private final int line;
+
+        /**
+         * The column of the token where the error was found.
+         */
+        private final int column;
+
+        /**
+         * The description of the error.
+         */
+        private final String message;
+
+        /**
+         * Constructor.
+         *
+         * @param line
+         *            the line of the token where the error was found
+         * @param column
+         *            the column of the token where the error was found
+         * @param message
+         *            the description of the error
+         */
+        Diagnostic(int line, int column, String message) {
+            this.line = line;
+            this.column = column;
+            this.message = message;
+        }
+
+        /**
+         * Reports the line of the token where the error was found.
+         *
+         * @return the line (the first line is 1), or 0 if it is unknown
+         */
+        public int line() {
+            return this.line;
+        }
+
+        /**
+         * Reports the column of the token where the error was found.
+         *
+         * @return the column (the first column is 1), or 0 if it is unknown
+         */
+        public int column() {
+            return this.column;
+        }
+
+        /**
+         * Reports the description of the error.
+         *
+         * @return the description of the error
+         */
+        public String message() {
+            return this.message;
+        }
+
+        @Override
+        public String toString() {
+            return this.line + ":" + this.column + ": " + this.message;
+        }
+
+    }
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * The diagnostics, in the order they were found.
+     */
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor of a result with no diagnostics.
+     */
+    ParseResult() {
+    }
+
+    /*
+     * Package-private members ------------------------------------------------
+     */
+
+    /**
+     * Records an error found at the given position.
+     *
+     * @param line
+     *            the line of the token where the error was found
+     * @param column
+     *            the column of the token where the error was found
+     * @param message
+     *            the description of the error
+     * @updates this
+     * @ensures this = #this * [message at line and column]
+     */
+    void add(int line, int column, String message) {
+        this.diagnostics.add(new Diagnostic(line, column, message));
+    }
+
+    /**
+     * Records a syntax error found at the given position, unless the last
+     * error recorded was found at the same, known, position.
+     *
+     * @param line
+     *            the line of the token where the error was found
+     * @param column
+     *            the column of the token where the error was found
+     * @param message
+     *            the description of the error
+     * @updates this
+     */
+    void addSyntaxError(int line, int column, String message) {
+        int n = this.diagnostics.size();
+        if (n == 0 || line == 0 || this.diagnostics.get(n - 1).line != line
+                || this.diagnostics.get(n - 1).column != column) {
+            this.add(line, column, message);
+        }
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Reports whether no syntax error was found.
+     *
+     * @return true iff there are no diagnostics
+     */
+    public boolean isValid() {
+        return this.diagnostics.isEmpty();
+    }
+
+    /**
+     * Reports the number of syntax errors found.
+     *
+     * @return the number of diagnostics
+     */
+    public int errorCount() {
+        return this.diagnostics.size();
+    }
+
+    /**
+     * Reports the {@code i}-th syntax error found.
+     *
+     * @param i
+     *            the position of the diagnostic
+     * @return the i-th diagnostic
+     * @requires 0 <= i < errorCount()
+     */
+    public Diagnostic diagnostic(int i) {
+        assert 0 <= i && i < this.diagnostics.size() : ""
+                + "Violation of: 0 <= i < errorCount()";
+        return this.diagnostics.get(i);
+    }
+
+}
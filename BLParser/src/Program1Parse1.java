@@ -1,5 +1,4 @@
 import components.map.Map;
-import components.map.Map.Pair;
 import components.program.Program;
 import components.program.Program1;
 import components.queue.Queue;
@@ -9,11 +8,19 @@ import components.simplewriter.SimpleWriter;
 import components.simplewriter.SimpleWriter1L;
 import components.statement.Statement;
 import components.utilities.Reporter;
-import components.utilities.Tokenizer;
 
 /**
  * Layered implementation of secondary method {@code parse} for {@code Program}.
  *
+ * <p>
+ * Besides syntax errors, {@code parse} reports an instruction named after a
+ * primitive instruction or defined twice, a call to an undefined
+ * instruction, and recursion, as {@code parse(TokenStream)} specifies, so
+ * that a program it accepts always has generated code. Like code generation,
+ * it only checks the calls of instructions the body calls, directly or
+ * through other instructions; instructions never called are accepted as
+ * they are.
+ *
  * @author Sooyoung Jeon and Kevin Lim
  *
  */
@@ -32,9 +39,12 @@ public final class Program1Parse1 extends Program1 {
      *            the input tokens
      * @param body
      *            the instruction body
-     * @return the instruction name
+     * @param errors
+     *            the diagnostics of the parse, or null to report the first
+     *            error and terminate the client
+     * @return the instruction name, or null if it is missing
      * @replaces body
-     * @updates tokens
+     * @updates tokens, errors
      * @requires <pre>
      * [<"INSTRUCTION"> is a prefix of tokens]  and
      *  [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
@@ -49,132 +59,355 @@ public final class Program1Parse1 extends Program1 {
      *          instruction at start of #tokens]  and
      *  #tokens = [instruction string at start of #tokens] * tokens
      * else
-     *  [report an appropriate error message to the console and terminate client]
+     *  [report an appropriate error message]
      * </pre>
      */
-    private static String parseInstruction(Queue<String> tokens,
-            Statement body) {
+    private static String parseInstruction(TokenStream tokens, Statement body,
+            ParseResult errors) {
         assert tokens != null : "Violation of: tokens is not null";
         assert body != null : "Violation of: body is not null";
-        assert tokens.length() > 0 && tokens.front().equals("INSTRUCTION") : ""
+        assert tokens.frontKind() == TokenStream.Kind.INSTRUCTION : ""
                 + "Violation of: <\"INSTRUCTION\"> is proper prefix of tokens";
 
         // Check for INSTRUCTION
-        String instr = tokens.dequeue();
-        Reporter.assertElseFatalError(instr.equals("INSTRUCTION"),
-                "INSTRUCTION is not found");
+        Statement1Parse1.expect(tokens, TokenStream.Kind.INSTRUCTION,
+                "INSTRUCTION is not found", errors);
 
-        // Check if the name of instruction is unique
-        String firstName = tokens.dequeue();
-        Reporter.assertElseFatalError(Tokenizer.isIdentifier(firstName),
-                "The name is not unique");
+        // Check if the name of instruction is an identifier
+        String name = null;
+        int firstName = parseName(tokens, "The name is not unique", errors);
+        if (firstName >= 0) {
+            name = tokens.dequeue();
+        }
 
         // Check for IS
-        String is = tokens.dequeue();
-        Reporter.assertElseFatalError(is.equals("IS"), "IS is not found");
+        Statement1Parse1.expect(tokens, TokenStream.Kind.IS,
+                "IS is not found", errors);
 
-        body.parseBlock(tokens);
+        Statement1Parse1.parseBlock(tokens, body, false, errors);
 
-        // Check for END
-        String end = tokens.dequeue();
-        Reporter.assertElseFatalError(end.equals("END"), "END is not found");
-        // Check if the names match
-        String endName = tokens.dequeue();
-        Reporter.assertElseFatalError(firstName.equals(endName),
-                "The names do not match");
+        // Check for END and if the names match
+        if (Statement1Parse1.expect(tokens, TokenStream.Kind.END,
+                "END is not found", errors)) {
+            parseEndName(tokens, firstName, errors);
+        }
 
         // Return the name
-        return endName;
+        return name;
     }
 
-    /*
-     * Constructors -----------------------------------------------------------
-     */
-
     /**
-     * No-argument constructor.
+     * Checks that the front of {@code tokens} is an identifier, to be used as
+     * a name, and returns its number. An invalid name is reported and
+     * skipped.
+     *
+     * @param tokens
+     *            the input tokens
+     * @param message
+     *            the error message if the front token is not an identifier
+     * @param errors
+     *            the diagnostics of the parse, or null to report the first
+     *            error and terminate the client
+     * @return the number of the identifier, or -1 if it is not one
+     * @updates tokens, errors
+     * @ensures <pre>
+     * if [the front of #tokens is an identifier] then
+     *  parseName = [the number of the identifier]  and  tokens = #tokens
+     * else
+     *  [reports an appropriate error message]  and  parseName = -1
+     * </pre>
      */
-    public Program1Parse1() {
-        super();
+    private static int parseName(TokenStream tokens, String message,
+            ParseResult errors) {
+        int name = -1;
+        if (tokens.frontKind() == TokenStream.Kind.IDENTIFIER) {
+            name = tokens.frontIdentifier();
+        } else {
+            Statement1Parse1.error(tokens, message, errors);
+            if (tokens.frontKind() == TokenStream.Kind.ERROR) {
+                tokens.dequeue();
+            }
+        }
+        return name;
     }
 
-    /*
-     * Public methods ---------------------------------------------------------
+    /**
+     * Checks that the front of {@code tokens} is the identifier with the given
+     * number, ending the instruction or program it names, and removes it.
+     *
+     * @param tokens
+     *            the input tokens
+     * @param name
+     *            the number of the name at the beginning, or -1 if it was
+     *            missing
+     * @param errors
+     *            the diagnostics of the parse, or null to report the first
+     *            error and terminate the client
+     * @updates tokens, errors
+     * @ensures <pre>
+     * if [the front of #tokens is the identifier numbered name] then
+     *  #tokens = <[the front of #tokens]> * tokens
+     * else
+     *  [reports an appropriate error message]
+     * </pre>
      */
-
-    @Override
-    public void parse(SimpleReader in) {
-        assert in != null : "Violation of: in is not null";
-        assert in.isOpen() : "Violation of: in.is_open";
-        Queue<String> tokens = Tokenizer.tokens(in);
-        this.parse(tokens);
+    private static void parseEndName(TokenStream tokens, int name,
+            ParseResult errors) {
+        boolean isName = tokens.frontKind() == TokenStream.Kind.IDENTIFIER;
+        if (!isName || tokens.frontIdentifier() != name) {
+            Statement1Parse1.error(tokens, "The names do not match", errors);
+        }
+        if (isName) {
+            tokens.dequeue();
+        }
     }
 
-    @Override
-    public void parse(Queue<String> tokens) {
-        assert tokens != null : "Violation of: tokens is not null";
-        assert tokens.length() > 0 : ""
-                + "Violation of: Tokenizer.END_OF_INPUT is a suffix of tokens";
-
+    /**
+     * Parses a BL program from {@code tokens} into {@code this}.
+     *
+     * @param tokens
+     *            the input tokens
+     * @param errors
+     *            the diagnostics of the parse, or null to report the first
+     *            error and terminate the client
+     * @replaces this
+     * @updates tokens, errors
+     * @requires [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
+     * @ensures <pre>
+     * if [a program string is a proper prefix of #tokens]  and
+     *    [no instruction of that program is named after a primitive
+     *     instruction or after an instruction defined before it]  and
+     *    [every instruction called by the body of that program, directly
+     *     or through other instructions, is either primitive or defined in
+     *     it]  and
+     *    [those instructions do not include any calling cycles, i.e.,
+     *     recursion] then
+     *  this = [Program corresponding to program string at start of #tokens]  and
+     *  #tokens = [program string at start of #tokens] * tokens
+     * else
+     *  [report an appropriate error message]
+     * </pre>
+     */
+    private void parse(TokenStream tokens, ParseResult errors) {
         // Check for "PROGRAM"
-        String program = tokens.dequeue();
-        Reporter.assertElseFatalError(program.equals("PROGRAM"),
-                "PROGRAM is not found");
+        Statement1Parse1.expect(tokens, TokenStream.Kind.PROGRAM,
+                "PROGRAM is not found", errors);
 
-        // Check if the name is unique
-        String programName = tokens.dequeue();
-        Reporter.assertElseFatalError(Tokenizer.isIdentifier(programName),
-                "The name is not unique");
-        this.setName(programName);
+        // Check if the name is an identifier
+        int programName = parseName(tokens, "The name is not unique",
+                errors);
+        if (programName >= 0) {
+            this.setName(tokens.dequeue());
+        }
 
         // Check for "IS"
-        String is = tokens.dequeue();
-        Reporter.assertElseFatalError(is.equals("IS"), "IS is not found");
+        Statement1Parse1.expect(tokens, TokenStream.Kind.IS,
+                "IS is not found", errors);
 
         //Map contains all Instructions, could be empty.
         Map<String, Statement> ctxt = this.newContext();
-
-        //Either Instruction or Begin
-        String instr = tokens.front();
+        InstructionIndex index = new InstructionIndex();
 
         // Check if the instruction is already in or not
-        while (instr.equals("INSTRUCTION")) {
+        while (tokens.frontKind() == TokenStream.Kind.INSTRUCTION) {
             Statement body = this.newBody();
-            String startName = parseInstruction(tokens, body);
-            for (Pair<String, Statement> x : ctxt) {
-                Reporter.assertElseFatalError(!x.key().equals(startName),
-                        "Instruction is already determined");
+            int line = tokens.frontLine();
+            int column = tokens.frontColumn();
+            String startName = parseInstruction(tokens, body, errors);
+            if (startName != null) {
+                if (InstructionIndex.isPrimitive(startName)) {
+                    Statement1Parse1.error(line, column,
+                            "Primitive instruction cannot be redefined: "
+                                    + startName,
+                            errors);
+                } else if (index.define(startName, body, line, column)) {
+                    ctxt.add(startName, body);
+                } else {
+                    Statement1Parse1.error(line, column,
+                            "Instruction is already determined", errors);
+                }
             }
-            ctxt.add(startName, body);
-            instr = tokens.front();
         }
 
         // Swaps the context
         this.swapContext(ctxt);
 
         // Check for "BEGIN"
-        Reporter.assertElseFatalError(instr.equals("BEGIN"),
-                "BEGIN is not found");
+        int bodyLine = tokens.frontLine();
+        int bodyColumn = tokens.frontColumn();
+        Statement1Parse1.expect(tokens, TokenStream.Kind.BEGIN,
+                "BEGIN is not found", errors);
 
         // Swaps the body
-        tokens.dequeue();
         Statement body = this.newBody();
-        body.parseBlock(tokens);
+        Statement1Parse1.parseBlock(tokens, body, false, errors);
+        while (tokens.frontKind() == TokenStream.Kind.INSTRUCTION) {
+            // Check a misplaced instruction, then go on with the body
+            Statement1Parse1.error(tokens,
+                    "INSTRUCTION is not allowed after BEGIN", errors);
+            parseInstruction(tokens, this.newBody(), errors);
+            Statement rest = this.newBody();
+            Statement1Parse1.parseBlock(tokens, rest, false, errors);
+            /*
+             * Take rest apart from the end so that no statement is shifted,
+             * then append its statements to body in order
+             */
+            Statement[] statements = new Statement[rest.lengthOfBlock()];
+            for (int i = statements.length - 1; i >= 0; i--) {
+                statements[i] = rest.removeFromBlock(i);
+            }
+            for (Statement s : statements) {
+                body.addToBlock(body.lengthOfBlock(), s);
+            }
+        }
+        index.setBody(body, bodyLine, bodyColumn);
         this.swapBody(body);
 
-        // Check for "END"
-        String end = tokens.dequeue();
-        Reporter.assertElseFatalError(end.equals("END"), "END is not found");
-
-        // Check if the names are equal
-        String endProgramName = tokens.dequeue();
-        Reporter.assertElseFatalError(endProgramName.equals(programName),
-                "The names do not match");
+        // Check for "END" and if the names are equal
+        if (Statement1Parse1.expect(tokens, TokenStream.Kind.END,
+                "END is not found", errors)) {
+            parseEndName(tokens, programName, errors);
+        }
 
         //Checks for end of program.
-        String endOfInput = tokens.dequeue();
-        Reporter.assertElseFatalError(endOfInput.equals("### END OF INPUT ###"),
-                "END OF INPUT is not found");
+        Statement1Parse1.expect(tokens, TokenStream.Kind.END_OF_INPUT,
+                "END OF INPUT is not found", errors);
+
+        // Check the calls
+        index.check(errors);
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public Program1Parse1() {
+        super();
+    }
+
+    /*
+     * Public methods ---------------------------------------------------------
+     */
+
+    @Override
+    public void parse(SimpleReader in) {
+        assert in != null : "Violation of: in is not null";
+        assert in.isOpen() : "Violation of: in.is_open";
+        this.parse(new ReaderTokenStream(in));
+    }
+
+    @Override
+    public void parse(Queue<String> tokens) {
+        assert tokens != null : "Violation of: tokens is not null";
+        assert tokens.length() > 0 : ""
+                + "Violation of: Tokenizer.END_OF_INPUT is a suffix of tokens";
+        this.parse(new QueueTokenStream(tokens));
+    }
+
+    /**
+     * Parses a BL program from {@code tokens} into {@code this}, as
+     * {@code parse(Queue<String>)} does, reading the tokens from a stream.
+     *
+     * @param tokens
+     *            the input tokens
+     * @replaces this
+     * @updates tokens
+     * @requires [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
+     * @ensures <pre>
+     * if [a program string is a proper prefix of #tokens]  and
+     *    [no instruction of that program is named after a primitive
+     *     instruction or after an instruction defined before it]  and
+     *    [every instruction called by the body of that program, directly
+     *     or through other instructions, is either primitive or defined in
+     *     it]  and
+     *    [those instructions do not include any calling cycles, i.e.,
+     *     recursion] then
+     *  this = [Program corresponding to program string at start of #tokens]  and
+     *  #tokens = [program string at start of #tokens] * tokens
+     * else
+     *  [report an appropriate error message to the console and terminate client]
+     * </pre>
+     */
+    public void parse(TokenStream tokens) {
+        assert tokens != null : "Violation of: tokens is not null";
+        this.parse(tokens, null);
+    }
+
+    /**
+     * Parses a BL program from {@code tokens} into {@code this}, as
+     * {@code parse(TokenStream)} does, but collects the errors instead of
+     * terminating the client at the first one. After an error, parsing
+     * resumes at the next {@code END}, {@code ELSE} or {@code INSTRUCTION}:
+     * missing keywords are taken as present, tokens that cannot start a
+     * statement are skipped, and blocks end at the next instruction, so one
+     * client can check any number of programs.
+     *
+     * @param tokens
+     *            the input tokens
+     * @return the syntax errors found
+     * @replaces this
+     * @updates tokens
+     * @requires [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
+     * @ensures <pre>
+     * if [a program string is a proper prefix of #tokens]  and
+     *    [no instruction of that program is named after a primitive
+     *     instruction or after an instruction defined before it]  and
+     *    [every instruction called by the body of that program, directly
+     *     or through other instructions, is either primitive or defined in
+     *     it]  and
+     *    [those instructions do not include any calling cycles, i.e.,
+     *     recursion] then
+     *  this = [Program corresponding to program string at start of #tokens]  and
+     *  #tokens = [program string at start of #tokens] * tokens  and
+     *  parseWithDiagnostics.isValid()
+     * else
+     *  this = [Program corresponding to the parts of #tokens parsed]  and
+     *  parseWithDiagnostics = [the errors found, in order]
+     * </pre>
+     */
+    public ParseResult parseWithDiagnostics(TokenStream tokens) {
+        assert tokens != null : "Violation of: tokens is not null";
+        ParseResult errors = new ParseResult();
+        this.clear();
+        this.parse(tokens, errors);
+        return errors;
+    }
+
+    /**
+     * Parses a BL program from {@code tokens}, as {@code parse(TokenStream)}
+     * does, into its compact representation, which can be read without being
+     * taken apart. The statements parsed are flattened once and not put back
+     * together.
+     *
+     * @param tokens
+     *            the input tokens
+     * @return the compact representation of the program
+     * @updates tokens
+     * @requires [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
+     * @ensures <pre>
+     * if [a program string is a proper prefix of #tokens]  and
+     *    [no instruction of that program is named after a primitive
+     *     instruction or after an instruction defined before it]  and
+     *    [every instruction called by the body of that program, directly
+     *     or through other instructions, is either primitive or defined in
+     *     it]  and
+     *    [those instructions do not include any calling cycles, i.e.,
+     *     recursion] then
+     *  parseCompact = [compact representation of the Program corresponding to
+     *                  program string at start of #tokens]  and
+     *  #tokens = [program string at start of #tokens] * tokens
+     * else
+     *  [report an appropriate error message to the console and terminate client]
+     * </pre>
+     */
+    public static CompactProgram parseCompact(TokenStream tokens) {
+        assert tokens != null : "Violation of: tokens is not null";
+        Program1Parse1 p = new Program1Parse1();
+        p.parse(tokens, null);
+        return CompactProgram.takeFrom(p);
     }
 
     /*
@@ -201,9 +434,8 @@ public final class Program1Parse1 extends Program1 {
         out.println("*** Parsing input file ***");
         Program p = new Program1Parse1();
         SimpleReader file = new SimpleReader1L(fileName);
-        Queue<String> tokens = Tokenizer.tokens(file);
+        p.parse(file);
         file.close();
-        p.parse(tokens);
         /*
          * Pretty print the program
          */
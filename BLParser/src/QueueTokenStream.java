@@ -0,0 +1,137 @@
+import components.queue.Queue;
+import components.statement.StatementKernel.Condition;
+
+/**
+ * {@code TokenStream} over a {@code Queue<String>} of tokens, so that parsers
+ * reading a {@code TokenStream} also accept the tokens produced by
+ * {@code Tokenizer.tokens}. The front token is classified the first time its
+ * kind is asked for. The queue does not say where its tokens come from, so
+ * their line and column are 0.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+final class QueueTokenStream implements TokenStream {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * The tokens.
+     */
+    private final Queue<String> tokens;
+
+    /**
+     * The table classifying the tokens.
+     */
+    private final TokenTable table = new TokenTable();
+
+    /**
+     * Whether the front token has been classified.
+     */
+    private boolean classified;
+
+    /**
+     * The kind of the front token.
+     */
+    private Kind frontKind;
+
+    /**
+     * The condition named by the front token, or null.
+     */
+    private Condition frontCondition;
+
+    /**
+     * The number of the front token if it is an identifier, or -1.
+     */
+    private int frontIdentifier;
+
+    /**
+     * Classifies the front token, unless it has been already.
+     *
+     * @updates this
+     */
+    private void classify() {
+        if (!this.classified) {
+            int slot = this.table.find(this.tokens.front());
+            if (slot == TokenTable.NONE) {
+                this.frontKind = Kind.ERROR;
+                this.frontCondition = null;
+                this.frontIdentifier = -1;
+            } else {
+                this.frontKind = this.table.kind(slot);
+                this.frontCondition = this.table.condition(slot);
+                this.frontIdentifier = this.table.identifier(slot);
+            }
+            this.classified = true;
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor.
+     *
+     * @param tokens
+     *            the tokens, consumed as the stream is read
+     * @ensures this = tokens
+     */
+    QueueTokenStream(Queue<String> tokens) {
+        assert tokens != null : "Violation of: tokens is not null";
+        this.tokens = tokens;
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    @Override
+    public String front() {
+        assert this.tokens.length() > 0 : "Violation of: this /= <>";
+        return this.tokens.front();
+    }
+
+    @Override
+    public String dequeue() {
+        assert this.tokens.length() > 0 : "Violation of: this /= <>";
+        this.classified = false;
+        return this.tokens.dequeue();
+    }
+
+    @Override
+    public Kind frontKind() {
+        assert this.tokens.length() > 0 : "Violation of: this /= <>";
+        this.classify();
+        return this.frontKind;
+    }
+
+    @Override
+    public Condition frontCondition() {
+        assert this.frontKind() == Kind.CONDITION : ""
+                + "Violation of: frontKind() = CONDITION";
+        return this.frontCondition;
+    }
+
+    @Override
+    public int frontIdentifier() {
+        assert this.frontKind() == Kind.IDENTIFIER : ""
+                + "Violation of: frontKind() = IDENTIFIER";
+        return this.frontIdentifier;
+    }
+
+    @Override
+    public int frontLine() {
+        assert this.tokens.length() > 0 : "Violation of: this /= <>";
+        return 0;
+    }
+
+    @Override
+    public int frontColumn() {
+        assert this.tokens.length() > 0 : "Violation of: this /= <>";
+        return 0;
+    }
+
+}
@@ -0,0 +1,349 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+import components.simplereader.SimpleReader;
+import components.statement.StatementKernel.Condition;
+import components.utilities.Reporter;
+import components.utilities.Tokenizer;
+
+/**
+ * {@code TokenStream} reading the tokens of a BL program from a character
+ * source as the parser asks for them, instead of reading the whole input into
+ * a {@code Queue<String>} first as {@code Tokenizer.tokens} does. Only the
+ * front token and one buffer of characters are held at a time, so memory does
+ * not grow with the input and a syntax error is reported as soon as the
+ * parser reaches it.
+ *
+ * <p>
+ * Tokens are the maximal sequences of non-whitespace characters, as for
+ * {@code Tokenizer.tokens}, and the input is followed by
+ * {@code Tokenizer.END_OF_INPUT}; reading past the end of the input keeps
+ * returning {@code Tokenizer.END_OF_INPUT}. Tokens are classified by looking
+ * their characters up in a {@code TokenTable}, so keywords, conditions and
+ * identifiers seen before are returned without allocating a new
+ * {@code String}.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class ReaderTokenStream implements TokenStream {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Size of the character buffer.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The source of characters, or null if reading from {@code in}.
+     */
+    private final Reader reader;
+
+    /**
+     * The source of lines, or null if reading from {@code reader}.
+     */
+    private final SimpleReader in;
+
+    /**
+     * The buffered characters.
+     */
+    private char[] chars = new char[BUFFER_SIZE];
+
+    /**
+     * {@code chars} as a {@code CharSequence}, for looking tokens up.
+     */
+    private CharBuffer view = CharBuffer.wrap(this.chars);
+
+    /**
+     * Position of the next character to read in {@code chars}.
+     */
+    private int position;
+
+    /**
+     * Number of characters in {@code chars}.
+     */
+    private int limit;
+
+    /**
+     * Whether the end of the input has been reached.
+     */
+    private boolean atEnd;
+
+    /**
+     * The table classifying the tokens.
+     */
+    private final TokenTable table = new TokenTable();
+
+    /**
+     * The front token, or null if it has not been read yet.
+     */
+    private String front;
+
+    /**
+     * The kind of the front token.
+     */
+    private Kind frontKind;
+
+    /**
+     * The condition named by the front token, or null.
+     */
+    private Condition frontCondition;
+
+    /**
+     * The number of the front token if it is an identifier, or -1.
+     */
+    private int frontIdentifier;
+
+    /**
+     * The line of the front token.
+     */
+    private int frontLine;
+
+    /**
+     * The column of the front token.
+     */
+    private int frontColumn;
+
+    /**
+     * The line of the next character to read.
+     */
+    private int line = 1;
+
+    /**
+     * The column of the next character to read.
+     */
+    private int column = 1;
+
+    /**
+     * Characters of a token that does not fit in the buffer.
+     */
+    private final StringBuilder spill = new StringBuilder();
+
+    /**
+     * Refills {@code chars} from the source, unless the end of the input has
+     * been reached.
+     *
+     * @updates this
+     * @ensures <pre>
+     * if [the input has more characters] then
+     *  position = 0  and  limit > 0
+     * else
+     *  atEnd
+     * </pre>
+     */
+    private void refill() {
+        this.position = 0;
+        this.limit = 0;
+        if (this.reader != null) {
+            try {
+                int count = 0;
+                while (count == 0) {
+                    count = this.reader.read(this.chars, 0, this.chars.length);
+                }
+                if (count > 0) {
+                    this.limit = count;
+                }
+            } catch (IOException e) {
+                Reporter.assertElseFatalError(false,
+                        "Error reading BL program: " + e.getMessage());
+            }
+        } else if (!this.in.atEOS()) {
+            /*
+             * SimpleReader drops line separators, so add one back to end the
+             * last token of the line
+             */
+            String line = this.in.nextLine();
+            if (line.length() + 1 > this.chars.length) {
+                this.chars = new char[line.length() + 1];
+                this.view = CharBuffer.wrap(this.chars);
+            }
+            line.getChars(0, line.length(), this.chars, 0);
+            this.chars[line.length()] = '\n';
+            this.limit = line.length() + 1;
+        }
+        this.atEnd = this.limit == 0;
+    }
+
+    /**
+     * Classifies the given token as the front token.
+     *
+     * @param chars
+     *            the characters of the token
+     * @param start
+     *            the position of the first character
+     * @param length
+     *            the number of characters
+     * @updates this
+     */
+    private void setFront(CharSequence chars, int start, int length) {
+        int slot = this.table.find(chars, start, length);
+        if (slot == TokenTable.NONE) {
+            this.front = chars.subSequence(start, start + length).toString();
+            this.frontKind = Kind.ERROR;
+            this.frontCondition = null;
+            this.frontIdentifier = -1;
+        } else {
+            this.front = this.table.text(slot);
+            this.frontKind = this.table.kind(slot);
+            this.frontCondition = this.table.condition(slot);
+            this.frontIdentifier = this.table.identifier(slot);
+        }
+    }
+
+    /**
+     * Reads the next token from the source as the front token, or
+     * {@code Tokenizer.END_OF_INPUT} at the end of the input.
+     *
+     * @updates this
+     */
+    private void readFront() {
+        /*
+         * Skip whitespace
+         */
+        boolean skipping = true;
+        while (skipping && !this.atEnd) {
+            while (this.position < this.limit
+                    && Character.isWhitespace(this.chars[this.position])) {
+                if (this.chars[this.position] == '\n') {
+                    this.line++;
+                    this.column = 1;
+                } else {
+                    this.column++;
+                }
+                this.position++;
+            }
+            if (this.position < this.limit) {
+                skipping = false;
+            } else {
+                this.refill();
+            }
+        }
+        this.frontLine = this.line;
+        this.frontColumn = this.column;
+        if (this.atEnd) {
+            this.front = Tokenizer.END_OF_INPUT;
+            this.frontKind = Kind.END_OF_INPUT;
+            this.frontCondition = null;
+            this.frontIdentifier = -1;
+        } else {
+            /*
+             * Collect non-whitespace characters, spilling them over when the
+             * token runs past the end of the buffer
+             */
+            boolean done = false;
+            this.spill.setLength(0);
+            while (!done) {
+                int start = this.position;
+                while (this.position < this.limit && !Character
+                        .isWhitespace(this.chars[this.position])) {
+                    this.position++;
+                }
+                this.column += this.position - start;
+                if (this.position < this.limit && this.spill.length() == 0) {
+                    this.setFront(this.view, start, this.position - start);
+                    done = true;
+                } else {
+                    this.spill.append(this.chars, start,
+                            this.position - start);
+                    if (this.position < this.limit) {
+                        done = true;
+                    } else {
+                        this.refill();
+                        done = this.atEnd;
+                    }
+                    if (done) {
+                        this.setFront(this.spill, 0, this.spill.length());
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor reading from a {@code Reader}.
+     *
+     * @param reader
+     *            the source of characters
+     * @ensures this = [the tokens of reader] * <Tokenizer.END_OF_INPUT>
+     */
+    public ReaderTokenStream(Reader reader) {
+        assert reader != null : "Violation of: reader is not null";
+        this.reader = reader;
+        this.in = null;
+    }
+
+    /**
+     * Constructor reading from a {@code SimpleReader}, a line at a time.
+     *
+     * @param in
+     *            the source of lines
+     * @requires in.is_open
+     * @ensures this = [the tokens of in.content] * <Tokenizer.END_OF_INPUT>
+     */
+    public ReaderTokenStream(SimpleReader in) {
+        assert in != null : "Violation of: in is not null";
+        assert in.isOpen() : "Violation of: in.is_open";
+        this.reader = null;
+        this.in = in;
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    @Override
+    public String front() {
+        if (this.front == null) {
+            this.readFront();
+        }
+        return this.front;
+    }
+
+    @Override
+    public String dequeue() {
+        String token = this.front();
+        this.front = null;
+        return token;
+    }
+
+    @Override
+    public Kind frontKind() {
+        this.front();
+        return this.frontKind;
+    }
+
+    @Override
+    public Condition frontCondition() {
+        assert this.frontKind() == Kind.CONDITION : ""
+                + "Violation of: frontKind() = CONDITION";
+        return this.frontCondition;
+    }
+
+    @Override
+    public int frontIdentifier() {
+        assert this.frontKind() == Kind.IDENTIFIER : ""
+                + "Violation of: frontKind() = IDENTIFIER";
+        return this.frontIdentifier;
+    }
+
+    @Override
+    public int frontLine() {
+        this.front();
+        return this.frontLine;
+    }
+
+    @Override
+    public int frontColumn() {
+        this.front();
+        return this.frontColumn;
+    }
+
+}
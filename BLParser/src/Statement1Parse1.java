@@ -1,3 +1,6 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+
 import components.queue.Queue;
 import components.simplereader.SimpleReader;
 import components.simplereader.SimpleReader1L;
@@ -6,7 +9,6 @@ import components.simplewriter.SimpleWriter1L;
 import components.statement.Statement;
 import components.statement.Statement1;
 import components.utilities.Reporter;
-import components.utilities.Tokenizer;
 
 /**
  * Layered implementation of secondary methods {@code parse} and
@@ -20,171 +22,522 @@ public final class Statement1Parse1 extends Statement1 {
     /*
      * Private members --------------------------------------------------------
      */
+
+    /**
+     * An IF or WHILE statement whose block is being parsed, or the outermost
+     * block.
+     */
+    private static final class Open {
+
+        /**
+         * IF or WHILE, or null for the outermost block.
+         */
+        private final TokenStream.Kind kind;
+
+        /**
+         * The condition of the statement.
+         */
+        private final Condition condition;
+
+        /**
+         * The block being parsed.
+         */
+        private Statement block;
+
+        /**
+         * Number of statements in {@code block}.
+         */
+        private int length;
+
+        /**
+         * The THEN block of an IF, once its ELSE has been read, or null.
+         */
+        private Statement thenBlock;
+
+        /**
+         * Whether {@code ELSE} ends {@code block}.
+         */
+        private boolean inIf;
+
+        /**
+         * Constructor.
+         *
+         * @param kind
+         *            IF or WHILE, or null for the outermost block
+         * @param condition
+         *            the condition of the statement
+         * @param block
+         *            the empty block to parse
+         * @param inIf
+         *            whether {@code ELSE} ends the block
+         */
+        Open(TokenStream.Kind kind, Condition condition, Statement block,
+                boolean inIf) {
+            this.kind = kind;
+            this.condition = condition;
+            this.block = block;
+            this.inIf = inIf;
+        }
+
+        /**
+         * Adds {@code s} at the end of the block.
+         *
+         * @param s
+         *            the statement added
+         * @clears s
+         */
+        void add(Statement s) {
+            this.block.addToBlock(this.length, s);
+            this.length++;
+        }
+
+    }
+
+    /**
+     * Parses a condition from {@code tokens} into the corresponding
+     * {@code Condition}.
+     *
+     * @param tokens
+     *            the input tokens
+     * @param message
+     *            the error message if the front token is not a condition
+     * @param errors
+     *            the diagnostics of the parse, or null to report the first
+     *            error and terminate the client
+     * @return the {@code Condition} corresponding to the front of tokens
+     * @updates tokens, errors
+     * @ensures <pre>
+     * if [the front of #tokens is a condition string] then
+     *  parseCondition = [Condition corresponding to the front of #tokens]  and
+     *  #tokens = <[the front of #tokens]> * tokens
+     * else
+     *  [reports an appropriate error message]
+     * </pre>
+     */
+    private static Condition parseCondition(TokenStream tokens,
+            String message, ParseResult errors) {
+        Condition c = Condition.TRUE;
+        if (tokens.frontKind() == TokenStream.Kind.CONDITION) {
+            c = tokens.frontCondition();
+            tokens.dequeue();
+        } else {
+            error(tokens, message, errors);
+            // Skip a misspelled condition, but not a keyword
+            if (tokens.frontKind() == TokenStream.Kind.IDENTIFIER
+                    || tokens.frontKind() == TokenStream.Kind.ERROR) {
+                tokens.dequeue();
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Parses the {@code END} closing a statement from {@code tokens}, followed
+     * by the given keyword.
+     *
+     * @param tokens
+     *            the input tokens
+     * @param kind
+     *            the keyword following {@code END}
+     * @param message
+     *            the error message if the keyword is not found
+     * @param errors
+     *            the diagnostics of the parse, or null to report the first
+     *            error and terminate the client
+     * @updates tokens, errors
+     * @ensures <pre>
+     * if <"END", [kind]> is a prefix of #tokens then
+     *  #tokens = <"END", [kind]> * tokens
+     * else
+     *  [reports an appropriate error message]
+     * </pre>
+     */
+    private static void parseEnd(TokenStream tokens, TokenStream.Kind kind,
+            String message, ParseResult errors) {
+        if (expect(tokens, TokenStream.Kind.END, "END is not found", errors)
+                && !expect(tokens, kind, message, errors)) {
+            // Skip the keyword of another statement closed here instead
+            if (tokens.frontKind() == TokenStream.Kind.IF
+                    || tokens.frontKind() == TokenStream.Kind.WHILE) {
+                tokens.dequeue();
+            }
+        }
+    }
+
     /**
-     * Converts {@code c} into the corresponding {@code Condition}.
+     * Parses the beginning of an IF or WHILE statement from {@code tokens},
+     * up to its block.
      *
-     * @param c
-     *            the condition to convert
-     * @return the {@code Condition} corresponding to {@code c}
-     * @requires [c is a condition string]
-     * @ensures parseCondition = [Condition corresponding to c]
+     * @param tokens
+     *            the input tokens
+     * @param block
+     *            an empty block for the block of the statement
+     * @param errors
+     *            the diagnostics of the parse, or null to report the first
+     *            error and terminate the client
+     * @return the statement, open for parsing its block
+     * @updates tokens, errors
+     * @requires [<"IF"> or <"WHILE"> is a prefix of tokens]
+     * @ensures <pre>
+     * if [the condition and THEN or DO follow IF or WHILE in #tokens] then
+     *  #tokens = [IF or WHILE, the condition and THEN or DO] * tokens
+     * else
+     *  [reports an appropriate error message]
+     * </pre>
      */
-    private static Condition parseCondition(String c) {
-        assert c != null : "Violation of: c is not null";
-        assert Tokenizer
-                .isCondition(c) : "Violation of: c is a condition string";
-        return Condition.valueOf(c.replace('-', '_').toUpperCase());
+    private static Open parseBeginning(TokenStream tokens, Statement block,
+            ParseResult errors) {
+        assert tokens.frontKind() == TokenStream.Kind.IF
+                || tokens.frontKind() == TokenStream.Kind.WHILE : ""
+                        + "Violation of: <\"IF\"> or <\"WHILE\"> is prefix of tokens";
+        TokenStream.Kind kind = tokens.frontKind();
+        tokens.dequeue();
+        Open open;
+        if (kind == TokenStream.Kind.IF) {
+            Condition c = parseCondition(tokens,
+                    "Not a right name of a condition after IF", errors);
+            expect(tokens, TokenStream.Kind.THEN, "THEN is not found",
+                    errors);
+            open = new Open(kind, c, block, true);
+        } else {
+            Condition c = parseCondition(tokens,
+                    "Not a right name of a condition after WHILE", errors);
+            expect(tokens, TokenStream.Kind.DO, "DO is not found", errors);
+            open = new Open(kind, c, block, false);
+        }
+        return open;
     }
 
     /**
-     * Parses an IF or IF_ELSE statement from {@code tokens} into {@code s}.
+     * Assembles the IF, IF_ELSE or WHILE statement {@code open} into
+     * {@code s} and parses its END from {@code tokens}.
      *
      * @param tokens
      *            the input tokens
+     * @param open
+     *            the statement, whose block has been parsed
      * @param s
-     *            the parsed statement
+     *            the assembled statement
+     * @param errors
+     *            the diagnostics of the parse, or null to report the first
+     *            error and terminate the client
      * @replaces s
-     * @updates tokens
-     * @requires <pre>
-     * [<"IF"> is a prefix of tokens]  and
-     *  [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
+     * @updates tokens, errors
+     * @ensures <pre>
+     * s = [the statement open]  and
+     * if [END IF or END WHILE, as open is an IF or a WHILE, is a prefix
+     *     of #tokens] then
+     *  #tokens = [END IF or END WHILE] * tokens
+     * else
+     *  [reports an appropriate error message]
      * </pre>
+     */
+    private static void parseEnding(TokenStream tokens, Open open,
+            Statement s, ParseResult errors) {
+        if (open.kind == TokenStream.Kind.WHILE) {
+            s.assembleWhile(open.condition, open.block);
+            parseEnd(tokens, TokenStream.Kind.WHILE,
+                    "WHILE at the end is not found", errors);
+        } else {
+            if (open.thenBlock == null) {
+                s.assembleIf(open.condition, open.block);
+            } else {
+                s.assembleIfElse(open.condition, open.thenBlock, open.block);
+            }
+            parseEnd(tokens, TokenStream.Kind.IF, "IF at the end is not found",
+                    errors);
+        }
+    }
+
+    /**
+     * Parses BL statements from {@code tokens} into the block {@code s}: a
+     * maximally long sequence of them, or only the first one if
+     * {@code single}.
+     *
+     * <p>
+     * Nested statements are parsed with a stack of the statements whose
+     * blocks are being parsed instead of recursively, so the depth of nesting
+     * is limited only by the heap. The outermost block ends at {@code END},
+     * at the end of the input, and at {@code INSTRUCTION} and {@code BEGIN},
+     * which cannot occur in a statement, so that parsing resumes there after
+     * an error. When errors are collected, tokens that cannot start a
+     * statement are reported and skipped; otherwise they end the block and
+     * are left in {@code tokens}, as the end of a maximally long block.
+     *
+     * @param tokens
+     *            the input tokens
+     * @param s
+     *            the parsed block
+     * @param inIf
+     *            whether the block is the THEN part of an IF, which
+     *            {@code ELSE} ends; elsewhere {@code ELSE} is reported and
+     *            skipped when errors are collected, and ends the block
+     *            otherwise
+     * @param single
+     *            whether to parse only the first statement
+     * @param errors
+     *            the diagnostics of the parse, or null to report the first
+     *            error and terminate the client
+     * @replaces s
+     * @updates tokens, errors
+     * @requires [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
      * @ensures <pre>
-     * if [an if string is a proper prefix of #tokens] then
-     *  s = [IF or IF_ELSE Statement corresponding to if string at start of #tokens]  and
-     *  #tokens = [if string at start of #tokens] * tokens
+     * if [there exists a block string that is a proper prefix of #tokens] then
+     *  s = [BLOCK Statement corresponding to the longest such block string,
+     *       or its first statement if single]  and
+     *  #tokens = [the block string parsed] * tokens
      * else
-     *  [reports an appropriate error message to the console and terminates client]
+     *  [reports an appropriate error message]
      * </pre>
      */
-    private static void parseIf(Queue<String> tokens, Statement s) {
-        assert tokens != null : "Violation of: tokens is not null";
-        assert s != null : "Violation of: s is not null";
-        assert tokens.length() > 0 && tokens.front().equals("IF") : ""
-                + "Violation of: <\"IF\"> is proper prefix of tokens";
+    private static void parseStatements(TokenStream tokens, Statement s,
+            boolean inIf, boolean single, ParseResult errors) {
+        Deque<Open> enclosing = new ArrayDeque<>();
+        Open open = new Open(null, null, s, inIf);
+        Statement child = s.newInstance();
+        boolean more = true;
+        while (more) {
+            boolean ends = false;
+            switch (tokens.frontKind()) {
+                case IF:
+                case WHILE: {
+                    enclosing.push(open);
+                    open = parseBeginning(tokens, s.newInstance(), errors);
+                    break;
+                }
+                case IDENTIFIER: {
+                    child.assembleCall(tokens.dequeue());
+                    open.add(child);
+                    break;
+                }
+                case ELSE: {
+                    if (open.inIf && !enclosing.isEmpty()) {
+                        // Go on with the ELSE block of the IF
+                        tokens.dequeue();
+                        open.thenBlock = open.block;
+                        open.block = s.newInstance();
+                        open.length = 0;
+                        open.inIf = false;
+                    } else if (open.inIf || errors == null) {
+                        ends = true;
+                    } else {
+                        error(tokens, "ELSE without IF", errors);
+                        tokens.dequeue();
+                    }
+                    break;
+                }
+                case END:
+                case INSTRUCTION:
+                case BEGIN:
+                case END_OF_INPUT: {
+                    ends = true;
+                    break;
+                }
+                default: {
+                    if (errors == null) {
+                        ends = true;
+                    } else {
+                        error(tokens, "Not a statement: " + tokens.front(),
+                                errors);
+                        tokens.dequeue();
+                    }
+                    break;
+                }
+            }
+            if (ends) {
+                if (enclosing.isEmpty()) {
+                    more = false;
+                } else {
+                    parseEnding(tokens, open, child, errors);
+                    open = enclosing.pop();
+                    open.add(child);
+                }
+            }
+            if (single && enclosing.isEmpty() && open.length > 0) {
+                more = false;
+            }
+        }
+    }
 
-        // Check for the name of the condition and if it is true,
-        // then make it into a condition
-        tokens.dequeue();
-        String con = tokens.dequeue();
-        Reporter.assertElseFatalError(Tokenizer.isCondition(con),
-                "Not a right name of a condition after IF");
-        Condition ifCon = parseCondition(con);
-
-        // Check for THEN
-        String thenState = tokens.dequeue();
-        Reporter.assertElseFatalError(thenState.equals("THEN"),
-                "THEN is not found");
-
-        // Make a new Statement for IF
-        Statement newIf = s.newInstance();
-        newIf.parseBlock(tokens);
-
-        // Check for ELSE or END
-        Reporter.assertElseFatalError(
-                tokens.front().equals("ELSE") || tokens.front().equals("END"),
-                "ELSE nor END is not found");
-
-        // If ELSE is found, make IFELSE Statement, if not, make IF Statement
-        if (tokens.front().equals("ELSE")) {
-            tokens.dequeue();
-            Statement newElse = s.newInstance();
-            newElse.parseBlock(tokens);
-            s.assembleIfElse(ifCon, newIf, newElse);
-            String end = tokens.dequeue();
-            Reporter.assertElseFatalError(end.equals("END"),
-                    "END is not found");
+    /*
+     * Package-private members ------------------------------------------------
+     */
+
+    /**
+     * Reports a syntax error at the front of {@code tokens}: records it in
+     * {@code errors} if there is one, or else reports it to the console and
+     * terminates the client.
+     *
+     * @param tokens
+     *            the input tokens
+     * @param message
+     *            the error message
+     * @param errors
+     *            the diagnostics of the parse, or null to report the error
+     *            and terminate the client
+     * @updates errors
+     * @ensures <pre>
+     * if errors /= null then
+     *  errors = #errors * [message at the position of the front of tokens]
+     * else
+     *  [reports message to the console and terminates client]
+     * </pre>
+     */
+    static void error(TokenStream tokens, String message,
+            ParseResult errors) {
+        if (errors == null) {
+            Reporter.assertElseFatalError(false, message);
+        } else {
+            errors.addSyntaxError(tokens.frontLine(), tokens.frontColumn(),
+                    message);
+        }
+    }
+
+    /**
+     * Reports an error at the given position: records it in {@code errors} if
+     * there is one, or else reports it to the console and terminates the
+     * client.
+     *
+     * @param line
+     *            the line where the error was found
+     * @param column
+     *            the column where the error was found
+     * @param message
+     *            the error message
+     * @param errors
+     *            the diagnostics of the parse, or null to report the error
+     *            and terminate the client
+     * @updates errors
+     * @ensures <pre>
+     * if errors /= null then
+     *  errors = #errors * [message at line and column]
+     * else
+     *  [reports message to the console and terminates client]
+     * </pre>
+     */
+    static void error(int line, int column, String message,
+            ParseResult errors) {
+        if (errors == null) {
+            Reporter.assertElseFatalError(false, message);
         } else {
-            s.assembleIf(ifCon, newIf);
-            String end = tokens.dequeue();
-            Reporter.assertElseFatalError(end.equals("END"),
-                    "END is not found");
+            errors.add(line, column, message);
         }
+    }
 
-        // Check for IF at the end
-        String endIf = tokens.dequeue();
-        Reporter.assertElseFatalError(endIf.equals("IF"),
-                "IF at the end is not found");
+    /**
+     * Checks that the front of {@code tokens} is of the given kind and
+     * removes it. A missing token is reported but not skipped over, so
+     * parsing goes on as if it had been there.
+     *
+     * @param tokens
+     *            the input tokens
+     * @param kind
+     *            the expected kind
+     * @param message
+     *            the error message if the front token is of another kind
+     * @param errors
+     *            the diagnostics of the parse, or null to report the first
+     *            error and terminate the client
+     * @return true iff the front token was of the given kind
+     * @updates tokens, errors
+     * @ensures <pre>
+     * if [the front of #tokens is of kind kind] then
+     *  #tokens = <[the front of #tokens]> * tokens  and  expect = true
+     * else
+     *  [reports an appropriate error message]  and  tokens = #tokens  and
+     *  expect = false
+     * </pre>
+     */
+    static boolean expect(TokenStream tokens, TokenStream.Kind kind,
+            String message, ParseResult errors) {
+        boolean found = tokens.frontKind() == kind;
+        if (found) {
+            tokens.dequeue();
+        } else {
+            error(tokens, message, errors);
+        }
+        return found;
     }
 
     /**
-     * Parses a WHILE statement from {@code tokens} into {@code s}.
+     * Parses a single BL statement from {@code tokens} into {@code s}.
      *
      * @param tokens
      *            the input tokens
      * @param s
      *            the parsed statement
+     * @param errors
+     *            the diagnostics of the parse, or null to report the first
+     *            error and terminate the client
      * @replaces s
-     * @updates tokens
-     * @requires <pre>
-     * [<"WHILE"> is a prefix of tokens]  and
-     *  [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
-     * </pre>
+     * @updates tokens, errors
+     * @requires [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
      * @ensures <pre>
-     * if [a while string is a proper prefix of #tokens] then
-     *  s = [WHILE Statement corresponding to while string at start of #tokens]  and
-     *  #tokens = [while string at start of #tokens] * tokens
+     * if [a statement string is a proper prefix of #tokens] then
+     *  s = [Statement corresponding to statement string at start of #tokens]  and
+     *  #tokens = [statement string at start of #tokens] * tokens
      * else
-     *  [reports an appropriate error message to the console and terminates client]
+     *  [reports an appropriate error message]
      * </pre>
      */
-    private static void parseWhile(Queue<String> tokens, Statement s) {
+    static void parse(TokenStream tokens, Statement s, ParseResult errors) {
         assert tokens != null : "Violation of: tokens is not null";
         assert s != null : "Violation of: s is not null";
-        assert tokens.length() > 0 && tokens.front().equals("WHILE") : ""
-                + "Violation of: <\"WHILE\"> is proper prefix of tokens";
-
-        // Check for WHILE and if the name of condition is right, make a condition
-        String startWhile = tokens.dequeue();
-        String whileCon = tokens.dequeue();
-        Reporter.assertElseFatalError(Tokenizer.isCondition(whileCon),
-                "Not a right name of a condition after WHILE");
-        Condition con = parseCondition(whileCon);
-
-        // Check for DO
-        String doState = tokens.dequeue();
-        Reporter.assertElseFatalError(doState.equals("DO"), "DO is not found");
-
-        // Make a new Statement for WHILE
-        Statement newWhile = s.newInstance();
-        newWhile.parseBlock(tokens);
-        s.assembleWhile(con, newWhile);
-
-        // Check for END
-        String end = tokens.dequeue();
-        Reporter.assertElseFatalError(end.equals("END"), "END is not found");
-
-        // Check for WHILE at the end
-        String endWhile = tokens.dequeue();
-        Reporter.assertElseFatalError(endWhile.equals(startWhile),
-                "WHILE at the end is not found");
+
+        // Check if the token is IF, WHILE, or an identifier
+        switch (tokens.frontKind()) {
+            case IF:
+            case WHILE:
+            case IDENTIFIER: {
+                Statement block = s.newInstance();
+                parseStatements(tokens, block, false, true, errors);
+                s.transferFrom(block.removeFromBlock(0));
+                break;
+            }
+            default: {
+                error(tokens, "Not a statement: " + tokens.front(), errors);
+                break;
+            }
+        }
     }
 
     /**
-     * Parses a CALL statement from {@code tokens} into {@code s}.
+     * Parses a maximally long sequence of BL statements from {@code tokens}
+     * into the block {@code s}. The block ends at {@code END}, at the end of
+     * the input, and at {@code INSTRUCTION} and {@code BEGIN}, which cannot
+     * occur in a statement, so that parsing resumes there after an error.
+     * When errors are collected, tokens that cannot start a statement are
+     * reported and skipped; otherwise they end the block and are left in
+     * {@code tokens}. The depth of nesting is limited only by the heap.
      *
      * @param tokens
      *            the input tokens
      * @param s
-     *            the parsed statement
+     *            the parsed block
+     * @param inIf
+     *            whether the block is the THEN part of an IF, which
+     *            {@code ELSE} ends; elsewhere {@code ELSE} is reported and
+     *            skipped when errors are collected, and ends the block
+     *            otherwise
+     * @param errors
+     *            the diagnostics of the parse, or null to report the first
+     *            error and terminate the client
      * @replaces s
-     * @updates tokens
-     * @requires [identifier string is a proper prefix of tokens]
+     * @updates tokens, errors
+     * @requires [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
      * @ensures <pre>
-     * s =
-     *   [CALL Statement corresponding to identifier string at start of #tokens]  and
-     *  #tokens = [identifier string at start of #tokens] * tokens
+     * if [there exists a block string that is a proper prefix of #tokens] then
+     *  s = [BLOCK Statement corresponding to the longest such block string]  and
+     *  #tokens = [the longest such block string] * tokens
+     * else
+     *  [reports an appropriate error message]
      * </pre>
      */
-    private static void parseCall(Queue<String> tokens, Statement s) {
+    static void parseBlock(TokenStream tokens, Statement s, boolean inIf,
+            ParseResult errors) {
         assert tokens != null : "Violation of: tokens is not null";
         assert s != null : "Violation of: s is not null";
-        assert tokens.length() > 0
-                && Tokenizer.isIdentifier(tokens.front()) : ""
-                        + "Violation of: identifier string is proper prefix of tokens";
-        // Assemble the call
-        String call = tokens.dequeue();
-        s.assembleCall(call);
+        parseStatements(tokens, s, inIf, false, errors);
     }
 
     /*
@@ -207,21 +560,7 @@ public final class Statement1Parse1 extends Statement1 {
         assert tokens != null : "Violation of: tokens is not null";
         assert tokens.length() > 0 : ""
                 + "Violation of: Tokenizer.END_OF_INPUT is a suffix of tokens";
-
-        // Get the identifier
-        String identifer = tokens.front();
-
-        // Check if the identifier is IF, WHILE, or something else
-        if (identifer.equals("IF")) {
-            parseIf(tokens, this);
-        } else if (identifer.equals("WHILE")) {
-            parseWhile(tokens, this);
-        } else {
-            Reporter.assertElseFatalError(Tokenizer.isIdentifier(identifer),
-                    "");
-            parseCall(tokens, this);
-        }
-
+        parse(new QueueTokenStream(tokens), this, null);
     }
 
     @Override
@@ -229,17 +568,52 @@ public final class Statement1Parse1 extends Statement1 {
         assert tokens != null : "Violation of: tokens is not null";
         assert tokens.length() > 0 : ""
                 + "Violation of: Tokenizer.END_OF_INPUT is a suffix of tokens";
+        parseBlock(new QueueTokenStream(tokens), this, true, null);
+    }
 
-        // Make a new Statement
-        Statement s = this.newInstance();
+    /**
+     * Parses a single BL statement from {@code tokens} into {@code this}, as
+     * {@code parse(Queue<String>)} does, reading the tokens from a stream.
+     *
+     * @param tokens
+     *            the input tokens
+     * @replaces this
+     * @updates tokens
+     * @requires [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
+     * @ensures <pre>
+     * if [a statement string is a proper prefix of #tokens] then
+     *  this = [Statement corresponding to statement string at start of #tokens]  and
+     *  #tokens = [statement string at start of #tokens] * tokens
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    public void parse(TokenStream tokens) {
+        assert tokens != null : "Violation of: tokens is not null";
+        parse(tokens, this, null);
+    }
 
-        // If the token is not END_OF_INPUT, END, nor ELSE, then add the block
-        for (int c = 0; !tokens.front().equals(Tokenizer.END_OF_INPUT)
-                && !tokens.front().equals("END")
-                && !tokens.front().equals("ELSE"); c++) {
-            s.parse(tokens);
-            this.addToBlock(c, s);
-        }
+    /**
+     * Parses a maximally long sequence of BL statements from {@code tokens}
+     * into the block {@code this}, as {@code parseBlock(Queue<String>)} does,
+     * reading the tokens from a stream.
+     *
+     * @param tokens
+     *            the input tokens
+     * @replaces this
+     * @updates tokens
+     * @requires [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
+     * @ensures <pre>
+     * if [there exists a block string that is a proper prefix of #tokens] then
+     *  this = [BLOCK Statement corresponding to the longest such block string]  and
+     *  #tokens = [the longest such block string] * tokens
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    public void parseBlock(TokenStream tokens) {
+        assert tokens != null : "Violation of: tokens is not null";
+        parseBlock(tokens, this, true, null);
     }
 
     /*
@@ -264,11 +638,10 @@ public final class Statement1Parse1 extends Statement1 {
          * Parse input file
          */
         out.println("*** Parsing input file ***");
-        Statement s = new Statement1Parse1();
+        Statement1Parse1 s = new Statement1Parse1();
         SimpleReader file = new SimpleReader1L(fileName);
-        Queue<String> tokens = Tokenizer.tokens(file);
+        s.parse(new ReaderTokenStream(file)); // replace with parseBlock to test other method
         file.close();
-        s.parse(tokens); // replace with parseBlock to test other method
         /*
          * Pretty print the statement(s)
          */
@@ -0,0 +1,238 @@
+import components.statement.Statement;
+import components.statement.StatementKernel.Condition;
+import components.statement.StatementKernel.Kind;
+
+/**
+ * A statement being visited by a walk over a {@code Statement} tree that keeps
+ * a stack of frames instead of recursing, so that the depth of nesting it can
+ * walk is limited only by the heap.
+ *
+ * <p>
+ * A frame disassembles its statement when it is created and hands out its
+ * parts one at a time with {@code next}: the statements of a BLOCK in order
+ * (or in reverse order), the block of an IF or WHILE, and the two blocks of
+ * an IF_ELSE. The statements of a BLOCK are all taken out from the last one,
+ * so that no statement is shifted. A walk pushes a frame for each part handed
+ * out and pops it when it has no more parts; when {@code next} has no more
+ * parts to hand out, it restores the statement. The code generators, the
+ * pretty printer and {@code InstructionIndex} all walk statements this way;
+ * a walk subclasses it to keep what it needs between parts, such as the
+ * location of a jump to fill in.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+class StatementFrame {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * The statement, disassembled until all its parts have been handed out.
+     */
+    private final Statement s;
+
+    /**
+     * The kind of the statement.
+     */
+    private final Kind kind;
+
+    /**
+     * The condition of an IF, IF_ELSE or WHILE statement, or null.
+     */
+    private final Condition condition;
+
+    /**
+     * The name of the instruction called by a CALL statement, or null.
+     */
+    private final String call;
+
+    /**
+     * The blocks of an IF, IF_ELSE or WHILE statement, or the statements of a
+     * BLOCK.
+     */
+    private final Statement[] parts;
+
+    /**
+     * The number of parts of the statement.
+     */
+    private final int length;
+
+    /**
+     * Whether the statements of a BLOCK are handed out from the last one to
+     * the first one.
+     */
+    private final boolean backward;
+
+    /**
+     * The number of parts handed out.
+     */
+    private int position;
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor, disassembling {@code s}.
+     *
+     * @param s
+     *            the statement visited
+     * @param backward
+     *            whether to hand out the statements of a BLOCK from the last
+     *            one to the first one
+     * @updates s
+     */
+    StatementFrame(Statement s, boolean backward) {
+        this.s = s;
+        this.backward = backward;
+        this.kind = s.kind();
+        Condition c = null;
+        String name = null;
+        switch (this.kind) {
+            case BLOCK: {
+                this.length = s.lengthOfBlock();
+                this.parts = new Statement[this.length];
+                for (int i = this.length - 1; i >= 0; i--) {
+                    this.parts[i] = s.removeFromBlock(i);
+                }
+                break;
+            }
+            case IF: {
+                this.parts = new Statement[] { s.newInstance() };
+                this.length = 1;
+                c = s.disassembleIf(this.parts[0]);
+                break;
+            }
+            case IF_ELSE: {
+                this.parts = new Statement[] { s.newInstance(),
+                        s.newInstance() };
+                this.length = 2;
+                c = s.disassembleIfElse(this.parts[0], this.parts[1]);
+                break;
+            }
+            case WHILE: {
+                this.parts = new Statement[] { s.newInstance() };
+                this.length = 1;
+                c = s.disassembleWhile(this.parts[0]);
+                break;
+            }
+            default: {
+                this.parts = new Statement[0];
+                this.length = 0;
+                name = s.disassembleCall();
+                break;
+            }
+        }
+        this.condition = c;
+        this.call = name;
+    }
+
+    /*
+     * Package-private members ------------------------------------------------
+     */
+
+    /**
+     * Reports the kind of the statement.
+     *
+     * @return the kind of the statement
+     */
+    final Kind kind() {
+        return this.kind;
+    }
+
+    /**
+     * Reports the condition of the IF, IF_ELSE or WHILE statement.
+     *
+     * @return the condition
+     * @requires kind() is IF, IF_ELSE or WHILE
+     */
+    final Condition condition() {
+        return this.condition;
+    }
+
+    /**
+     * Reports the name of the instruction called by the CALL statement.
+     *
+     * @return the name of the instruction called
+     * @requires kind() = CALL
+     */
+    final String call() {
+        return this.call;
+    }
+
+    /**
+     * Reports the number of parts of the statement.
+     *
+     * @return the number of statements of a BLOCK, 1 for an IF or WHILE, 2
+     *         for an IF_ELSE, and 0 for a CALL
+     */
+    final int length() {
+        return this.length;
+    }
+
+    /**
+     * Reports the number of parts handed out so far.
+     *
+     * @return the number of parts handed out
+     */
+    final int position() {
+        return this.position;
+    }
+
+    /**
+     * Hands out the next part of the statement, or restores the statement if
+     * all its parts have been handed out.
+     *
+     * @return the next part, or null if there are no more parts
+     * @updates this
+     * @requires [the frames of the parts handed out have all been popped]
+     * @ensures <pre>
+     * if #position < length() then
+     *  next = [part #position of the statement]  and
+     *  position = #position + 1
+     * else
+     *  next = null  and  [the statement is restored]
+     * </pre>
+     */
+    final Statement next() {
+        Statement part = null;
+        if (this.position < this.length) {
+            if (this.backward && this.kind == Kind.BLOCK) {
+                part = this.parts[this.length - 1 - this.position];
+            } else {
+                part = this.parts[this.position];
+            }
+            this.position++;
+        } else {
+            switch (this.kind) {
+                case BLOCK: {
+                    for (int i = 0; i < this.length; i++) {
+                        this.s.addToBlock(i, this.parts[i]);
+                    }
+                    break;
+                }
+                case IF: {
+                    this.s.assembleIf(this.condition, this.parts[0]);
+                    break;
+                }
+                case IF_ELSE: {
+                    this.s.assembleIfElse(this.condition, this.parts[0],
+                            this.parts[1]);
+                    break;
+                }
+                case WHILE: {
+                    this.s.assembleWhile(this.condition, this.parts[0]);
+                    break;
+                }
+                default: {
+                    this.s.assembleCall(this.call);
+                    break;
+                }
+            }
+        }
+        return part;
+    }
+
+}
@@ -0,0 +1,80 @@
+import components.statement.StatementKernel.Condition;
+
+/**
+ * Visitor of the statements of a {@code CompactProgram}, told by
+ * {@code CompactProgram.walk} about every statement in the order they appear
+ * in the program text: where each IF, IF_ELSE and WHILE begins and ends, where
+ * the ELSE block of an IF_ELSE begins, and each CALL. BLOCKs are not reported;
+ * their statements are. Every method does nothing unless overridden.
+ *
+ * <p>
+ * A walk does not change the program, so any number of threads can walk the
+ * same program at once, each with a visitor of its own.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public interface StatementVisitor {
+
+    /**
+     * Visits the beginning of an IF or IF_ELSE statement, before its IF
+     * block.
+     *
+     * @param node
+     *            the node of the statement
+     * @param condition
+     *            the condition of the statement
+     */
+    default void beginIf(int node, Condition condition) {
+    }
+
+    /**
+     * Visits the ELSE of an IF_ELSE statement, between its two blocks.
+     *
+     * @param node
+     *            the node of the statement
+     */
+    default void beginElse(int node) {
+    }
+
+    /**
+     * Visits the end of an IF or IF_ELSE statement, after its last block.
+     *
+     * @param node
+     *            the node of the statement
+     */
+    default void endIf(int node) {
+    }
+
+    /**
+     * Visits the beginning of a WHILE statement, before its block.
+     *
+     * @param node
+     *            the node of the statement
+     * @param condition
+     *            the condition of the statement
+     */
+    default void beginWhile(int node, Condition condition) {
+    }
+
+    /**
+     * Visits the end of a WHILE statement, after its block.
+     *
+     * @param node
+     *            the node of the statement
+     */
+    default void endWhile(int node) {
+    }
+
+    /**
+     * Visits a CALL statement.
+     *
+     * @param node
+     *            the node of the statement
+     * @param call
+     *            the name of the instruction called
+     */
+    default void call(int node, String call) {
+    }
+
+}
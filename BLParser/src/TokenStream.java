@@ -0,0 +1,109 @@
+import components.statement.StatementKernel.Condition;
+
+/**
+ * A stream of BL tokens with a lookahead of one token: the parser looks at the
+ * {@code front} token to decide what to parse and {@code dequeue}s the tokens
+ * it consumes, as it does with a {@code Queue<String>} of tokens.
+ *
+ * <p>
+ * The front token is also classified once, when it is read: its
+ * {@code Kind}, the {@code Condition} it names if it is a condition, and the
+ * number of the identifier if it is one. Identifiers are interned: equal
+ * identifiers are the same {@code String} and have the same number, so the
+ * parser can dispatch with a {@code switch} and compare names as integers.
+ *
+ * @mathmodel type TokenStream is modeled by string of string of character
+ * @initially <pre>
+ * [this holds the remaining tokens of some input, followed by
+ *  <Tokenizer.END_OF_INPUT>]
+ * </pre>
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public interface TokenStream {
+
+    /**
+     * Kinds of BL tokens.
+     */
+    enum Kind {
+        PROGRAM, IS, BEGIN, END, INSTRUCTION, IF, THEN, ELSE, WHILE, DO,
+        CONDITION, IDENTIFIER, END_OF_INPUT, ERROR;
+    }
+
+    /**
+     * Reports the front of {@code this}.
+     *
+     * @return the front token of {@code this}
+     * @requires this /= <>
+     * @ensures <front> is prefix of this
+     */
+    String front();
+
+    /**
+     * Removes and returns the token at the front of {@code this}.
+     *
+     * @return the token removed
+     * @updates this
+     * @requires this /= <>
+     * @ensures #this = <dequeue> * this
+     */
+    String dequeue();
+
+    /**
+     * Reports the kind of the front of {@code this}.
+     *
+     * @return the kind of the front token
+     * @requires this /= <>
+     * @ensures <pre>
+     * frontKind = [the keyword front() is, if it is a keyword, or
+     *  CONDITION, IDENTIFIER, END_OF_INPUT or ERROR as front() is a condition,
+     *  an identifier, Tokenizer.END_OF_INPUT or none of those]
+     * </pre>
+     */
+    Kind frontKind();
+
+    /**
+     * Reports the condition named by the front of {@code this}.
+     *
+     * @return the condition named by the front token
+     * @requires this /= <>  and  frontKind() = CONDITION
+     * @ensures frontCondition = [Condition corresponding to front()]
+     */
+    Condition frontCondition();
+
+    /**
+     * Reports the number of the identifier at the front of {@code this}:
+     * identifiers are numbered 0, 1, 2, ... in the order they first occur in
+     * the stream.
+     *
+     * @return the number of the front identifier
+     * @requires this /= <>  and  frontKind() = IDENTIFIER
+     * @ensures <pre>
+     * frontIdentifier = [the number of distinct identifiers in the stream
+     *  before the first occurrence of front()]
+     * </pre>
+     */
+    int frontIdentifier();
+
+    /**
+     * Reports the line of the input where the front of {@code this} starts.
+     *
+     * @return the line of the front token (the first line is 1), or 0 if the
+     *         stream does not know where its tokens come from
+     * @requires this /= <>
+     * @ensures frontLine >= 0
+     */
+    int frontLine();
+
+    /**
+     * Reports the column of the input where the front of {@code this} starts.
+     *
+     * @return the column of the front token (the first column is 1), or 0 if
+     *         the stream does not know where its tokens come from
+     * @requires this /= <>
+     * @ensures frontColumn >= 0
+     */
+    int frontColumn();
+
+}
@@ -0,0 +1,359 @@
+import components.statement.StatementKernel.Condition;
+import components.utilities.Tokenizer;
+
+/**
+ * Table of the tokens of a BL token stream that are worth classifying once:
+ * the keywords, the conditions, {@code Tokenizer.END_OF_INPUT}, and every
+ * identifier seen so far, numbered in order of first occurrence.
+ *
+ * <p>
+ * Tokens are looked up by their characters, so a token already in the table
+ * is returned as the {@code String} in the table without allocating a new
+ * one. The table uses open addressing with linear probing and the hash of
+ * {@code String.hashCode}, so tokens given as {@code String}s are looked up
+ * with their cached hash.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+final class TokenTable {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Initial number of slots (a power of 2).
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Multiplier of the hash of {@code String.hashCode}.
+     */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /**
+     * Text of the token in each slot, or null for an empty slot.
+     */
+    private String[] texts;
+
+    /**
+     * Hash of the token in each slot.
+     */
+    private int[] hashes;
+
+    /**
+     * Kind of the token in each slot.
+     */
+    private TokenStream.Kind[] kinds;
+
+    /**
+     * Condition named by the token in each slot, or null.
+     */
+    private Condition[] conditions;
+
+    /**
+     * Number of the identifier in each slot, or -1.
+     */
+    private int[] identifiers;
+
+    /**
+     * Number of tokens in the table.
+     */
+    private int size;
+
+    /**
+     * Number of identifiers in the table.
+     */
+    private int identifierCount;
+
+    /**
+     * Reports whether the given characters are a sequence of letters, digits
+     * and '-' starting with a letter, which makes them an identifier unless
+     * they are a keyword or a condition.
+     *
+     * @param chars
+     *            the characters
+     * @param start
+     *            the position of the first character
+     * @param length
+     *            the number of characters
+     * @return true iff the characters have the form of an identifier
+     */
+    private static boolean hasIdentifierForm(CharSequence chars, int start,
+            int length) {
+        boolean result = length > 0 && isLetter(chars.charAt(start));
+        for (int i = start + 1; i < start + length && result; i++) {
+            char c = chars.charAt(i);
+            result = isLetter(c) || ('0' <= c && c <= '9') || c == '-';
+        }
+        return result;
+    }
+
+    /**
+     * Reports whether the given character is an ASCII letter.
+     *
+     * @param c
+     *            the character
+     * @return true iff c is an ASCII letter
+     */
+    private static boolean isLetter(char c) {
+        return ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z');
+    }
+
+    /**
+     * Returns the slot holding the token with the given characters and hash,
+     * or the empty slot where it belongs.
+     *
+     * @param chars
+     *            the characters of the token
+     * @param start
+     *            the position of the first character
+     * @param length
+     *            the number of characters
+     * @param hash
+     *            the hash of the token
+     * @return the slot of the token
+     */
+    private int slot(CharSequence chars, int start, int length, int hash) {
+        int mask = this.texts.length - 1;
+        int i = hash & mask;
+        boolean found = false;
+        while (this.texts[i] != null && !found) {
+            String text = this.texts[i];
+            found = this.hashes[i] == hash && text.length() == length;
+            for (int j = 0; j < length && found; j++) {
+                found = text.charAt(j) == chars.charAt(start + j);
+            }
+            if (!found) {
+                i = (i + 1) & mask;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Adds the given token to the table, in the given empty slot.
+     *
+     * @param i
+     *            the empty slot where the token belongs
+     * @param text
+     *            the token
+     * @param hash
+     *            the hash of the token
+     * @param kind
+     *            the kind of the token
+     * @param condition
+     *            the condition named by the token, or null
+     * @return the slot of the token
+     */
+    private int add(int i, String text, int hash, TokenStream.Kind kind,
+            Condition condition) {
+        int slot = i;
+        if (2 * (this.size + 1) > this.texts.length) {
+            this.resize();
+            slot = this.slot(text, 0, text.length(), hash);
+        }
+        this.texts[slot] = text;
+        this.hashes[slot] = hash;
+        this.kinds[slot] = kind;
+        this.conditions[slot] = condition;
+        this.identifiers[slot] = -1;
+        if (kind == TokenStream.Kind.IDENTIFIER) {
+            this.identifiers[slot] = this.identifierCount;
+            this.identifierCount++;
+        }
+        this.size++;
+        return slot;
+    }
+
+    /**
+     * Adds the given token to the table.
+     *
+     * @param text
+     *            the token
+     * @param kind
+     *            the kind of the token
+     * @param condition
+     *            the condition named by the token, or null
+     */
+    private void add(String text, TokenStream.Kind kind, Condition condition) {
+        int hash = text.hashCode();
+        this.add(this.slot(text, 0, text.length(), hash), text, hash, kind,
+                condition);
+    }
+
+    /**
+     * Doubles the number of slots.
+     */
+    private void resize() {
+        String[] oldTexts = this.texts;
+        int[] oldHashes = this.hashes;
+        TokenStream.Kind[] oldKinds = this.kinds;
+        Condition[] oldConditions = this.conditions;
+        int[] oldIdentifiers = this.identifiers;
+        this.allocate(2 * oldTexts.length);
+        for (int i = 0; i < oldTexts.length; i++) {
+            String text = oldTexts[i];
+            if (text != null) {
+                int slot = this.slot(text, 0, text.length(), oldHashes[i]);
+                this.texts[slot] = text;
+                this.hashes[slot] = oldHashes[i];
+                this.kinds[slot] = oldKinds[i];
+                this.conditions[slot] = oldConditions[i];
+                this.identifiers[slot] = oldIdentifiers[i];
+            }
+        }
+    }
+
+    /**
+     * Allocates the given number of empty slots.
+     *
+     * @param capacity
+     *            the number of slots (a power of 2)
+     */
+    private void allocate(int capacity) {
+        this.texts = new String[capacity];
+        this.hashes = new int[capacity];
+        this.kinds = new TokenStream.Kind[capacity];
+        this.conditions = new Condition[capacity];
+        this.identifiers = new int[capacity];
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor of a table holding the keywords, the conditions and
+     * {@code Tokenizer.END_OF_INPUT}.
+     */
+    TokenTable() {
+        this.allocate(INITIAL_CAPACITY);
+        for (TokenStream.Kind kind : TokenStream.Kind.values()) {
+            if (kind.compareTo(TokenStream.Kind.DO) <= 0) {
+                this.add(kind.name(), kind, null);
+            }
+        }
+        for (Condition c : Condition.values()) {
+            this.add(c.name().toLowerCase().replace('_', '-'),
+                    TokenStream.Kind.CONDITION, c);
+        }
+        this.add(Tokenizer.END_OF_INPUT, TokenStream.Kind.END_OF_INPUT, null);
+    }
+
+    /*
+     * Package-private members ------------------------------------------------
+     */
+
+    /**
+     * No slot: the token is neither in the table nor an identifier.
+     */
+    static final int NONE = -1;
+
+    /**
+     * Returns the slot of the token with the given characters, adding it if
+     * it is an identifier not seen before.
+     *
+     * @param chars
+     *            the characters
+     * @param start
+     *            the position of the first character
+     * @param length
+     *            the number of characters
+     * @return the slot of the token, or NONE if it is not a keyword, a
+     *         condition, {@code Tokenizer.END_OF_INPUT} or an identifier
+     * @updates this
+     */
+    int find(CharSequence chars, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = HASH_MULTIPLIER * hash + chars.charAt(i);
+        }
+        int slot = this.slot(chars, start, length, hash);
+        if (this.texts[slot] == null) {
+            if (hasIdentifierForm(chars, start, length)) {
+                slot = this.add(slot,
+                        chars.subSequence(start, start + length).toString(),
+                        hash, TokenStream.Kind.IDENTIFIER, null);
+            } else {
+                slot = NONE;
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the slot of the given token, adding it if it is an identifier
+     * not seen before.
+     *
+     * @param token
+     *            the token
+     * @return the slot of the token, or NONE if it is not a keyword, a
+     *         condition, {@code Tokenizer.END_OF_INPUT} or an identifier
+     * @updates this
+     */
+    int find(String token) {
+        int hash = token.hashCode();
+        int slot = this.slot(token, 0, token.length(), hash);
+        if (this.texts[slot] == null) {
+            if (hasIdentifierForm(token, 0, token.length())) {
+                slot = this.add(slot, token, hash,
+                        TokenStream.Kind.IDENTIFIER, null);
+            } else {
+                slot = NONE;
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the token in the given slot.
+     *
+     * @param slot
+     *            the slot
+     * @return the token
+     * @requires [slot was returned by the latest find]  and  slot /= NONE
+     */
+    String text(int slot) {
+        return this.texts[slot];
+    }
+
+    /**
+     * Returns the kind of the token in the given slot.
+     *
+     * @param slot
+     *            the slot
+     * @return the kind of the token
+     * @requires [slot was returned by the latest find]  and  slot /= NONE
+     */
+    TokenStream.Kind kind(int slot) {
+        return this.kinds[slot];
+    }
+
+    /**
+     * Returns the condition named by the token in the given slot.
+     *
+     * @param slot
+     *            the slot
+     * @return the condition, or null if the token is not a condition
+     * @requires [slot was returned by the latest find]  and  slot /= NONE
+     */
+    Condition condition(int slot) {
+        return this.conditions[slot];
+    }
+
+    /**
+     * Returns the number of the identifier in the given slot.
+     *
+     * @param slot
+     *            the slot
+     * @return the number of the identifier, or -1 if the token is not an
+     *         identifier
+     * @requires [slot was returned by the latest find]  and  slot /= NONE
+     */
+    int identifier(int slot) {
+        return this.identifiers[slot];
+    }
+
+}
@@ -0,0 +1,296 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import components.program.Program;
+import components.program.Program1;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.statement.StatementKernel.Condition;
+import components.statement.StatementKernel.Kind;
+
+/**
+ * JUnit test fixture for {@code CompactProgram}.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class CompactProgramTest {
+
+    /**
+     * Returns the program read from the given file.
+     *
+     * @param p
+     *            the program to read into
+     * @param fileName
+     *            the name of the file
+     * @return p
+     */
+    private static Program load(Program p, String fileName) {
+        SimpleReader file = new SimpleReader1L(fileName);
+        p.parse(file);
+        file.close();
+        return p;
+    }
+
+    /**
+     * Visitor recording the statements it visits, one word per event.
+     */
+    private static final class Recorder implements StatementVisitor {
+
+        /**
+         * The events visited so far.
+         */
+        private final StringBuilder events = new StringBuilder();
+
+        @Override
+        public void beginIf(int node, Condition condition) {
+            this.events.append("IF(" + condition + ") ");
+        }
+
+        @Override
+        public void beginElse(int node) {
+            this.events.append("ELSE ");
+        }
+
+        @Override
+        public void endIf(int node) {
+            this.events.append("ENDIF ");
+        }
+
+        @Override
+        public void beginWhile(int node, Condition condition) {
+            this.events.append("WHILE(" + condition + ") ");
+        }
+
+        @Override
+        public void endWhile(int node) {
+            this.events.append("ENDWHILE ");
+        }
+
+        @Override
+        public void call(int node, String call) {
+            this.events.append(call + " ");
+        }
+
+        @Override
+        public String toString() {
+            return this.events.toString();
+        }
+
+    }
+
+    /**
+     * Returns the events of a walk of the statement {@code node} of {@code c}.
+     *
+     * @param c
+     *            the program
+     * @param node
+     *            the node of the statement
+     * @return the events visited
+     */
+    private static String walk(CompactProgram c, int node) {
+        Recorder r = new Recorder();
+        c.walk(node, r);
+        return r.toString();
+    }
+
+    /**
+     * Checks that the statement {@code na} of {@code a} and the statement
+     * {@code nb} of {@code b} are equal.
+     *
+     * @param a
+     *            the first program
+     * @param na
+     *            the node of the first statement
+     * @param b
+     *            the second program
+     * @param nb
+     *            the node of the second statement
+     */
+    private static void assertSameStatement(CompactProgram a, int na,
+            CompactProgram b, int nb) {
+        assertEquals(a.kind(na), b.kind(nb));
+        assertEquals(a.length(na), b.length(nb));
+        if (a.kind(na) == Kind.CALL) {
+            assertEquals(a.call(na), b.call(nb));
+        } else if (a.kind(na) != Kind.BLOCK) {
+            assertEquals(a.condition(na), b.condition(nb));
+        }
+        for (int i = 0; i < a.length(na); i++) {
+            assertSameStatement(a, a.child(na, i), b, b.child(nb, i));
+        }
+    }
+
+    /**
+     * Test of of on a program with instructions, leaving the program as it
+     * was.
+     */
+    @Test
+    public void testOf() {
+        Program p = load(new Program1Parse1(), "test/program1.bl");
+        CompactProgram c = CompactProgram.of(p);
+        assertEquals(load(new Program1(), "test/program1.bl"), p);
+        assertEquals("Test", c.name());
+        assertEquals(2, c.instructionCount());
+        assertEquals("one", c.instructionName(0));
+        assertEquals("two", c.instructionName(1));
+        int one = c.instructionBody(0);
+        assertEquals(Kind.BLOCK, c.kind(one));
+        assertEquals(2, c.length(one));
+        assertEquals("move", c.call(c.child(one, 0)));
+        assertEquals(-1, c.calledInstruction(c.child(one, 0)));
+        int body = c.body();
+        assertEquals(Kind.BLOCK, c.kind(body));
+        assertEquals(2, c.length(body));
+        assertEquals("infect", c.call(c.child(body, 0)));
+        int loop = c.child(body, 1);
+        assertEquals(Kind.WHILE, c.kind(loop));
+        assertEquals(Condition.TRUE, c.condition(loop));
+        int block = c.child(loop, 0);
+        assertEquals(4, c.length(block));
+        int first = c.child(block, 0);
+        int last = c.child(block, 2);
+        assertEquals(1, c.calledInstruction(first));
+        assertSame(c.call(first), c.call(last));
+        assertEquals(0, c.calledInstruction(c.child(block, 3)));
+        int test = c.child(block, 1);
+        assertEquals(Kind.IF, c.kind(test));
+        assertEquals(Condition.NEXT_IS_EMPTY, c.condition(test));
+    }
+
+    /**
+     * Test of parseCompact, giving the same statements as of.
+     */
+    @Test
+    public void testParseCompact() {
+        CompactProgram expected = CompactProgram
+                .of(load(new Program1Parse1(), "test/program1.bl"));
+        SimpleReader file = new SimpleReader1L("test/program1.bl");
+        CompactProgram c = Program1Parse1
+                .parseCompact(new ReaderTokenStream(file));
+        file.close();
+        assertEquals(expected.nodeCount(), c.nodeCount());
+        assertSameStatement(expected, expected.body(), c, c.body());
+        for (int i = 0; i < c.instructionCount(); i++) {
+            assertEquals(expected.instructionName(i), c.instructionName(i));
+            assertSameStatement(expected, expected.instructionBody(i), c,
+                    c.instructionBody(i));
+        }
+    }
+
+    /**
+     * Test of parseCompact on a program with an empty body.
+     */
+    @Test
+    public void testParseCompactEmpty() {
+        CompactProgram c = Program1Parse1.parseCompact(new ReaderTokenStream(
+                new StringReader("PROGRAM Empty IS BEGIN END Empty")));
+        assertEquals("Empty", c.name());
+        assertEquals(0, c.instructionCount());
+        assertEquals(1, c.nodeCount());
+        assertEquals(Kind.BLOCK, c.kind(c.body()));
+        assertEquals(0, c.length(c.body()));
+    }
+
+    /**
+     * Test of parseCompact on IF statements nested 100000 deep, with an
+     * IF_ELSE innermost.
+     */
+    @Test
+    public void testParseCompactDeeplyNested() {
+        final int depth = 100_000;
+        StringBuilder text = new StringBuilder("PROGRAM P IS BEGIN\n");
+        for (int d = 0; d < depth; d++) {
+            text.append("IF random THEN\n");
+        }
+        text.append("IF next-is-wall THEN turnleft ELSE move END IF\n");
+        for (int d = 0; d < depth; d++) {
+            text.append("END IF\n");
+        }
+        text.append("END P\n");
+        CompactProgram c = Program1Parse1.parseCompact(new ReaderTokenStream(
+                new StringReader(text.toString())));
+        /*
+         * A BLOCK and an IF per level, and a BLOCK, an IF_ELSE, two BLOCKs
+         * and two CALLs innermost
+         */
+        assertEquals(2 * depth + 6, c.nodeCount());
+        int node = c.body();
+        for (int d = 0; d < depth; d++) {
+            node = c.child(node, 0);
+            assertEquals(Kind.IF, c.kind(node));
+            node = c.child(node, 0);
+        }
+        node = c.child(node, 0);
+        assertEquals(Kind.IF_ELSE, c.kind(node));
+        assertEquals("turnleft", c.call(c.child(c.child(node, 0), 0)));
+        assertEquals("move", c.call(c.child(c.child(node, 1), 0)));
+    }
+
+    /**
+     * Test of walk on a program with every kind of statement.
+     */
+    @Test
+    public void testWalk() {
+        CompactProgram c = Program1Parse1.parseCompact(new ReaderTokenStream(
+                new StringReader("PROGRAM P IS INSTRUCTION two IS move move"
+                        + " END two BEGIN WHILE true DO IF next-is-wall"
+                        + " THEN turnleft ELSE two END IF IF random THEN"
+                        + " skip END IF END WHILE infect END P")));
+        assertEquals("WHILE(TRUE) IF(NEXT_IS_WALL) turnleft ELSE two ENDIF "
+                + "IF(RANDOM) skip ENDIF ENDWHILE infect ", walk(c, c.body()));
+        assertEquals("move move ", walk(c, c.instructionBody(0)));
+    }
+
+    /**
+     * Test of walk on an empty block.
+     */
+    @Test
+    public void testWalkEmpty() {
+        CompactProgram c = Program1Parse1.parseCompact(new ReaderTokenStream(
+                new StringReader("PROGRAM Empty IS BEGIN END Empty")));
+        assertEquals("", walk(c, c.body()));
+    }
+
+    /**
+     * Test of walk by several threads at once on the same program, each
+     * seeing the same statements as a walk alone.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the walks
+     * @throws ExecutionException
+     *             if a walk fails
+     */
+    @Test
+    public void testWalkConcurrently()
+            throws InterruptedException, ExecutionException {
+        final int threads = 8;
+        final int walks = 4 * threads;
+        CompactProgram c = CompactProgram
+                .of(load(new Program1Parse1(), "test/program1.bl"));
+        String expected = walk(c, c.body());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < walks; i++) {
+                results.add(pool.submit(() -> walk(c, c.body())));
+            }
+            for (Future<String> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
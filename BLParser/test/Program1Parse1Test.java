@@ -1,5 +1,20 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import components.map.Map;
 import components.program.Program;
 import components.program.Program1;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.statement.Statement;
 
 /**
  * Customized JUnit test fixture for {@code Program1Parse1}.
@@ -16,4 +31,357 @@ public class Program1Parse1Test extends ProgramTest {
         return new Program1();
     }
 
+    /**
+     * Test of parse from a {@code SimpleReader}, streaming the tokens.
+     */
+    @Test
+    public final void testParseStreamingFromFile() {
+        Program pRef = this.constructorRef();
+        SimpleReader file = new SimpleReader1L("test/program3.bl");
+        pRef.parse(file);
+        file.close();
+        Program pTest = this.constructorTest();
+        file = new SimpleReader1L("test/program3.bl");
+        pTest.parse(file);
+        file.close();
+        assertEquals(pRef, pTest);
+    }
+
+    /**
+     * Test of parse from a {@code TokenStream} over a {@code Reader}.
+     */
+    @Test
+    public final void testParseTokenStream() {
+        Program pRef = this.constructorRef();
+        SimpleReader file = new SimpleReader1L("test/program1.bl");
+        pRef.parse(file);
+        file.close();
+        Program1Parse1 pTest = new Program1Parse1();
+        pTest.parse(new ReaderTokenStream(new StringReader(
+                "PROGRAM Test IS INSTRUCTION one IS move turnleft END one "
+                        + "INSTRUCTION two IS one IF next-is-not-empty THEN "
+                        + "turnleft ELSE one one END IF END two BEGIN infect "
+                        + "WHILE true DO two IF next-is-empty THEN move "
+                        + "END IF two one END WHILE END Test")));
+        assertEquals(pRef, pTest);
+    }
+
+    /**
+     * Test of parse from a {@code SimpleReader} on syntactically invalid
+     * input.
+     */
+    @Test(expected = RuntimeException.class)
+    public final void testParseStreamingError() {
+        Program pTest = this.constructorTest();
+        SimpleReader file = new SimpleReader1L("test/program2.bl");
+        pTest.parse(file);
+    }
+
+    /**
+     * Parses the given file collecting diagnostics.
+     *
+     * @param p
+     *            the parsed program
+     * @param fileName
+     *            the name of the file
+     * @return the diagnostics
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static ParseResult parseFile(Program1Parse1 p, String fileName)
+            throws IOException {
+        Reader file = new FileReader(fileName);
+        ParseResult result = p.parseWithDiagnostics(new ReaderTokenStream(file));
+        file.close();
+        return result;
+    }
+
+    /**
+     * Test of parseWithDiagnostics on a valid program.
+     *
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    @Test
+    public final void testParseWithDiagnosticsValid() throws IOException {
+        Program pRef = this.constructorRef();
+        SimpleReader file = new SimpleReader1L("test/program1.bl");
+        pRef.parse(file);
+        file.close();
+        Program1Parse1 pTest = new Program1Parse1();
+        ParseResult result = parseFile(pTest, "test/program1.bl");
+        assertTrue(result.isValid());
+        assertEquals(0, result.errorCount());
+        assertEquals(pRef, pTest);
+    }
+
+    /**
+     * Test of parseWithDiagnostics on an invalid condition.
+     *
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    @Test
+    public final void testParseWithDiagnosticsCondition() throws IOException {
+        ParseResult result = parseFile(new Program1Parse1(),
+                "test/program4.bl");
+        assertFalse(result.isValid());
+        assertEquals(1, result.errorCount());
+        assertEquals(12, result.diagnostic(0).line());
+        assertEquals(8, result.diagnostic(0).column());
+        assertEquals("12:8: Not a right name of a condition after IF",
+                result.diagnostic(0).toString());
+    }
+
+    /**
+     * Test of parseWithDiagnostics resuming after an instruction in the body
+     * of the program.
+     *
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    @Test
+    public final void testParseWithDiagnosticsInstructionInBody()
+            throws IOException {
+        Program1Parse1 pTest = new Program1Parse1();
+        ParseResult result = parseFile(pTest, "test/program5.bl");
+        final String[] expected = {
+                "9:3: INSTRUCTION is not allowed after BEGIN",
+                "8:1: The program calls undefined instruction three",
+                "8:1: The program calls undefined instruction two" };
+        assertEquals(expected.length, result.errorCount());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], result.diagnostic(i).toString());
+        }
+        assertEquals("Test", pTest.name());
+        Statement body = pTest.newBody();
+        pTest.swapBody(body);
+        assertEquals(2, body.lengthOfBlock());
+
+        result = parseFile(pTest, "test/program6.bl");
+        assertEquals(expected.length + 1, result.errorCount());
+        assertEquals("END is not found", result.diagnostic(1).message());
+    }
+
+    /**
+     * Test of parseWithDiagnostics collecting several errors, resuming at
+     * END, ELSE and INSTRUCTION.
+     */
+    @Test
+    public final void testParseWithDiagnosticsSeveralErrors() {
+        Program1Parse1 pTest = new Program1Parse1();
+        ParseResult result = pTest.parseWithDiagnostics(new ReaderTokenStream(
+                new StringReader("PROGRAM P IS\n"
+                        + "INSTRUCTION a IS\n"
+                        + "  IF foo THEN move END IF\n"
+                        + "  move ELSE turnleft\n"
+                        + "END a\n"
+                        + "INSTRUCTION b IS\n"
+                        + "  WHILE true DO 7x END IF\n"
+                        + "  IF true THEN move\n"
+                        + "INSTRUCTION a IS move END a\n"
+                        + "BEGIN\n"
+                        + "  a b\n"
+                        + "END P\n")));
+        final String[] expected = {
+                "3:6: Not a right name of a condition after IF",
+                "4:8: ELSE without IF", "7:17: Not a statement: 7x",
+                "7:24: WHILE at the end is not found",
+                "9:1: END is not found",
+                "9:1: Instruction is already determined" };
+        assertEquals(expected.length, result.errorCount());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], result.diagnostic(i).toString());
+        }
+        assertEquals("P", pTest.name());
+    }
+
+    /**
+     * Test of parseWithDiagnostics on truncated input, reporting the missing
+     * ENDs once.
+     */
+    @Test
+    public final void testParseWithDiagnosticsTruncated() {
+        ParseResult result = new Program1Parse1().parseWithDiagnostics(
+                new ReaderTokenStream(new StringReader("PROGRAM P IS\nBEGIN\n"
+                        + "  WHILE true DO\n    IF random THEN\n      move\n")));
+        assertEquals(1, result.errorCount());
+        assertEquals("6:1: END is not found", result.diagnostic(0).toString());
+    }
+
+    /**
+     * Test of parseWithDiagnostics on calls to undefined instructions.
+     */
+    @Test
+    public final void testParseWithDiagnosticsUndefinedCalls() {
+        ParseResult result = new Program1Parse1().parseWithDiagnostics(
+                new ReaderTokenStream(new StringReader("PROGRAM P IS\n"
+                        + "  INSTRUCTION a IS b move c b END a\n"
+                        + "  INSTRUCTION b IS skip END b\n"
+                        + "BEGIN a d END P")));
+        assertEquals(2, result.errorCount());
+        assertEquals("2:3: Instruction a calls undefined instruction c",
+                result.diagnostic(0).toString());
+        assertEquals("4:1: The program calls undefined instruction d",
+                result.diagnostic(1).toString());
+    }
+
+    /**
+     * Test of parseWithDiagnostics on direct and indirect recursion.
+     */
+    @Test
+    public final void testParseWithDiagnosticsRecursion() {
+        ParseResult result = new Program1Parse1().parseWithDiagnostics(
+                new ReaderTokenStream(new StringReader("PROGRAM P IS\n"
+                        + "  INSTRUCTION a IS b END a\n"
+                        + "  INSTRUCTION b IS IF random THEN c END IF END b\n"
+                        + "  INSTRUCTION c IS WHILE true DO a END WHILE END c\n"
+                        + "  INSTRUCTION d IS move d END d\n"
+                        + "BEGIN a d END P")));
+        assertEquals(2, result.errorCount());
+        assertEquals("2:3: Instruction a is recursive: a -> b -> c -> a",
+                result.diagnostic(0).toString());
+        assertEquals("5:3: Instruction d is recursive: d -> d",
+                result.diagnostic(1).toString());
+    }
+
+    /**
+     * Test of parseWithDiagnostics on instructions never called, which call
+     * undefined instructions or are recursive.
+     */
+    @Test
+    public final void testParseWithDiagnosticsUncalledInstructions() {
+        ParseResult result = new Program1Parse1().parseWithDiagnostics(
+                new ReaderTokenStream(new StringReader("PROGRAM P IS\n"
+                        + "  INSTRUCTION a IS move c END a\n"
+                        + "  INSTRUCTION b IS skip END b\n"
+                        + "  INSTRUCTION d IS b e END d\n"
+                        + "  INSTRUCTION e IS d END e\n"
+                        + "BEGIN b f END P")));
+        assertEquals(1, result.errorCount());
+        assertEquals("6:1: The program calls undefined instruction f",
+                result.diagnostic(0).toString());
+    }
+
+    /**
+     * Test of parse on instructions never called, which call undefined
+     * instructions or are recursive.
+     */
+    @Test
+    public final void testParseUncalledInstructions() {
+        Program1Parse1 pTest = new Program1Parse1();
+        pTest.parse(new ReaderTokenStream(new StringReader("PROGRAM P IS"
+                + " INSTRUCTION a IS a undefined END a"
+                + " INSTRUCTION b IS turnleft END b BEGIN b END P")));
+        Map<String, Statement> context = pTest.newContext();
+        pTest.swapContext(context);
+        assertEquals(2, context.size());
+        assertTrue(context.hasKey("a"));
+    }
+
+    /**
+     * Test of parseWithDiagnostics on the redefinition of a primitive
+     * instruction.
+     */
+    @Test
+    public final void testParseWithDiagnosticsPrimitiveName() {
+        ParseResult result = new Program1Parse1().parseWithDiagnostics(
+                new ReaderTokenStream(new StringReader(
+                        "PROGRAM P IS INSTRUCTION move IS skip END move "
+                                + "BEGIN move END P")));
+        assertEquals(1, result.errorCount());
+        assertEquals("1:14: Primitive instruction cannot be redefined: move",
+                result.diagnostic(0).toString());
+    }
+
+    /**
+     * Test of parse on a recursive program.
+     */
+    @Test(expected = RuntimeException.class)
+    public final void testParseRecursionError() {
+        new Program1Parse1().parse(new ReaderTokenStream(new StringReader(
+                "PROGRAM P IS INSTRUCTION a IS a END a BEGIN a END P")));
+    }
+
+    /**
+     * Test of parse on a call to an undefined instruction.
+     */
+    @Test(expected = RuntimeException.class)
+    public final void testParseUndefinedCallError() {
+        new Program1Parse1().parse(new ReaderTokenStream(
+                new StringReader("PROGRAM P IS BEGIN a END P")));
+    }
+
+    /**
+     * Test of parse on many instructions, each calling the one defined after
+     * it.
+     */
+    @Test
+    public final void testParseManyInstructions() {
+        final int count = 20000;
+        StringBuilder text = new StringBuilder("PROGRAM P IS\n");
+        for (int i = 0; i < count; i++) {
+            text.append("INSTRUCTION i").append(i).append(" IS move");
+            if (i + 1 < count) {
+                text.append(" i").append(i + 1);
+            }
+            text.append(" END i").append(i).append('\n');
+        }
+        text.append("BEGIN i0 END P\n");
+        Program1Parse1 pTest = new Program1Parse1();
+        ParseResult result = pTest.parseWithDiagnostics(
+                new ReaderTokenStream(new StringReader(text.toString())));
+        assertTrue(result.isValid());
+        Map<String, Statement> ctxt = pTest.newContext();
+        pTest.swapContext(ctxt);
+        assertEquals(count, ctxt.size());
+    }
+
+    /**
+     * Test of parse on a body nesting IF, IF_ELSE and WHILE statements
+     * 100000 deep, with a call to an undefined instruction innermost.
+     */
+    @Test
+    public final void testParseDeeplyNested() {
+        final int depth = 100_000;
+        final String[] open = { "IF next-is-empty THEN", "WHILE true DO",
+            "IF random THEN move ELSE" };
+        final String[] close = { "END IF", "END WHILE", "END IF" };
+        StringBuilder text = new StringBuilder("PROGRAM P IS BEGIN\n");
+        for (int d = 0; d < depth; d++) {
+            text.append(open[d % open.length]).append('\n');
+        }
+        text.append("jump\n");
+        for (int d = depth - 1; d >= 0; d--) {
+            text.append(close[d % close.length]).append('\n');
+        }
+        text.append("END P\n");
+        Program1Parse1 pTest = new Program1Parse1();
+        ParseResult result = pTest.parseWithDiagnostics(
+                new ReaderTokenStream(new StringReader(text.toString())));
+        assertEquals(1, result.errorCount());
+        assertEquals("1:14: The program calls undefined instruction jump",
+                result.diagnostic(0).toString());
+        Statement s = pTest.newBody();
+        pTest.swapBody(s);
+        final Statement.Kind[] kinds = { Statement.Kind.IF,
+            Statement.Kind.WHILE, Statement.Kind.IF_ELSE };
+        for (int d = 0; d < depth; d++) {
+            assertEquals(1, s.lengthOfBlock());
+            Statement child = s.removeFromBlock(0);
+            assertEquals(kinds[d % kinds.length], child.kind());
+            Statement block = child.newInstance();
+            if (child.kind() == Statement.Kind.IF) {
+                child.disassembleIf(block);
+            } else if (child.kind() == Statement.Kind.WHILE) {
+                child.disassembleWhile(block);
+            } else {
+                child.disassembleIfElse(child.newInstance(), block);
+            }
+            s = block;
+        }
+        assertEquals(1, s.lengthOfBlock());
+        assertEquals("jump", s.removeFromBlock(0).disassembleCall());
+    }
+
 }
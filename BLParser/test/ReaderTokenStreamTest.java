@@ -0,0 +1,241 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import components.queue.Queue;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.statement.StatementKernel.Condition;
+import components.utilities.Tokenizer;
+
+/**
+ * JUnit test fixture for {@code ReaderTokenStream}.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class ReaderTokenStreamTest {
+
+    /**
+     * The names of files containing BL programs and statements.
+     */
+    private static final String[] FILE_NAMES = { "test/program1.bl",
+            "test/program2.bl", "test/program3.bl", "test/program4.bl",
+            "test/program5.bl", "test/program6.bl", "test/statement1.bl",
+            "test/statement5.bl", "test/statement7.bl" };
+
+    /**
+     * Checks that {@code stream} holds exactly the tokens of the given file
+     * as produced by {@code Tokenizer.tokens}, followed by any number of
+     * {@code Tokenizer.END_OF_INPUT}.
+     *
+     * @param fileName
+     *            the name of the file
+     * @param stream
+     *            the stream of tokens of the file
+     */
+    private static void checkTokens(String fileName, TokenStream stream) {
+        SimpleReader file = new SimpleReader1L(fileName);
+        Queue<String> tokens = Tokenizer.tokens(file);
+        file.close();
+        for (String token : tokens) {
+            assertEquals(token, stream.front());
+            assertEquals(token, stream.dequeue());
+        }
+        assertEquals(Tokenizer.END_OF_INPUT, stream.dequeue());
+    }
+
+    @Test
+    public void testSimpleReaderMatchesTokenizer() {
+        for (String fileName : FILE_NAMES) {
+            SimpleReader file = new SimpleReader1L(fileName);
+            checkTokens(fileName, new ReaderTokenStream(file));
+            file.close();
+        }
+    }
+
+    @Test
+    public void testReaderMatchesTokenizer() throws IOException {
+        for (String fileName : FILE_NAMES) {
+            Reader file = new FileReader(fileName);
+            checkTokens(fileName, new ReaderTokenStream(file));
+            file.close();
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        TokenStream stream = new ReaderTokenStream(new StringReader(" \n\t "));
+        assertEquals(Tokenizer.END_OF_INPUT, stream.front());
+        assertEquals(Tokenizer.END_OF_INPUT, stream.dequeue());
+        assertEquals(Tokenizer.END_OF_INPUT, stream.dequeue());
+    }
+
+    @Test
+    public void testFrontDoesNotConsume() {
+        TokenStream stream = new ReaderTokenStream(
+                new StringReader("IF  next-is-wall\nTHEN"));
+        assertEquals("IF", stream.front());
+        assertEquals("IF", stream.front());
+        assertEquals("IF", stream.dequeue());
+        assertEquals("next-is-wall", stream.dequeue());
+        assertEquals("THEN", stream.front());
+        assertEquals("THEN", stream.dequeue());
+        assertEquals(Tokenizer.END_OF_INPUT, stream.front());
+    }
+
+    @Test
+    public void testTokensAcrossBuffers() {
+        StringBuilder text = new StringBuilder();
+        StringBuilder longName = new StringBuilder("a");
+        final int longLength = 20000;
+        while (longName.length() < longLength) {
+            longName.append("b-");
+        }
+        final int count = 5000;
+        for (int i = 0; i < count; i++) {
+            text.append("move").append(i).append(' ');
+        }
+        text.append(longName).append("\nskip");
+        TokenStream stream = new ReaderTokenStream(
+                new StringReader(text.toString()));
+        for (int i = 0; i < count; i++) {
+            assertEquals("move" + i, stream.dequeue());
+        }
+        assertEquals(longName.toString(), stream.dequeue());
+        assertEquals("skip", stream.dequeue());
+        assertEquals(Tokenizer.END_OF_INPUT, stream.dequeue());
+    }
+
+    @Test
+    public void testKinds() {
+        TokenStream stream = new ReaderTokenStream(new StringReader(
+                "PROGRAM IS BEGIN END INSTRUCTION IF THEN ELSE WHILE DO "
+                        + "next-is-not-wall move 1move ### x_y"));
+        TokenStream.Kind[] kinds = TokenStream.Kind.values();
+        for (int i = 0; i <= TokenStream.Kind.DO.ordinal(); i++) {
+            assertEquals(kinds[i], stream.frontKind());
+            assertEquals(kinds[i].name(), stream.dequeue());
+        }
+        assertEquals(TokenStream.Kind.CONDITION, stream.frontKind());
+        assertEquals(Condition.NEXT_IS_NOT_WALL, stream.frontCondition());
+        stream.dequeue();
+        assertEquals(TokenStream.Kind.IDENTIFIER, stream.frontKind());
+        stream.dequeue();
+        assertEquals(TokenStream.Kind.ERROR, stream.frontKind());
+        assertEquals("1move", stream.dequeue());
+        assertEquals(TokenStream.Kind.ERROR, stream.frontKind());
+        assertEquals("###", stream.dequeue());
+        assertEquals(TokenStream.Kind.ERROR, stream.frontKind());
+        assertEquals("x_y", stream.dequeue());
+        assertEquals(TokenStream.Kind.END_OF_INPUT, stream.frontKind());
+    }
+
+    @Test
+    public void testConditions() {
+        StringBuilder text = new StringBuilder();
+        for (Condition c : Condition.values()) {
+            text.append(c.name().toLowerCase().replace('_', '-')).append(' ');
+        }
+        TokenStream stream = new ReaderTokenStream(
+                new StringReader(text.toString()));
+        for (Condition c : Condition.values()) {
+            assertEquals(TokenStream.Kind.CONDITION, stream.frontKind());
+            assertEquals(c, stream.frontCondition());
+            stream.dequeue();
+        }
+    }
+
+    @Test
+    public void testIdentifiersAreInterned() {
+        TokenStream stream = new ReaderTokenStream(
+                new StringReader("move turnleft move step-2 turnleft"));
+        assertEquals(0, stream.frontIdentifier());
+        String move = stream.dequeue();
+        assertEquals(1, stream.frontIdentifier());
+        String turnleft = stream.dequeue();
+        assertEquals(0, stream.frontIdentifier());
+        assertSame(move, stream.dequeue());
+        assertEquals(2, stream.frontIdentifier());
+        assertEquals("step-2", stream.dequeue());
+        assertEquals(1, stream.frontIdentifier());
+        assertSame(turnleft, stream.dequeue());
+    }
+
+    @Test
+    public void testManyIdentifiers() {
+        final int count = 10000;
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append("instr").append(i).append(' ');
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            text.append("instr").append(i).append(' ');
+        }
+        TokenStream stream = new ReaderTokenStream(
+                new StringReader(text.toString()));
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, stream.frontIdentifier());
+            stream.dequeue();
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            assertEquals(i, stream.frontIdentifier());
+            assertEquals("instr" + i, stream.dequeue());
+        }
+    }
+
+    @Test
+    public void testQueueStreamKinds() {
+        SimpleReader file = new SimpleReader1L("test/program1.bl");
+        Queue<String> tokens = Tokenizer.tokens(file);
+        file.close();
+        file = new SimpleReader1L("test/program1.bl");
+        TokenStream expected = new ReaderTokenStream(file);
+        TokenStream stream = new QueueTokenStream(tokens);
+        while (expected.frontKind() != TokenStream.Kind.END_OF_INPUT) {
+            assertEquals(expected.frontKind(), stream.frontKind());
+            if (expected.frontKind() == TokenStream.Kind.IDENTIFIER) {
+                assertEquals(expected.frontIdentifier(),
+                        stream.frontIdentifier());
+            }
+            assertEquals(expected.dequeue(), stream.dequeue());
+        }
+        file.close();
+        assertEquals(TokenStream.Kind.END_OF_INPUT, stream.frontKind());
+    }
+
+    @Test
+    public void testPositions() {
+        TokenStream stream = new ReaderTokenStream(
+                new StringReader("PROGRAM Test IS\n\n  BEGIN\tmove\nEND"));
+        final int[][] positions = { { 1, 1 }, { 1, 9 }, { 1, 14 }, { 3, 3 },
+                { 3, 9 }, { 4, 1 }, { 4, 4 } };
+        for (int[] position : positions) {
+            assertEquals(position[0], stream.frontLine());
+            assertEquals(position[1], stream.frontColumn());
+            stream.dequeue();
+        }
+        assertEquals(Tokenizer.END_OF_INPUT, stream.front());
+    }
+
+    @Test
+    public void testPositionsFromSimpleReader() {
+        SimpleReader file = new SimpleReader1L("test/program1.bl");
+        TokenStream stream = new ReaderTokenStream(file);
+        assertEquals(1, stream.frontLine());
+        assertEquals(1, stream.frontColumn());
+        while (!stream.front().equals("INSTRUCTION")) {
+            stream.dequeue();
+        }
+        assertEquals(3, stream.frontLine());
+        assertEquals(3, stream.frontColumn());
+        file.close();
+    }
+
+}
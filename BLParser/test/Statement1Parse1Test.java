@@ -1,5 +1,14 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
 import components.statement.Statement;
 import components.statement.Statement1;
+import components.utilities.Tokenizer;
 
 /**
  * Customized JUnit test fixture for {@code Statement1Parse1}.
@@ -16,4 +25,42 @@ public class Statement1Parse1Test extends StatementTest {
         return new Statement1();
     }
 
+    /**
+     * Test of parseBlock from a {@code TokenStream}.
+     */
+    @Test
+    public final void testParseBlockTokenStream() {
+        Statement sRef = this.constructorRef();
+        SimpleReader file = new SimpleReader1L("test/statement3.bl");
+        Queue<String> tokens = Tokenizer.tokens(file);
+        file.close();
+        sRef.parseBlock(tokens);
+        Statement1Parse1 sTest = new Statement1Parse1();
+        file = new SimpleReader1L("test/statement3.bl");
+        sTest.parseBlock(new ReaderTokenStream(file));
+        file.close();
+        assertEquals(sRef, sTest);
+    }
+
+    /**
+     * Test of parseBlock on a block followed by a token that cannot start a
+     * statement: the block ends there and the token is left in the input.
+     */
+    @Test
+    public final void testParseBlockLeavesNonStatementToken() {
+        Queue<String> tokens = new Queue1L<>();
+        tokens.enqueue("move");
+        tokens.enqueue("DO");
+        tokens.enqueue(Tokenizer.END_OF_INPUT);
+        Statement sRef = this.constructorRef();
+        Statement call = this.constructorRef();
+        call.assembleCall("move");
+        sRef.addToBlock(0, call);
+        Statement sTest = this.constructorTest();
+        sTest.parseBlock(tokens);
+        assertEquals(sRef, sTest);
+        assertEquals(2, tokens.length());
+        assertEquals("DO", tokens.front());
+    }
+
 }
@@ -0,0 +1,238 @@
+/**
+ * Synthesizes valid BL programs of a given shape and size for benchmarking the
+ * BL toolchain.
+ *
+ * <p>
+ * The size of a program is the number of statements it contains, not counting
+ * blocks. Every program runs forever (its body is a {@code WHILE true} loop),
+ * uses no {@code random} condition, and so steps deterministically in the VM.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class BLProgramSynthesizer {
+
+    /**
+     * Shapes of synthesized programs.
+     */
+    public enum Shape {
+        /**
+         * A single loop whose block is a long sequence of small statements.
+         */
+        FLAT,
+        /**
+         * A chain of {@code IF} statements, each nested in the previous one.
+         */
+        NESTED,
+        /**
+         * Many small user-defined instructions, each called once from the
+         * main loop.
+         */
+        INSTRUCTIONS;
+    }
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Conditions used by the synthesized statements (all except
+     * {@code random}).
+     */
+    private static final String[] CONDITIONS = { "next-is-empty",
+            "next-is-not-empty", "next-is-wall", "next-is-not-wall",
+            "next-is-friend", "next-is-not-friend", "next-is-enemy",
+            "next-is-not-enemy", "true" };
+
+    /**
+     * Number of spaces per indentation level.
+     */
+    private static final int INDENT = 2;
+
+    /**
+     * Deepest indentation level written (deeper statements are written at
+     * this level, so that deeply nested programs stay linear in size).
+     */
+    private static final int MAX_INDENT_LEVEL = 8;
+
+    /**
+     * Number of statements in each of the kinds of statement cycled through
+     * by {@code FLAT} programs.
+     */
+    private static final int[] FLAT_KIND_SIZES = { 1, 2, 3, 2 };
+
+    /**
+     * Number of statements contributed by each user-defined instruction of an
+     * {@code INSTRUCTIONS} program (two in its body and the call).
+     */
+    private static final int INSTRUCTION_SIZE = 3;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private BLProgramSynthesizer() {
+    }
+
+    /**
+     * Appends a line at the given indentation level to {@code sb}.
+     *
+     * @param sb
+     *            the program text
+     * @param level
+     *            the indentation level
+     * @param line
+     *            the line
+     * @updates sb
+     * @ensures sb = #sb * [spaces for level] * line * "\n"
+     */
+    private static void appendLine(StringBuilder sb, int level, String line) {
+        int spaces = INDENT * Math.min(level, MAX_INDENT_LEVEL);
+        for (int i = 0; i < spaces; i++) {
+            sb.append(' ');
+        }
+        sb.append(line).append('\n');
+    }
+
+    /**
+     * Returns the {@code i}-th condition in the cycle of conditions.
+     *
+     * @param i
+     *            the index
+     * @return the condition
+     * @requires i >= 0
+     */
+    private static String condition(int i) {
+        return CONDITIONS[i % CONDITIONS.length];
+    }
+
+    /**
+     * Appends the block of a {@code FLAT} program.
+     *
+     * @param sb
+     *            the program text
+     * @param statements
+     *            the number of statements in the block
+     * @updates sb
+     * @requires statements >= 0
+     */
+    private static void appendFlatBlock(StringBuilder sb, int statements) {
+        final int level = 2;
+        int count = 0;
+        int i = 0;
+        while (count < statements) {
+            int kind = i % FLAT_KIND_SIZES.length;
+            if (FLAT_KIND_SIZES[kind] > statements - count) {
+                kind = 0;
+            }
+            switch (kind) {
+                case 0:
+                    appendLine(sb, level, "move");
+                    break;
+                case 1:
+                    appendLine(sb, level, "IF " + condition(i) + " THEN");
+                    appendLine(sb, level + 1, "infect");
+                    appendLine(sb, level, "END IF");
+                    break;
+                case 2:
+                    appendLine(sb, level, "IF " + condition(i) + " THEN");
+                    appendLine(sb, level + 1, "move");
+                    appendLine(sb, level, "ELSE");
+                    appendLine(sb, level + 1, "turnright");
+                    appendLine(sb, level, "END IF");
+                    break;
+                default:
+                    appendLine(sb, level, "WHILE next-is-wall DO");
+                    appendLine(sb, level + 1, "turnleft");
+                    appendLine(sb, level, "END WHILE");
+                    break;
+            }
+            count += FLAT_KIND_SIZES[kind];
+            i++;
+        }
+    }
+
+    /**
+     * Appends the block of a {@code NESTED} program.
+     *
+     * @param sb
+     *            the program text
+     * @param statements
+     *            the number of statements in the block
+     * @updates sb
+     * @requires statements >= 0
+     */
+    private static void appendNestedBlock(StringBuilder sb, int statements) {
+        final int level = 2;
+        int depth = statements / 2;
+        for (int d = 0; d < depth; d++) {
+            appendLine(sb, level + d, "IF " + condition(d) + " THEN");
+            appendLine(sb, level + d + 1, "turnleft");
+        }
+        if (statements % 2 == 1) {
+            appendLine(sb, level + depth, "move");
+        }
+        for (int d = depth - 1; d >= 0; d--) {
+            appendLine(sb, level + d, "END IF");
+        }
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Returns the text of a BL program of the given shape with the given
+     * number of statements.
+     *
+     * @param shape
+     *            the shape of the program
+     * @param statements
+     *            the number of statements
+     * @return the text of the program
+     * @requires statements >= 1
+     * @ensures <pre>
+     * [program is the text of a valid BL program of the given shape with
+     *  the given number of statements, named after the shape]
+     * </pre>
+     */
+    public static String program(Shape shape, int statements) {
+        assert shape != null : "Violation of: shape is not null";
+        assert statements >= 1 : "Violation of: statements >= 1";
+
+        String name = shape.name().charAt(0)
+                + shape.name().substring(1).toLowerCase();
+        StringBuilder sb = new StringBuilder();
+        appendLine(sb, 0, "PROGRAM " + name + " IS");
+        /*
+         * The WHILE true loop of the body is one of the statements
+         */
+        int remaining = statements - 1;
+        int instructions = 0;
+        if (shape == Shape.INSTRUCTIONS) {
+            instructions = remaining / INSTRUCTION_SIZE;
+            remaining -= instructions * INSTRUCTION_SIZE;
+            for (int i = 0; i < instructions; i++) {
+                appendLine(sb, 0, "");
+                appendLine(sb, 1, "INSTRUCTION step" + i + " IS");
+                appendLine(sb, 2, "move");
+                appendLine(sb, 2, "turnright");
+                appendLine(sb, 1, "END step" + i);
+            }
+            appendLine(sb, 0, "");
+        }
+        appendLine(sb, 0, "BEGIN");
+        appendLine(sb, 1, "WHILE true DO");
+        if (shape == Shape.NESTED) {
+            appendNestedBlock(sb, remaining);
+        } else {
+            for (int i = 0; i < instructions; i++) {
+                appendLine(sb, 2, "step" + i);
+            }
+            appendFlatBlock(sb, remaining);
+        }
+        appendLine(sb, 1, "END WHILE");
+        appendLine(sb, 0, "END " + name);
+        return sb.toString();
+    }
+
+}
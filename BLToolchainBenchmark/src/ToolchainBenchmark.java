@@ -0,0 +1,825 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.program.Program;
+import components.program.Program.Instruction;
+import components.queue.Queue;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.statement.Statement;
+import components.utilities.Reporter;
+import components.utilities.Tokenizer;
+
+/**
+ * End-to-end benchmark of the BL toolchain: tokenizing, parsing
+ * ({@code Program1Parse1}, from the tokens or reading them from the file as
+ * it goes, into statements or into a {@code CompactProgram}), code generation
+ * ({@code Program1GeneratedCode1}, inlining or sharing the code of calls, or
+ * reading a {@code CompactProgram}, and {@code IncrementalCompiler}
+ * recompiling a program after no edit or after an edit of one instruction
+ * that left its code unchanged),
+ * pretty-printing the body to a file ({@code Statement1PrettyPrint1}, from
+ * the statements or from a {@code CompactProgram}; not for {@code NESTED}
+ * programs, whose indentation grows with the square of their depth),
+ * linking ({@code LinkedProgram}) and stepping bugs in the VM
+ * ({@code BugsWorldVMBatch}), and the same for the JVM backend
+ * ({@code CompiledBugProgram}), and optimizing the compiled program
+ * ({@code CompiledProgramOptimizer}, also printing the instructions the byte
+ * code interpreter dispatches per step before and after), on programs
+ * synthesized by
+ * {@code BLProgramSynthesizer} of every shape and of growing size, and
+ * parsing and code generation on a {@code NESTED} program
+ * {@code DEEP_NESTING} statements deep.
+ *
+ * <p>
+ * Usage: {@code ToolchainBenchmark [maxStatements [results [baseline]]]}.
+ * Sizes go from 10 statements up to {@code maxStatements} (default 100000) in
+ * steps of a factor of 10. Every stage is run {@code WARMUP_RUNS} times and
+ * then measured {@code RUNS} times; the median and best times are printed.
+ * If {@code results} is given, the medians are also written to it as
+ * tab-separated lines {@code shape statements stage nanoseconds}, after
+ * header lines {@code # harness}, {@code # jvm} and {@code # components}
+ * giving {@code HARNESS_VERSION}, the JVM and the components library the run
+ * was recorded with. The baseline, the results of an earlier run, defaults
+ * to {@code data/baseline.tsv}; every median is also printed as a ratio to
+ * the baseline median (below 1 is faster), and a warning is printed for each
+ * header line of the baseline that differs from the current run, since
+ * medians recorded with another harness, JVM or library do not compare. To
+ * record a new baseline, run on a quiet machine with {@code results} set to
+ * {@code data/baseline.tsv} and check the file in.
+ *
+ * <p>
+ * The parser and code generators walk nested statements with a stack of their
+ * own instead of recursing, so the benchmark runs on the default thread
+ * stack, however deep the programs are.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class ToolchainBenchmark {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Version of the benchmark written to results files: change it whenever
+     * the programs, the stages or the way they are timed change, so that
+     * medians measured differently are not compared.
+     */
+    private static final String HARNESS_VERSION = "ToolchainBenchmark/3";
+
+    /**
+     * Default name of the baseline file.
+     */
+    private static final String DEFAULT_BASELINE = "data/baseline.tsv";
+
+    /**
+     * Prefix of the header lines of a results file.
+     */
+    private static final String HEADER = "# ";
+
+    /**
+     * Default largest number of statements of a synthesized program.
+     */
+    private static final int DEFAULT_MAX_STATEMENTS = 100_000;
+
+    /**
+     * Smallest number of statements of a synthesized program.
+     */
+    private static final int MIN_STATEMENTS = 10;
+
+    /**
+     * Factor between consecutive program sizes.
+     */
+    private static final int SIZE_FACTOR = 10;
+
+    /**
+     * Number of unmeasured runs of each stage.
+     */
+    private static final int WARMUP_RUNS = 3;
+
+    /**
+     * Number of measured runs of each stage.
+     */
+    private static final int RUNS = 5;
+
+    /**
+     * Number of bugs stepped in the step stage.
+     */
+    private static final int BUGS = 4096;
+
+    /**
+     * Number of steps of every bug in the step stage.
+     */
+    private static final int STEPS = 256;
+
+    /**
+     * Seed of the random conditions drawn when counting dispatches.
+     */
+    private static final long SEED = 2231;
+
+    /**
+     * Number of {@code CellState} values.
+     */
+    private static final int CELL_STATES = 4;
+
+    /**
+     * Depth of nesting of the deep {@code NESTED} program.
+     */
+    private static final int DEEP_NESTING = 100_000;
+
+    /**
+     * Nanoseconds per microsecond.
+     */
+    private static final double NANOS_PER_MICRO = 1e3;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ToolchainBenchmark() {
+    }
+
+    /**
+     * Runs {@code op} on a fresh result of {@code setup} {@code WARMUP_RUNS}
+     * times and then {@code RUNS} times, timing only {@code op}, and returns
+     * the measured times sorted in increasing order.
+     *
+     * @param <T>
+     *            type of the input of {@code op}
+     * @param setup
+     *            produces the input of each run (not timed)
+     * @param op
+     *            the operation measured
+     * @param checksum
+     *            accumulates the results of {@code op}
+     * @return the sorted times of the measured runs in nanoseconds
+     * @updates checksum
+     * @ensures |measure| = RUNS
+     */
+    private static <T> long[] measure(Supplier<T> setup, ToLongFunction<T> op,
+            long[] checksum) {
+        for (int r = 0; r < WARMUP_RUNS; r++) {
+            checksum[0] += op.applyAsLong(setup.get());
+        }
+        long[] times = new long[RUNS];
+        for (int r = 0; r < RUNS; r++) {
+            T input = setup.get();
+            long start = System.nanoTime();
+            checksum[0] += op.applyAsLong(input);
+            times[r] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times;
+    }
+
+    /**
+     * Tokenizes the BL program in the given file.
+     *
+     * @param fileName
+     *            the name of the file
+     * @return the tokens of the program
+     */
+    private static Queue<String> tokenize(String fileName) {
+        SimpleReader file = new SimpleReader1L(fileName);
+        Queue<String> tokens = Tokenizer.tokens(file);
+        file.close();
+        return tokens;
+    }
+
+    /**
+     * Parses the given tokens into a program with code generation.
+     *
+     * @param tokens
+     *            the tokens of a valid BL program
+     * @return the parsed program
+     * @updates tokens
+     */
+    private static Program1GeneratedCode1 parse(Queue<String> tokens) {
+        Program parsed = new Program1Parse1();
+        parsed.parse(tokens);
+        return withCodeGeneration(parsed);
+    }
+
+    /**
+     * Parses the BL program in the given file into a program with code
+     * generation, reading its tokens as the parser needs them.
+     *
+     * @param fileName
+     *            the name of a file containing a valid BL program
+     * @return the parsed program
+     */
+    private static Program1GeneratedCode1 parseStreaming(String fileName) {
+        Program parsed = new Program1Parse1();
+        SimpleReader file = new SimpleReader1L(fileName);
+        parsed.parse(file);
+        file.close();
+        return withCodeGeneration(parsed);
+    }
+
+    /**
+     * Parses the BL program in the given file into its compact
+     * representation, reading its tokens as the parser needs them.
+     *
+     * @param fileName
+     *            the name of a file containing a valid BL program
+     * @return the compact representation of the program
+     */
+    private static CompactProgram parseCompact(String fileName) {
+        SimpleReader file = new SimpleReader1L(fileName);
+        CompactProgram p = Program1Parse1
+                .parseCompact(new ReaderTokenStream(file));
+        file.close();
+        return p;
+    }
+
+    /**
+     * Moves the given parsed program into a program with code generation.
+     *
+     * @param parsed
+     *            the parsed program
+     * @return the program with code generation
+     * @clears parsed
+     */
+    private static Program1GeneratedCode1 withCodeGeneration(Program parsed) {
+        Program1GeneratedCode1 p = new Program1GeneratedCode1();
+        p.setName(parsed.name());
+        Map<String, Statement> context = parsed.newContext();
+        parsed.swapContext(context);
+        p.swapContext(context);
+        Statement body = parsed.newBody();
+        parsed.swapBody(body);
+        p.swapBody(body);
+        return p;
+    }
+
+    /**
+     * Steps {@code BUGS} bugs running {@code lp} {@code STEPS} times, with
+     * bugs seeing every {@code CellState} in turn.
+     *
+     * @param lp
+     *            the linked program
+     * @return the sum of the final program counters
+     */
+    private static long step(LinkedProgram lp) {
+        LinkedProgram[] programs = { lp };
+        int[] programIds = new int[BUGS];
+        int[] pcs = new int[BUGS];
+        byte[] cellStates = new byte[BUGS];
+        int[] primitives = new int[BUGS];
+        for (int s = 0; s < STEPS; s++) {
+            for (int i = 0; i < BUGS; i++) {
+                cellStates[i] = (byte) ((i + s) % CELL_STATES);
+            }
+            BugsWorldVMBatch.step(programs, programIds, pcs, cellStates,
+                    primitives, 0, BUGS);
+        }
+        long sum = 0;
+        for (int pc : pcs) {
+            sum += pc;
+        }
+        return sum;
+    }
+
+    /**
+     * Steps {@code BUGS} bugs running {@code compiled} {@code STEPS} times, as
+     * {@code step(LinkedProgram)} does.
+     *
+     * @param compiled
+     *            the compiled program
+     * @return the sum of the final program counters
+     */
+    private static long step(CompiledBugProgram compiled) {
+        BugsWorldVMInterpreter.CellState[] states = BugsWorldVMInterpreter.CellState
+                .values();
+        final int halt = Instruction.HALT.byteCode();
+        int[] pcs = new int[BUGS];
+        for (int s = 0; s < STEPS; s++) {
+            for (int i = 0; i < BUGS; i++) {
+                int loc = compiled.next(pcs[i], states[(i + s) % CELL_STATES]);
+                if (loc != CompiledBugProgram.NO_PRIMITIVE) {
+                    if (compiled.byteCode(loc) == halt) {
+                        pcs[i] = loc;
+                    } else {
+                        pcs[i] = loc + 1;
+                    }
+                }
+            }
+        }
+        long sum = 0;
+        for (int pc : pcs) {
+            sum += pc;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the header lines of a results file recorded by this run, without
+     * their prefix: the version of the harness, the JVM, and the components
+     * library, named by its implementation version and the file it was loaded
+     * from.
+     *
+     * @return the header lines, as "name\tvalue"
+     */
+    private static String[] environment() {
+        Package library = Map1L.class.getPackage();
+        String version = null;
+        if (library != null) {
+            version = library.getImplementationVersion();
+        }
+        if (version == null) {
+            version = "unversioned";
+        }
+        String location = "unknown location";
+        CodeSource source = Map1L.class.getProtectionDomain().getCodeSource();
+        if (source != null && source.getLocation() != null) {
+            location = new File(source.getLocation().getPath()).getName();
+        }
+        return new String[] { "harness\t" + HARNESS_VERSION,
+                "jvm\t" + System.getProperty("java.vm.name") + " "
+                        + System.getProperty("java.runtime.version"),
+                "components\t" + version + " (" + location + ")" };
+    }
+
+    /**
+     * Steps {@code BUGS} bugs running {@code cp} {@code STEPS} times in the
+     * byte code interpreter, as {@code step(CompiledBugProgram)} does, and
+     * returns the average number of instructions dispatched per step: the
+     * jumps followed and the primitive instruction reached. Random conditions
+     * are drawn from a generator with a fixed seed, before the interpreter
+     * gives up on a step from which no primitive instruction can be reached
+     * (as {@code LinkedProgram} does), so programs that draw the same
+     * conditions, like a program and its optimized version, compare.
+     *
+     * @param cp
+     *            the compiled program
+     * @return the average number of instructions dispatched per step
+     */
+    private static double dispatchesPerStep(int[] cp) {
+        BugsWorldVMInterpreter.CellState[] states = BugsWorldVMInterpreter.CellState
+                .values();
+        final int halt = Instruction.HALT.byteCode();
+        final int jump = Instruction.JUMP.byteCode();
+        int[] reachable = BugsWorldVMInterpreter.primitiveReachableStates(cp);
+        SplittableRandom rnd = new SplittableRandom(SEED);
+        int[] pcs = new int[BUGS];
+        long dispatches = 0;
+        for (int s = 0; s < STEPS; s++) {
+            for (int i = 0; i < BUGS; i++) {
+                BugsWorldVMInterpreter.CellState wbs = states[(i + s)
+                        % CELL_STATES];
+                int loc = pcs[i];
+                while (loc != CompiledBugProgram.NO_PRIMITIVE
+                        && !BugsWorldVMInterpreter
+                                .isPrimitiveInstructionByteCode(cp[loc])) {
+                    if ((reachable[loc] & (1 << wbs.ordinal())) == 0) {
+                        loc = CompiledBugProgram.NO_PRIMITIVE;
+                    } else {
+                        dispatches++;
+                        if (cp[loc] == jump || !BugsWorldVMInterpreter
+                                .conditionalJumpCondition(wbs, cp[loc], rnd)) {
+                            loc = cp[loc + 1];
+                        } else {
+                            loc += 2;
+                        }
+                    }
+                }
+                if (loc != CompiledBugProgram.NO_PRIMITIVE) {
+                    dispatches++;
+                    if (cp[loc] == halt) {
+                        pcs[i] = loc;
+                    } else {
+                        pcs[i] = loc + 1;
+                    }
+                }
+            }
+        }
+        return (double) dispatches / ((long) BUGS * STEPS);
+    }
+
+    /**
+     * Reads the medians of an earlier run from the given results file, and
+     * its header lines into {@code header}.
+     *
+     * @param fileName
+     *            the name of the results file
+     * @param header
+     *            map from the name of each header line to its value
+     * @return map from "shape\tstatements\tstage" to median nanoseconds
+     * @replaces header
+     */
+    private static Map<String, Long> readResults(String fileName,
+            Map<String, String> header) {
+        Map<String, Long> previous = new Map1L<>();
+        header.clear();
+        SimpleReader file = new SimpleReader1L(fileName);
+        while (!file.atEOS()) {
+            String line = file.nextLine();
+            int tab = line.lastIndexOf('\t');
+            if (line.startsWith(HEADER)) {
+                if (tab > 0) {
+                    String name = line.substring(HEADER.length(), tab);
+                    if (!header.hasKey(name)) {
+                        header.add(name, line.substring(tab + 1));
+                    }
+                }
+            } else if (tab > 0) {
+                String key = line.substring(0, tab);
+                if (!previous.hasKey(key)) {
+                    previous.add(key, Long.parseLong(line.substring(tab + 1)));
+                }
+            }
+        }
+        file.close();
+        return previous;
+    }
+
+    /**
+     * Reports the times of one stage.
+     *
+     * @param out
+     *            the console
+     * @param results
+     *            the results file, or null
+     * @param previous
+     *            the medians of the baseline, if any
+     * @param key
+     *            "shape\tstatements\tstage"
+     * @param times
+     *            the sorted times of the stage
+     * @updates out, results
+     */
+    private static void report(SimpleWriter out, SimpleWriter results,
+            Map<String, Long> previous, String key, long[] times) {
+        long median = times[times.length / 2];
+        String[] fields = key.split("\t");
+        String line = String.format("%-13s %8s %-16s %14.1f %14.1f", fields[0],
+                fields[1], fields[2], median / NANOS_PER_MICRO,
+                times[0] / NANOS_PER_MICRO);
+        if (previous.hasKey(key)) {
+            line += String.format(" %8.2f",
+                    (double) median / previous.value(key));
+        }
+        out.println(line);
+        if (results != null) {
+            results.println(key + "\t" + median);
+        }
+    }
+
+    /**
+     * Creates an empty temporary file, deleted when the benchmark exits.
+     *
+     * @param prefix
+     *            the prefix of the name of the file
+     * @return the name of the file
+     */
+    private static String tempFile(String prefix) {
+        String fileName = null;
+        try {
+            Path file = Files.createTempFile(prefix, ".bl");
+            file.toFile().deleteOnExit();
+            fileName = file.toString();
+        } catch (IOException e) {
+            Reporter.assertElseFatalError(false,
+                    "Error creating temporary file");
+        }
+        return fileName;
+    }
+
+    /**
+     * Pretty-prints the body of {@code p} to the given file.
+     *
+     * @param p
+     *            the program
+     * @param fileName
+     *            the name of the file
+     * @return the length of the file
+     */
+    private static long print(Program p, String fileName) {
+        Statement body = p.newBody();
+        p.swapBody(body);
+        try (Writer out = Files.newBufferedWriter(Paths.get(fileName),
+                StandardCharsets.UTF_8)) {
+            Statement1PrettyPrint1.prettyPrint(body, out, Program.INDENT_SIZE);
+        } catch (IOException e) {
+            Reporter.assertElseFatalError(false,
+                    "Error writing " + fileName);
+        }
+        p.swapBody(body);
+        return new File(fileName).length();
+    }
+
+    /**
+     * Pretty-prints the body of {@code p} to the given file.
+     *
+     * @param p
+     *            the compact representation of the program
+     * @param fileName
+     *            the name of the file
+     * @return the length of the file
+     */
+    private static long print(CompactProgram p, String fileName) {
+        try (Writer out = Files.newBufferedWriter(Paths.get(fileName),
+                StandardCharsets.UTF_8)) {
+            Statement1PrettyPrint1.prettyPrint(p, p.body(), out,
+                    Program.INDENT_SIZE);
+        } catch (IOException e) {
+            Reporter.assertElseFatalError(false,
+                    "Error writing " + fileName);
+        }
+        return new File(fileName).length();
+    }
+
+    /**
+     * Writes a synthesized program to a temporary file.
+     *
+     * @param shape
+     *            the shape of the program
+     * @param statements
+     *            the number of statements of the program
+     * @return the name of the file
+     */
+    private static String synthesize(BLProgramSynthesizer.Shape shape,
+            int statements) {
+        String fileName = tempFile(shape.name());
+        try {
+            Files.write(Paths.get(fileName),
+                    BLProgramSynthesizer.program(shape, statements)
+                            .getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Reporter.assertElseFatalError(false,
+                    "Error writing synthesized program");
+        }
+        return fileName;
+    }
+
+    /**
+     * Benchmarks all stages on one synthesized program.
+     *
+     * @param shape
+     *            the shape of the program
+     * @param statements
+     *            the number of statements of the program
+     * @param out
+     *            the console
+     * @param results
+     *            the results file, or null
+     * @param previous
+     *            the medians of the baseline, if any
+     * @param checksum
+     *            accumulates the results of the stages
+     * @updates out, results, checksum
+     */
+    private static void benchmark(BLProgramSynthesizer.Shape shape,
+            int statements, SimpleWriter out, SimpleWriter results,
+            Map<String, Long> previous, long[] checksum) {
+        String file = synthesize(shape, statements);
+        String prefix = shape + "\t" + statements + "\t";
+
+        long[] times = measure(() -> file, f -> tokenize(f).length(),
+                checksum);
+        report(out, results, previous, prefix + "tokenize", times);
+
+        times = measure(() -> tokenize(file), t -> parse(t).name().length(),
+                checksum);
+        report(out, results, previous, prefix + "parse", times);
+
+        times = measure(() -> file, f -> parseStreaming(f).name().length(),
+                checksum);
+        report(out, results, previous, prefix + "parse-stream", times);
+
+        times = measure(() -> file, f -> parseCompact(f).nodeCount(),
+                checksum);
+        report(out, results, previous, prefix + "parse-compact", times);
+
+        Program1GeneratedCode1 p = parse(tokenize(file));
+        times = measure(() -> p, q -> q.generatedCode().length(), checksum);
+        report(out, results, previous, prefix + "generate", times);
+
+        times = measure(() -> p, q -> q.generatedCodeArray().length,
+                checksum);
+        report(out, results, previous, prefix + "generate-array", times);
+
+        CompactProgram compact = CompactProgram.of(p);
+        times = measure(() -> compact,
+                c -> Program1GeneratedCode1.generatedCodeArray(c).length,
+                checksum);
+        report(out, results, previous, prefix + "generate-compact", times);
+
+        times = measure(() -> p,
+                q -> q.generatedCode(Program1GeneratedCode1.CallMode.SHARE)
+                        .length(),
+                checksum);
+        report(out, results, previous, prefix + "generate-shared", times);
+
+        if (shape != BLProgramSynthesizer.Shape.NESTED) {
+            String printed = tempFile(shape.name());
+            times = measure(() -> p, q -> print(q, printed), checksum);
+            report(out, results, previous, prefix + "print", times);
+
+            times = measure(() -> compact, c -> print(c, printed), checksum);
+            report(out, results, previous, prefix + "print-compact", times);
+        }
+
+        IncrementalCompiler incremental = new IncrementalCompiler();
+        incremental.compiledCode(p);
+        times = measure(() -> p, q -> incremental.compiledCode(q).length,
+                checksum);
+        report(out, results, previous, prefix + "regenerate", times);
+
+        Set<String> edited = new HashSet<>();
+        Map<String, Statement> context = p.newContext();
+        p.swapContext(context);
+        for (Map.Pair<String, Statement> instruction : context) {
+            if (edited.isEmpty()) {
+                edited.add(instruction.key());
+            }
+        }
+        p.swapContext(context);
+        times = measure(() -> p,
+                q -> incremental.compiledCode(q, edited).length, checksum);
+        report(out, results, previous, prefix + "regenerate-one", times);
+
+        int[] cp = p.generatedCodeArray();
+        times = measure(() -> cp, c -> new LinkedProgram(c).length(),
+                checksum);
+        report(out, results, previous, prefix + "link", times);
+
+        LinkedProgram lp = new LinkedProgram(cp);
+        times = measure(() -> lp, l -> step(l), checksum);
+        report(out, results, previous, prefix + "step", times);
+
+        times = measure(() -> cp,
+                c -> CompiledBugProgram.compile(c).isGenerated() ? 1 : 0,
+                checksum);
+        report(out, results, previous, prefix + "compile", times);
+
+        CompiledBugProgram compiled = CompiledBugProgram.compile(cp);
+        times = measure(() -> compiled, c -> step(c), checksum);
+        report(out, results, previous, prefix + "step-jvm", times);
+
+        times = measure(() -> cp,
+                c -> CompiledProgramOptimizer.optimized(c).length, checksum);
+        report(out, results, previous, prefix + "optimize", times);
+        out.println(String.format("%-13s %8d %-16s %14.3f -> %.3f "
+                + "dispatches per step", shape, statements, "optimize",
+                dispatchesPerStep(cp),
+                dispatchesPerStep(CompiledProgramOptimizer.optimized(cp))));
+    }
+
+    /**
+     * Benchmarks parsing and code generation on a {@code NESTED} program
+     * {@code depth} statements deep.
+     *
+     * @param depth
+     *            the depth of nesting of the program
+     * @param out
+     *            the console
+     * @param results
+     *            the results file, or null
+     * @param previous
+     *            the medians of the baseline, if any
+     * @param checksum
+     *            accumulates the results of the stages
+     * @updates out, results, checksum
+     */
+    private static void benchmarkNesting(int depth, SimpleWriter out,
+            SimpleWriter results, Map<String, Long> previous,
+            long[] checksum) {
+        /*
+         * An IF and a call per level, and the WHILE true loop of the body
+         */
+        int statements = 2 * depth + 1;
+        BLProgramSynthesizer.Shape shape = BLProgramSynthesizer.Shape.NESTED;
+        String file = synthesize(shape, statements);
+        String prefix = shape + "\t" + statements + "\t";
+
+        long[] times = measure(() -> tokenize(file),
+                t -> parse(t).name().length(), checksum);
+        report(out, results, previous, prefix + "parse", times);
+
+        times = measure(() -> file, f -> parseStreaming(f).name().length(),
+                checksum);
+        report(out, results, previous, prefix + "parse-stream", times);
+
+        times = measure(() -> file, f -> parseCompact(f).nodeCount(),
+                checksum);
+        report(out, results, previous, prefix + "parse-compact", times);
+
+        Program1GeneratedCode1 p = parse(tokenize(file));
+        times = measure(() -> p, q -> q.generatedCodeArray().length,
+                checksum);
+        report(out, results, previous, prefix + "generate-array", times);
+
+        CompactProgram compact = CompactProgram.of(p);
+        times = measure(() -> compact,
+                c -> Program1GeneratedCode1.generatedCodeArray(c).length,
+                checksum);
+        report(out, results, previous, prefix + "generate-compact", times);
+
+        times = measure(() -> p,
+                q -> q.generatedCode(Program1GeneratedCode1.CallMode.SHARE)
+                        .length(),
+                checksum);
+        report(out, results, previous, prefix + "generate-shared", times);
+
+        times = measure(() -> p,
+                q -> new IncrementalCompiler().compiledCode(q).length,
+                checksum);
+        report(out, results, previous, prefix + "generate-incr", times);
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    private static void run(String[] args) {
+        int maxStatements = DEFAULT_MAX_STATEMENTS;
+        if (args.length > 0) {
+            maxStatements = Integer.parseInt(args[0]);
+        }
+        String baseline = DEFAULT_BASELINE;
+        if (args.length > 2) {
+            baseline = args[2];
+        }
+        SimpleWriter out = new SimpleWriter1L();
+        String[] environment = environment();
+        /*
+         * Read the baseline before the results file is opened, as they may be
+         * the same file
+         */
+        Map<String, Long> previous = new Map1L<>();
+        Map<String, String> header = new Map1L<>();
+        if (new File(baseline).exists()) {
+            previous = readResults(baseline, header);
+            for (String line : environment) {
+                int tab = line.indexOf('\t');
+                String name = line.substring(0, tab);
+                String value = line.substring(tab + 1);
+                if (!header.hasKey(name) || !header.value(name).equals(value)) {
+                    String recorded = "none";
+                    if (header.hasKey(name)) {
+                        recorded = header.value(name);
+                    }
+                    out.println("warning: " + baseline + " was recorded with "
+                            + name + " " + recorded + ", not " + value);
+                }
+            }
+        }
+        SimpleWriter results = null;
+        if (args.length > 1) {
+            results = new SimpleWriter1L(args[1]);
+            for (String line : environment) {
+                results.println(HEADER + line);
+            }
+        }
+        out.println(String.format("%-13s %8s %-16s %14s %14s %8s", "shape",
+                "stmts", "stage", "median us", "best us", "vs base"));
+        long[] checksum = { 0 };
+        for (BLProgramSynthesizer.Shape shape : BLProgramSynthesizer.Shape
+                .values()) {
+            for (long n = MIN_STATEMENTS; n <= maxStatements; n *= SIZE_FACTOR) {
+                benchmark(shape, (int) n, out, results, previous, checksum);
+            }
+        }
+        benchmarkNesting(DEEP_NESTING, out, results, previous, checksum);
+        out.println("checksum " + checksum[0]);
+        if (results != null) {
+            results.close();
+        }
+        out.close();
+    }
+
+    /*
+     * Main method ------------------------------------------------------------
+     */
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        run(args);
+    }
+
+}
@@ -0,0 +1,172 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.program.Program;
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.statement.Statement;
+import components.utilities.Tokenizer;
+
+/**
+ * JUnit test fixture for {@code BLProgramSynthesizer}'s program method.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class BLProgramSynthesizerTest {
+
+    /**
+     * Largest size checked exhaustively.
+     */
+    private static final int MAX_SMALL_SIZE = 40;
+
+    /**
+     * Returns the number of statements in {@code s}, not counting blocks.
+     *
+     * @param s
+     *            the statement
+     * @return the number of statements in s
+     */
+    private static int statements(Statement s) {
+        int count = 0;
+        switch (s.kind()) {
+            case BLOCK: {
+                for (int i = 0; i < s.lengthOfBlock(); i++) {
+                    Statement child = s.removeFromBlock(i);
+                    count += statements(child);
+                    s.addToBlock(i, child);
+                }
+                break;
+            }
+            case IF: {
+                Statement b = s.newInstance();
+                Statement.Condition c = s.disassembleIf(b);
+                count = 1 + statements(b);
+                s.assembleIf(c, b);
+                break;
+            }
+            case IF_ELSE: {
+                Statement b1 = s.newInstance();
+                Statement b2 = s.newInstance();
+                Statement.Condition c = s.disassembleIfElse(b1, b2);
+                count = 1 + statements(b1) + statements(b2);
+                s.assembleIfElse(c, b1, b2);
+                break;
+            }
+            case WHILE: {
+                Statement b = s.newInstance();
+                Statement.Condition c = s.disassembleWhile(b);
+                count = 1 + statements(b);
+                s.assembleWhile(c, b);
+                break;
+            }
+            default: {
+                count = 1;
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Parses the text of a BL program.
+     *
+     * @param text
+     *            the text of a valid BL program
+     * @return the parsed program
+     */
+    private static Program parse(String text) {
+        Queue<String> tokens = new Queue1L<>();
+        for (String line : text.split("\n")) {
+            for (String word : line.trim().split(" ")) {
+                if (!word.isEmpty()) {
+                    tokens.enqueue(word);
+                }
+            }
+        }
+        tokens.enqueue(Tokenizer.END_OF_INPUT);
+        Program p = new Program1Parse1();
+        p.parse(tokens);
+        return p;
+    }
+
+    /**
+     * Returns the number of statements in {@code p}, not counting blocks.
+     *
+     * @param p
+     *            the program
+     * @return the number of statements in p
+     */
+    private static int statements(Program p) {
+        Statement body = p.newBody();
+        p.swapBody(body);
+        int count = statements(body);
+        p.swapBody(body);
+        Map<String, Statement> context = p.newContext();
+        p.swapContext(context);
+        for (Map.Pair<String, Statement> instruction : context) {
+            count += statements(instruction.value());
+        }
+        p.swapContext(context);
+        return count;
+    }
+
+    /**
+     * Returns the number of instructions in the context of {@code p}.
+     *
+     * @param p
+     *            the program
+     * @return the size of the context of p
+     */
+    private static int contextSize(Program p) {
+        Map<String, Statement> context = p.newContext();
+        p.swapContext(context);
+        int size = context.size();
+        p.swapContext(context);
+        return size;
+    }
+
+    /**
+     * Checks that the programs of the given shape parse and have the
+     * requested number of statements.
+     *
+     * @param shape
+     *            the shape
+     */
+    private static void checkShape(BLProgramSynthesizer.Shape shape) {
+        final int large = 1000;
+        for (int n = 1; n <= MAX_SMALL_SIZE; n++) {
+            Program p = parse(BLProgramSynthesizer.program(shape, n));
+            assertEquals(n, statements(p));
+        }
+        Program p = parse(BLProgramSynthesizer.program(shape, large));
+        assertEquals(large, statements(p));
+    }
+
+    @Test
+    public void testFlat() {
+        checkShape(BLProgramSynthesizer.Shape.FLAT);
+    }
+
+    @Test
+    public void testNested() {
+        checkShape(BLProgramSynthesizer.Shape.NESTED);
+    }
+
+    @Test
+    public void testInstructions() {
+        checkShape(BLProgramSynthesizer.Shape.INSTRUCTIONS);
+    }
+
+    @Test
+    public void testInstructionsCount() {
+        final int n = 31;
+        final int instructions = 10;
+        Program p = parse(BLProgramSynthesizer
+                .program(BLProgramSynthesizer.Shape.INSTRUCTIONS, n));
+        assertEquals(instructions, contextSize(p));
+    }
+
+}
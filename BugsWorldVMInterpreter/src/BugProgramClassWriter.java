@@ -0,0 +1,707 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import components.program.Program.Instruction;
+
+/**
+ * Writes the class file of a subclass of {@code CompiledBugProgram} whose
+ * {@code next(int pc, int state, RandomGenerator rnd)} method is the given
+ * compiled BL program translated into JVM byte code.
+ *
+ * <p>
+ * The method is one {@code tableswitch} on {@code pc} into a block per
+ * instruction of the program. The block of a primitive instruction returns
+ * its address; the block of a jump branches straight to the block of its
+ * target, or returns the target's address if that is a primitive
+ * instruction. A state condition is a shift of its constant condition mask by
+ * {@code state}, and the random condition calls {@code rnd.nextBoolean()}.
+ * The block of a jump from which no primitive instruction is reachable for
+ * some states (see {@code BugsWorldVMInterpreter.primitiveReachableStates})
+ * first returns {@code NO_PRIMITIVE} for those states, so every
+ * primitive-free cycle is left at once and no jump needs to be counted. The
+ * result, and the random conditions drawn, are those of
+ * {@code BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
+ * primitiveReachableStates(cp), wbs, pc, rnd)}.
+ *
+ * <p>
+ * The class file has version 49, which the JVM verifies without stack map
+ * frames, and every branch to a block is a {@code goto_w}, so no offset can
+ * overflow. A program whose method would be too long for the JIT compiler
+ * (about 400 entries of {@code cp}, since the {@code tableswitch} alone takes
+ * four bytes per entry) is not translated.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+final class BugProgramClassWriter {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Class file magic number.
+     */
+    private static final int CLASS_MAGIC = 0xCAFEBABE;
+
+    /**
+     * Class file major version (Java 5, verified without stack map frames).
+     */
+    private static final int CLASS_VERSION = 49;
+
+    /**
+     * Largest code length of a translated method: HotSpot does not
+     * JIT-compile methods longer than 8000 bytes (unless run with
+     * {@code -XX:-DontCompileHugeMethods}), and such a method would only be
+     * interpreted, much more slowly than a {@code LinkedProgram}.
+     */
+    private static final int MAX_CODE_LENGTH = 8000;
+
+    /**
+     * Access flags of the class: public, final, super.
+     */
+    private static final int CLASS_ACCESS = 0x0031;
+
+    /**
+     * Access flags of the methods: public.
+     */
+    private static final int METHOD_ACCESS = 0x0001;
+
+    /**
+     * Constant pool tag of CONSTANT_Utf8 entries.
+     */
+    private static final int CONSTANT_UTF8 = 1;
+
+    /**
+     * Constant pool tag of CONSTANT_Class entries.
+     */
+    private static final int CONSTANT_CLASS = 7;
+
+    /**
+     * Constant pool tag of CONSTANT_Methodref entries.
+     */
+    private static final int CONSTANT_METHODREF = 10;
+
+    /**
+     * Constant pool tag of CONSTANT_InterfaceMethodref entries.
+     */
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+
+    /**
+     * Constant pool tag of CONSTANT_NameAndType entries.
+     */
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    /**
+     * Constant pool index of this class.
+     */
+    private static final int THIS_CLASS = 2;
+
+    /**
+     * Constant pool index of the super class.
+     */
+    private static final int SUPER_CLASS = 4;
+
+    /**
+     * Constant pool index of the name {@code <init>}.
+     */
+    private static final int INIT_NAME = 5;
+
+    /**
+     * Constant pool index of the constructor descriptor.
+     */
+    private static final int INIT_DESCRIPTOR = 6;
+
+    /**
+     * Constant pool index of the super class constructor.
+     */
+    private static final int SUPER_INIT = 8;
+
+    /**
+     * Constant pool index of the name {@code next}.
+     */
+    private static final int NEXT_NAME = 9;
+
+    /**
+     * Constant pool index of the descriptor of {@code next}.
+     */
+    private static final int NEXT_DESCRIPTOR = 10;
+
+    /**
+     * Constant pool index of the name {@code Code}.
+     */
+    private static final int CODE_NAME = 11;
+
+    /**
+     * Constant pool index of {@code RandomGenerator.nextBoolean}.
+     */
+    private static final int NEXT_BOOLEAN = 17;
+
+    /**
+     * Number of entries of the constant pool plus one.
+     */
+    private static final int CONSTANT_POOL_COUNT = 18;
+
+    /**
+     * Opcode of {@code iconst_m1}.
+     */
+    private static final int ICONST_M1 = 0x02;
+
+    /**
+     * Opcode of {@code bipush}.
+     */
+    private static final int BIPUSH = 0x10;
+
+    /**
+     * Opcode of {@code sipush}.
+     */
+    private static final int SIPUSH = 0x11;
+
+    /**
+     * Opcode of {@code iload}.
+     */
+    private static final int ILOAD = 0x15;
+
+    /**
+     * Opcode of {@code aload_0}.
+     */
+    private static final int ALOAD_0 = 0x2A;
+
+    /**
+     * Opcode of {@code aload_1}.
+     */
+    private static final int ALOAD_1 = 0x2B;
+
+    /**
+     * Opcode of {@code iload_2}.
+     */
+    private static final int ILOAD_2 = 0x1C;
+
+    /**
+     * Opcode of {@code aload_3}.
+     */
+    private static final int ALOAD_3 = 0x2D;
+
+    /**
+     * Opcode of {@code ishr}.
+     */
+    private static final int ISHR = 0x7A;
+
+    /**
+     * Opcode of {@code iand}.
+     */
+    private static final int IAND = 0x7E;
+
+    /**
+     * Opcode of {@code iconst_1}.
+     */
+    private static final int ICONST_1 = 0x04;
+
+    /**
+     * Opcode of {@code ifeq}.
+     */
+    private static final int IFEQ = 0x99;
+
+    /**
+     * Opcode of {@code tableswitch}.
+     */
+    private static final int TABLESWITCH = 0xAA;
+
+    /**
+     * Opcode of {@code ireturn}.
+     */
+    private static final int IRETURN = 0xAC;
+
+    /**
+     * Opcode of {@code return}.
+     */
+    private static final int RETURN = 0xB1;
+
+    /**
+     * Opcode of {@code invokespecial}.
+     */
+    private static final int INVOKESPECIAL = 0xB7;
+
+    /**
+     * Opcode of {@code invokeinterface}.
+     */
+    private static final int INVOKEINTERFACE = 0xB9;
+
+    /**
+     * Opcode of {@code goto_w}.
+     */
+    private static final int GOTO_W = 0xC8;
+
+    /**
+     * Maximum operand stack depth of {@code next}.
+     */
+    private static final int NEXT_MAX_STACK = 3;
+
+    /**
+     * Number of local variables of {@code next}.
+     */
+    private static final int NEXT_MAX_LOCALS = 4;
+
+    /**
+     * Label of the block returning {@code NO_PRIMITIVE}.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * The program being translated.
+     */
+    private final int[] cp;
+
+    /**
+     * The code of {@code next}.
+     */
+    private byte[] code;
+
+    /**
+     * Number of bytes in {@code code}.
+     */
+    private int length;
+
+    /**
+     * Offset in {@code code} of the block of each address (or -1).
+     */
+    private final int[] blocks;
+
+    /**
+     * Offset of the block returning {@code NO_PRIMITIVE}.
+     */
+    private int noneBlock;
+
+    /**
+     * Pending 4-byte branch offsets: offset of the field, offset of the
+     * branching instruction, and target label, three entries per branch.
+     */
+    private int[] fixups;
+
+    /**
+     * Number of entries in {@code fixups}.
+     */
+    private int fixupCount;
+
+    /**
+     * Constructor.
+     *
+     * @param cp
+     *            the program to translate
+     */
+    private BugProgramClassWriter(int[] cp) {
+        this.cp = cp;
+        this.code = new byte[64];
+        this.length = 0;
+        this.blocks = new int[cp.length];
+        Arrays.fill(this.blocks, -1);
+        this.fixups = new int[48];
+        this.fixupCount = 0;
+    }
+
+    /**
+     * Appends one byte to the code.
+     *
+     * @param b
+     *            the byte
+     * @updates this.code, this.length
+     */
+    private void u1(int b) {
+        if (this.length == this.code.length) {
+            this.code = Arrays.copyOf(this.code, 2 * this.code.length);
+        }
+        this.code[this.length] = (byte) b;
+        this.length++;
+    }
+
+    /**
+     * Appends a big-endian 2-byte value to the code.
+     *
+     * @param v
+     *            the value
+     * @updates this.code, this.length
+     */
+    private void u2(int v) {
+        this.u1(v >>> Byte.SIZE);
+        this.u1(v);
+    }
+
+    /**
+     * Appends a big-endian 4-byte value to the code.
+     *
+     * @param v
+     *            the value
+     * @updates this.code, this.length
+     */
+    private void u4(int v) {
+        this.u2(v >>> Short.SIZE);
+        this.u2(v);
+    }
+
+    /**
+     * Overwrites a big-endian 4-byte value in the code.
+     *
+     * @param at
+     *            the offset of the value
+     * @param v
+     *            the value
+     * @updates this.code
+     */
+    private void patch4(int at, int v) {
+        for (int i = 0; i < Integer.BYTES; i++) {
+            this.code[at + i] = (byte) (v >>> (Byte.SIZE
+                    * (Integer.BYTES - 1 - i)));
+        }
+    }
+
+    /**
+     * Appends a 4-byte branch offset from the instruction at {@code from} to
+     * the block of {@code label}, resolved by {@code resolveFixups}.
+     *
+     * @param from
+     *            the offset of the branching instruction
+     * @param label
+     *            the address of the target block, or NONE
+     * @updates this
+     */
+    private void branch4(int from, int label) {
+        if (this.fixupCount + 3 > this.fixups.length) {
+            this.fixups = Arrays.copyOf(this.fixups, 2 * this.fixups.length);
+        }
+        this.fixups[this.fixupCount] = this.length;
+        this.fixups[this.fixupCount + 1] = from;
+        this.fixups[this.fixupCount + 2] = label;
+        this.fixupCount += 3;
+        this.u4(0);
+    }
+
+    /**
+     * Appends code pushing the given constant.
+     *
+     * @param v
+     *            the constant
+     * @updates this
+     * @requires 0 <= v <= Short.MAX_VALUE
+     */
+    private void pushInt(int v) {
+        if (v <= Byte.MAX_VALUE) {
+            this.u1(BIPUSH);
+            this.u1(v);
+        } else {
+            this.u1(SIPUSH);
+            this.u2(v);
+        }
+    }
+
+    /**
+     * Returns whether {@code loc} is the address of a primitive instruction.
+     *
+     * @param loc
+     *            the address
+     * @return true iff loc is the address of a primitive instruction
+     */
+    private boolean isPrimitive(int loc) {
+        return 0 <= loc && loc < this.cp.length
+                && BugsWorldVMInterpreter.isPrimitiveInstructionByteCode(
+                        this.cp[loc]);
+    }
+
+    /**
+     * Appends code continuing execution at {@code target}: returning it if it
+     * is the address of a primitive instruction, branching to its block
+     * otherwise.
+     *
+     * @param target
+     *            the address
+     * @param starts
+     *            the instruction starts of cp
+     * @updates this
+     */
+    private void continueAt(int target, long[] starts) {
+        if (this.isPrimitive(target)) {
+            this.pushInt(target);
+            this.u1(IRETURN);
+        } else {
+            int from = this.length;
+            this.u1(GOTO_W);
+            if (0 <= target && target < this.cp.length
+                    && BugsWorldVMInterpreter.isInstructionStart(starts,
+                            target)) {
+                this.branch4(from, target);
+            } else {
+                this.branch4(from, NONE);
+            }
+        }
+    }
+
+    /**
+     * Appends the block of the instruction at {@code pc}.
+     *
+     * @param pc
+     *            the address of an instruction
+     * @param starts
+     *            the instruction starts of cp
+     * @param reachable
+     *            the states from which a primitive instruction is reachable,
+     *            by location
+     * @updates this
+     */
+    private void writeBlock(int pc, long[] starts, int[] reachable) {
+        this.blocks[pc] = this.length;
+        int byteCode = this.cp[pc];
+        if (BugsWorldVMInterpreter.isPrimitiveInstructionByteCode(byteCode)) {
+            this.pushInt(pc);
+            this.u1(IRETURN);
+        } else {
+            /*
+             * Give up at once for the states from which no primitive
+             * instruction is reachable
+             */
+            int dead = BugsWorldVMInterpreter.ALL_STATES_MASK & ~reachable[pc];
+            if (dead != 0) {
+                final int skipGotoW = 8;
+                this.pushInt(dead);
+                this.u1(ILOAD_2);
+                this.u1(ISHR);
+                this.u1(ICONST_1);
+                this.u1(IAND);
+                this.u1(IFEQ);
+                this.u2(skipGotoW);
+                int from = this.length;
+                this.u1(GOTO_W);
+                this.branch4(from, NONE);
+            }
+            int target = this.cp[pc + 1];
+            if (byteCode == Instruction.JUMP.byteCode()) {
+                this.continueAt(target, starts);
+            } else {
+                int mask = BugsWorldVMInterpreter.conditionMask(byteCode);
+                if (mask == BugsWorldVMInterpreter.ALL_STATES_MASK) {
+                    this.continueAt(pc + 2, starts);
+                } else if (mask == 0) {
+                    this.continueAt(target, starts);
+                } else {
+                    if (mask == BugsWorldVMInterpreter.RANDOM_MASK) {
+                        this.u1(ALOAD_3);
+                        this.u1(INVOKEINTERFACE);
+                        this.u2(NEXT_BOOLEAN);
+                        this.u1(1);
+                        this.u1(0);
+                    } else {
+                        this.pushInt(mask);
+                        this.u1(ILOAD_2);
+                        this.u1(ISHR);
+                        this.u1(ICONST_1);
+                        this.u1(IAND);
+                    }
+                    int ifeq = this.length;
+                    this.u1(IFEQ);
+                    this.u2(0);
+                    this.continueAt(pc + 2, starts);
+                    int offset = this.length - ifeq;
+                    this.code[ifeq + 1] = (byte) (offset >>> Byte.SIZE);
+                    this.code[ifeq + 2] = (byte) offset;
+                    this.continueAt(target, starts);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the code of {@code next}.
+     *
+     * @updates this
+     */
+    private void writeCode() {
+        long[] starts = BugsWorldVMInterpreter.instructionStarts(this.cp);
+        int[] reachable = BugsWorldVMInterpreter
+                .primitiveReachableStates(this.cp);
+        this.u1(ILOAD);
+        this.u1(1);
+        int tableswitch = this.length;
+        this.u1(TABLESWITCH);
+        while (this.length % Integer.BYTES != 0) {
+            this.u1(0);
+        }
+        this.branch4(tableswitch, NONE);
+        this.u4(0);
+        this.u4(this.cp.length - 1);
+        for (int pc = 0; pc < this.cp.length; pc++) {
+            if (BugsWorldVMInterpreter.isInstructionStart(starts, pc)) {
+                this.branch4(tableswitch, pc);
+            } else {
+                this.branch4(tableswitch, NONE);
+            }
+        }
+        for (int pc = 0; pc < this.cp.length; pc++) {
+            if (BugsWorldVMInterpreter.isInstructionStart(starts, pc)) {
+                this.writeBlock(pc, starts, reachable);
+            }
+        }
+        this.noneBlock = this.length;
+        this.u1(ICONST_M1);
+        this.u1(IRETURN);
+        for (int i = 0; i < this.fixupCount; i += 3) {
+            int label = this.fixups[i + 2];
+            int target;
+            if (label == NONE) {
+                target = this.noneBlock;
+            } else {
+                target = this.blocks[label];
+            }
+            this.patch4(this.fixups[i], target - this.fixups[i + 1]);
+        }
+    }
+
+    /**
+     * Writes a CONSTANT_Utf8 entry.
+     *
+     * @param out
+     *            the class file
+     * @param s
+     *            the string
+     * @throws IOException
+     *             never (out writes to memory)
+     */
+    private static void utf8(DataOutputStream out, String s)
+            throws IOException {
+        out.writeByte(CONSTANT_UTF8);
+        out.writeUTF(s);
+    }
+
+    /**
+     * Writes the class file.
+     *
+     * @param className
+     *            the name of the class
+     * @return the class file
+     * @throws IOException
+     *             never (the class file is written to memory)
+     */
+    private byte[] writeClass(String className) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(CLASS_MAGIC);
+        out.writeShort(0);
+        out.writeShort(CLASS_VERSION);
+        out.writeShort(CONSTANT_POOL_COUNT);
+        // 1, 2: this class
+        utf8(out, className);
+        out.writeByte(CONSTANT_CLASS);
+        out.writeShort(1);
+        // 3, 4: super class
+        utf8(out, CompiledBugProgram.class.getName());
+        out.writeByte(CONSTANT_CLASS);
+        out.writeShort(3);
+        // 5, 6, 7, 8: super constructor
+        utf8(out, "<init>");
+        utf8(out, "([I)V");
+        out.writeByte(CONSTANT_NAME_AND_TYPE);
+        out.writeShort(INIT_NAME);
+        out.writeShort(INIT_DESCRIPTOR);
+        out.writeByte(CONSTANT_METHODREF);
+        out.writeShort(SUPER_CLASS);
+        out.writeShort(7);
+        // 9, 10, 11: next and Code
+        utf8(out, "next");
+        utf8(out, "(IILjava/util/random/RandomGenerator;)I");
+        utf8(out, "Code");
+        // 12 .. 17: RandomGenerator.nextBoolean
+        utf8(out, "java/util/random/RandomGenerator");
+        out.writeByte(CONSTANT_CLASS);
+        out.writeShort(12);
+        utf8(out, "nextBoolean");
+        utf8(out, "()Z");
+        out.writeByte(CONSTANT_NAME_AND_TYPE);
+        out.writeShort(14);
+        out.writeShort(15);
+        out.writeByte(CONSTANT_INTERFACE_METHODREF);
+        out.writeShort(13);
+        out.writeShort(16);
+        out.writeShort(CLASS_ACCESS);
+        out.writeShort(THIS_CLASS);
+        out.writeShort(SUPER_CLASS);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(2);
+        /*
+         * Constructor: super(cp)
+         */
+        final byte[] init = { ALOAD_0, ALOAD_1, (byte) INVOKESPECIAL, 0,
+                SUPER_INIT, (byte) RETURN };
+        out.writeShort(METHOD_ACCESS);
+        out.writeShort(INIT_NAME);
+        out.writeShort(INIT_DESCRIPTOR);
+        out.writeShort(1);
+        out.writeShort(CODE_NAME);
+        out.writeInt(2 + 2 + 4 + init.length + 2 + 2);
+        out.writeShort(2);
+        out.writeShort(2);
+        out.writeInt(init.length);
+        out.write(init);
+        out.writeShort(0);
+        out.writeShort(0);
+        /*
+         * next(pc, state, rnd)
+         */
+        out.writeShort(METHOD_ACCESS);
+        out.writeShort(NEXT_NAME);
+        out.writeShort(NEXT_DESCRIPTOR);
+        out.writeShort(1);
+        out.writeShort(CODE_NAME);
+        out.writeInt(2 + 2 + 4 + this.length + 2 + 2);
+        out.writeShort(NEXT_MAX_STACK);
+        out.writeShort(NEXT_MAX_LOCALS);
+        out.writeInt(this.length);
+        out.write(this.code, 0, this.length);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /*
+     * Package-private members ------------------------------------------------
+     */
+
+    /**
+     * Returns the class file of a subclass of {@code CompiledBugProgram}
+     * named {@code className} running {@code cp}, or {@code null} if
+     * {@code cp} is too large to be translated into one JVM method.
+     *
+     * @param cp
+     *            the compiled program
+     * @param className
+     *            the name of the class (in the package of
+     *            {@code CompiledBugProgram})
+     * @return the class file, or null
+     * @requires [cp is a valid compiled BL program]
+     * @ensures <pre>
+     * write = null  or
+     * [write is the class file of a subclass of CompiledBugProgram with a
+     *  public constructor taking cp whose next(pc, state, rnd) translates cp]
+     * </pre>
+     */
+    static byte[] write(int[] cp, String className) {
+        assert cp != null : "Violation of: cp is not null";
+        assert className != null : "Violation of: className is not null";
+
+        byte[] result = null;
+        if ((long) cp.length * Integer.BYTES < MAX_CODE_LENGTH) {
+            BugProgramClassWriter writer = new BugProgramClassWriter(cp);
+            writer.writeCode();
+            if (writer.length <= MAX_CODE_LENGTH) {
+                try {
+                    result = writer.writeClass(className);
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,657 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+import components.program.Program.Instruction;
+
+/**
+ * A BugsWorld grid with bugs running linked BL programs.
+ *
+ * <p>
+ * The world owns the position, direction, species, and program counter of
+ * every bug. The program of a bug is {@code programs[species]}. Each
+ * {@code tick} computes what every bug sees, runs the interpreter to find the
+ * primitive instruction each bug executes, and applies its effect. All
+ * decisions are made on the state of the world at the beginning of the tick,
+ * and conflicts are resolved in favor of the bug with the smallest id:
+ * <ul>
+ * <li>a MOVE succeeds if the cell ahead was empty and no bug with a smaller id
+ * moves to the same cell;</li>
+ * <li>an INFECT succeeds if the cell ahead held an enemy and no bug with a
+ * smaller id infects the same bug; the infected bug takes the infecting bug's
+ * species, restarts its program at address 0, and does nothing else in that
+ * tick.</li>
+ * </ul>
+ * Hence the result of a tick does not depend on how many threads compute it.
+ * Every bug draws its {@code random} conditions from its own generator, split
+ * off a root generator when the bug is added, so a world constructed with a
+ * seed replays exactly.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class BugsWorld {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Side of the square tiles the grid is split into when sensing in
+     * parallel.
+     */
+    private static final int TILE_SIZE = 64;
+
+    /**
+     * Number of bugs stepped by one task.
+     */
+    private static final int SHARD_SIZE = 1024;
+
+    /**
+     * Marker for "no bug" in the grid and for a wall ahead of a bug.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * Marker for an unclaimed cell.
+     */
+    private static final int UNCLAIMED = Integer.MAX_VALUE;
+
+    /**
+     * Initial capacity of the bug arrays.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Width of the grid.
+     */
+    private final int width;
+
+    /**
+     * Height of the grid.
+     */
+    private final int height;
+
+    /**
+     * Whether the grid wraps around at its edges (otherwise it is surrounded
+     * by walls).
+     */
+    private final boolean torus;
+
+    /**
+     * The linked program of each species.
+     */
+    private final LinkedProgram[] programs;
+
+    /**
+     * The pool on which ticks are computed.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Generator from which the generator of each new bug is split.
+     */
+    private final SplittableRandom root;
+
+    /**
+     * Id of the bug in each cell ({@code NONE} if empty), indexed by
+     * {@code y * width + x}.
+     */
+    private final int[] grid;
+
+    /**
+     * Smallest id of a bug moving to each cell in the current tick.
+     */
+    private final AtomicIntegerArray moveClaims;
+
+    /**
+     * Smallest id of a bug infecting the bug in each cell in the current tick.
+     */
+    private final AtomicIntegerArray infectClaims;
+
+    /**
+     * Number of bugs.
+     */
+    private int bugs;
+
+    /**
+     * Cell index of each bug.
+     */
+    private int[] cells;
+
+    /**
+     * Direction of each bug.
+     */
+    private int[] directions;
+
+    /**
+     * Species of each bug.
+     */
+    private int[] species;
+
+    /**
+     * Program counter of each bug.
+     */
+    private int[] pcs;
+
+    /**
+     * Source of the random conditions of each bug.
+     */
+    private SplittableRandom[] randoms;
+
+    /**
+     * Ordinal of the {@code CellState} each bug sees in the current tick.
+     */
+    private byte[] cellStates;
+
+    /**
+     * Primitive byte code each bug executes in the current tick.
+     */
+    private int[] primitives;
+
+    /**
+     * Cell index ahead of each bug in the current tick ({@code NONE} if it is
+     * a wall).
+     */
+    private int[] aheads;
+
+    /**
+     * Number of ticks computed so far.
+     */
+    private long ticks;
+
+    /**
+     * Returns the index of the cell ahead of cell {@code cell} in direction
+     * {@code direction}, or {@code NONE} if it is outside a walled grid.
+     *
+     * @param cell
+     *            the cell index
+     * @param direction
+     *            the direction
+     * @return the index of the cell ahead
+     */
+    private int ahead(int cell, int direction) {
+        int x = cell % this.width;
+        int y = cell / this.width;
+        switch (direction) {
+            case NORTH: {
+                y--;
+                break;
+            }
+            case EAST: {
+                x++;
+                break;
+            }
+            case SOUTH: {
+                y++;
+                break;
+            }
+            default: { // case WEST
+                x--;
+                break;
+            }
+        }
+        int result;
+        if (this.torus) {
+            x = Math.floorMod(x, this.width);
+            y = Math.floorMod(y, this.height);
+            result = y * this.width + x;
+        } else if (x < 0 || x >= this.width || y < 0 || y >= this.height) {
+            result = NONE;
+        } else {
+            result = y * this.width + x;
+        }
+        return result;
+    }
+
+    /**
+     * Computes what the bugs in the given tile see.
+     *
+     * @param tile
+     *            the tile index
+     * @updates this.cellStates, this.aheads
+     */
+    private void senseTile(int tile) {
+        int tilesPerRow = (this.width + TILE_SIZE - 1) / TILE_SIZE;
+        int x0 = (tile % tilesPerRow) * TILE_SIZE;
+        int y0 = (tile / tilesPerRow) * TILE_SIZE;
+        int x1 = Math.min(this.width, x0 + TILE_SIZE);
+        int y1 = Math.min(this.height, y0 + TILE_SIZE);
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                int bug = this.grid[y * this.width + x];
+                if (bug != NONE) {
+                    int cell = this.ahead(y * this.width + x,
+                            this.directions[bug]);
+                    BugsWorldVMInterpreter.CellState seen;
+                    if (cell == NONE) {
+                        seen = BugsWorldVMInterpreter.CellState.WALL;
+                    } else if (this.grid[cell] == NONE) {
+                        seen = BugsWorldVMInterpreter.CellState.EMPTY;
+                    } else if (this.species[this.grid[cell]] == this.species[bug]) {
+                        seen = BugsWorldVMInterpreter.CellState.FRIEND;
+                    } else {
+                        seen = BugsWorldVMInterpreter.CellState.ENEMY;
+                    }
+                    this.aheads[bug] = cell;
+                    this.cellStates[bug] = (byte) seen.ordinal();
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the claim of bug {@code bug} on the cell ahead, if its primitive
+     * instruction is a MOVE to an empty cell or an INFECT of an enemy.
+     *
+     * @param bug
+     *            the bug id
+     * @updates this.moveClaims, this.infectClaims
+     */
+    private void claim(int bug) {
+        int cell = this.aheads[bug];
+        int state = this.cellStates[bug];
+        if (this.primitives[bug] == Instruction.MOVE.byteCode()
+                && state == BugsWorldVMInterpreter.CellState.EMPTY.ordinal()) {
+            this.moveClaims.accumulateAndGet(cell, bug, Math::min);
+        } else if (this.primitives[bug] == Instruction.INFECT.byteCode()
+                && state == BugsWorldVMInterpreter.CellState.ENEMY.ordinal()) {
+            this.infectClaims.accumulateAndGet(cell, bug, Math::min);
+        }
+    }
+
+    /**
+     * Applies the effect of the primitive instruction of bug {@code bug},
+     * writing its new species (if infected) into {@code newSpecies}.
+     *
+     * @param bug
+     *            the bug id
+     * @param newSpecies
+     *            the species of each bug after the tick
+     * @updates this, newSpecies
+     */
+    private void apply(int bug, int[] newSpecies) {
+        int infector = this.infectClaims.get(this.cells[bug]);
+        int primitive = this.primitives[bug];
+        if (infector != UNCLAIMED) {
+            newSpecies[bug] = this.species[infector];
+            this.pcs[bug] = 0;
+        } else if (primitive == Instruction.MOVE.byteCode()) {
+            int cell = this.aheads[bug];
+            if (cell != NONE && this.moveClaims.get(cell) == bug) {
+                this.grid[this.cells[bug]] = NONE;
+                this.grid[cell] = bug;
+                this.cells[bug] = cell;
+            }
+        } else if (primitive == Instruction.TURNLEFT.byteCode()) {
+            this.directions[bug] = (this.directions[bug] + WEST) % DIRECTIONS;
+        } else if (primitive == Instruction.TURNRIGHT.byteCode()) {
+            this.directions[bug] = (this.directions[bug] + EAST) % DIRECTIONS;
+        }
+    }
+
+    /**
+     * Clears the claims made by bug {@code bug}.
+     *
+     * @param bug
+     *            the bug id
+     * @updates this.moveClaims, this.infectClaims
+     */
+    private void clearClaims(int bug) {
+        int cell = this.aheads[bug];
+        if (cell != NONE) {
+            this.moveClaims.set(cell, UNCLAIMED);
+            this.infectClaims.set(cell, UNCLAIMED);
+        }
+    }
+
+    /**
+     * Computes one tick.
+     *
+     * @updates this
+     */
+    private void computeTick() {
+        int tilesPerRow = (this.width + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesPerColumn = (this.height + TILE_SIZE - 1) / TILE_SIZE;
+        int[] newSpecies = Arrays.copyOf(this.species, this.bugs);
+        IntStream.range(0, tilesPerRow * tilesPerColumn).parallel()
+                .forEach(this::senseTile);
+        int shards = (this.bugs + SHARD_SIZE - 1) / SHARD_SIZE;
+        IntStream.range(0, shards).parallel()
+                .forEach(shard -> BugsWorldVMBatch.step(this.programs,
+                        this.species, this.pcs, this.cellStates,
+                        this.primitives, this.randoms, shard * SHARD_SIZE,
+                        Math.min(this.bugs, (shard + 1) * SHARD_SIZE)));
+        IntStream.range(0, this.bugs).parallel().forEach(this::claim);
+        IntStream.range(0, this.bugs).parallel()
+                .forEach(bug -> this.apply(bug, newSpecies));
+        IntStream.range(0, this.bugs).parallel().forEach(this::clearClaims);
+        System.arraycopy(newSpecies, 0, this.species, 0, this.bugs);
+        this.ticks++;
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Direction facing up (decreasing y).
+     */
+    public static final int NORTH = 0;
+
+    /**
+     * Direction facing right (increasing x).
+     */
+    public static final int EAST = 1;
+
+    /**
+     * Direction facing down (increasing y).
+     */
+    public static final int SOUTH = 2;
+
+    /**
+     * Direction facing left (decreasing x).
+     */
+    public static final int WEST = 3;
+
+    /**
+     * Number of directions.
+     */
+    public static final int DIRECTIONS = 4;
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructs an empty world computed on the common fork-join pool.
+     *
+     * @param width
+     *            the width of the grid
+     * @param height
+     *            the height of the grid
+     * @param torus
+     *            whether the grid wraps around at its edges
+     * @param programs
+     *            the linked program of each species
+     * @requires width > 0 and height > 0 and |programs| > 0
+     * @ensures this = [empty width x height world with the given programs]
+     */
+    public BugsWorld(int width, int height, boolean torus,
+            LinkedProgram[] programs) {
+        this(width, height, torus, programs, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs an empty world computed on the given fork-join pool.
+     *
+     * @param width
+     *            the width of the grid
+     * @param height
+     *            the height of the grid
+     * @param torus
+     *            whether the grid wraps around at its edges
+     * @param programs
+     *            the linked program of each species
+     * @param pool
+     *            the pool on which ticks are computed
+     * @requires width > 0 and height > 0 and |programs| > 0
+     * @ensures this = [empty width x height world with the given programs]
+     */
+    public BugsWorld(int width, int height, boolean torus,
+            LinkedProgram[] programs, ForkJoinPool pool) {
+        this(width, height, torus, programs, pool, new SplittableRandom());
+    }
+
+    /**
+     * Constructs an empty world computed on the given fork-join pool, whose
+     * bugs draw their random conditions from generators derived from the
+     * given seed.
+     *
+     * @param width
+     *            the width of the grid
+     * @param height
+     *            the height of the grid
+     * @param torus
+     *            whether the grid wraps around at its edges
+     * @param programs
+     *            the linked program of each species
+     * @param pool
+     *            the pool on which ticks are computed
+     * @param seed
+     *            the seed of the random conditions
+     * @requires width > 0 and height > 0 and |programs| > 0
+     * @ensures this = [empty width x height world with the given programs]
+     */
+    public BugsWorld(int width, int height, boolean torus,
+            LinkedProgram[] programs, ForkJoinPool pool, long seed) {
+        this(width, height, torus, programs, pool, new SplittableRandom(seed));
+    }
+
+    /**
+     * Constructs an empty world computed on the given fork-join pool, whose
+     * bugs draw their random conditions from generators split off
+     * {@code root}.
+     *
+     * @param width
+     *            the width of the grid
+     * @param height
+     *            the height of the grid
+     * @param torus
+     *            whether the grid wraps around at its edges
+     * @param programs
+     *            the linked program of each species
+     * @param pool
+     *            the pool on which ticks are computed
+     * @param root
+     *            the generator from which bug generators are split
+     * @requires width > 0 and height > 0 and |programs| > 0
+     * @ensures this = [empty width x height world with the given programs]
+     */
+    private BugsWorld(int width, int height, boolean torus,
+            LinkedProgram[] programs, ForkJoinPool pool,
+            SplittableRandom root) {
+        assert width > 0 : "Violation of: width > 0";
+        assert height > 0 : "Violation of: height > 0";
+        assert programs != null : "Violation of: programs is not null";
+        assert programs.length > 0 : "Violation of: |programs| > 0";
+        assert pool != null : "Violation of: pool is not null";
+        this.width = width;
+        this.height = height;
+        this.torus = torus;
+        this.programs = programs.clone();
+        this.pool = pool;
+        this.root = root;
+        this.grid = new int[width * height];
+        Arrays.fill(this.grid, NONE);
+        this.moveClaims = new AtomicIntegerArray(width * height);
+        this.infectClaims = new AtomicIntegerArray(width * height);
+        for (int i = 0; i < width * height; i++) {
+            this.moveClaims.set(i, UNCLAIMED);
+            this.infectClaims.set(i, UNCLAIMED);
+        }
+        this.bugs = 0;
+        this.cells = new int[INITIAL_CAPACITY];
+        this.directions = new int[INITIAL_CAPACITY];
+        this.species = new int[INITIAL_CAPACITY];
+        this.pcs = new int[INITIAL_CAPACITY];
+        this.randoms = new SplittableRandom[INITIAL_CAPACITY];
+        this.cellStates = new byte[INITIAL_CAPACITY];
+        this.primitives = new int[INITIAL_CAPACITY];
+        this.aheads = new int[INITIAL_CAPACITY];
+        this.ticks = 0;
+    }
+
+    /*
+     * Public methods ---------------------------------------------------------
+     */
+
+    /**
+     * Adds a bug of the given species at the given position, facing the given
+     * direction, and returns its id.
+     *
+     * @param x
+     *            the column of the bug
+     * @param y
+     *            the row of the bug
+     * @param direction
+     *            the direction of the bug
+     * @param bugSpecies
+     *            the species of the bug
+     * @return the id of the new bug
+     * @updates this
+     * @requires <pre>
+     * 0 <= x < width and 0 <= y < height and [cell (x, y) is empty]  and
+     * 0 <= direction < DIRECTIONS  and  0 <= bugSpecies < |programs|
+     * </pre>
+     * @ensures addBug = [number of bugs before the call]
+     */
+    public int addBug(int x, int y, int direction, int bugSpecies) {
+        assert 0 <= x && x < this.width : "Violation of: 0 <= x < width";
+        assert 0 <= y && y < this.height : "Violation of: 0 <= y < height";
+        assert this.grid[y * this.width
+                + x] == NONE : "Violation of: cell (x, y) is empty";
+        assert 0 <= direction
+                && direction < DIRECTIONS : "Violation of: 0 <= direction < 4";
+        assert 0 <= bugSpecies
+                && bugSpecies < this.programs.length : ""
+                        + "Violation of: 0 <= bugSpecies < |programs|";
+
+        if (this.bugs == this.cells.length) {
+            int capacity = 2 * this.cells.length;
+            this.cells = Arrays.copyOf(this.cells, capacity);
+            this.directions = Arrays.copyOf(this.directions, capacity);
+            this.species = Arrays.copyOf(this.species, capacity);
+            this.pcs = Arrays.copyOf(this.pcs, capacity);
+            this.randoms = Arrays.copyOf(this.randoms, capacity);
+            this.cellStates = Arrays.copyOf(this.cellStates, capacity);
+            this.primitives = Arrays.copyOf(this.primitives, capacity);
+            this.aheads = Arrays.copyOf(this.aheads, capacity);
+        }
+        int bug = this.bugs;
+        this.cells[bug] = y * this.width + x;
+        this.directions[bug] = direction;
+        this.species[bug] = bugSpecies;
+        this.pcs[bug] = 0;
+        this.randoms[bug] = this.root.split();
+        this.grid[y * this.width + x] = bug;
+        this.bugs++;
+        return bug;
+    }
+
+    /**
+     * Computes one tick of the simulation.
+     *
+     * @updates this
+     * @ensures <pre>
+     * [every bug has executed its next primitive instruction, with conflicts
+     *  resolved as described in the class comment]
+     * </pre>
+     */
+    public void tick() {
+        this.pool.submit(this::computeTick).join();
+    }
+
+    /**
+     * Returns the number of ticks computed so far.
+     *
+     * @return the number of ticks
+     */
+    public long ticks() {
+        return this.ticks;
+    }
+
+    /**
+     * Returns the number of bugs.
+     *
+     * @return the number of bugs
+     */
+    public int bugCount() {
+        return this.bugs;
+    }
+
+    /**
+     * Returns the column of bug {@code bug}.
+     *
+     * @param bug
+     *            the bug id
+     * @return the column of the bug
+     * @requires 0 <= bug < bugCount()
+     */
+    public int x(int bug) {
+        assert 0 <= bug && bug < this.bugs : "Violation of: 0 <= bug < bugs";
+        return this.cells[bug] % this.width;
+    }
+
+    /**
+     * Returns the row of bug {@code bug}.
+     *
+     * @param bug
+     *            the bug id
+     * @return the row of the bug
+     * @requires 0 <= bug < bugCount()
+     */
+    public int y(int bug) {
+        assert 0 <= bug && bug < this.bugs : "Violation of: 0 <= bug < bugs";
+        return this.cells[bug] / this.width;
+    }
+
+    /**
+     * Returns the direction of bug {@code bug}.
+     *
+     * @param bug
+     *            the bug id
+     * @return the direction of the bug
+     * @requires 0 <= bug < bugCount()
+     */
+    public int direction(int bug) {
+        assert 0 <= bug && bug < this.bugs : "Violation of: 0 <= bug < bugs";
+        return this.directions[bug];
+    }
+
+    /**
+     * Returns the species of bug {@code bug}.
+     *
+     * @param bug
+     *            the bug id
+     * @return the species of the bug
+     * @requires 0 <= bug < bugCount()
+     */
+    public int species(int bug) {
+        assert 0 <= bug && bug < this.bugs : "Violation of: 0 <= bug < bugs";
+        return this.species[bug];
+    }
+
+    /**
+     * Returns the program counter of bug {@code bug}.
+     *
+     * @param bug
+     *            the bug id
+     * @return the program counter of the bug
+     * @requires 0 <= bug < bugCount()
+     */
+    public int pc(int bug) {
+        assert 0 <= bug && bug < this.bugs : "Violation of: 0 <= bug < bugs";
+        return this.pcs[bug];
+    }
+
+    /**
+     * Returns the id of the bug at the given position, or -1 if the cell is
+     * empty.
+     *
+     * @param x
+     *            the column
+     * @param y
+     *            the row
+     * @return the id of the bug at (x, y), or -1
+     * @requires 0 <= x < width and 0 <= y < height
+     */
+    public int bugAt(int x, int y) {
+        assert 0 <= x && x < this.width : "Violation of: 0 <= x < width";
+        assert 0 <= y && y < this.height : "Violation of: 0 <= y < height";
+        return this.grid[y * this.width + x];
+    }
+
+}
@@ -0,0 +1,261 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
+
+import components.program.Program.Instruction;
+
+/**
+ * Batch stepping of many bugs sharing a small set of linked BL programs.
+ *
+ * <p>
+ * Bug state is kept in struct-of-arrays form: bug {@code i} runs program
+ * {@code programs[programIds[i]]}, its program counter is {@code pcs[i]}, and
+ * what it sees is {@code cellStates[i]} (the ordinal of a {@code CellState}:
+ * EMPTY=0, WALL=1, FRIEND=2, ENEMY=3). One step resolves, for each bug, the
+ * next primitive instruction, reports its byte code in {@code primitives[i]}
+ * and moves the program counter past it. The per-bug loop allocates nothing,
+ * and disjoint index ranges can be stepped concurrently. Random conditions are
+ * drawn from the stepping thread's {@code ThreadLocalRandom}, or from a
+ * per-bug {@code RandomGenerator} when one is given, in which case the results
+ * do not depend on how the bugs are split among threads.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class BugsWorldVMBatch {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of bugs stepped by one task in {@code stepParallel}.
+     */
+    private static final int SHARD_SIZE = 4096;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private BugsWorldVMBatch() {
+    }
+
+    /**
+     * Advances bug {@code i} by one primitive instruction.
+     *
+     * @param lp
+     *            the linked program of the bug
+     * @param i
+     *            the index of the bug
+     * @param pcs
+     *            the program counter of each bug
+     * @param cellStates
+     *            the ordinal of the {@code CellState} each bug sees
+     * @param primitives
+     *            the byte code of the primitive instruction each bug executes
+     * @param rnd
+     *            the source of the random conditions
+     * @updates pcs[i], primitives[i], rnd
+     * @requires [the requires clause of step holds for i]
+     * @ensures [the ensures clause of step holds for i]
+     */
+    private static void stepBug(LinkedProgram lp, int i, int[] pcs,
+            byte[] cellStates, int[] primitives, RandomGenerator rnd) {
+        int loc = lp.nextPrimitiveInstructionAddress(cellStates[i], pcs[i],
+                rnd);
+        if (loc == NO_PRIMITIVE) {
+            primitives[i] = NO_PRIMITIVE;
+        } else {
+            int byteCode = lp.byteCode(loc);
+            primitives[i] = byteCode;
+            if (byteCode == Instruction.HALT.byteCode()) {
+                pcs[i] = loc;
+            } else {
+                pcs[i] = loc + 1;
+            }
+        }
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Value reported in {@code primitives[i]} for a bug from whose program
+     * counter no primitive instruction is reachable; the bug's program counter
+     * is left unchanged.
+     */
+    public static final int NO_PRIMITIVE = LinkedProgram.NO_PRIMITIVE;
+
+    /**
+     * Advances bugs {@code from} (inclusive) to {@code to} (exclusive) by one
+     * primitive instruction.
+     *
+     * @param programs
+     *            the linked programs shared by the bugs
+     * @param programIds
+     *            the index in {@code programs} of the program of each bug
+     * @param pcs
+     *            the program counter of each bug
+     * @param cellStates
+     *            the ordinal of the {@code CellState} each bug sees
+     * @param primitives
+     *            the byte code of the primitive instruction each bug executes
+     * @param from
+     *            the index of the first bug to advance
+     * @param to
+     *            one more than the index of the last bug to advance
+     * @updates pcs, primitives
+     * @requires <pre>
+     * 0 <= from <= to <= |pcs|  and
+     * |programIds| = |pcs| = |cellStates| = |primitives|  and
+     * [for every i in [from, to), programIds[i] is an index in programs,
+     *  pcs[i] is the location of an instruction byte code in that program
+     *  and cellStates[i] is the ordinal of a CellState]
+     * </pre>
+     * @ensures <pre>
+     * for every i in [from, to):
+     *  if [a primitive instruction is reachable from #pcs[i]] then
+     *   primitives[i] = [byte code of the next primitive instruction at
+     *                    address a]  and
+     *   pcs[i] = [a if that instruction is HALT, else a + 1]
+     *  else
+     *   primitives[i] = NO_PRIMITIVE  and  pcs[i] = #pcs[i]
+     * </pre>
+     */
+    public static void step(LinkedProgram[] programs, int[] programIds,
+            int[] pcs, byte[] cellStates, int[] primitives, int from,
+            int to) {
+        assert programs != null : "Violation of: programs is not null";
+        assert programIds != null : "Violation of: programIds is not null";
+        assert pcs != null : "Violation of: pcs is not null";
+        assert cellStates != null : "Violation of: cellStates is not null";
+        assert primitives != null : "Violation of: primitives is not null";
+        assert 0 <= from && from <= to
+                && to <= pcs.length : "Violation of: 0 <= from <= to <= |pcs|";
+
+        RandomGenerator rnd = ThreadLocalRandom.current();
+        for (int i = from; i < to; i++) {
+            stepBug(programs[programIds[i]], i, pcs, cellStates, primitives,
+                    rnd);
+        }
+    }
+
+    /**
+     * Same as {@code step(programs, programIds, pcs, cellStates, primitives,
+     * from, to)}, drawing the random conditions of bug {@code i} from
+     * {@code randoms[i]}.
+     *
+     * @param programs
+     *            the linked programs shared by the bugs
+     * @param programIds
+     *            the index in {@code programs} of the program of each bug
+     * @param pcs
+     *            the program counter of each bug
+     * @param cellStates
+     *            the ordinal of the {@code CellState} each bug sees
+     * @param primitives
+     *            the byte code of the primitive instruction each bug executes
+     * @param randoms
+     *            the source of the random conditions of each bug
+     * @param from
+     *            the index of the first bug to advance
+     * @param to
+     *            one more than the index of the last bug to advance
+     * @updates pcs, primitives, randoms
+     * @requires <pre>
+     * [the requires clause of step holds]  and
+     * |randoms| = |pcs|  and
+     * [for every i in [from, to), randoms[i] is not null]
+     * </pre>
+     * @ensures [the ensures clause of step holds]
+     */
+    public static void step(LinkedProgram[] programs, int[] programIds,
+            int[] pcs, byte[] cellStates, int[] primitives,
+            RandomGenerator[] randoms, int from, int to) {
+        assert programs != null : "Violation of: programs is not null";
+        assert programIds != null : "Violation of: programIds is not null";
+        assert pcs != null : "Violation of: pcs is not null";
+        assert cellStates != null : "Violation of: cellStates is not null";
+        assert primitives != null : "Violation of: primitives is not null";
+        assert randoms != null : "Violation of: randoms is not null";
+        assert 0 <= from && from <= to
+                && to <= pcs.length : "Violation of: 0 <= from <= to <= |pcs|";
+
+        for (int i = from; i < to; i++) {
+            stepBug(programs[programIds[i]], i, pcs, cellStates, primitives,
+                    randoms[i]);
+        }
+    }
+
+    /**
+     * Advances all bugs by one primitive instruction, splitting the bugs into
+     * shards stepped in parallel on the common fork-join pool.
+     *
+     * @param programs
+     *            the linked programs shared by the bugs
+     * @param programIds
+     *            the index in {@code programs} of the program of each bug
+     * @param pcs
+     *            the program counter of each bug
+     * @param cellStates
+     *            the ordinal of the {@code CellState} each bug sees
+     * @param primitives
+     *            the byte code of the primitive instruction each bug executes
+     * @updates pcs, primitives
+     * @requires <pre>
+     * [the requires clause of step holds for from = 0 and to = |pcs|]
+     * </pre>
+     * @ensures <pre>
+     * [the ensures clause of step holds for from = 0 and to = |pcs|]
+     * </pre>
+     */
+    public static void stepParallel(LinkedProgram[] programs,
+            int[] programIds, int[] pcs, byte[] cellStates,
+            int[] primitives) {
+        assert pcs != null : "Violation of: pcs is not null";
+
+        int shards = (pcs.length + SHARD_SIZE - 1) / SHARD_SIZE;
+        IntStream.range(0, shards).parallel().forEach(shard -> step(programs,
+                programIds, pcs, cellStates, primitives, shard * SHARD_SIZE,
+                Math.min(pcs.length, (shard + 1) * SHARD_SIZE)));
+    }
+
+    /**
+     * Same as {@code stepParallel(programs, programIds, pcs, cellStates,
+     * primitives)}, drawing the random conditions of bug {@code i} from
+     * {@code randoms[i]}, so the result does not depend on the sharding.
+     *
+     * @param programs
+     *            the linked programs shared by the bugs
+     * @param programIds
+     *            the index in {@code programs} of the program of each bug
+     * @param pcs
+     *            the program counter of each bug
+     * @param cellStates
+     *            the ordinal of the {@code CellState} each bug sees
+     * @param primitives
+     *            the byte code of the primitive instruction each bug executes
+     * @param randoms
+     *            the source of the random conditions of each bug
+     * @updates pcs, primitives, randoms
+     * @requires <pre>
+     * [the requires clause of step with randoms holds for from = 0 and
+     *  to = |pcs|]
+     * </pre>
+     * @ensures <pre>
+     * [the ensures clause of step holds for from = 0 and to = |pcs|]
+     * </pre>
+     */
+    public static void stepParallel(LinkedProgram[] programs,
+            int[] programIds, int[] pcs, byte[] cellStates, int[] primitives,
+            RandomGenerator[] randoms) {
+        assert pcs != null : "Violation of: pcs is not null";
+
+        int shards = (pcs.length + SHARD_SIZE - 1) / SHARD_SIZE;
+        IntStream.range(0, shards).parallel().forEach(shard -> step(programs,
+                programIds, pcs, cellStates, primitives, randoms,
+                shard * SHARD_SIZE,
+                Math.min(pcs.length, (shard + 1) * SHARD_SIZE)));
+    }
+
+}
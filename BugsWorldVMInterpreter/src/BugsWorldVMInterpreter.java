@@ -1,3 +1,7 @@
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
 import components.program.Program;
 import components.program.Program.Instruction;
 import components.program.Program1;
@@ -26,6 +30,125 @@ public final class BugsWorldVMInterpreter {
         EMPTY, WALL, FRIEND, ENEMY;
     }
 
+    /**
+     * Opcode class of primitive instructions.
+     */
+    private static final byte PRIMITIVE = 0;
+
+    /**
+     * Opcode class of the unconditional jump.
+     */
+    private static final byte JUMP = 1;
+
+    /**
+     * Opcode class of conditional jumps.
+     */
+    private static final byte CONDITIONAL_JUMP = 2;
+
+    /**
+     * Opcode class of integers that are not byte codes.
+     */
+    private static final byte NOT_AN_INSTRUCTION = 3;
+
+    /**
+     * Condition mask of conditions true whatever the bug sees.
+     */
+    static final byte ALL_STATES_MASK = (1 << 4) - 1;
+
+    /**
+     * Condition mask of the random condition (not a set of cell states).
+     */
+    static final byte RANDOM_MASK = 1 << 4;
+
+    /**
+     * Opcode class of each byte code.
+     */
+    private static final byte[] OPCODE_CLASS;
+
+    /**
+     * Condition mask of each conditional jump byte code: bit
+     * {@code wbs.ordinal()} is set iff the condition holds when the bug sees
+     * {@code wbs}; {@code RANDOM_MASK} for the random condition.
+     */
+    private static final byte[] CONDITION_MASK;
+
+    static {
+        int size = 0;
+        for (Instruction i : Instruction.values()) {
+            size = Math.max(size, i.byteCode() + 1);
+        }
+        OPCODE_CLASS = new byte[size];
+        CONDITION_MASK = new byte[size];
+        for (int b = 0; b < size; b++) {
+            OPCODE_CLASS[b] = NOT_AN_INSTRUCTION;
+        }
+        for (Instruction i : Instruction.values()) {
+            byte opcodeClass = CONDITIONAL_JUMP;
+            int mask = 0;
+            switch (i) {
+                case MOVE:
+                case TURNLEFT:
+                case TURNRIGHT:
+                case INFECT:
+                case SKIP:
+                case HALT: {
+                    opcodeClass = PRIMITIVE;
+                    break;
+                }
+                case JUMP: {
+                    opcodeClass = JUMP;
+                    break;
+                }
+                case JUMP_IF_NOT_NEXT_IS_EMPTY: {
+                    mask = cellStateMask(CellState.EMPTY);
+                    break;
+                }
+                case JUMP_IF_NOT_NEXT_IS_NOT_EMPTY: {
+                    mask = ALL_STATES_MASK ^ cellStateMask(CellState.EMPTY);
+                    break;
+                }
+                case JUMP_IF_NOT_NEXT_IS_WALL: {
+                    mask = cellStateMask(CellState.WALL);
+                    break;
+                }
+                case JUMP_IF_NOT_NEXT_IS_NOT_WALL: {
+                    mask = ALL_STATES_MASK ^ cellStateMask(CellState.WALL);
+                    break;
+                }
+                case JUMP_IF_NOT_NEXT_IS_FRIEND: {
+                    mask = cellStateMask(CellState.FRIEND);
+                    break;
+                }
+                case JUMP_IF_NOT_NEXT_IS_NOT_FRIEND: {
+                    mask = ALL_STATES_MASK ^ cellStateMask(CellState.FRIEND);
+                    break;
+                }
+                case JUMP_IF_NOT_NEXT_IS_ENEMY: {
+                    mask = cellStateMask(CellState.ENEMY);
+                    break;
+                }
+                case JUMP_IF_NOT_NEXT_IS_NOT_ENEMY: {
+                    mask = ALL_STATES_MASK ^ cellStateMask(CellState.ENEMY);
+                    break;
+                }
+                case JUMP_IF_NOT_RANDOM: {
+                    mask = RANDOM_MASK;
+                    break;
+                }
+                case JUMP_IF_NOT_TRUE: {
+                    mask = ALL_STATES_MASK;
+                    break;
+                }
+                default: {
+                    opcodeClass = NOT_AN_INSTRUCTION;
+                    break;
+                }
+            }
+            OPCODE_CLASS[i.byteCode()] = opcodeClass;
+            CONDITION_MASK[i.byteCode()] = (byte) mask;
+        }
+    }
+
     /**
      * Private constructor so this utility class cannot be instantiated.
      */
@@ -46,22 +169,26 @@ public final class BugsWorldVMInterpreter {
      * @requires in.is_open and out.is_open
      * @ensures <pre>
      * [prompts the user to enter a file name, inputs it, and loads a
-     *  compiled BL program from the corresponding file and returns the
-     *  compiled program]
+     *  compiled BL program, in the binary or text format, from the
+     *  corresponding file and returns the compiled program]
      * </pre>
      */
     private static int[] loadProgram(SimpleReader in, SimpleWriter out) {
-        int[] cp;
         out.print("Enter compiled BL program file name: ");
         String fileName = in.nextLine();
-        SimpleReader file = new SimpleReader1L(fileName);
-        int length = file.nextInteger();
-        cp = new int[length];
-        for (int i = 0; i < length; i++) {
-            cp[i] = file.nextInteger();
-        }
-        file.close();
-        return cp;
+        return CompiledProgramLoader.load(fileName);
+    }
+
+    /**
+     * Returns the condition mask bit of the given {@code CellState}.
+     *
+     * @param wbs
+     *            the {@code CellState}
+     * @return the condition mask bit of wbs
+     * @ensures cellStateMask = 2^(wbs.ordinal())
+     */
+    private static int cellStateMask(CellState wbs) {
+        return 1 << wbs.ordinal();
     }
 
     /**
@@ -78,13 +205,30 @@ public final class BugsWorldVMInterpreter {
      *  [true iff byteCode is the byte code of a primitive instruction]
      * </pre>
      */
-    private static boolean isPrimitiveInstructionByteCode(int byteCode) {
-        return (byteCode == Instruction.MOVE.byteCode())
-                || (byteCode == Instruction.TURNLEFT.byteCode())
-                || (byteCode == Instruction.TURNRIGHT.byteCode())
-                || (byteCode == Instruction.INFECT.byteCode())
-                || (byteCode == Instruction.SKIP.byteCode())
-                || (byteCode == Instruction.HALT.byteCode());
+    static boolean isPrimitiveInstructionByteCode(int byteCode) {
+        return 0 <= byteCode && byteCode < OPCODE_CLASS.length
+                && OPCODE_CLASS[byteCode] == PRIMITIVE;
+    }
+
+    /**
+     * Returns the value of the condition in the given conditional jump
+     * {@code condJump} given what the bug sees {@code wbs}, drawing the value
+     * of the random condition from the current thread's random generator.
+     *
+     * @param wbs
+     *            the {@code CellState} indicating what the bug sees
+     * @param condJump
+     *            the byte code of a conditional jump
+     * @return the value of the conditional jump condition
+     * @requires [condJump is the byte code of a conditional jump]
+     * @ensures <pre>
+     * conditionalJumpCondition =
+     *  conditionalJumpCondition(wbs, condJump, ThreadLocalRandom.current())
+     * </pre>
+     */
+    static boolean conditionalJumpCondition(CellState wbs, int condJump) {
+        return conditionalJumpCondition(wbs, condJump,
+                ThreadLocalRandom.current());
     }
 
     /**
@@ -92,99 +236,311 @@ public final class BugsWorldVMInterpreter {
      * {@code condJump} given what the bug sees {@code wbs}. Note that if
      * {@code condJump} is the byte code for the conditional jump
      * JUMP_IF_NOT_condition, the value returned is the value of the "condition"
-     * part of the jump instruction.
+     * part of the jump instruction. The value of the random condition is drawn
+     * from {@code rnd}.
      *
      * @param wbs
      *            the {@code CellState} indicating what the bug sees
      * @param condJump
      *            the byte code of a conditional jump
+     * @param rnd
+     *            the source of the random condition
      * @return the value of the conditional jump condition
+     * @updates rnd
      * @requires [condJump is the byte code of a conditional jump]
      * @ensures <pre>
      * conditionalJumpCondition =
      *  [the value of the condition of condJump given what the bug sees wbs]
      * </pre>
      */
-    private static boolean conditionalJumpCondition(CellState wbs,
-            int condJump) {
-        final double half = 0.5;
-        boolean answer = true;
-        if (condJump == Instruction.JUMP_IF_NOT_NEXT_IS_EMPTY.byteCode()) {
-            answer = (wbs == CellState.EMPTY);
-        } else if (condJump == Instruction.JUMP_IF_NOT_NEXT_IS_NOT_EMPTY
-                .byteCode()) {
-            answer = (wbs != CellState.EMPTY);
-        } else if (condJump == Instruction.JUMP_IF_NOT_NEXT_IS_WALL
-                .byteCode()) {
-            answer = (wbs == CellState.WALL);
-        } else if (condJump == Instruction.JUMP_IF_NOT_NEXT_IS_NOT_WALL
-                .byteCode()) {
-            answer = (wbs != CellState.WALL);
-        } else if (condJump == Instruction.JUMP_IF_NOT_NEXT_IS_FRIEND
-                .byteCode()) {
-            answer = (wbs == CellState.FRIEND);
-        } else if (condJump == Instruction.JUMP_IF_NOT_NEXT_IS_NOT_FRIEND
-                .byteCode()) {
-            answer = (wbs != CellState.FRIEND);
-        } else if (condJump == Instruction.JUMP_IF_NOT_NEXT_IS_ENEMY
-                .byteCode()) {
-            answer = (wbs == CellState.ENEMY);
-        } else if (condJump == Instruction.JUMP_IF_NOT_NEXT_IS_NOT_ENEMY
-                .byteCode()) {
-            answer = (wbs != CellState.ENEMY);
-        } else if (condJump == Instruction.JUMP_IF_NOT_RANDOM.byteCode()) {
-            answer = (Math.random() < half);
-        } else if (condJump == Instruction.JUMP_IF_NOT_TRUE.byteCode()) {
-            answer = true;
+    static boolean conditionalJumpCondition(CellState wbs, int condJump,
+            RandomGenerator rnd) {
+        assert 0 <= condJump && condJump < OPCODE_CLASS.length
+                && OPCODE_CLASS[condJump] == CONDITIONAL_JUMP : ""
+                        + "Violation of: condJump is a conditional jump byte code";
+        int mask = CONDITION_MASK[condJump];
+        boolean answer;
+        if (mask == RANDOM_MASK) {
+            answer = rnd.nextBoolean();
         } else {
-            assert false : "Violation of: condJump is a conditional jump byte code";
+            answer = ((mask >>> wbs.ordinal()) & 1) != 0;
         }
         return answer;
     }
 
     /**
-     * Checks whether the given location {@code loc} is the location of an
-     * instruction byte code in the given program {@code cp}.
+     * Returns the condition mask of the given conditional jump: bit
+     * {@code wbs.ordinal()} is set iff its condition holds when the bug sees
+     * {@code wbs}, or {@code RANDOM_MASK} for the random condition.
+     *
+     * @param condJump
+     *            the byte code of a conditional jump
+     * @return the condition mask of condJump
+     * @requires [condJump is the byte code of a conditional jump]
+     * @ensures <pre>
+     * conditionMask = RANDOM_MASK  if condJump = JUMP_IF_NOT_RANDOM  and
+     * [for all wbs, bit wbs.ordinal() of conditionMask is set iff
+     *  conditionalJumpCondition(wbs, condJump)]  otherwise
+     * </pre>
+     */
+    static int conditionMask(int condJump) {
+        assert 0 <= condJump && condJump < OPCODE_CLASS.length
+                && OPCODE_CLASS[condJump] == CONDITIONAL_JUMP : ""
+                        + "Violation of: condJump is a conditional jump byte code";
+        return CONDITION_MASK[condJump];
+    }
+
+    /**
+     * Returns a bitmap of the locations of the instruction byte codes in the
+     * given program {@code cp}: bit {@code loc % 64} of word {@code loc / 64}
+     * is set iff {@code loc} is the location of an instruction byte code.
      *
      * @param cp
-     *            the compiler program
-     * @param loc
-     *            the location to check
-     * @return true iff {@code loc} is the address of an instruction byte code
+     *            the compiled program
+     * @return the bitmap of instruction locations
      * @requires [cp is a valid compiled BL program]
      * @ensures <pre>
-     * isValidInstructionLocation =
-     *  [true iff loc is the address of an instruction byte code in cp]
+     * |instructionStarts| = (|cp| + 63) / 64  and
+     * [bit loc of instructionStarts is set iff loc is the address of an
+     *  instruction byte code in cp]
      * </pre>
      */
-    private static boolean isValidInstructionLocation(int[] cp, int loc) {
-        boolean found = false;
+    static long[] instructionStarts(int[] cp) {
+        long[] starts = new long[(cp.length + Long.SIZE - 1) / Long.SIZE];
         int pos = 0;
-        while ((pos < cp.length) && !found) {
-            if (pos == loc) {
-                found = true;
-            } else {
-                if (!isPrimitiveInstructionByteCode(cp[pos])) {
-                    /*
-                     * It must be a jump instruction, increment pos one extra
-                     * time
-                     */
-                    pos++;
-                }
+        while (pos < cp.length) {
+            starts[pos / Long.SIZE] |= 1L << (pos % Long.SIZE);
+            if (!isPrimitiveInstructionByteCode(cp[pos])) {
+                /*
+                 * It must be a jump instruction, increment pos one extra time
+                 */
                 pos++;
             }
+            pos++;
+        }
+        return starts;
+    }
+
+    /**
+     * Returns, for every location of the given program {@code cp}, the mask of
+     * the cell states from which a primitive instruction can be reached by
+     * following jumps, counting both branches of every
+     * {@code JUMP_IF_NOT_RANDOM}: bit {@code wbs.ordinal()} of entry
+     * {@code loc} is set iff some choice of the random conditions leads from
+     * {@code loc} to a primitive instruction when the bug sees {@code wbs}.
+     * The predecessors of every reached jump are visited once per state, so
+     * this takes time linear in {@code |cp|}.
+     *
+     * @param cp
+     *            the compiled program
+     * @return the masks of the states from which a primitive is reachable
+     * @requires [cp is a valid compiled BL program]
+     * @ensures <pre>
+     * |primitiveReachableStates| = |cp|  and
+     * [for every instruction location loc of cp and every wbs, bit
+     *  wbs.ordinal() of primitiveReachableStates[loc] is set iff a primitive
+     *  instruction is reachable from loc when the bug sees wbs]
+     * </pre>
+     */
+    static int[] primitiveReachableStates(int[] cp) {
+        final int states = CellState.values().length;
+        int n = cp.length;
+        long[] starts = instructionStarts(cp);
+        /*
+         * Predecessors of every location, by jumps to it or falling through a
+         * conditional jump to it, in compressed rows
+         */
+        int[] firstPredecessor = new int[n + 1];
+        for (int loc = 0; loc < n; loc++) {
+            if (isInstructionStart(starts, loc)
+                    && !isPrimitiveInstructionByteCode(cp[loc])) {
+                firstPredecessor[cp[loc + 1]]++;
+                if (cp[loc] != Instruction.JUMP.byteCode() && loc + 2 < n) {
+                    firstPredecessor[loc + 2]++;
+                }
+            }
+        }
+        int total = 0;
+        for (int loc = 0; loc <= n; loc++) {
+            int count = firstPredecessor[loc];
+            firstPredecessor[loc] = total;
+            total += count;
+        }
+        int[] predecessors = new int[total];
+        int[] filled = Arrays.copyOf(firstPredecessor, n);
+        for (int loc = 0; loc < n; loc++) {
+            if (isInstructionStart(starts, loc)
+                    && !isPrimitiveInstructionByteCode(cp[loc])) {
+                predecessors[filled[cp[loc + 1]]++] = loc;
+                if (cp[loc] != Instruction.JUMP.byteCode() && loc + 2 < n) {
+                    predecessors[filled[loc + 2]++] = loc;
+                }
+            }
+        }
+        /*
+         * Search backwards from the primitive instructions, one node per
+         * location and state
+         */
+        int[] reachable = new int[n];
+        int[] work = new int[n * states];
+        int size = 0;
+        for (int loc = 0; loc < n; loc++) {
+            if (isInstructionStart(starts, loc)
+                    && isPrimitiveInstructionByteCode(cp[loc])) {
+                reachable[loc] = ALL_STATES_MASK;
+                for (int state = 0; state < states; state++) {
+                    work[size] = loc * states + state;
+                    size++;
+                }
+            }
+        }
+        while (size > 0) {
+            size--;
+            int loc = work[size] / states;
+            int state = work[size] % states;
+            int bit = 1 << state;
+            int end = firstPredecessor[loc + 1];
+            for (int i = firstPredecessor[loc]; i < end; i++) {
+                int p = predecessors[i];
+                if ((reachable[p] & bit) == 0) {
+                    int byteCode = cp[p];
+                    boolean taken;
+                    if (byteCode == Instruction.JUMP.byteCode()) {
+                        taken = true;
+                    } else if (CONDITION_MASK[byteCode] == RANDOM_MASK) {
+                        taken = true;
+                    } else {
+                        boolean holds = ((CONDITION_MASK[byteCode] >>> state)
+                                & 1) != 0;
+                        taken = (holds && loc == p + 2)
+                                || (!holds && loc == cp[p + 1]);
+                    }
+                    if (taken) {
+                        reachable[p] |= bit;
+                        work[size] = p * states + state;
+                        size++;
+                    }
+                }
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Returns the location of the next primitive instruction to execute in
+     * compiled program {@code cp} given what the bug sees {@code wbs} and
+     * starting from location {@code pc}, drawing the value of every random
+     * condition from {@code rnd}. If {@code reachableStates} is null, it is
+     * computed once the chain has followed {@code |cp|} jumps, which it can
+     * only do by going around a cycle, so this takes time linear in the
+     * number of jumps followed.
+     *
+     * @param cp
+     *            the compiled program
+     * @param reachableStates
+     *            primitiveReachableStates(cp), or null
+     * @param wbs
+     *            the {@code CellState} indicating what the bug sees
+     * @param pc
+     *            the program counter
+     * @param rnd
+     *            the source of the random conditions
+     * @return the location of the next primitive instruction to execute, or
+     *         {@code NO_PRIMITIVE_REACHABLE}
+     * @updates rnd
+     * @requires <pre>
+     * [cp is a valid compiled BL program]  and
+     * [pc is the location of an instruction byte code in cp]  and
+     * [reachableStates = primitiveReachableStates(cp) or null]
+     * </pre>
+     * @ensures <pre>
+     * if [following the jumps from pc given what the bug sees wbs and the
+     *     random conditions drawn from rnd reaches a primitive instruction]
+     *     then
+     *  nextPrimitive = [the address of that instruction]
+     * else
+     *  nextPrimitive = NO_PRIMITIVE_REACHABLE
+     * </pre>
+     */
+    private static int nextPrimitive(int[] cp, int[] reachableStates,
+            CellState wbs, int pc, RandomGenerator rnd) {
+        int[] reachable = reachableStates;
+        int mask = cellStateMask(wbs);
+        int loc = pc;
+        int jumps = 0;
+        while (loc != NO_PRIMITIVE_REACHABLE
+                && !isPrimitiveInstructionByteCode(cp[loc])) {
+            if (reachable == null && jumps == cp.length) {
+                reachable = primitiveReachableStates(cp);
+            }
+            if (reachable != null && (reachable[loc] & mask) == 0) {
+                loc = NO_PRIMITIVE_REACHABLE;
+            } else if (cp[loc] == Instruction.JUMP.byteCode()
+                    || !conditionalJumpCondition(wbs, cp[loc], rnd)) {
+                loc = cp[loc + 1];
+            } else {
+                loc = loc + 2;
+            }
+            jumps++;
         }
-        return found;
+        return loc;
+    }
+
+    /**
+     * Checks whether the given location {@code loc} is set in the given
+     * bitmap of instruction locations.
+     *
+     * @param starts
+     *            the bitmap of instruction locations
+     * @param loc
+     *            the location to check
+     * @return true iff bit {@code loc} of {@code starts} is set
+     * @requires starts = instructionStarts(cp) for some compiled program cp
+     * @ensures <pre>
+     * isInstructionStart =
+     *  [true iff loc is the address of an instruction byte code in cp]
+     * </pre>
+     */
+    static boolean isInstructionStart(long[] starts, int loc) {
+        return 0 <= loc && loc < starts.length * Long.SIZE
+                && (starts[loc / Long.SIZE] & (1L << (loc % Long.SIZE))) != 0;
+    }
+
+    /**
+     * Checks whether the given integer is a byte code. This is all of the
+     * requirement that {@code pc} is the location of an instruction byte code
+     * that the static methods check on every step: checking it in full means
+     * scanning {@code cp} up to {@code pc}. {@code LinkedProgram} and
+     * {@code CompiledBugProgram} check it in full, against a bitmap built when
+     * they are loaded.
+     *
+     * @param value
+     *            the integer to be checked
+     * @return true iff {@code value} is a byte code
+     * @ensures isByteCode = [true iff value is the byte code of an instruction]
+     */
+    private static boolean isByteCode(int value) {
+        return 0 <= value && value < OPCODE_CLASS.length
+                && OPCODE_CLASS[value] != NOT_AN_INSTRUCTION;
     }
 
     /*
      * Public members ---------------------------------------------------------
      */
 
+    /**
+     * Value returned by {@code nextPrimitiveInstructionAddress} when no
+     * primitive instruction is reachable (or, given a jump budget, none is
+     * reached within it).
+     */
+    public static final int NO_PRIMITIVE_REACHABLE = -1;
+
     /**
      * Returns the location of the next primitive instruction to execute in
      * compiled program {@code cp} given what the bug sees {@code wbs} and
-     * starting from location {@code pc}.
+     * starting from location {@code pc}, or {@code NO_PRIMITIVE_REACHABLE} if
+     * no primitive instruction is reachable, drawing the value of every
+     * random condition from the current thread's random generator.
      *
      * @param cp
      *            the compiled program
@@ -192,7 +548,8 @@ public final class BugsWorldVMInterpreter {
      *            the {@code CellState} indicating what the bug sees
      * @param pc
      *            the program counter
-     * @return the location of the next primitive instruction to execute
+     * @return the location of the next primitive instruction to execute, or
+     *         {@code NO_PRIMITIVE_REACHABLE}
      * @requires <pre>
      * [cp is a valid compiled BL program]  and
      * 0 <= pc < cp.length  and
@@ -200,37 +557,232 @@ public final class BugsWorldVMInterpreter {
      *  cannot be the location of an address]
      * </pre>
      * @ensures <pre>
-     * [return the address of the next primitive instruction that
-     *  should be executed in program cp given what the bug sees wbs and
-     *  starting execution at address pc in program cp]
+     * nextPrimitiveInstructionAddress =
+     *  nextPrimitiveInstructionAddress(cp, wbs, pc,
+     *   ThreadLocalRandom.current())
      * </pre>
      */
     public static int nextPrimitiveInstructionAddress(int[] cp, CellState wbs,
             int pc) {
+        return nextPrimitiveInstructionAddress(cp, wbs, pc,
+                ThreadLocalRandom.current());
+    }
+
+    /**
+     * Returns the location of the next primitive instruction to execute in
+     * compiled program {@code cp} given what the bug sees {@code wbs} and
+     * starting from location {@code pc}, drawing the value of every random
+     * condition from {@code rnd}, or {@code NO_PRIMITIVE_REACHABLE} if the
+     * jumps followed lead to a location from which no choice of the random
+     * conditions reaches a primitive instruction.
+     *
+     * <p>
+     * Random draws are never cut short: a chain through random conditions
+     * that is not trapped reaches a primitive instruction with probability 1.
+     * Only a chain of more than {@code |cp|} jumps, which has gone around a
+     * cycle, is checked against {@code primitiveReachableStates(cp)}, so the
+     * time taken is linear in the number of jumps followed. A chain trapped
+     * in a cycle through random conditions is thus found only after drawing
+     * up to {@code |cp|} of them; {@code LinkedProgram},
+     * {@code CompiledBugProgram} and the overload given
+     * {@code primitiveReachableStates(cp)} find it before drawing any.
+     *
+     * @param cp
+     *            the compiled program
+     * @param wbs
+     *            the {@code CellState} indicating what the bug sees
+     * @param pc
+     *            the program counter
+     * @param rnd
+     *            the source of the random conditions
+     * @return the location of the next primitive instruction to execute, or
+     *         {@code NO_PRIMITIVE_REACHABLE}
+     * @updates rnd
+     * @requires <pre>
+     * [cp is a valid compiled BL program]  and
+     * 0 <= pc < cp.length  and
+     * [pc is the location of an instruction byte code in cp, that is, pc
+     *  cannot be the location of an address]
+     * </pre>
+     * @ensures <pre>
+     * if [following the jumps from pc given what the bug sees wbs and the
+     *     random conditions drawn from rnd reaches a primitive instruction]
+     *     then
+     *  nextPrimitiveInstructionAddress = [the address of that instruction]
+     * else
+     *  nextPrimitiveInstructionAddress = NO_PRIMITIVE_REACHABLE
+     * </pre>
+     */
+    public static int nextPrimitiveInstructionAddress(int[] cp, CellState wbs,
+            int pc, RandomGenerator rnd) {
         assert cp != null : "Violation of: cp is not null";
         assert wbs != null : "Violation of: wbs is not null";
+        assert rnd != null : "Violation of: rnd is not null";
         assert cp.length > 0 : "Violation of: cp is a valid compiled BL program";
         assert 0 <= pc : "Violation of: 0 <= pc";
         assert pc < cp.length : "Violation of: pc < cp.length";
-        assert isValidInstructionLocation(cp, pc) : ""
+        assert isByteCode(cp[pc]) : ""
                 + "Violation of: pc is the location of an instruction byte code in cp";
 
-        // TODO - fill in body
-        int end = 0;
+        return nextPrimitive(cp, null, wbs, pc, rnd);
+    }
 
-        if (isPrimitiveInstructionByteCode(cp[pc])) {
-            end = pc;
-        } else {
-            if (cp[pc] == Instruction.JUMP.byteCode()) {
-                end = nextPrimitiveInstructionAddress(cp, wbs, cp[pc + 1]);
-            } else if (conditionalJumpCondition(wbs, cp[pc])) {
-                end = nextPrimitiveInstructionAddress(cp, wbs, pc + 2);
+    /**
+     * Same as {@code nextPrimitiveInstructionAddress(cp, wbs, pc, rnd)},
+     * given {@code primitiveReachableStates(cp)}, computed once for the
+     * program as {@code LinkedProgram} does: no random condition is drawn at
+     * a {@code JUMP_IF_NOT_RANDOM} from which no primitive instruction is
+     * reachable, so the random conditions drawn are those
+     * {@code LinkedProgram} and {@code CompiledBugProgram} draw.
+     *
+     * @param cp
+     *            the compiled program
+     * @param reachableStates
+     *            the masks of the states from which a primitive instruction
+     *            is reachable, by location
+     * @param wbs
+     *            the {@code CellState} indicating what the bug sees
+     * @param pc
+     *            the program counter
+     * @param rnd
+     *            the source of the random conditions
+     * @return the location of the next primitive instruction to execute, or
+     *         {@code NO_PRIMITIVE_REACHABLE}
+     * @updates rnd
+     * @requires <pre>
+     * [cp is a valid compiled BL program]  and
+     * reachableStates = primitiveReachableStates(cp)  and
+     * 0 <= pc < cp.length  and
+     * [pc is the location of an instruction byte code in cp, that is, pc
+     *  cannot be the location of an address]
+     * </pre>
+     * @ensures <pre>
+     * nextPrimitiveInstructionAddress =
+     *  nextPrimitiveInstructionAddress(cp, wbs, pc, rnd)  and
+     * [no random condition was drawn at a JUMP_IF_NOT_RANDOM from which no
+     *  primitive instruction is reachable]
+     * </pre>
+     */
+    static int nextPrimitiveInstructionAddress(int[] cp, int[] reachableStates,
+            CellState wbs, int pc, RandomGenerator rnd) {
+        assert cp != null : "Violation of: cp is not null";
+        assert reachableStates != null : ""
+                + "Violation of: reachableStates is not null";
+        assert wbs != null : "Violation of: wbs is not null";
+        assert rnd != null : "Violation of: rnd is not null";
+        assert reachableStates.length == cp.length : ""
+                + "Violation of: reachableStates = primitiveReachableStates(cp)";
+        assert 0 <= pc : "Violation of: 0 <= pc";
+        assert pc < cp.length : "Violation of: pc < cp.length";
+        assert isByteCode(cp[pc]) : ""
+                + "Violation of: pc is the location of an instruction byte code in cp";
+
+        return nextPrimitive(cp, reachableStates, wbs, pc, rnd);
+    }
+
+    /**
+     * Returns the location of the next primitive instruction to execute in
+     * compiled program {@code cp} given what the bug sees {@code wbs} and
+     * starting from location {@code pc}, or {@code NO_PRIMITIVE_REACHABLE} if
+     * it is not reached by following at most {@code maxJumps} jumps.
+     *
+     * @param cp
+     *            the compiled program
+     * @param wbs
+     *            the {@code CellState} indicating what the bug sees
+     * @param pc
+     *            the program counter
+     * @param maxJumps
+     *            the maximum number of jumps to follow
+     * @return the location of the next primitive instruction to execute, or
+     *         {@code NO_PRIMITIVE_REACHABLE}
+     * @requires <pre>
+     * [cp is a valid compiled BL program]  and
+     * 0 <= pc < cp.length  and
+     * [pc is the location of an instruction byte code in cp, that is, pc
+     *  cannot be the location of an address]  and
+     * maxJumps >= 0
+     * </pre>
+     * @ensures <pre>
+     * if [the next primitive instruction that should be executed in program
+     *     cp given what the bug sees wbs and starting execution at address pc
+     *     is reached by following at most maxJumps jumps] then
+     *  nextPrimitiveInstructionAddress = [the address of that instruction]
+     * else
+     *  nextPrimitiveInstructionAddress = NO_PRIMITIVE_REACHABLE
+     * </pre>
+     */
+    public static int nextPrimitiveInstructionAddress(int[] cp, CellState wbs,
+            int pc, int maxJumps) {
+        return nextPrimitiveInstructionAddress(cp, wbs, pc, maxJumps,
+                ThreadLocalRandom.current());
+    }
+
+    /**
+     * Same as {@code nextPrimitiveInstructionAddress(cp, wbs, pc, maxJumps)},
+     * drawing the value of every random condition from {@code rnd}. Given a
+     * seeded {@code rnd}, the result is reproducible; giving each worker
+     * thread (or each bug) its own {@code rnd} avoids any contention between
+     * threads.
+     *
+     * @param cp
+     *            the compiled program
+     * @param wbs
+     *            the {@code CellState} indicating what the bug sees
+     * @param pc
+     *            the program counter
+     * @param maxJumps
+     *            the maximum number of jumps to follow
+     * @param rnd
+     *            the source of the random conditions
+     * @return the location of the next primitive instruction to execute, or
+     *         {@code NO_PRIMITIVE_REACHABLE}
+     * @updates rnd
+     * @requires <pre>
+     * [cp is a valid compiled BL program]  and
+     * 0 <= pc < cp.length  and
+     * [pc is the location of an instruction byte code in cp, that is, pc
+     *  cannot be the location of an address]  and
+     * maxJumps >= 0
+     * </pre>
+     * @ensures <pre>
+     * if [the next primitive instruction that should be executed in program
+     *     cp given what the bug sees wbs and starting execution at address pc
+     *     is reached by following at most maxJumps jumps] then
+     *  nextPrimitiveInstructionAddress = [the address of that instruction]
+     * else
+     *  nextPrimitiveInstructionAddress = NO_PRIMITIVE_REACHABLE
+     * </pre>
+     */
+    public static int nextPrimitiveInstructionAddress(int[] cp, CellState wbs,
+            int pc, int maxJumps, RandomGenerator rnd) {
+        assert cp != null : "Violation of: cp is not null";
+        assert wbs != null : "Violation of: wbs is not null";
+        assert rnd != null : "Violation of: rnd is not null";
+        assert cp.length > 0 : "Violation of: cp is a valid compiled BL program";
+        assert 0 <= pc : "Violation of: 0 <= pc";
+        assert pc < cp.length : "Violation of: pc < cp.length";
+        assert isByteCode(cp[pc]) : ""
+                + "Violation of: pc is the location of an instruction byte code in cp";
+        assert maxJumps >= 0 : "Violation of: maxJumps >= 0";
+
+        int loc = pc;
+        int jumps = 0;
+        while (!isPrimitiveInstructionByteCode(cp[loc]) && jumps < maxJumps) {
+            if (cp[loc] == Instruction.JUMP.byteCode()
+                    || !conditionalJumpCondition(wbs, cp[loc], rnd)) {
+                loc = cp[loc + 1];
             } else {
-                end = nextPrimitiveInstructionAddress(cp, wbs, cp[pc + 1]);
+                loc = loc + 2;
             }
+            jumps++;
         }
 
-        return end;
+        int result = loc;
+        if (!isPrimitiveInstructionByteCode(cp[loc])) {
+            result = NO_PRIMITIVE_REACHABLE;
+        }
+        return result;
     }
 
     /**
@@ -247,6 +799,7 @@ public final class BugsWorldVMInterpreter {
          * Load compiled BL program
          */
         int[] cp = loadProgram(in, out);
+        LinkedProgram lp = new LinkedProgram(cp);
 
         int pc = 0;
         out.println();
@@ -272,7 +825,7 @@ public final class BugsWorldVMInterpreter {
                 int pcCandidate = Integer.parseInt(input);
                 if (pcCandidate < 0 || pcCandidate >= cp.length) {
                     break;
-                } else if (!isValidInstructionLocation(cp, pcCandidate)) {
+                } else if (!lp.isValidInstructionLocation(pcCandidate)) {
                     out.println("Program counter must be the location of an "
                             + "instruction byte code in the program");
                     continue;
@@ -313,7 +866,14 @@ public final class BugsWorldVMInterpreter {
             /*
              * Interpret program to find next primitive instruction
              */
-            pc = nextPrimitiveInstructionAddress(cp, cs, pc);
+            int next = lp.nextPrimitiveInstructionAddress(cs, pc);
+            if (next == NO_PRIMITIVE_REACHABLE) {
+                out.println();
+                out.println("  No primitive instruction reachable from address "
+                        + pc);
+                continue;
+            }
+            pc = next;
             out.println();
             out.println("  Next primitive instruction: "
                     + Program.Instruction.values()[cp[pc]].toString()
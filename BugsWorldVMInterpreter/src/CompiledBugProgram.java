@@ -0,0 +1,286 @@
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+import components.sequence.Sequence;
+
+/**
+ * A compiled BL program translated into a JVM class, so that finding the next
+ * primitive instruction is a run of straight-line branches that the JIT
+ * compiler can optimize like any other Java code, instead of a dispatch per
+ * jump in the interpreter loop.
+ *
+ * <p>
+ * {@code compile} writes the class with {@code BugProgramClassWriter} and
+ * defines it as a hidden class, which is unloaded once the program is no
+ * longer reachable. Programs too large for a method the JIT compiler will
+ * compile (a few hundred entries) fall back to a {@code LinkedProgram};
+ * {@code isGenerated} tells which backend a program uses. Either way
+ * {@code next} has the meaning of
+ * {@code BugsWorldVMInterpreter.nextPrimitiveInstructionAddress}: both give
+ * up on a primitive-free cycle only where no choice of the random conditions
+ * leads to a primitive instruction.
+ *
+ * <p>
+ * The generated code still follows every jump of a chain, while a
+ * {@code LinkedProgram} resolves all jump chains that do not go through a
+ * random condition ahead of time; measure both (see
+ * {@code ToolchainBenchmark}) before choosing this backend.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public abstract class CompiledBugProgram {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Name of the generated classes.
+     */
+    private static final String GENERATED_CLASS_NAME = "CompiledBugProgram$Generated";
+
+    /**
+     * The compiled program.
+     */
+    private final int[] cp;
+
+    /**
+     * Bitmap of the instruction locations of {@code cp}.
+     */
+    private final long[] starts;
+
+    /**
+     * Fallback for programs too large to be translated: runs a
+     * {@code LinkedProgram}.
+     */
+    private static final class Linked extends CompiledBugProgram {
+
+        /**
+         * The linked program.
+         */
+        private final LinkedProgram lp;
+
+        /**
+         * Constructor.
+         *
+         * @param cp
+         *            the compiled program
+         */
+        Linked(int[] cp) {
+            super(cp);
+            this.lp = new LinkedProgram(cp);
+        }
+
+        @Override
+        protected int next(int pc, int state, RandomGenerator rnd) {
+            return this.lp.nextPrimitiveInstructionAddress(state, pc, rnd);
+        }
+
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor for subclasses.
+     *
+     * @param cp
+     *            the compiled program, not copied
+     */
+    protected CompiledBugProgram(int[] cp) {
+        this.cp = cp;
+        this.starts = BugsWorldVMInterpreter.instructionStarts(cp);
+    }
+
+    /*
+     * Protected members ------------------------------------------------------
+     */
+
+    /**
+     * Returns the address of the next primitive instruction to execute.
+     *
+     * @param pc
+     *            the program counter
+     * @param state
+     *            the ordinal of the {@code CellState} the bug sees
+     * @param rnd
+     *            the source of the random conditions
+     * @return the address of the next primitive instruction, or
+     *         {@code NO_PRIMITIVE}
+     * @updates rnd
+     * @requires <pre>
+     * [pc is the location of an instruction byte code in cp]  and
+     * 0 <= state < |CellState.values()|
+     * </pre>
+     * @ensures <pre>
+     * next = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
+     *  BugsWorldVMInterpreter.primitiveReachableStates(cp),
+     *  CellState.values()[state], pc, rnd)
+     * </pre>
+     */
+    protected abstract int next(int pc, int state, RandomGenerator rnd);
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Value returned by {@code next} when no primitive instruction is
+     * reachable.
+     */
+    public static final int NO_PRIMITIVE = BugsWorldVMInterpreter.NO_PRIMITIVE_REACHABLE;
+
+    /**
+     * Compiles the given program.
+     *
+     * @param cp
+     *            the compiled BL program
+     * @return the program translated into a JVM class, or linked if it is too
+     *         large
+     * @requires [cp is a valid compiled BL program]
+     * @ensures compile = [cp, translated into a JVM class if possible]
+     */
+    public static CompiledBugProgram compile(int[] cp) {
+        assert cp != null : "Violation of: cp is not null";
+        assert cp.length > 0 : "Violation of: cp is a valid compiled BL program";
+
+        int[] copy = cp.clone();
+        CompiledBugProgram result = null;
+        byte[] classFile = BugProgramClassWriter.write(copy,
+                GENERATED_CLASS_NAME);
+        if (classFile != null) {
+            try {
+                result = (CompiledBugProgram) MethodHandles.lookup()
+                        .defineHiddenClass(classFile, true).lookupClass()
+                        .getConstructor(int[].class).newInstance(copy);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                /*
+                 * Leave result null: the linked fallback runs the program
+                 */
+                result = null;
+            }
+        }
+        if (result == null) {
+            result = new Linked(copy);
+        }
+        return result;
+    }
+
+    /**
+     * Compiles the given program.
+     *
+     * @param cp
+     *            the compiled BL program, as returned by {@code generatedCode}
+     * @return the program translated into a JVM class, or linked if it is too
+     *         large
+     * @requires [cp is a valid compiled BL program]
+     * @ensures compile = [cp, translated into a JVM class if possible]
+     */
+    public static CompiledBugProgram compile(Sequence<Integer> cp) {
+        assert cp != null : "Violation of: cp is not null";
+
+        int[] array = new int[cp.length()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = cp.entry(i);
+        }
+        return compile(array);
+    }
+
+    /**
+     * Reports whether this program runs as a generated JVM class (rather than
+     * as a linked program).
+     *
+     * @return true iff this program runs as a generated JVM class
+     */
+    public final boolean isGenerated() {
+        return !(this instanceof Linked);
+    }
+
+    /**
+     * Reports the length of the compiled program.
+     *
+     * @return |cp|
+     */
+    public final int length() {
+        return this.cp.length;
+    }
+
+    /**
+     * Reports the entry of the compiled program at {@code loc}.
+     *
+     * @param loc
+     *            the location
+     * @return cp[loc]
+     * @requires 0 <= loc < |cp|
+     */
+    public final int byteCode(int loc) {
+        assert 0 <= loc && loc < this.cp.length : "Violation of: 0 <= loc < |cp|";
+        return this.cp[loc];
+    }
+
+    /**
+     * Reports whether {@code loc} is the location of an instruction byte code
+     * in the compiled program.
+     *
+     * @param loc
+     *            the location
+     * @return true iff loc is the location of an instruction byte code
+     */
+    public final boolean isValidInstructionLocation(int loc) {
+        return 0 <= loc && loc < this.cp.length
+                && BugsWorldVMInterpreter.isInstructionStart(this.starts, loc);
+    }
+
+    /**
+     * Returns the address of the next primitive instruction to execute, drawing
+     * random conditions from the current thread's random generator.
+     *
+     * @param pc
+     *            the program counter
+     * @param wbs
+     *            the {@code CellState} indicating what the bug sees
+     * @return the address of the next primitive instruction, or
+     *         {@code NO_PRIMITIVE}
+     * @requires [pc is the location of an instruction byte code in cp]
+     * @ensures <pre>
+     * next = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp, wbs,
+     *  pc, ThreadLocalRandom.current())
+     * </pre>
+     */
+    public final int next(int pc, BugsWorldVMInterpreter.CellState wbs) {
+        return this.next(pc, wbs, ThreadLocalRandom.current());
+    }
+
+    /**
+     * Returns the address of the next primitive instruction to execute,
+     * drawing random conditions from {@code rnd}.
+     *
+     * @param pc
+     *            the program counter
+     * @param wbs
+     *            the {@code CellState} indicating what the bug sees
+     * @param rnd
+     *            the source of the random conditions
+     * @return the address of the next primitive instruction, or
+     *         {@code NO_PRIMITIVE}
+     * @updates rnd
+     * @requires [pc is the location of an instruction byte code in cp]
+     * @ensures <pre>
+     * next = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
+     *  BugsWorldVMInterpreter.primitiveReachableStates(cp), wbs, pc, rnd)
+     * </pre>
+     */
+    public final int next(int pc, BugsWorldVMInterpreter.CellState wbs,
+            RandomGenerator rnd) {
+        assert wbs != null : "Violation of: wbs is not null";
+        assert rnd != null : "Violation of: rnd is not null";
+        assert this.isValidInstructionLocation(pc) : ""
+                + "Violation of: pc is the location of an instruction byte code in cp";
+
+        return this.next(pc, wbs.ordinal(), rnd);
+    }
+
+}
@@ -0,0 +1,652 @@
+import java.util.Arrays;
+
+import components.program.Program.Instruction;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Static analysis of the jump chains of a compiled BL program: how many jumps
+ * {@code nextPrimitiveInstructionAddress} may follow before reaching a
+ * primitive instruction, and which jumps lie on primitive-free cycles.
+ *
+ * <p>
+ * The control-flow graph has a node per instruction: a primitive instruction
+ * other than {@code HALT} continues with the next instruction, a {@code JUMP}
+ * with its target, and a conditional jump with the next instruction if its
+ * condition holds and with its target otherwise. What the bug sees does not
+ * change while a jump chain is resolved, so the chains are analyzed once per
+ * {@code CellState}: then every conditional jump but {@code JUMP_IF_NOT_RANDOM}
+ * has a single successor. The strongly connected components of the jumps are
+ * found with Tarjan's algorithm, and the longest chain from each jump to a
+ * primitive is computed as the components come out (successors first). A
+ * chain that can reach a cycle of jumps is unbounded: without random jumps
+ * it never reaches a primitive, and with them it may take any number of
+ * turns around the cycle.
+ *
+ * <p>
+ * The entry points are the locations where execution resumes after a
+ * primitive instruction (location 0, the location following each primitive
+ * instruction other than {@code HALT}, and each {@code HALT}), so
+ * {@code maxJumps()} bounds the work of every step of a bug running the
+ * program.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class CompiledProgramAnalyzer {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of possible {@code CellState} values.
+     */
+    private static final int STATES = BugsWorldVMInterpreter.CellState
+            .values().length;
+
+    /**
+     * Marker for nodes not visited yet by Tarjan's algorithm.
+     */
+    private static final int UNVISITED = -1;
+
+    /**
+     * Component of nodes not on any cycle.
+     */
+    private static final int NO_CYCLE = -1;
+
+    /**
+     * The compiled program.
+     */
+    private final int[] cp;
+
+    /**
+     * Bitmap of the locations of the instruction byte codes in cp.
+     */
+    private final long[] starts;
+
+    /**
+     * The entry points, in increasing order.
+     */
+    private final int[] entryPoints;
+
+    /**
+     * Entry {@code loc * STATES + wbs.ordinal()} is the largest number of jumps
+     * followed from {@code loc} when the bug sees {@code wbs}, or
+     * {@code UNBOUNDED}.
+     */
+    private final int[] jumps;
+
+    /**
+     * Entry {@code loc * STATES + wbs.ordinal()} is the number of the cycle of
+     * jumps containing {@code loc} when the bug sees {@code wbs}, or
+     * {@code NO_CYCLE}.
+     */
+    private final int[] cycles;
+
+    /**
+     * Returns whether the instruction at {@code loc} is a jump.
+     *
+     * @param loc
+     *            the location of an instruction byte code
+     * @return true iff the instruction at loc is a jump
+     */
+    private boolean isJump(int loc) {
+        return !BugsWorldVMInterpreter
+                .isPrimitiveInstructionByteCode(this.cp[loc]);
+    }
+
+    /**
+     * Returns the set of {@code CellState}s, as a mask, in which the given
+     * successor of the jump at {@code loc} is taken.
+     *
+     * @param loc
+     *            the location of a jump
+     * @param i
+     *            0 for the next instruction, 1 for the target
+     * @return the mask of the states in which the successor is taken
+     */
+    private int successorStates(int loc, int i) {
+        int byteCode = this.cp[loc];
+        int result = BugsWorldVMInterpreter.ALL_STATES_MASK;
+        if (byteCode == Instruction.JUMP.byteCode()) {
+            if (i == 0) {
+                result = 0;
+            }
+        } else if (byteCode != Instruction.JUMP_IF_NOT_RANDOM.byteCode()) {
+            int mask = BugsWorldVMInterpreter.conditionMask(byteCode);
+            if (i == 0) {
+                result = mask;
+            } else {
+                result = BugsWorldVMInterpreter.ALL_STATES_MASK ^ mask;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the given successor of the jump at {@code loc}.
+     *
+     * @param loc
+     *            the location of a jump
+     * @param i
+     *            0 for the next instruction, 1 for the target
+     * @return the location of the successor
+     */
+    private int successor(int loc, int i) {
+        int result = this.cp[loc + 1];
+        if (i == 0) {
+            result = loc + 2;
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the given successor of the jump at {@code loc} is taken
+     * when the bug sees the {@code CellState} with the given ordinal.
+     *
+     * @param loc
+     *            the location of a jump
+     * @param i
+     *            0 for the next instruction, 1 for the target
+     * @param state
+     *            the ordinal of the {@code CellState}
+     * @return true iff the successor is taken
+     */
+    private boolean isTaken(int loc, int i, int state) {
+        return ((this.successorStates(loc, i) >>> state) & 1) != 0;
+    }
+
+    /**
+     * Computes the longest jump chains and the cycles of jumps when the bug
+     * sees the {@code CellState} with the given ordinal.
+     *
+     * @param state
+     *            the ordinal of the {@code CellState}
+     * @param firstCycle
+     *            the number of the first cycle found
+     * @return the number of cycles found
+     * @updates this.jumps, this.cycles
+     */
+    private int analyze(int state, int firstCycle) {
+        int n = this.cp.length;
+        /*
+         * Visiting order and lowest visiting order reachable of each node,
+         * Tarjan's stack, and the nodes being visited with the next successor
+         * to visit of each
+         */
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] stack = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] calls = new int[n];
+        int[] edges = new int[n];
+        Arrays.fill(index, UNVISITED);
+        int stackSize = 0;
+        int callCount = 0;
+        int visited = 0;
+        int cycleCount = 0;
+        for (int root = 0; root < n; root++) {
+            if (BugsWorldVMInterpreter.isInstructionStart(this.starts, root)
+                    && this.isJump(root) && index[root] == UNVISITED) {
+                index[root] = visited;
+                low[root] = visited;
+                visited++;
+                stack[stackSize] = root;
+                stackSize++;
+                onStack[root] = true;
+                calls[callCount] = root;
+                edges[callCount] = 0;
+                callCount++;
+                while (callCount > 0) {
+                    int loc = calls[callCount - 1];
+                    int i = edges[callCount - 1];
+                    if (i < 2) {
+                        edges[callCount - 1]++;
+                        int w = this.successor(loc, i);
+                        if (this.isTaken(loc, i, state) && this.isJump(w)) {
+                            if (index[w] == UNVISITED) {
+                                index[w] = visited;
+                                low[w] = visited;
+                                visited++;
+                                stack[stackSize] = w;
+                                stackSize++;
+                                onStack[w] = true;
+                                calls[callCount] = w;
+                                edges[callCount] = 0;
+                                callCount++;
+                            } else if (onStack[w]) {
+                                low[loc] = Math.min(low[loc], index[w]);
+                            }
+                        }
+                    } else {
+                        callCount--;
+                        if (callCount > 0) {
+                            int caller = calls[callCount - 1];
+                            low[caller] = Math.min(low[caller], low[loc]);
+                        }
+                        if (low[loc] == index[loc]) {
+                            /*
+                             * loc is the root of a component, whose successors
+                             * outside it are all done
+                             */
+                            boolean cycle = stack[stackSize - 1] != loc;
+                            for (int j = 0; j < 2 && !cycle; j++) {
+                                cycle = this.isTaken(loc, j, state)
+                                        && this.successor(loc, j) == loc;
+                            }
+                            if (cycle) {
+                                int member;
+                                do {
+                                    stackSize--;
+                                    member = stack[stackSize];
+                                    onStack[member] = false;
+                                    this.jumps[member * STATES
+                                            + state] = UNBOUNDED;
+                                    this.cycles[member * STATES
+                                            + state] = firstCycle + cycleCount;
+                                } while (member != loc);
+                                cycleCount++;
+                            } else {
+                                stackSize--;
+                                onStack[loc] = false;
+                                int longest = 0;
+                                for (int j = 0; j < 2; j++) {
+                                    if (this.isTaken(loc, j, state)) {
+                                        longest = Math.max(longest,
+                                                this.jumps[this.successor(loc,
+                                                        j) * STATES + state]);
+                                    }
+                                }
+                                if (longest != UNBOUNDED) {
+                                    longest++;
+                                }
+                                this.jumps[loc * STATES + state] = longest;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return cycleCount;
+    }
+
+    /**
+     * Returns the name of the instruction with the given byte code.
+     *
+     * @param byteCode
+     *            the byte code
+     * @return the name of the instruction
+     */
+    private static String instructionName(int byteCode) {
+        String name = Integer.toString(byteCode);
+        for (Instruction i : Instruction.values()) {
+            if (i.byteCode() == byteCode) {
+                name = i.name();
+            }
+        }
+        return name;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Analyzes the given compiled program.
+     *
+     * @param cp
+     *            the compiled program
+     * @requires [cp is a valid compiled BL program]
+     * @ensures this = [the analysis of the jump chains of cp]
+     */
+    public CompiledProgramAnalyzer(int[] cp) {
+        assert cp != null : "Violation of: cp is not null";
+        assert cp.length > 0 : "Violation of: cp is a valid compiled BL program";
+        this.cp = cp.clone();
+        int n = this.cp.length;
+        this.starts = BugsWorldVMInterpreter.instructionStarts(this.cp);
+        this.jumps = new int[n * STATES];
+        this.cycles = new int[n * STATES];
+        Arrays.fill(this.cycles, NO_CYCLE);
+        int[] entries = new int[n];
+        int entryCount = 0;
+        boolean resumes = true;
+        int loc = 0;
+        while (loc < n) {
+            /*
+             * Execution resumes at 0, after a primitive instruction other
+             * than HALT, and at HALT itself
+             */
+            int byteCode = this.cp[loc];
+            if (resumes || byteCode == Instruction.HALT.byteCode()) {
+                entries[entryCount] = loc;
+                entryCount++;
+            }
+            resumes = !this.isJump(loc)
+                    && byteCode != Instruction.HALT.byteCode();
+            if (this.isJump(loc)) {
+                loc++;
+            }
+            loc++;
+        }
+        this.entryPoints = Arrays.copyOf(entries, entryCount);
+        int cycleCount = 0;
+        for (int state = 0; state < STATES; state++) {
+            cycleCount += this.analyze(state, cycleCount);
+        }
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Number of jumps reported when a jump chain can reach a primitive-free
+     * cycle, so that no number of jumps is enough.
+     */
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    /**
+     * Returns the length of the compiled program.
+     *
+     * @return the length of the compiled program
+     * @ensures length = |cp|
+     */
+    public int length() {
+        return this.cp.length;
+    }
+
+    /**
+     * Returns the entry points of the compiled program: the locations where
+     * execution resumes after a primitive instruction.
+     *
+     * @return the entry points, in increasing order
+     * @ensures <pre>
+     * entryPoints = [0, the location following each primitive instruction
+     *  other than HALT, and the location of each HALT, in increasing order]
+     * </pre>
+     */
+    public int[] entryPoints() {
+        return this.entryPoints.clone();
+    }
+
+    /**
+     * Returns the largest number of jumps followed from location {@code loc}
+     * before reaching a primitive instruction when the bug sees {@code wbs}.
+     *
+     * @param wbs
+     *            the {@code CellState} indicating what the bug sees
+     * @param loc
+     *            the location
+     * @return the largest number of jumps, or {@code UNBOUNDED}
+     * @requires <pre>
+     * 0 <= loc < |cp|  and
+     * [loc is the location of an instruction byte code in cp]
+     * </pre>
+     * @ensures <pre>
+     * if [a primitive-free cycle can be reached from loc when the bug sees
+     *     wbs] then
+     *  maxJumps = UNBOUNDED
+     * else
+     *  maxJumps = [the largest number of jumps followed by
+     *   nextPrimitiveInstructionAddress(cp, wbs, loc), over all values of the
+     *   random conditions]
+     * </pre>
+     */
+    public int maxJumps(BugsWorldVMInterpreter.CellState wbs, int loc) {
+        assert wbs != null : "Violation of: wbs is not null";
+        assert 0 <= loc : "Violation of: 0 <= loc";
+        assert loc < this.cp.length : "Violation of: loc < |cp|";
+        assert BugsWorldVMInterpreter.isInstructionStart(this.starts, loc) : ""
+                + "Violation of: loc is the location of an instruction byte code in cp";
+        return this.jumps[loc * STATES + wbs.ordinal()];
+    }
+
+    /**
+     * Returns the largest number of jumps followed from location {@code loc}
+     * before reaching a primitive instruction, whatever the bug sees.
+     *
+     * @param loc
+     *            the location
+     * @return the largest number of jumps, or {@code UNBOUNDED}
+     * @requires <pre>
+     * 0 <= loc < |cp|  and
+     * [loc is the location of an instruction byte code in cp]
+     * </pre>
+     * @ensures <pre>
+     * maxJumps = [the largest maxJumps(wbs, loc) over all CellStates wbs]
+     * </pre>
+     */
+    public int maxJumps(int loc) {
+        int result = 0;
+        for (BugsWorldVMInterpreter.CellState wbs : BugsWorldVMInterpreter.CellState
+                .values()) {
+            result = Math.max(result, this.maxJumps(wbs, loc));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the largest number of jumps followed in any step of a bug
+     * running the compiled program; a budget of that many jumps per step is
+     * never exceeded unless it is {@code UNBOUNDED}.
+     *
+     * @return the largest number of jumps, or {@code UNBOUNDED}
+     * @ensures <pre>
+     * maxJumps = [the largest maxJumps(loc) over all loc in entryPoints()]
+     * </pre>
+     */
+    public int maxJumps() {
+        int result = 0;
+        for (int loc : this.entryPoints) {
+            result = Math.max(result, this.maxJumps(loc));
+        }
+        return result;
+    }
+
+    /**
+     * Reports whether the jump at location {@code loc} lies on a
+     * primitive-free cycle for some {@code CellState}.
+     *
+     * @param loc
+     *            the location
+     * @return true iff loc lies on a primitive-free cycle
+     * @requires <pre>
+     * 0 <= loc < |cp|  and
+     * [loc is the location of an instruction byte code in cp]
+     * </pre>
+     * @ensures <pre>
+     * isOnPrimitiveFreeCycle = [there is a CellState wbs such that the jump
+     *  chain from loc when the bug sees wbs can come back to loc]
+     * </pre>
+     */
+    public boolean isOnPrimitiveFreeCycle(int loc) {
+        assert 0 <= loc : "Violation of: 0 <= loc";
+        assert loc < this.cp.length : "Violation of: loc < |cp|";
+        assert BugsWorldVMInterpreter.isInstructionStart(this.starts, loc) : ""
+                + "Violation of: loc is the location of an instruction byte code in cp";
+        boolean result = false;
+        for (int state = 0; state < STATES; state++) {
+            result |= this.cycles[loc * STATES + state] != NO_CYCLE;
+        }
+        return result;
+    }
+
+    /**
+     * Reports whether the compiled program has any primitive-free cycle.
+     *
+     * @return true iff some jump lies on a primitive-free cycle
+     * @ensures <pre>
+     * hasPrimitiveFreeCycle = [there is a loc such that
+     *  isOnPrimitiveFreeCycle(loc)]
+     * </pre>
+     */
+    public boolean hasPrimitiveFreeCycle() {
+        boolean result = false;
+        for (int i = 0; i < this.cycles.length && !result; i++) {
+            result = this.cycles[i] != NO_CYCLE;
+        }
+        return result;
+    }
+
+    /**
+     * Outputs the control-flow graph of the compiled program in the DOT
+     * language of Graphviz. Jumps are ellipses (conditional ones with an edge
+     * labeled {@code true} to the next instruction and one labeled
+     * {@code false} to the target), primitive instructions are boxes with a
+     * dashed edge to the next instruction, entry points show their
+     * {@code maxJumps}, and primitive-free cycles are drawn in red.
+     *
+     * @param out
+     *            the output stream
+     * @updates out.content
+     * @requires out.is_open
+     * @ensures out.content = #out.content * [the DOT graph of the program]
+     */
+    public void printDot(SimpleWriter out) {
+        assert out != null : "Violation of: out is not null";
+        assert out.isOpen() : "Violation of: out.is_open";
+
+        int[] entries = new int[this.cp.length];
+        Arrays.fill(entries, -1);
+        for (int loc : this.entryPoints) {
+            entries[loc] = this.maxJumps(loc);
+        }
+        out.println("digraph program {");
+        out.println("    node [fontname=\"monospace\"];");
+        for (int loc = 0; loc < this.cp.length; loc++) {
+            if (BugsWorldVMInterpreter.isInstructionStart(this.starts, loc)) {
+                StringBuilder node = new StringBuilder();
+                node.append("    n").append(loc).append(" [label=\"")
+                        .append(loc).append(": ")
+                        .append(instructionName(this.cp[loc]));
+                if (this.isJump(loc)) {
+                    node.append("\", shape=ellipse");
+                } else {
+                    node.append("\", shape=box");
+                }
+                if (entries[loc] != -1) {
+                    node.append(", xlabel=\"");
+                    if (entries[loc] == UNBOUNDED) {
+                        node.append("unbounded");
+                    } else {
+                        node.append(entries[loc]);
+                    }
+                    node.append("\", peripheries=2");
+                }
+                if (this.isJump(loc) && this.isOnPrimitiveFreeCycle(loc)) {
+                    node.append(", color=red");
+                }
+                node.append("];");
+                out.println(node.toString());
+            }
+        }
+        for (int loc = 0; loc < this.cp.length; loc++) {
+            if (BugsWorldVMInterpreter.isInstructionStart(this.starts, loc)) {
+                if (!this.isJump(loc)) {
+                    if (this.cp[loc] != Instruction.HALT.byteCode()
+                            && loc + 1 < this.cp.length) {
+                        out.println("    n" + loc + " -> n" + (loc + 1)
+                                + " [style=dashed];");
+                    }
+                } else {
+                    for (int i = 0; i < 2; i++) {
+                        int states = this.successorStates(loc, i);
+                        if (i == 1
+                                || this.cp[loc] != Instruction.JUMP.byteCode()) {
+                            int w = this.successor(loc, i);
+                            StringBuilder edge = new StringBuilder();
+                            edge.append("    n").append(loc).append(" -> n")
+                                    .append(w).append(" [");
+                            if (this.cp[loc] != Instruction.JUMP.byteCode()) {
+                                if (i == 0) {
+                                    edge.append("label=\"true\"");
+                                } else {
+                                    edge.append("label=\"false\"");
+                                }
+                            }
+                            boolean onCycle = false;
+                            for (int state = 0; state < STATES; state++) {
+                                onCycle |= ((states >>> state) & 1) != 0
+                                        && this.cycles[loc * STATES
+                                                + state] != NO_CYCLE
+                                        && this.cycles[loc * STATES
+                                                + state] == this.cycles[w
+                                                        * STATES + state];
+                            }
+                            if (onCycle) {
+                                if (edge.charAt(edge.length() - 1) != '[') {
+                                    edge.append(", ");
+                                }
+                                edge.append("color=red");
+                            }
+                            edge.append("];");
+                            out.println(edge.toString());
+                        }
+                    }
+                }
+            }
+        }
+        out.println("}");
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        SimpleReader in = new SimpleReader1L();
+        SimpleWriter out = new SimpleWriter1L();
+
+        out.print("Enter compiled BL program file name: ");
+        String fileName = in.nextLine();
+        CompiledProgramAnalyzer analyzer = new CompiledProgramAnalyzer(
+                CompiledProgramLoader.load(fileName));
+
+        out.println();
+        out.println("Entry point   max jumps");
+        for (int loc : analyzer.entryPoints()) {
+            int max = analyzer.maxJumps(loc);
+            if (max == UNBOUNDED) {
+                out.println(String.format("%11d   %s", loc, "unbounded"));
+            } else {
+                out.println(String.format("%11d   %d", loc, max));
+            }
+        }
+        out.println();
+        if (analyzer.maxJumps() == UNBOUNDED) {
+            out.println("Some step may follow an unbounded number of jumps");
+        } else {
+            out.println("Every step follows at most " + analyzer.maxJumps()
+                    + " jumps");
+        }
+        if (analyzer.hasPrimitiveFreeCycle()) {
+            out.print("Primitive-free cycles through:");
+            for (int loc = 0; loc < analyzer.length(); loc++) {
+                if (BugsWorldVMInterpreter.isInstructionStart(analyzer.starts,
+                        loc) && analyzer.isOnPrimitiveFreeCycle(loc)) {
+                    out.print(" " + loc);
+                }
+            }
+            out.println();
+        }
+
+        out.println();
+        out.print("Enter DOT output file name (Enter => none): ");
+        String dotFileName = in.nextLine();
+        if (dotFileName.length() > 0) {
+            SimpleWriter dot = new SimpleWriter1L(dotFileName);
+            analyzer.printDot(dot);
+            dot.close();
+        }
+
+        in.close();
+        out.close();
+    }
+
+}
@@ -0,0 +1,192 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.utilities.Reporter;
+
+/**
+ * Loads compiled BL programs from files in either the binary or the text
+ * format.
+ *
+ * <p>
+ * The binary format (written by {@code Program1GeneratedCode1}) is, with all
+ * integers as little-endian int32:
+ *
+ * <pre>
+ * "BLVM"  version  length  cp[0] ... cp[length - 1]  crc32
+ * </pre>
+ *
+ * where {@code crc32} is the CRC-32 of the bytes of {@code cp}. The text
+ * format is {@code length} followed by the entries of {@code cp}, one integer
+ * per line. Files that do not start with the magic bytes are read as text.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class CompiledProgramLoader {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Magic bytes at the start of a binary compiled program ("BLVM").
+     */
+    private static final byte[] MAGIC = { 'B', 'L', 'V', 'M' };
+
+    /**
+     * Version of the binary format read by this loader.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size in bytes of the header (magic, version, length).
+     */
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     * Size in bytes of the trailer (checksum).
+     */
+    private static final int TRAILER_SIZE = 4;
+
+    /**
+     * Mask to read an {@code int} holding a CRC-32 value as a {@code long}.
+     */
+    private static final long CRC_MASK = 0xFFFFFFFFL;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private CompiledProgramLoader() {
+    }
+
+    /**
+     * Returns whether the given buffer starts with the binary magic bytes.
+     *
+     * @param buffer
+     *            the buffer
+     * @return true iff buffer starts with MAGIC
+     */
+    private static boolean hasMagic(MappedByteBuffer buffer) {
+        boolean result = buffer.limit() >= HEADER_SIZE + TRAILER_SIZE;
+        for (int i = 0; result && i < MAGIC.length; i++) {
+            result = buffer.get(i) == MAGIC[i];
+        }
+        return result;
+    }
+
+    /**
+     * Decodes a binary compiled program.
+     *
+     * @param buffer
+     *            the contents of the file
+     * @param fileName
+     *            the name of the file (for error messages)
+     * @return the compiled program
+     * @requires hasMagic(buffer)
+     * @ensures <pre>
+     * if [buffer holds a well-formed binary compiled program] then
+     *  decode = [the compiled program in buffer]
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    private static int[] decode(MappedByteBuffer buffer, String fileName) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int version = buffer.getInt(MAGIC.length);
+        Reporter.assertElseFatalError(version == VERSION,
+                "Unsupported compiled program version " + version + " in "
+                        + fileName);
+        int length = buffer.getInt(MAGIC.length + Integer.BYTES);
+        Reporter.assertElseFatalError(
+                length >= 0 && (long) length * Integer.BYTES == buffer.limit()
+                        - HEADER_SIZE - TRAILER_SIZE,
+                "Truncated compiled program " + fileName);
+        int[] cp = new int[length];
+        buffer.position(HEADER_SIZE);
+        buffer.asIntBuffer().get(cp);
+        CRC32 crc = new CRC32();
+        buffer.position(HEADER_SIZE);
+        buffer.limit(HEADER_SIZE + length * Integer.BYTES);
+        crc.update(buffer);
+        buffer.limit(buffer.capacity());
+        Reporter.assertElseFatalError(
+                (buffer.getInt(HEADER_SIZE + length * Integer.BYTES)
+                        & CRC_MASK) == crc.getValue(),
+                "Checksum mismatch in compiled program " + fileName);
+        return cp;
+    }
+
+    /**
+     * Reads a text compiled program.
+     *
+     * @param fileName
+     *            the name of the file
+     * @return the compiled program
+     * @requires <pre>
+     * [fileName is the name of a file containing a compiled BL program in the
+     *  text format]
+     * </pre>
+     * @ensures loadText = [compiled BL program loaded from the given file]
+     */
+    private static int[] loadText(String fileName) {
+        SimpleReader file = new SimpleReader1L(fileName);
+        int length = file.nextInteger();
+        int[] cp = new int[length];
+        for (int i = 0; i < length; i++) {
+            cp[i] = file.nextInteger();
+        }
+        file.close();
+        return cp;
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Loads a compiled BL program from the given file, memory-mapping it if it
+     * is in the binary format and falling back to the text format otherwise.
+     *
+     * @param fileName
+     *            the name of the file
+     * @return the compiled BL program loaded from the given file
+     * @requires <pre>
+     * [fileName is the name of a file containing a compiled BL program in the
+     *  binary or text format]
+     * </pre>
+     * @ensures <pre>
+     * if [the file can be read and, if binary, is well formed] then
+     *  load = [compiled BL program loaded from the given file]
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    public static int[] load(String fileName) {
+        assert fileName != null : "Violation of: fileName is not null";
+
+        int[] cp = null;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel
+                    .map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (hasMagic(buffer)) {
+                cp = decode(buffer, fileName);
+            }
+        } catch (IOException e) {
+            Reporter.assertElseFatalError(false,
+                    "Error reading compiled program " + fileName);
+        }
+        if (cp == null) {
+            cp = loadText(fileName);
+        }
+        return cp;
+    }
+
+}
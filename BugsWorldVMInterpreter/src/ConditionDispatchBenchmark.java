@@ -0,0 +1,212 @@
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+import components.program.Program.Instruction;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Micro-benchmark comparing the table-driven condition evaluation of
+ * {@code BugsWorldVMInterpreter.conditionalJumpCondition} with the chain of
+ * byte code comparisons it replaced, for each of the ten conditional jumps.
+ *
+ * <p>
+ * Each measurement is preceded by a warm-up run of the same length so that
+ * both versions are JIT-compiled, and the results are folded into a checksum
+ * that is printed so the work cannot be eliminated.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class ConditionDispatchBenchmark {
+
+    /**
+     * Number of evaluations per warm-up or measurement run.
+     */
+    private static final int ITERATIONS = 5_000_000;
+
+    /**
+     * Number of measurement runs per condition (the best one is reported).
+     */
+    private static final int RUNS = 5;
+
+    /**
+     * Length of the byte code sequences evaluated (a power of 2).
+     */
+    private static final int SEQUENCE_LENGTH = 1024;
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * The {@code CellState} values indexed by ordinal.
+     */
+    private static final BugsWorldVMInterpreter.CellState[] CELL_STATES = BugsWorldVMInterpreter.CellState
+            .values();
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ConditionDispatchBenchmark() {
+    }
+
+    /**
+     * The chain of byte code comparisons previously used by
+     * {@code conditionalJumpCondition}, kept here as the baseline.
+     *
+     * @param wbs
+     *            the {@code CellState} indicating what the bug sees
+     * @param condJump
+     *            the byte code of a conditional jump
+     * @param rnd
+     *            the generator of the random condition
+     * @return the value of the conditional jump condition
+     * @requires [condJump is the byte code of a conditional jump]
+     */
+    private static boolean chainCondition(BugsWorldVMInterpreter.CellState wbs,
+            int condJump, RandomGenerator rnd) {
+        boolean answer = true;
+        if (condJump == Instruction.JUMP_IF_NOT_NEXT_IS_EMPTY.byteCode()) {
+            answer = (wbs == BugsWorldVMInterpreter.CellState.EMPTY);
+        } else if (condJump == Instruction.JUMP_IF_NOT_NEXT_IS_NOT_EMPTY
+                .byteCode()) {
+            answer = (wbs != BugsWorldVMInterpreter.CellState.EMPTY);
+        } else if (condJump == Instruction.JUMP_IF_NOT_NEXT_IS_WALL
+                .byteCode()) {
+            answer = (wbs == BugsWorldVMInterpreter.CellState.WALL);
+        } else if (condJump == Instruction.JUMP_IF_NOT_NEXT_IS_NOT_WALL
+                .byteCode()) {
+            answer = (wbs != BugsWorldVMInterpreter.CellState.WALL);
+        } else if (condJump == Instruction.JUMP_IF_NOT_NEXT_IS_FRIEND
+                .byteCode()) {
+            answer = (wbs == BugsWorldVMInterpreter.CellState.FRIEND);
+        } else if (condJump == Instruction.JUMP_IF_NOT_NEXT_IS_NOT_FRIEND
+                .byteCode()) {
+            answer = (wbs != BugsWorldVMInterpreter.CellState.FRIEND);
+        } else if (condJump == Instruction.JUMP_IF_NOT_NEXT_IS_ENEMY
+                .byteCode()) {
+            answer = (wbs == BugsWorldVMInterpreter.CellState.ENEMY);
+        } else if (condJump == Instruction.JUMP_IF_NOT_NEXT_IS_NOT_ENEMY
+                .byteCode()) {
+            answer = (wbs != BugsWorldVMInterpreter.CellState.ENEMY);
+        } else if (condJump == Instruction.JUMP_IF_NOT_RANDOM.byteCode()) {
+            answer = rnd.nextBoolean();
+        }
+        return answer;
+    }
+
+    /**
+     * Evaluates {@code ITERATIONS} conditions, cycling through the given
+     * sequence of conditional jump byte codes and through the cell states, and
+     * returns the number of true results. Reading the byte codes from an array
+     * keeps the JIT compiler from specializing the loop on a constant byte
+     * code. Both evaluations draw random conditions from the generator the
+     * interpreter uses by default, {@code ThreadLocalRandom.current()}, so
+     * they differ only in the dispatch.
+     *
+     * @param condJumps
+     *            the sequence of conditional jump byte codes
+     * @param table
+     *            whether to use the table-driven evaluation (otherwise the
+     *            comparison chain)
+     * @return the number of evaluations that returned true
+     */
+    private static int run(int[] condJumps, boolean table) {
+        RandomGenerator rnd = ThreadLocalRandom.current();
+        int count = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            int condJump = condJumps[i & (SEQUENCE_LENGTH - 1)];
+            BugsWorldVMInterpreter.CellState wbs = CELL_STATES[i
+                    & (CELL_STATES.length - 1)];
+            boolean value;
+            if (table) {
+                value = BugsWorldVMInterpreter.conditionalJumpCondition(wbs,
+                        condJump, rnd);
+            } else {
+                value = chainCondition(wbs, condJump, rnd);
+            }
+            if (value) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the best time per evaluation, in nanoseconds, over
+     * {@code RUNS} measurement runs.
+     *
+     * @param condJumps
+     *            the sequence of conditional jump byte codes
+     * @param table
+     *            whether to use the table-driven evaluation
+     * @param checksum
+     *            accumulates the results of the runs
+     * @return the best time per evaluation in nanoseconds
+     * @updates checksum
+     */
+    private static double measure(int[] condJumps, boolean table,
+            long[] checksum) {
+        checksum[0] += run(condJumps, table);
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < RUNS; r++) {
+            long start = System.nanoTime();
+            checksum[0] += run(condJumps, table);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / ITERATIONS;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+        long[] checksum = { 0 };
+        out.println(String.format("%-32s %10s %10s", "condition",
+                "chain ns", "table ns"));
+        long start = System.nanoTime();
+        int[] mixed = new int[SEQUENCE_LENGTH];
+        int conditions = 0;
+        for (Instruction i : Instruction.values()) {
+            if (i.name().startsWith("JUMP_IF_NOT_")) {
+                int[] same = new int[SEQUENCE_LENGTH];
+                for (int k = 0; k < SEQUENCE_LENGTH; k++) {
+                    same[k] = i.byteCode();
+                }
+                double chain = measure(same, false, checksum);
+                double table = measure(same, true, checksum);
+                out.println(String.format("%-32s %10.3f %10.3f", i.name(),
+                        chain, table));
+                for (int k = conditions; k < SEQUENCE_LENGTH; k += 10) {
+                    mixed[k] = i.byteCode();
+                }
+                conditions++;
+            }
+        }
+        /*
+         * Shuffle the mixed sequence with a fixed seed
+         */
+        Random rnd = new Random(SEQUENCE_LENGTH);
+        for (int k = SEQUENCE_LENGTH - 1; k > 0; k--) {
+            int j = rnd.nextInt(k + 1);
+            int tmp = mixed[k];
+            mixed[k] = mixed[j];
+            mixed[j] = tmp;
+        }
+        double chain = measure(mixed, false, checksum);
+        double table = measure(mixed, true, checksum);
+        out.println(String.format("%-32s %10.3f %10.3f", "(all ten, shuffled)",
+                chain, table));
+        out.println(String.format("total time %.0f ms, checksum %d",
+                (System.nanoTime() - start) / NANOS_PER_MILLI, checksum[0]));
+        out.close();
+    }
+
+}
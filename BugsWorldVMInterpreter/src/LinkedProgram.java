@@ -0,0 +1,370 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+import components.program.Program.Instruction;
+
+/**
+ * A compiled BL program in "linked" form: the address of the next primitive
+ * instruction to execute is precomputed, in a single pass over the program,
+ * for every instruction address and every {@code CellState} value, so that
+ * each interpreter step is a single array lookup.
+ *
+ * <p>
+ * Jump chains that go through a {@code JUMP_IF_NOT_RANDOM} instruction cannot
+ * be resolved ahead of time. For those the table records the address of the
+ * first random conditional jump reached; at run time that one instruction is
+ * evaluated and resolution continues from the table entry of the chosen
+ * branch. A random conditional jump from which no choice of the random
+ * conditions reaches a primitive instruction is recorded as
+ * {@code NO_PRIMITIVE} instead, so the random jumps left in the table always
+ * lead to a primitive instruction with probability 1, and as many of them are
+ * evaluated as it takes to get there.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class LinkedProgram {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Table entry for jump chains from which no primitive instruction is
+     * reachable (i.e., chains that end in a primitive-free cycle).
+     */
+    static final int NO_PRIMITIVE = BugsWorldVMInterpreter.NO_PRIMITIVE_REACHABLE;
+
+    /**
+     * Number of possible {@code CellState} values.
+     */
+    private static final int STATES = BugsWorldVMInterpreter.CellState
+            .values().length;
+
+    /**
+     * Marker for table entries not resolved yet (only used while linking).
+     */
+    private static final int UNRESOLVED = Integer.MIN_VALUE;
+
+    /**
+     * Marker for table entries on the jump chain being resolved (only used
+     * while linking).
+     */
+    private static final int IN_PROGRESS = Integer.MIN_VALUE + 1;
+
+    /**
+     * The compiled program.
+     */
+    private final int[] cp;
+
+    /**
+     * Bitmap of the locations of the instruction byte codes in cp.
+     */
+    private final long[] starts;
+
+    /**
+     * The resolved table: entry {@code pc * STATES + wbs.ordinal()} is either
+     * the address of the next primitive instruction, {@code NO_PRIMITIVE}, or
+     * {@code randomMarker(r)} where {@code r} is the address of the first
+     * {@code JUMP_IF_NOT_RANDOM} on the chain; a chain whose first random jump
+     * cannot lead to a primitive instruction is {@code NO_PRIMITIVE}.
+     */
+    private final int[] next;
+
+    /**
+     * Encodes the address of a random conditional jump as a table entry.
+     *
+     * @param loc
+     *            the address of a {@code JUMP_IF_NOT_RANDOM} instruction
+     * @return the encoded table entry
+     * @ensures randomMarker < NO_PRIMITIVE
+     */
+    private static int randomMarker(int loc) {
+        return -loc - 2;
+    }
+
+    /**
+     * Decodes a table entry produced by {@code randomMarker}.
+     *
+     * @param entry
+     *            the table entry
+     * @return the address of the random conditional jump
+     * @requires entry < NO_PRIMITIVE
+     * @ensures randomLocation = [loc such that randomMarker(loc) = entry]
+     */
+    private static int randomLocation(int entry) {
+        return -entry - 2;
+    }
+
+    /**
+     * Resolves the jump chain starting at {@code pc} for the cell state with
+     * the given ordinal, filling in the table entries of every instruction on
+     * the chain.
+     *
+     * @param pc
+     *            the start of the chain
+     * @param state
+     *            the ordinal of the {@code CellState}
+     * @return the resolved table entry for {@code pc}
+     * @updates this.next
+     * @requires [pc is the location of an instruction byte code in cp]
+     */
+    private int resolve(int pc, int state) {
+        BugsWorldVMInterpreter.CellState wbs = BugsWorldVMInterpreter.CellState
+                .values()[state];
+        /*
+         * Walk the chain marking every visited instruction, until reaching a
+         * primitive, a random jump, an already resolved entry, or an entry on
+         * the chain itself (a primitive-free cycle)
+         */
+        int loc = pc;
+        int result = UNRESOLVED;
+        while (result == UNRESOLVED) {
+            int entry = this.next[loc * STATES + state];
+            int byteCode = this.cp[loc];
+            if (entry == IN_PROGRESS) {
+                result = NO_PRIMITIVE;
+            } else if (entry != UNRESOLVED) {
+                result = entry;
+            } else if (BugsWorldVMInterpreter
+                    .isPrimitiveInstructionByteCode(byteCode)) {
+                result = loc;
+                this.next[loc * STATES + state] = result;
+            } else if (byteCode == Instruction.JUMP_IF_NOT_RANDOM.byteCode()) {
+                result = randomMarker(loc);
+                this.next[loc * STATES + state] = result;
+            } else {
+                this.next[loc * STATES + state] = IN_PROGRESS;
+                if (byteCode == Instruction.JUMP.byteCode()
+                        || !BugsWorldVMInterpreter
+                                .conditionalJumpCondition(wbs, byteCode)) {
+                    loc = this.cp[loc + 1];
+                } else {
+                    loc = loc + 2;
+                }
+            }
+        }
+        /*
+         * Walk the chain again recording the result
+         */
+        loc = pc;
+        while (this.next[loc * STATES + state] == IN_PROGRESS) {
+            int byteCode = this.cp[loc];
+            this.next[loc * STATES + state] = result;
+            if (byteCode == Instruction.JUMP.byteCode()
+                    || !BugsWorldVMInterpreter.conditionalJumpCondition(wbs,
+                            byteCode)) {
+                loc = this.cp[loc + 1];
+            } else {
+                loc = loc + 2;
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Links the given compiled program.
+     *
+     * @param cp
+     *            the compiled program
+     * @requires [cp is a valid compiled BL program]
+     * @ensures <pre>
+     * this = [cp linked so that nextPrimitiveInstructionAddress is a table
+     *  lookup]
+     * </pre>
+     */
+    public LinkedProgram(int[] cp) {
+        assert cp != null : "Violation of: cp is not null";
+        assert cp.length > 0 : "Violation of: cp is a valid compiled BL program";
+        this.cp = cp.clone();
+        this.starts = BugsWorldVMInterpreter.instructionStarts(this.cp);
+        this.next = new int[this.cp.length * STATES];
+        for (int i = 0; i < this.next.length; i++) {
+            this.next[i] = UNRESOLVED;
+        }
+        for (int pc = 0; pc < this.cp.length; pc++) {
+            if (BugsWorldVMInterpreter.isInstructionStart(this.starts, pc)) {
+                for (int state = 0; state < STATES; state++) {
+                    if (this.next[pc * STATES + state] == UNRESOLVED) {
+                        this.resolve(pc, state);
+                    }
+                }
+            }
+        }
+        /*
+         * Replace the random jumps that cannot lead to a primitive instruction
+         */
+        int[] reachable = BugsWorldVMInterpreter
+                .primitiveReachableStates(this.cp);
+        for (int pc = 0; pc < this.cp.length; pc++) {
+            if (BugsWorldVMInterpreter.isInstructionStart(this.starts, pc)) {
+                for (int state = 0; state < STATES; state++) {
+                    int entry = this.next[pc * STATES + state];
+                    if (entry < NO_PRIMITIVE
+                            && (reachable[randomLocation(entry)]
+                                    & (1 << state)) == 0) {
+                        this.next[pc * STATES + state] = NO_PRIMITIVE;
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Public methods ---------------------------------------------------------
+     */
+
+    /**
+     * Returns the length of the compiled program.
+     *
+     * @return the length of the compiled program
+     * @ensures length = |cp|
+     */
+    public int length() {
+        return this.cp.length;
+    }
+
+    /**
+     * Returns the byte code (or address) at location {@code loc} of the
+     * compiled program.
+     *
+     * @param loc
+     *            the location
+     * @return the entry of the compiled program at {@code loc}
+     * @requires 0 <= loc < |cp|
+     * @ensures byteCode = cp[loc]
+     */
+    public int byteCode(int loc) {
+        assert 0 <= loc : "Violation of: 0 <= loc";
+        assert loc < this.cp.length : "Violation of: loc < |cp|";
+        return this.cp[loc];
+    }
+
+    /**
+     * Checks whether the given location {@code loc} is the location of an
+     * instruction byte code in the compiled program, in constant time.
+     *
+     * @param loc
+     *            the location to check
+     * @return true iff {@code loc} is the address of an instruction byte code
+     * @ensures <pre>
+     * isValidInstructionLocation =
+     *  [true iff loc is the address of an instruction byte code in cp]
+     * </pre>
+     */
+    public boolean isValidInstructionLocation(int loc) {
+        return BugsWorldVMInterpreter.isInstructionStart(this.starts, loc);
+    }
+
+    /**
+     * Returns the location of the next primitive instruction to execute given
+     * what the bug sees {@code wbs} and starting from location {@code pc}, or
+     * {@code NO_PRIMITIVE} if no primitive instruction is reachable. The
+     * result is that of
+     * {@code BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp, wbs,
+     * pc, ThreadLocalRandom.current())}.
+     *
+     * @param wbs
+     *            the {@code CellState} indicating what the bug sees
+     * @param pc
+     *            the program counter
+     * @return the location of the next primitive instruction to execute
+     * @requires <pre>
+     * 0 <= pc < |cp|  and
+     * [pc is the location of an instruction byte code in cp]
+     * </pre>
+     * @ensures <pre>
+     * [return the address of the next primitive instruction that
+     *  should be executed in program cp given what the bug sees wbs and
+     *  starting execution at address pc in program cp, or NO_PRIMITIVE if
+     *  there is no such instruction]
+     * </pre>
+     */
+    public int nextPrimitiveInstructionAddress(
+            BugsWorldVMInterpreter.CellState wbs, int pc) {
+        assert wbs != null : "Violation of: wbs is not null";
+        return this.nextPrimitiveInstructionAddress(wbs.ordinal(), pc,
+                ThreadLocalRandom.current());
+    }
+
+    /**
+     * Same as {@code nextPrimitiveInstructionAddress(wbs, pc)}, drawing the
+     * value of every random condition from {@code rnd}, so that runs with a
+     * seeded {@code rnd} can be replayed exactly.
+     *
+     * @param wbs
+     *            the {@code CellState} indicating what the bug sees
+     * @param pc
+     *            the program counter
+     * @param rnd
+     *            the source of the random conditions
+     * @return the location of the next primitive instruction to execute
+     * @updates rnd
+     * @requires <pre>
+     * 0 <= pc < |cp|  and
+     * [pc is the location of an instruction byte code in cp]
+     * </pre>
+     * @ensures <pre>
+     * [return the address of the next primitive instruction that
+     *  should be executed in program cp given what the bug sees wbs and
+     *  starting execution at address pc in program cp, or NO_PRIMITIVE if
+     *  there is no such instruction]
+     * </pre>
+     */
+    public int nextPrimitiveInstructionAddress(
+            BugsWorldVMInterpreter.CellState wbs, int pc, RandomGenerator rnd) {
+        assert wbs != null : "Violation of: wbs is not null";
+        return this.nextPrimitiveInstructionAddress(wbs.ordinal(), pc, rnd);
+    }
+
+    /**
+     * Same as {@code nextPrimitiveInstructionAddress(CellState, int,
+     * RandomGenerator)}, with what the bug sees given as the ordinal of its
+     * {@code CellState}.
+     *
+     * @param state
+     *            the ordinal of the {@code CellState} indicating what the bug
+     *            sees
+     * @param pc
+     *            the program counter
+     * @param rnd
+     *            the source of the random conditions
+     * @return the location of the next primitive instruction to execute
+     * @updates rnd
+     * @requires <pre>
+     * 0 <= state < |CellState.values()|  and
+     * 0 <= pc < |cp|  and
+     * [pc is the location of an instruction byte code in cp]
+     * </pre>
+     * @ensures <pre>
+     * nextPrimitiveInstructionAddress =
+     *  nextPrimitiveInstructionAddress(CellState.values()[state], pc, rnd)
+     * </pre>
+     */
+    int nextPrimitiveInstructionAddress(int state, int pc,
+            RandomGenerator rnd) {
+        assert rnd != null : "Violation of: rnd is not null";
+        assert 0 <= state : "Violation of: 0 <= state";
+        assert state < STATES : "Violation of: state < |CellState.values()|";
+        assert 0 <= pc : "Violation of: 0 <= pc";
+        assert pc < this.cp.length : "Violation of: pc < |cp|";
+        assert this.isValidInstructionLocation(pc) : ""
+                + "Violation of: pc is the location of an instruction byte code in cp";
+
+        int result = this.next[pc * STATES + state];
+        while (result < NO_PRIMITIVE) {
+            int loc = randomLocation(result);
+            if (rnd.nextBoolean()) {
+                result = this.next[(loc + 2) * STATES + state];
+            } else {
+                result = this.next[this.cp[loc + 1] * STATES + state];
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,168 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code BugsWorld}.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class BugsWorldTest {
+
+    /**
+     * Compiled program for {@code WHILE true DO move END WHILE}.
+     */
+    private static final int[] MOVE_LOOP = { 16, 5, 0, 6, 0, 5 };
+
+    /**
+     * Compiled program for {@code WHILE true DO infect END WHILE}.
+     */
+    private static final int[] INFECT_LOOP = { 16, 5, 3, 6, 0, 5 };
+
+    /**
+     * Compiled program for {@code WHILE true DO skip END WHILE}.
+     */
+    private static final int[] SKIP_LOOP = { 16, 5, 4, 6, 0, 5 };
+
+    /**
+     * Compiled program for
+     * {@code WHILE true DO IF next-is-empty THEN move ELSE IF next-is-enemy
+     * THEN infect ELSE turnright END IF END IF END WHILE}.
+     */
+    private static final int[] WANDER = { 16, 15, 7, 7, 0, 6, 13, 13, 12, 3,
+            6, 13, 2, 6, 0, 5 };
+
+    /**
+     * Compiled program for
+     * {@code WHILE true DO IF random THEN move ELSE turnright END IF END WHILE}.
+     */
+    private static final int[] RANDOM_WALK = { 16, 10, 15, 7, 0, 6, 8, 2, 6, 0,
+            5 };
+
+    @Test
+    public void testMoveStopsAtWall() {
+        BugsWorld w = new BugsWorld(3, 1, false,
+                new LinkedProgram[] { new LinkedProgram(MOVE_LOOP) });
+        int bug = w.addBug(0, 0, BugsWorld.EAST, 0);
+        w.tick();
+        assertEquals(1, w.x(bug));
+        w.tick();
+        assertEquals(2, w.x(bug));
+        w.tick();
+        assertEquals(2, w.x(bug));
+        assertEquals(bug, w.bugAt(2, 0));
+        assertEquals(-1, w.bugAt(0, 0));
+        assertEquals(3, w.ticks());
+    }
+
+    @Test
+    public void testMoveWrapsOnTorus() {
+        BugsWorld w = new BugsWorld(3, 2, true,
+                new LinkedProgram[] { new LinkedProgram(MOVE_LOOP) });
+        int bug = w.addBug(1, 0, BugsWorld.NORTH, 0);
+        w.tick();
+        assertEquals(1, w.x(bug));
+        assertEquals(1, w.y(bug));
+    }
+
+    @Test
+    public void testMoveConflictSmallestIdWins() {
+        BugsWorld w = new BugsWorld(3, 1, false,
+                new LinkedProgram[] { new LinkedProgram(MOVE_LOOP) });
+        int left = w.addBug(0, 0, BugsWorld.EAST, 0);
+        int right = w.addBug(2, 0, BugsWorld.WEST, 0);
+        w.tick();
+        assertEquals(1, w.x(left));
+        assertEquals(2, w.x(right));
+    }
+
+    @Test
+    public void testInfect() {
+        BugsWorld w = new BugsWorld(2, 1, false,
+                new LinkedProgram[] { new LinkedProgram(INFECT_LOOP),
+                        new LinkedProgram(SKIP_LOOP) });
+        int infector = w.addBug(0, 0, BugsWorld.EAST, 0);
+        int victim = w.addBug(1, 0, BugsWorld.WEST, 1);
+        w.tick();
+        assertEquals(0, w.species(infector));
+        assertEquals(0, w.species(victim));
+        assertEquals(0, w.pc(victim));
+        assertEquals(3, w.pc(infector));
+    }
+
+    @Test
+    public void testTurnRight() {
+        BugsWorld w = new BugsWorld(1, 1, false,
+                new LinkedProgram[] { new LinkedProgram(WANDER) });
+        int bug = w.addBug(0, 0, BugsWorld.WEST, 0);
+        w.tick();
+        assertEquals(BugsWorld.NORTH, w.direction(bug));
+    }
+
+    @Test
+    public void testResultIndependentOfThreadCount() {
+        final int size = 150;
+        final int bugs = 3000;
+        final int ticks = 20;
+        LinkedProgram[] programs = { new LinkedProgram(WANDER),
+                new LinkedProgram(WANDER) };
+        BugsWorld w1 = new BugsWorld(size, size, true, programs,
+                new ForkJoinPool(1));
+        BugsWorld w4 = new BugsWorld(size, size, true, programs,
+                new ForkJoinPool(4));
+        for (int i = 0; i < bugs; i++) {
+            int cell = (int) ((i * 7919L) % (size * size));
+            w1.addBug(cell % size, cell / size, i % BugsWorld.DIRECTIONS,
+                    i % 2);
+            w4.addBug(cell % size, cell / size, i % BugsWorld.DIRECTIONS,
+                    i % 2);
+        }
+        for (int t = 0; t < ticks; t++) {
+            w1.tick();
+            w4.tick();
+        }
+        for (int i = 0; i < bugs; i++) {
+            assertEquals(w1.x(i), w4.x(i));
+            assertEquals(w1.y(i), w4.y(i));
+            assertEquals(w1.direction(i), w4.direction(i));
+            assertEquals(w1.species(i), w4.species(i));
+            assertEquals(w1.pc(i), w4.pc(i));
+        }
+    }
+
+    @Test
+    public void testSeededRandomIndependentOfThreadCount() {
+        final int size = 150;
+        final int bugs = 3000;
+        final int ticks = 20;
+        final long seed = 2231;
+        LinkedProgram[] programs = { new LinkedProgram(RANDOM_WALK),
+                new LinkedProgram(WANDER) };
+        BugsWorld w1 = new BugsWorld(size, size, true, programs,
+                new ForkJoinPool(1), seed);
+        BugsWorld w4 = new BugsWorld(size, size, true, programs,
+                new ForkJoinPool(4), seed);
+        for (int i = 0; i < bugs; i++) {
+            int cell = (int) ((i * 7919L) % (size * size));
+            w1.addBug(cell % size, cell / size, i % BugsWorld.DIRECTIONS,
+                    i % 2);
+            w4.addBug(cell % size, cell / size, i % BugsWorld.DIRECTIONS,
+                    i % 2);
+        }
+        for (int t = 0; t < ticks; t++) {
+            w1.tick();
+            w4.tick();
+        }
+        for (int i = 0; i < bugs; i++) {
+            assertEquals(w1.x(i), w4.x(i));
+            assertEquals(w1.y(i), w4.y(i));
+            assertEquals(w1.direction(i), w4.direction(i));
+            assertEquals(w1.species(i), w4.species(i));
+            assertEquals(w1.pc(i), w4.pc(i));
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code BugsWorldVMBatch}'s step methods.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class BugsWorldVMBatchTest {
+
+    /**
+     * The name of a file containing a valid compiled BL program.
+     */
+    private static final String FILE_NAME = "data/TestProgram.bo";
+
+    /**
+     * Compiled program for {@code WHILE true DO END WHILE}.
+     */
+    private static final int[] EMPTY_LOOP = { 16, 4, 6, 0, 5 };
+
+    @Test
+    public void testStepDeterministic() {
+        LinkedProgram[] programs = { new LinkedProgram(
+                CompiledTestPrograms.loadProgram(FILE_NAME)) };
+        int[] programIds = { 0, 0, 0, 0 };
+        int[] pcs = { 0, 0, 5, 23 };
+        byte[] cellStates = { 0, 2, 3, 0 };
+        int[] primitives = new int[4];
+        BugsWorldVMBatch.step(programs, programIds, pcs, cellStates,
+                primitives, 0, 4);
+        assertArrayEquals(new int[] { 5, 23, 10, 5 }, pcs);
+        assertArrayEquals(new int[] { 0, 4, 3, 0 }, primitives);
+    }
+
+    @Test
+    public void testStepRange() {
+        LinkedProgram[] programs = { new LinkedProgram(
+                CompiledTestPrograms.loadProgram(FILE_NAME)) };
+        int[] programIds = { 0, 0, 0 };
+        int[] pcs = { 0, 0, 0 };
+        byte[] cellStates = { 0, 0, 0 };
+        int[] primitives = new int[3];
+        BugsWorldVMBatch.step(programs, programIds, pcs, cellStates,
+                primitives, 1, 2);
+        assertArrayEquals(new int[] { 0, 5, 0 }, pcs);
+        assertArrayEquals(new int[] { 0, 0, 0 }, primitives);
+    }
+
+    @Test
+    public void testStepHaltAndNoPrimitive() {
+        LinkedProgram[] programs = { new LinkedProgram(EMPTY_LOOP),
+                new LinkedProgram(
+                        CompiledTestPrograms.loadProgram(FILE_NAME)) };
+        int[] programIds = { 0, 0, 1 };
+        int[] pcs = { 0, 4, 25 };
+        byte[] cellStates = { 0, 0, 1 };
+        int[] primitives = new int[3];
+        BugsWorldVMBatch.step(programs, programIds, pcs, cellStates,
+                primitives, 0, 3);
+        assertArrayEquals(new int[] { 0, 4, 25 }, pcs);
+        assertArrayEquals(new int[] { BugsWorldVMBatch.NO_PRIMITIVE, 5, 5 },
+                primitives);
+    }
+
+    @Test
+    public void testStepParallelMatchesStep() {
+        final int bugs = 10000;
+        LinkedProgram[] programs = { new LinkedProgram(
+                CompiledTestPrograms.loadProgram(FILE_NAME)) };
+        int[] programIds = new int[bugs];
+        int[] pcs = new int[bugs];
+        int[] pcsExpected = new int[bugs];
+        byte[] cellStates = new byte[bugs];
+        int[] primitives = new int[bugs];
+        int[] primitivesExpected = new int[bugs];
+        for (int i = 0; i < bugs; i++) {
+            /*
+             * Avoid WALL so that no random jump is involved
+             */
+            cellStates[i] = (byte) (2 * (i % 2));
+        }
+        BugsWorldVMBatch.step(programs, programIds, pcsExpected, cellStates,
+                primitivesExpected, 0, bugs);
+        BugsWorldVMBatch.stepParallel(programs, programIds, pcs, cellStates,
+                primitives);
+        assertArrayEquals(pcsExpected, pcs);
+        assertArrayEquals(primitivesExpected, primitives);
+    }
+
+}
@@ -3,12 +3,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
+import java.util.SplittableRandom;
 
 import org.junit.Test;
 
-import components.simplereader.SimpleReader;
-import components.simplereader.SimpleReader1L;
-
 /**
  * JUnit test fixture for {@code BugsWorldVMInterpreter}'s
  * nextPrimitiveInstructionAddress static method.
@@ -23,33 +21,9 @@ public final class BugsWorldVMInterpreterTest {
      */
     private static final String FILE_NAME = "data/TestProgram.bo";
 
-    /**
-     * Loads a BL compiled program from the given file and returns an array
-     * containing the compiled program.
-     *
-     * @param fileName
-     *            the name of the input file
-     * @return the compiled BL program loaded from the given file
-     * @requires <pre>
-     * [fileName is the name of a file containing a valid compiled BL program]
-     * </pre>
-     * @ensures loadProgram = [compiled BL program loaded from given file]
-     */
-    private static int[] loadProgram(String fileName) {
-        int[] cp;
-        SimpleReader file = new SimpleReader1L(fileName);
-        int length = file.nextInteger();
-        cp = new int[length];
-        for (int i = 0; i < length; i++) {
-            cp[i] = file.nextInteger();
-        }
-        file.close();
-        return cp;
-    }
-
     @Test
     public void test0Empty() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.EMPTY, 0);
@@ -59,7 +33,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test0Wall() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.WALL, 0);
@@ -69,7 +43,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test0Friend() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.FRIEND, 0);
@@ -79,7 +53,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test0Enemy() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.ENEMY, 0);
@@ -89,7 +63,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test5Empty() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.EMPTY, 5);
@@ -99,7 +73,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test5Wall() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.WALL, 5);
@@ -109,7 +83,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test5Friend() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.FRIEND, 5);
@@ -119,7 +93,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test5Enemy() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.ENEMY, 5);
@@ -129,7 +103,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test10Empty() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.EMPTY, 10);
@@ -139,7 +113,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test10Wall() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.WALL, 10);
@@ -149,7 +123,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test10Friend() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.FRIEND, 10);
@@ -159,7 +133,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test10Enemy() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.ENEMY, 10);
@@ -169,7 +143,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test17Empty() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.EMPTY, 17);
@@ -179,7 +153,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test17Wall() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.WALL, 17);
@@ -189,7 +163,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test17Friend() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.FRIEND, 17);
@@ -199,7 +173,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test17Enemy() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.ENEMY, 17);
@@ -209,7 +183,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test20Empty() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.EMPTY, 20);
@@ -219,7 +193,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test20Wall() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.WALL, 20);
@@ -229,7 +203,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test20Friend() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.FRIEND, 20);
@@ -239,7 +213,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test20Enemy() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.ENEMY, 20);
@@ -249,7 +223,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test23Empty() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.EMPTY, 23);
@@ -259,7 +233,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test23Wall() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.WALL, 23);
@@ -269,7 +243,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test23Friend() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.FRIEND, 23);
@@ -279,7 +253,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test23Enemy() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.ENEMY, 23);
@@ -289,7 +263,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test4Empty() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.EMPTY, 4);
@@ -299,7 +273,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test9Wall() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.WALL, 9);
@@ -309,7 +283,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test16Friend() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.FRIEND, 16);
@@ -319,7 +293,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test19Enemy() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.ENEMY, 19);
@@ -329,7 +303,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test22Empty() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.EMPTY, 22);
@@ -339,7 +313,7 @@ public final class BugsWorldVMInterpreterTest {
 
     @Test
     public void test25Wall() {
-        int[] cp = loadProgram(FILE_NAME);
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
         int[] cpExpected = Arrays.copyOf(cp, cp.length);
         int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
                 BugsWorldVMInterpreter.CellState.WALL, 25);
@@ -347,4 +321,73 @@ public final class BugsWorldVMInterpreterTest {
         assertArrayEquals(cpExpected, cp);
     }
 
+    @Test
+    public void testPrimitiveFreeCycle() {
+        int[] cp = { 16, 4, 6, 0, 5 };
+        int[] cpExpected = Arrays.copyOf(cp, cp.length);
+        int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
+                BugsWorldVMInterpreter.CellState.EMPTY, 0);
+        assertEquals(BugsWorldVMInterpreter.NO_PRIMITIVE_REACHABLE, pc);
+        assertArrayEquals(cpExpected, cp);
+    }
+
+    @Test
+    public void testRandomLoopBeforePrimitive() {
+        final int draws = 1000;
+        int[] cp = { 15, 4, 6, 0, 0, 6, 0 };
+        SplittableRandom rnd = new SplittableRandom(2231);
+        for (int i = 0; i < draws; i++) {
+            int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
+                    BugsWorldVMInterpreter.CellState.EMPTY, 0, rnd);
+            assertEquals(4, pc);
+        }
+    }
+
+    @Test
+    public void testRandomPrimitiveFreeCycle() {
+        int[] cp = { 15, 0, 6, 0, 5 };
+        int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
+                BugsWorldVMInterpreter.CellState.EMPTY, 0);
+        assertEquals(BugsWorldVMInterpreter.NO_PRIMITIVE_REACHABLE, pc);
+    }
+
+    @Test
+    public void testRandomPrimitiveFreeCycleDrawn() {
+        int[] cp = { 15, 0, 6, 0, 5 };
+        SplittableRandom rnd = new SplittableRandom(2231);
+        int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
+                BugsWorldVMInterpreter.CellState.EMPTY, 0, rnd);
+        assertEquals(BugsWorldVMInterpreter.NO_PRIMITIVE_REACHABLE, pc);
+    }
+
+    @Test
+    public void test0EnemyWithinBudget() {
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
+        int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
+                BugsWorldVMInterpreter.CellState.ENEMY, 0, 3);
+        assertEquals(9, pc);
+    }
+
+    @Test
+    public void test0EnemyBudgetExceeded() {
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
+        int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
+                BugsWorldVMInterpreter.CellState.ENEMY, 0, 2);
+        assertEquals(BugsWorldVMInterpreter.NO_PRIMITIVE_REACHABLE, pc);
+    }
+
+    @Test
+    public void testLongJumpChain() {
+        final int jumps = 100000;
+        int[] cp = new int[2 * jumps + 1];
+        for (int i = 0; i < jumps; i++) {
+            cp[2 * i] = 6;
+            cp[2 * i + 1] = 2 * i + 2;
+        }
+        cp[2 * jumps] = 5;
+        int pc = BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(cp,
+                BugsWorldVMInterpreter.CellState.EMPTY, 0);
+        assertEquals(2 * jumps, pc);
+    }
+
 }
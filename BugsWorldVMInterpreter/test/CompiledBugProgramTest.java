@@ -0,0 +1,235 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+import components.sequence.Sequence;
+import components.sequence.Sequence1L;
+
+/**
+ * JUnit test fixture for {@code CompiledBugProgram}'s compile and next
+ * methods.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class CompiledBugProgramTest {
+
+    /**
+     * The name of a file containing a valid compiled BL program.
+     */
+    private static final String FILE_NAME = "data/TestProgram.bo";
+
+    /**
+     * Compiled program for {@code WHILE true DO END WHILE}.
+     */
+    private static final int[] EMPTY_LOOP = { 16, 4, 6, 0, 5 };
+
+    /**
+     * Compiled program for {@code IF random THEN move END IF}.
+     */
+    private static final int[] RANDOM_MOVE = { 15, 3, 0, 5 };
+
+    /**
+     * Compiled program for {@code WHILE random DO END WHILE move}.
+     */
+    private static final int[] RANDOM_LOOP = { 15, 4, 6, 0, 0, 6, 0 };
+
+    /**
+     * Compiled program whose random jump leads back to itself either way.
+     */
+    private static final int[] RANDOM_TRAP = { 15, 0, 6, 0, 5 };
+
+    /**
+     * Seed of the random conditions.
+     */
+    private static final long SEED = 2231;
+
+    /**
+     * Checks that {@code compiled} agrees with the interpreter at every
+     * instruction location and for every {@code CellState}, and draws the
+     * same random conditions.
+     *
+     * @param cp
+     *            the compiled program
+     * @param compiled
+     *            cp compiled
+     */
+    private static void checkAgainstInterpreter(int[] cp,
+            CompiledBugProgram compiled) {
+        LinkedProgram lp = new LinkedProgram(cp);
+        int[] reachable = BugsWorldVMInterpreter.primitiveReachableStates(cp);
+        for (BugsWorldVMInterpreter.CellState wbs : BugsWorldVMInterpreter.CellState
+                .values()) {
+            for (int pc = 0; pc < cp.length; pc++) {
+                assertEquals(lp.isValidInstructionLocation(pc),
+                        compiled.isValidInstructionLocation(pc));
+                if (compiled.isValidInstructionLocation(pc)) {
+                    SplittableRandom r1 = new SplittableRandom(SEED + pc);
+                    SplittableRandom r2 = new SplittableRandom(SEED + pc);
+                    assertEquals(
+                            BugsWorldVMInterpreter
+                                    .nextPrimitiveInstructionAddress(cp,
+                                            reachable, wbs, pc, r1),
+                            compiled.next(pc, wbs, r2));
+                    assertEquals(r1.nextLong(), r2.nextLong());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTestProgram() {
+        int[] cp = CompiledProgramLoader.load(FILE_NAME);
+        CompiledBugProgram compiled = CompiledBugProgram.compile(cp);
+        assertTrue(compiled.isGenerated());
+        assertEquals(cp.length, compiled.length());
+        checkAgainstInterpreter(cp, compiled);
+    }
+
+    @Test
+    public void testPrimitiveFreeCycle() {
+        CompiledBugProgram compiled = CompiledBugProgram.compile(EMPTY_LOOP);
+        assertTrue(compiled.isGenerated());
+        assertEquals(CompiledBugProgram.NO_PRIMITIVE,
+                compiled.next(0, BugsWorldVMInterpreter.CellState.EMPTY));
+        assertEquals(4,
+                compiled.next(4, BugsWorldVMInterpreter.CellState.EMPTY));
+    }
+
+    @Test
+    public void testRandomReplays() {
+        final int draws = 100;
+        CompiledBugProgram compiled = CompiledBugProgram.compile(RANDOM_MOVE);
+        SplittableRandom r1 = new SplittableRandom(SEED);
+        SplittableRandom r2 = new SplittableRandom(SEED);
+        boolean moved = false;
+        boolean skipped = false;
+        for (int i = 0; i < draws; i++) {
+            int pc = compiled.next(0, BugsWorldVMInterpreter.CellState.EMPTY,
+                    r1);
+            assertEquals(BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(
+                    RANDOM_MOVE, BugsWorldVMInterpreter.CellState.EMPTY, 0,
+                    r2), pc);
+            moved |= pc == 2;
+            skipped |= pc == 3;
+        }
+        assertTrue(moved && skipped);
+    }
+
+    @Test
+    public void testRandomLoopBeforePrimitive() {
+        final int draws = 1000;
+        CompiledBugProgram compiled = CompiledBugProgram.compile(RANDOM_LOOP);
+        assertTrue(compiled.isGenerated());
+        SplittableRandom rnd = new SplittableRandom(SEED);
+        for (int i = 0; i < draws; i++) {
+            assertEquals(4, compiled.next(0,
+                    BugsWorldVMInterpreter.CellState.EMPTY, rnd));
+        }
+        checkAgainstInterpreter(RANDOM_LOOP, compiled);
+    }
+
+    @Test
+    public void testRandomLoopBeforePrimitiveFallsBack() {
+        final int draws = 1000;
+        final int jumps = 1000;
+        int[] cp = new int[RANDOM_LOOP.length + 2 * jumps + 1];
+        System.arraycopy(RANDOM_LOOP, 0, cp, 0, RANDOM_LOOP.length);
+        for (int i = 0; i < jumps; i++) {
+            cp[RANDOM_LOOP.length + 2 * i] = 7;
+            cp[RANDOM_LOOP.length + 2 * i + 1] = 4;
+        }
+        cp[RANDOM_LOOP.length + 2 * jumps] = 0;
+        CompiledBugProgram compiled = CompiledBugProgram.compile(cp);
+        assertEquals(false, compiled.isGenerated());
+        SplittableRandom rnd = new SplittableRandom(SEED);
+        for (int i = 0; i < draws; i++) {
+            assertEquals(4, compiled.next(0,
+                    BugsWorldVMInterpreter.CellState.EMPTY, rnd));
+        }
+    }
+
+    @Test
+    public void testRandomPrimitiveFreeCycle() {
+        CompiledBugProgram compiled = CompiledBugProgram.compile(RANDOM_TRAP);
+        assertTrue(compiled.isGenerated());
+        for (BugsWorldVMInterpreter.CellState wbs : BugsWorldVMInterpreter.CellState
+                .values()) {
+            assertEquals(CompiledBugProgram.NO_PRIMITIVE, compiled.next(0, wbs));
+            assertEquals(4, compiled.next(4, wbs));
+        }
+        checkAgainstInterpreter(RANDOM_TRAP, compiled);
+    }
+
+    @Test
+    public void testCompileSequence() {
+        Sequence<Integer> cp = new Sequence1L<>();
+        for (int byteCode : RANDOM_MOVE) {
+            cp.add(cp.length(), byteCode);
+        }
+        CompiledBugProgram compiled = CompiledBugProgram.compile(cp);
+        assertEquals(RANDOM_MOVE.length, compiled.length());
+        for (int loc = 0; loc < RANDOM_MOVE.length; loc++) {
+            assertEquals(RANDOM_MOVE[loc], compiled.byteCode(loc));
+        }
+    }
+
+    @Test
+    public void testLongJumpChain() {
+        final int jumps = 150;
+        int[] cp = new int[2 * jumps + 1];
+        for (int i = 0; i < jumps; i++) {
+            cp[2 * i] = 6;
+            cp[2 * i + 1] = 2 * i + 2;
+        }
+        cp[2 * jumps] = 0;
+        CompiledBugProgram compiled = CompiledBugProgram.compile(cp);
+        assertTrue(compiled.isGenerated());
+        checkAgainstInterpreter(cp, compiled);
+    }
+
+    @Test
+    public void testEveryCondition() {
+        final int skips = 150;
+        int[] cp = new int[20 + skips + 1];
+        /*
+         * Conditional jumps over every condition, then a run of skips so that
+         * addresses need sipush
+         */
+        int pc = 0;
+        for (int condJump = 7; condJump <= 16; condJump++) {
+            cp[pc] = condJump;
+            cp[pc + 1] = cp.length - 1;
+            pc += 2;
+        }
+        while (pc < cp.length - 1) {
+            cp[pc] = 4;
+            pc++;
+        }
+        cp[cp.length - 1] = 5;
+        CompiledBugProgram compiled = CompiledBugProgram.compile(cp);
+        assertTrue(compiled.isGenerated());
+        checkAgainstInterpreter(cp, compiled);
+    }
+
+    @Test
+    public void testTooLargeFallsBack() {
+        final int jumps = 1000;
+        int[] cp = new int[2 * jumps + 1];
+        for (int i = 0; i < jumps; i++) {
+            cp[2 * i] = 7;
+            cp[2 * i + 1] = 2 * jumps;
+        }
+        cp[2 * jumps] = 0;
+        CompiledBugProgram compiled = CompiledBugProgram.compile(cp);
+        assertEquals(false, compiled.isGenerated());
+        assertEquals(2 * jumps,
+                compiled.next(0, BugsWorldVMInterpreter.CellState.WALL));
+        assertEquals(2 * jumps,
+                compiled.next(0, BugsWorldVMInterpreter.CellState.EMPTY));
+    }
+
+}
@@ -0,0 +1,171 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * JUnit test fixture for {@code CompiledProgramAnalyzer}.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class CompiledProgramAnalyzerTest {
+
+    /**
+     * The name of a file containing a valid compiled BL program.
+     */
+    private static final String FILE_NAME = "data/TestProgram.bo";
+
+    /**
+     * Compiled program for {@code WHILE true DO END WHILE}.
+     */
+    private static final int[] EMPTY_LOOP = { 16, 4, 6, 0, 5 };
+
+    /**
+     * Compiled program for {@code WHILE next-is-empty DO END WHILE}.
+     */
+    private static final int[] EMPTY_WAIT = { 7, 4, 6, 0, 5 };
+
+    /**
+     * Compiled program for
+     * {@code WHILE true DO IF random THEN move END IF END WHILE}.
+     */
+    private static final int[] RANDOM_LOOP = { 16, 7, 15, 5, 0, 6, 0, 5 };
+
+    @Test
+    public void testEntryPoints() {
+        CompiledProgramAnalyzer a = new CompiledProgramAnalyzer(
+                CompiledTestPrograms.loadProgram(FILE_NAME));
+        assertArrayEquals(new int[] { 0, 5, 10, 17, 20, 23, 25 },
+                a.entryPoints());
+    }
+
+    @Test
+    public void testMaxJumpsPerState() {
+        CompiledProgramAnalyzer a = new CompiledProgramAnalyzer(
+                CompiledTestPrograms.loadProgram(FILE_NAME));
+        assertEquals(2,
+                a.maxJumps(BugsWorldVMInterpreter.CellState.EMPTY, 0));
+        assertEquals(5, a.maxJumps(BugsWorldVMInterpreter.CellState.WALL, 0));
+        assertEquals(4,
+                a.maxJumps(BugsWorldVMInterpreter.CellState.FRIEND, 0));
+        assertEquals(3,
+                a.maxJumps(BugsWorldVMInterpreter.CellState.ENEMY, 0));
+    }
+
+    @Test
+    public void testMaxJumpsPerEntryPoint() {
+        CompiledProgramAnalyzer a = new CompiledProgramAnalyzer(
+                CompiledTestPrograms.loadProgram(FILE_NAME));
+        assertEquals(5, a.maxJumps(0));
+        assertEquals(5, a.maxJumps(5));
+        assertEquals(7, a.maxJumps(10));
+        assertEquals(8, a.maxJumps(17));
+        assertEquals(7, a.maxJumps(20));
+        assertEquals(6, a.maxJumps(23));
+        assertEquals(0, a.maxJumps(25));
+        assertEquals(8, a.maxJumps());
+        assertFalse(a.hasPrimitiveFreeCycle());
+    }
+
+    @Test
+    public void testMaxJumpsIsTight() {
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
+        CompiledProgramAnalyzer a = new CompiledProgramAnalyzer(cp);
+        SplittableRandom rnd = new SplittableRandom(0);
+        for (int loc : a.entryPoints()) {
+            for (BugsWorldVMInterpreter.CellState wbs : BugsWorldVMInterpreter.CellState
+                    .values()) {
+                int max = a.maxJumps(wbs, loc);
+                assertTrue(BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(
+                        cp, wbs, loc, max,
+                        rnd) != BugsWorldVMInterpreter.NO_PRIMITIVE_REACHABLE);
+                if (max > 0) {
+                    assertEquals(BugsWorldVMInterpreter.NO_PRIMITIVE_REACHABLE,
+                            BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(
+                                    cp, wbs, loc, max - 1, rnd));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyLoop() {
+        CompiledProgramAnalyzer a = new CompiledProgramAnalyzer(EMPTY_LOOP);
+        assertArrayEquals(new int[] { 0, 4 }, a.entryPoints());
+        assertEquals(CompiledProgramAnalyzer.UNBOUNDED, a.maxJumps(0));
+        assertEquals(0, a.maxJumps(4));
+        assertEquals(CompiledProgramAnalyzer.UNBOUNDED, a.maxJumps());
+        assertTrue(a.hasPrimitiveFreeCycle());
+        assertTrue(a.isOnPrimitiveFreeCycle(0));
+        assertTrue(a.isOnPrimitiveFreeCycle(2));
+        assertFalse(a.isOnPrimitiveFreeCycle(4));
+    }
+
+    @Test
+    public void testCycleForOneState() {
+        CompiledProgramAnalyzer a = new CompiledProgramAnalyzer(EMPTY_WAIT);
+        assertEquals(CompiledProgramAnalyzer.UNBOUNDED,
+                a.maxJumps(BugsWorldVMInterpreter.CellState.EMPTY, 0));
+        assertEquals(1, a.maxJumps(BugsWorldVMInterpreter.CellState.WALL, 0));
+        assertEquals(CompiledProgramAnalyzer.UNBOUNDED, a.maxJumps(0));
+        assertTrue(a.isOnPrimitiveFreeCycle(0));
+    }
+
+    @Test
+    public void testRandomCycle() {
+        CompiledProgramAnalyzer a = new CompiledProgramAnalyzer(RANDOM_LOOP);
+        assertArrayEquals(new int[] { 0, 5, 7 }, a.entryPoints());
+        assertEquals(CompiledProgramAnalyzer.UNBOUNDED, a.maxJumps(0));
+        assertEquals(CompiledProgramAnalyzer.UNBOUNDED, a.maxJumps(5));
+        assertTrue(a.isOnPrimitiveFreeCycle(0));
+        assertTrue(a.isOnPrimitiveFreeCycle(2));
+        assertTrue(a.isOnPrimitiveFreeCycle(5));
+        assertFalse(a.isOnPrimitiveFreeCycle(4));
+    }
+
+    @Test
+    public void testSelfJump() {
+        CompiledProgramAnalyzer a = new CompiledProgramAnalyzer(
+                new int[] { 6, 0 });
+        assertEquals(CompiledProgramAnalyzer.UNBOUNDED, a.maxJumps(0));
+        assertTrue(a.isOnPrimitiveFreeCycle(0));
+    }
+
+    @Test
+    public void testPrintDot() {
+        CompiledProgramAnalyzer a = new CompiledProgramAnalyzer(EMPTY_LOOP);
+        String fileName = "data/CompiledProgramAnalyzerTest.dot";
+        SimpleWriter out = new SimpleWriter1L(fileName);
+        a.printDot(out);
+        out.close();
+        SimpleReader in = new SimpleReader1L(fileName);
+        StringBuilder dot = new StringBuilder();
+        while (!in.atEOS()) {
+            dot.append(in.nextLine()).append('\n');
+        }
+        in.close();
+        new File(fileName).delete();
+        assertEquals("digraph program {\n"
+                + "    node [fontname=\"monospace\"];\n"
+                + "    n0 [label=\"0: JUMP_IF_NOT_TRUE\", shape=ellipse, "
+                + "xlabel=\"unbounded\", peripheries=2, color=red];\n"
+                + "    n2 [label=\"2: JUMP\", shape=ellipse, color=red];\n"
+                + "    n4 [label=\"4: HALT\", shape=box, xlabel=\"0\", "
+                + "peripheries=2];\n"
+                + "    n0 -> n2 [label=\"true\", color=red];\n"
+                + "    n0 -> n4 [label=\"false\"];\n"
+                + "    n2 -> n0 [color=red];\n" + "}\n", dot.toString());
+    }
+
+}
@@ -0,0 +1,107 @@
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code CompiledProgramLoader}.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class CompiledProgramLoaderTest {
+
+    /**
+     * The name of a file containing a valid compiled BL program in the text
+     * format.
+     */
+    private static final String FILE_NAME = "data/TestProgram.bo";
+
+    /**
+     * The compiled program in {@code FILE_NAME}.
+     */
+    private static final int[] TEST_PROGRAM = { 16, 25, 7, 7, 0, 6, 2, 13, 12,
+            3, 6, 23, 9, 22, 15, 19, 1, 6, 20, 2, 6, 23, 4, 6, 0, 5 };
+
+    /**
+     * Returns the binary encoding of the given compiled program.
+     *
+     * @param cp
+     *            the compiled program
+     * @return the binary encoding of cp
+     */
+    private static byte[] encode(int[] cp) {
+        final int headerSize = 12;
+        ByteBuffer buffer = ByteBuffer
+                .allocate(headerSize + (cp.length + 1) * Integer.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(new byte[] { 'B', 'L', 'V', 'M' });
+        buffer.putInt(1);
+        buffer.putInt(cp.length);
+        for (int i : cp) {
+            buffer.putInt(i);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), headerSize, cp.length * Integer.BYTES);
+        buffer.putInt((int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * Writes the given bytes to a new temporary file and returns its name.
+     *
+     * @param bytes
+     *            the file contents
+     * @return the name of the file
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static String writeTemp(byte[] bytes) throws IOException {
+        File file = File.createTempFile("compiled", ".bo");
+        file.deleteOnExit();
+        Files.write(file.toPath(), bytes);
+        return file.getPath();
+    }
+
+    @Test
+    public void testLoadText() {
+        int[] cp = CompiledProgramLoader.load(FILE_NAME);
+        assertArrayEquals(TEST_PROGRAM, cp);
+    }
+
+    @Test
+    public void testLoadBinary() throws IOException {
+        String fileName = writeTemp(encode(TEST_PROGRAM));
+        int[] cp = CompiledProgramLoader.load(fileName);
+        assertArrayEquals(TEST_PROGRAM, cp);
+    }
+
+    @Test
+    public void testLoadBinaryEmpty() throws IOException {
+        String fileName = writeTemp(encode(new int[0]));
+        int[] cp = CompiledProgramLoader.load(fileName);
+        assertArrayEquals(new int[0], cp);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testLoadBinaryBadChecksum() throws IOException {
+        byte[] bytes = encode(TEST_PROGRAM);
+        bytes[bytes.length - 1] ^= 1;
+        CompiledProgramLoader.load(writeTemp(bytes));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testLoadBinaryTruncated() throws IOException {
+        byte[] bytes = encode(TEST_PROGRAM);
+        byte[] truncated = new byte[bytes.length - Integer.BYTES];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        CompiledProgramLoader.load(writeTemp(truncated));
+    }
+
+}
@@ -0,0 +1,42 @@
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+
+/**
+ * Loads the compiled programs the BugsWorld virtual machine tests run.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+final class CompiledTestPrograms {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private CompiledTestPrograms() {
+    }
+
+    /**
+     * Loads a BL compiled program from the given file and returns an array
+     * containing the compiled program.
+     *
+     * @param fileName
+     *            the name of the input file
+     * @return the compiled BL program loaded from the given file
+     * @requires <pre>
+     * [fileName is the name of a file containing a valid compiled BL program]
+     * </pre>
+     * @ensures loadProgram = [compiled BL program loaded from given file]
+     */
+    static int[] loadProgram(String fileName) {
+        int[] cp;
+        SimpleReader file = new SimpleReader1L(fileName);
+        int length = file.nextInteger();
+        cp = new int[length];
+        for (int i = 0; i < length; i++) {
+            cp[i] = file.nextInteger();
+        }
+        file.close();
+        return cp;
+    }
+
+}
@@ -0,0 +1,276 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code LinkedProgram}'s
+ * nextPrimitiveInstructionAddress method.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class LinkedProgramTest {
+
+    /**
+     * The name of a file containing a valid compiled BL program.
+     */
+    private static final String FILE_NAME = "data/TestProgram.bo";
+
+    /**
+     * Compiled program for {@code WHILE true DO END WHILE}.
+     */
+    private static final int[] EMPTY_LOOP = { 16, 4, 6, 0, 5 };
+
+    /**
+     * Compiled program for {@code IF random THEN move END IF}.
+     */
+    private static final int[] RANDOM_MOVE = { 15, 3, 0, 5 };
+
+    /**
+     * Compiled program for {@code WHILE random DO END WHILE move}.
+     */
+    private static final int[] RANDOM_LOOP = { 15, 4, 6, 0, 0, 6, 0 };
+
+    /**
+     * Compiled program whose random jump leads back to itself either way.
+     */
+    private static final int[] RANDOM_TRAP = { 15, 0, 6, 0, 5 };
+
+    /**
+     * Compiled program whose first random jump leads to a move or to a second
+     * random jump that leads back to itself either way.
+     */
+    private static final int[] RANDOM_MOVE_OR_TRAP = { 15, 4, 0, 5, 15, 4, 6,
+            4, 5 };
+
+    @Test
+    public void testLinkingDoesNotModifyProgram() {
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
+        int[] cpExpected = Arrays.copyOf(cp, cp.length);
+        LinkedProgram lp = new LinkedProgram(cp);
+        assertEquals(cp.length, lp.length());
+        assertArrayEquals(cpExpected, cp);
+    }
+
+    @Test
+    public void test0Empty() {
+        LinkedProgram lp = new LinkedProgram(
+                CompiledTestPrograms.loadProgram(FILE_NAME));
+        int pc = lp.nextPrimitiveInstructionAddress(
+                BugsWorldVMInterpreter.CellState.EMPTY, 0);
+        assertEquals(4, pc);
+    }
+
+    @Test
+    public void test0Wall() {
+        LinkedProgram lp = new LinkedProgram(
+                CompiledTestPrograms.loadProgram(FILE_NAME));
+        int pc = lp.nextPrimitiveInstructionAddress(
+                BugsWorldVMInterpreter.CellState.WALL, 0);
+        assertTrue(pc == 16 || pc == 19);
+    }
+
+    @Test
+    public void test0Friend() {
+        LinkedProgram lp = new LinkedProgram(
+                CompiledTestPrograms.loadProgram(FILE_NAME));
+        int pc = lp.nextPrimitiveInstructionAddress(
+                BugsWorldVMInterpreter.CellState.FRIEND, 0);
+        assertEquals(22, pc);
+    }
+
+    @Test
+    public void test0Enemy() {
+        LinkedProgram lp = new LinkedProgram(
+                CompiledTestPrograms.loadProgram(FILE_NAME));
+        int pc = lp.nextPrimitiveInstructionAddress(
+                BugsWorldVMInterpreter.CellState.ENEMY, 0);
+        assertEquals(9, pc);
+    }
+
+    @Test
+    public void test14Wall() {
+        LinkedProgram lp = new LinkedProgram(
+                CompiledTestPrograms.loadProgram(FILE_NAME));
+        int pc = lp.nextPrimitiveInstructionAddress(
+                BugsWorldVMInterpreter.CellState.WALL, 14);
+        assertTrue(pc == 16 || pc == 19);
+    }
+
+    @Test
+    public void test23Enemy() {
+        LinkedProgram lp = new LinkedProgram(
+                CompiledTestPrograms.loadProgram(FILE_NAME));
+        int pc = lp.nextPrimitiveInstructionAddress(
+                BugsWorldVMInterpreter.CellState.ENEMY, 23);
+        assertEquals(9, pc);
+    }
+
+    @Test
+    public void test22Empty() {
+        LinkedProgram lp = new LinkedProgram(
+                CompiledTestPrograms.loadProgram(FILE_NAME));
+        int pc = lp.nextPrimitiveInstructionAddress(
+                BugsWorldVMInterpreter.CellState.EMPTY, 22);
+        assertEquals(22, pc);
+    }
+
+    @Test
+    public void testMatchesInterpreterOnAllInstructions() {
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
+        LinkedProgram lp = new LinkedProgram(cp);
+        int pc = 0;
+        while (pc < cp.length) {
+            for (BugsWorldVMInterpreter.CellState wbs : BugsWorldVMInterpreter.CellState
+                    .values()) {
+                if (wbs != BugsWorldVMInterpreter.CellState.WALL
+                        && cp[pc] != 15) {
+                    assertEquals(
+                            BugsWorldVMInterpreter
+                                    .nextPrimitiveInstructionAddress(cp, wbs,
+                                            pc),
+                            lp.nextPrimitiveInstructionAddress(wbs, pc));
+                }
+            }
+            if (cp[pc] >= 6) {
+                pc++;
+            }
+            pc++;
+        }
+    }
+
+    @Test
+    public void testRandomFallback() {
+        LinkedProgram lp = new LinkedProgram(RANDOM_MOVE);
+        int pc = lp.nextPrimitiveInstructionAddress(
+                BugsWorldVMInterpreter.CellState.EMPTY, 0);
+        assertTrue(pc == 2 || pc == 3);
+    }
+
+    @Test
+    public void testSeededRandomReplays() {
+        final int draws = 100;
+        final long seed = 2231;
+        LinkedProgram lp = new LinkedProgram(RANDOM_MOVE);
+        SplittableRandom r1 = new SplittableRandom(seed);
+        SplittableRandom r2 = new SplittableRandom(seed);
+        SplittableRandom r3 = new SplittableRandom(seed);
+        for (int i = 0; i < draws; i++) {
+            int pc = lp.nextPrimitiveInstructionAddress(
+                    BugsWorldVMInterpreter.CellState.EMPTY, 0, r1);
+            assertEquals(pc, lp.nextPrimitiveInstructionAddress(
+                    BugsWorldVMInterpreter.CellState.EMPTY, 0, r2));
+            assertEquals(pc,
+                    BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(
+                            RANDOM_MOVE, BugsWorldVMInterpreter.CellState.EMPTY,
+                            0, r3));
+        }
+    }
+
+    @Test
+    public void testPrimitiveFreeCycle() {
+        LinkedProgram lp = new LinkedProgram(EMPTY_LOOP);
+        int pc = lp.nextPrimitiveInstructionAddress(
+                BugsWorldVMInterpreter.CellState.EMPTY, 0);
+        assertEquals(LinkedProgram.NO_PRIMITIVE, pc);
+        pc = lp.nextPrimitiveInstructionAddress(
+                BugsWorldVMInterpreter.CellState.ENEMY, 2);
+        assertEquals(LinkedProgram.NO_PRIMITIVE, pc);
+        pc = lp.nextPrimitiveInstructionAddress(
+                BugsWorldVMInterpreter.CellState.ENEMY, 4);
+        assertEquals(4, pc);
+    }
+
+    @Test
+    public void testRandomLoopBeforePrimitive() {
+        final int draws = 1000;
+        LinkedProgram lp = new LinkedProgram(RANDOM_LOOP);
+        SplittableRandom r1 = new SplittableRandom(2231);
+        SplittableRandom r2 = new SplittableRandom(2231);
+        for (int i = 0; i < draws; i++) {
+            int pc = lp.nextPrimitiveInstructionAddress(
+                    BugsWorldVMInterpreter.CellState.EMPTY, 0, r1);
+            assertEquals(4, pc);
+            assertEquals(pc,
+                    BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(
+                            RANDOM_LOOP, BugsWorldVMInterpreter.CellState.EMPTY,
+                            0, r2));
+        }
+    }
+
+    @Test
+    public void testRandomPrimitiveFreeCycle() {
+        LinkedProgram lp = new LinkedProgram(RANDOM_TRAP);
+        for (BugsWorldVMInterpreter.CellState wbs : BugsWorldVMInterpreter.CellState
+                .values()) {
+            assertEquals(LinkedProgram.NO_PRIMITIVE,
+                    lp.nextPrimitiveInstructionAddress(wbs, 0));
+            assertEquals(LinkedProgram.NO_PRIMITIVE,
+                    lp.nextPrimitiveInstructionAddress(wbs, 2));
+            assertEquals(4, lp.nextPrimitiveInstructionAddress(wbs, 4));
+        }
+    }
+
+    @Test
+    public void testRandomTrapDrawsLikeInterpreter() {
+        final int calls = 100;
+        LinkedProgram lp = new LinkedProgram(RANDOM_MOVE_OR_TRAP);
+        int[] reachable = BugsWorldVMInterpreter
+                .primitiveReachableStates(RANDOM_MOVE_OR_TRAP);
+        SplittableRandom r1 = new SplittableRandom(2231);
+        SplittableRandom r2 = new SplittableRandom(2231);
+        for (int i = 0; i < calls; i++) {
+            int pc = lp.nextPrimitiveInstructionAddress(
+                    BugsWorldVMInterpreter.CellState.EMPTY, 0, r1);
+            assertTrue(pc == 2 || pc == LinkedProgram.NO_PRIMITIVE);
+            assertEquals(pc,
+                    BugsWorldVMInterpreter.nextPrimitiveInstructionAddress(
+                            RANDOM_MOVE_OR_TRAP, reachable,
+                            BugsWorldVMInterpreter.CellState.EMPTY, 0, r2));
+            assertEquals(r1.nextLong(), r2.nextLong());
+        }
+    }
+
+    @Test
+    public void testIsValidInstructionLocation() {
+        int[] cp = CompiledTestPrograms.loadProgram(FILE_NAME);
+        LinkedProgram lp = new LinkedProgram(cp);
+        boolean[] expected = new boolean[cp.length];
+        int pc = 0;
+        while (pc < cp.length) {
+            expected[pc] = true;
+            if (cp[pc] >= 6) {
+                pc++;
+            }
+            pc++;
+        }
+        for (int loc = 0; loc < cp.length; loc++) {
+            assertEquals(expected[loc], lp.isValidInstructionLocation(loc));
+        }
+        assertEquals(false, lp.isValidInstructionLocation(-1));
+        assertEquals(false, lp.isValidInstructionLocation(cp.length));
+    }
+
+    @Test
+    public void testIsValidInstructionLocationLongProgram() {
+        final int jumps = 100;
+        int[] cp = new int[2 * jumps + 1];
+        for (int i = 0; i < jumps; i++) {
+            cp[2 * i] = 6;
+            cp[2 * i + 1] = 2 * i + 2;
+        }
+        cp[2 * jumps] = 5;
+        LinkedProgram lp = new LinkedProgram(cp);
+        for (int loc = 0; loc < cp.length; loc++) {
+            assertEquals(loc % 2 == 0, lp.isValidInstructionLocation(loc));
+        }
+        assertEquals(2 * jumps, lp.nextPrimitiveInstructionAddress(
+                BugsWorldVMInterpreter.CellState.EMPTY, 0));
+    }
+
+}
@@ -0,0 +1,460 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.utilities.Reporter;
+
+/**
+ * Compiles many BL programs in parallel, writing each compiled program next to
+ * its source in the binary format read by the BugsWorld virtual machine
+ * loader ({@code X.bl} to {@code X.bo}).
+ *
+ * <p>
+ * Usage:
+ * {@code BatchCompiler [-share] [-optimize] [-cache directory] [-threads n] (directory | file.bl ...)}.
+ * A directory stands for all the {@code .bl} files in it. {@code -share}
+ * generates code in {@code CallMode.SHARE}, {@code -optimize} runs the code
+ * through {@code CompiledProgramOptimizer} before writing it, {@code -cache}
+ * looks programs up in a {@code CompileCache} first (the cache keeps the code
+ * as generated, so the same cache serves optimized and unoptimized builds),
+ * and {@code -threads} sets the parallelism (the number of processors by
+ * default).
+ *
+ * <p>
+ * Each {@code Program1GeneratedCode1} is independent, so the files are split
+ * among the threads of a fork-join pool. A file is parsed, compiled, written
+ * and dropped by one task, so at most one program per thread is in memory at
+ * a time; only a small {@code Result} per file is kept. An invalid program is
+ * reported in its result and does not stop the others.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class BatchCompiler {
+
+    /**
+     * The outcome of compiling one file.
+     */
+    public static final class Result {
+
+        /**
+         * Name of the source file.
+         */
+        private final String fileName;
+
+        /**
+         * Time taken to compile and write the file, in nanoseconds.
+         */
+        private final long nanos;
+
+        /**
+         * Length of the compiled program, or -1 if it failed.
+         */
+        private final int length;
+
+        /**
+         * Error message, or null if it succeeded.
+         */
+        private final String error;
+
+        /**
+         * Constructor.
+         *
+         * @param fileName
+         *            name of the source file
+         * @param nanos
+         *            time taken in nanoseconds
+         * @param length
+         *            length of the compiled program, or -1
+         * @param error
+         *            error message, or null
+         */
+        private Result(String fileName, long nanos, int length, String error) {
+            this.fileName = fileName;
+            this.nanos = nanos;
+            this.length = length;
+            this.error = error;
+        }
+
+        /**
+         * Reports the name of the source file.
+         *
+         * @return the name of the source file
+         */
+        public String fileName() {
+            return this.fileName;
+        }
+
+        /**
+         * Reports the time taken to compile and write the file.
+         *
+         * @return the time in nanoseconds
+         */
+        public long nanos() {
+            return this.nanos;
+        }
+
+        /**
+         * Reports the length of the compiled program.
+         *
+         * @return the length, or -1 if compiling failed
+         */
+        public int length() {
+            return this.length;
+        }
+
+        /**
+         * Reports why compiling failed.
+         *
+         * @return the error message, or null if compiling succeeded
+         */
+        public String error() {
+            return this.error;
+        }
+
+    }
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Extension of BL source files.
+     */
+    private static final String SOURCE_EXTENSION = ".bl";
+
+    /**
+     * Extension of compiled program files.
+     */
+    private static final String COMPILED_EXTENSION = ".bo";
+
+    /**
+     * Largest total size in bytes of the compile cache used by {@code main}.
+     */
+    private static final long CACHE_SIZE = 256L << 20;
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Task compiling a range of files, splitting it in halves down to single
+     * files.
+     */
+    private static final class CompileRange extends RecursiveAction {
+
+        /**
+         * Serialization version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Names of all the files.
+         */
+        private final List<String> files;
+
+        /**
+         * How the code of calls is generated.
+         */
+        private final Program1GeneratedCode1.CallMode mode;
+
+        /**
+         * Cache to look the programs up in, or null.
+         */
+        private final CompileCache cache;
+
+        /**
+         * Whether to optimize the compiled programs.
+         */
+        private final boolean optimize;
+
+        /**
+         * Results of all the files.
+         */
+        private final Result[] results;
+
+        /**
+         * First file of the range.
+         */
+        private final int from;
+
+        /**
+         * End of the range (exclusive).
+         */
+        private final int to;
+
+        /**
+         * Constructor.
+         *
+         * @param files
+         *            names of all the files
+         * @param mode
+         *            how the code of calls is generated
+         * @param cache
+         *            cache to look the programs up in, or null
+         * @param optimize
+         *            whether to optimize the compiled programs
+         * @param results
+         *            results of all the files
+         * @param from
+         *            first file of the range
+         * @param to
+         *            end of the range (exclusive)
+         */
+        CompileRange(List<String> files, Program1GeneratedCode1.CallMode mode,
+                CompileCache cache, boolean optimize, Result[] results,
+                int from, int to) {
+            this.files = files;
+            this.mode = mode;
+            this.cache = cache;
+            this.optimize = optimize;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from == 1) {
+                this.results[this.from] = compileFile(
+                        this.files.get(this.from), this.mode, this.cache,
+                        this.optimize);
+            } else {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(
+                        new CompileRange(this.files, this.mode, this.cache,
+                                this.optimize, this.results, this.from,
+                                middle),
+                        new CompileRange(this.files, this.mode, this.cache,
+                                this.optimize, this.results, middle,
+                                this.to));
+            }
+        }
+
+    }
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private BatchCompiler() {
+    }
+
+    /**
+     * Returns the name of the compiled program file of the given source file.
+     *
+     * @param fileName
+     *            the name of the source file
+     * @return the name of the compiled program file
+     */
+    private static String compiledFileName(String fileName) {
+        String base = fileName;
+        if (base.endsWith(SOURCE_EXTENSION)) {
+            base = base.substring(0,
+                    base.length() - SOURCE_EXTENSION.length());
+        }
+        return base + COMPILED_EXTENSION;
+    }
+
+    /**
+     * Compiles the given file and writes its compiled program.
+     *
+     * @param fileName
+     *            the name of the source file
+     * @param mode
+     *            how the code of calls is generated
+     * @param cache
+     *            cache to look the program up in, or null
+     * @param optimize
+     *            whether to optimize the compiled program
+     * @return the result
+     */
+    private static Result compileFile(String fileName,
+            Program1GeneratedCode1.CallMode mode, CompileCache cache,
+            boolean optimize) {
+        long start = System.nanoTime();
+        int length = -1;
+        String error = null;
+        try {
+            int[] cp;
+            if (cache != null) {
+                cp = cache.compiledCode(fileName, mode);
+            } else {
+                Program1GeneratedCode1 p = new Program1GeneratedCode1();
+                SimpleReader in = new SimpleReader1L(fileName);
+                try {
+                    p.parse(in);
+                } finally {
+                    in.close();
+                }
+                cp = p.generatedCodeArray(mode);
+            }
+            if (optimize) {
+                cp = CompiledProgramOptimizer.optimized(cp);
+            }
+            Files.write(Paths.get(compiledFileName(fileName)),
+                    CompiledProgramFormat.encode(cp));
+            length = cp.length;
+        } catch (IOException e) {
+            error = "Error writing compiled program: " + e.getMessage();
+        } catch (RuntimeException | StackOverflowError e) {
+            /*
+             * Reporter reports invalid programs by throwing; report the
+             * program as failed and go on with the others
+             */
+            error = String.valueOf(e.getMessage());
+        }
+        return new Result(fileName, System.nanoTime() - start, length, error);
+    }
+
+    /**
+     * Returns the names of the {@code .bl} files in the given directory, in
+     * order.
+     *
+     * @param directory
+     *            the directory
+     * @return the names of the BL source files in directory
+     */
+    private static List<String> sourceFiles(String directory) {
+        List<String> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+                Paths.get(directory), "*" + SOURCE_EXTENSION)) {
+            for (Path file : stream) {
+                files.add(file.toString());
+            }
+        } catch (IOException e) {
+            Reporter.assertElseFatalError(false,
+                    "Error reading directory " + directory);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Compiles the given BL source files in parallel, writing the compiled
+     * program of each {@code X.bl} to {@code X.bo}.
+     *
+     * @param files
+     *            the names of the source files
+     * @param mode
+     *            how the code of calls is generated
+     * @param cache
+     *            cache to look the programs up in, or null
+     * @param optimize
+     *            whether to optimize the compiled programs with
+     *            {@code CompiledProgramOptimizer}
+     * @param parallelism
+     *            the number of threads
+     * @return the results, in the order of files
+     * @requires parallelism > 0
+     * @ensures <pre>
+     * |compile| = |files|  and
+     * [for each i, compile[i] is the result of compiling files[i], and if it
+     *  succeeded its compiled program, optimized if optimize, is written to
+     *  the file .bo]
+     * </pre>
+     */
+    public static Result[] compile(List<String> files,
+            Program1GeneratedCode1.CallMode mode, CompileCache cache,
+            boolean optimize, int parallelism) {
+        assert files != null : "Violation of: files is not null";
+        assert mode != null : "Violation of: mode is not null";
+        assert parallelism > 0 : "Violation of: parallelism > 0";
+
+        Result[] results = new Result[files.size()];
+        if (results.length > 0) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new CompileRange(files, mode, cache, optimize,
+                        results, 0, results.length));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+        Program1GeneratedCode1.CallMode mode = Program1GeneratedCode1.CallMode.INLINE;
+        CompileCache cache = null;
+        boolean optimize = false;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        List<String> files = new ArrayList<>();
+        int i = 0;
+        while (i < args.length) {
+            if (args[i].equals("-share")) {
+                mode = Program1GeneratedCode1.CallMode.SHARE;
+            } else if (args[i].equals("-optimize")) {
+                optimize = true;
+            } else if (args[i].equals("-cache") && i + 1 < args.length) {
+                i++;
+                cache = new CompileCache(args[i], CACHE_SIZE);
+            } else if (args[i].equals("-threads") && i + 1 < args.length) {
+                i++;
+                parallelism = Integer.parseInt(args[i]);
+            } else if (Files.isDirectory(Paths.get(args[i]))) {
+                files.addAll(sourceFiles(args[i]));
+            } else {
+                files.add(args[i]);
+            }
+            i++;
+        }
+        Reporter.assertElseFatalError(parallelism > 0,
+                "The number of threads must be positive");
+
+        long start = System.nanoTime();
+        Result[] results = compile(files, mode, cache, optimize,
+                parallelism);
+        long wall = System.nanoTime() - start;
+
+        long total = 0;
+        int failed = 0;
+        for (Result result : results) {
+            total += result.nanos();
+            if (result.error() == null) {
+                out.println(String.format("%10.2f ms %8d  %s",
+                        result.nanos() / NANOS_PER_MILLI, result.length(),
+                        result.fileName()));
+            } else {
+                failed++;
+                out.println(String.format("%10.2f ms %8s  %s: %s",
+                        result.nanos() / NANOS_PER_MILLI, "FAILED",
+                        result.fileName(), result.error()));
+            }
+        }
+        out.println();
+        out.println(results.length + " files, " + failed + " failed, "
+                + String.format("%.2f", wall / NANOS_PER_MILLI)
+                + " ms elapsed, "
+                + String.format("%.2f", total / NANOS_PER_MILLI)
+                + " ms compiling on " + parallelism + " threads");
+        if (cache != null) {
+            out.println("Compile cache: " + cache.hits() + " hits, "
+                    + cache.misses() + " misses");
+        }
+        out.close();
+    }
+
+}
@@ -0,0 +1,127 @@
+import java.util.Arrays;
+
+import components.sequence.Sequence;
+import components.sequence.Sequence1L;
+
+/**
+ * Growable buffer of the byte codes of a compiled program being generated,
+ * backed by an {@code int[]}: appending and back-patching an entry take
+ * constant time and box nothing, unlike the same operations on a
+ * {@code Sequence<Integer>}.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+final class CodeBuffer {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Initial capacity of the buffer.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The entries; only the first {@code length} are used.
+     */
+    private int[] entries;
+
+    /**
+     * Number of entries.
+     */
+    private int length;
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor of an empty buffer.
+     */
+    CodeBuffer() {
+        this.entries = new int[INITIAL_CAPACITY];
+        this.length = 0;
+    }
+
+    /*
+     * Package-private members ------------------------------------------------
+     */
+
+    /**
+     * Appends {@code x} at the end of this.
+     *
+     * @param x
+     *            the entry to append
+     * @updates this
+     * @ensures this = #this * <x>
+     */
+    void append(int x) {
+        if (this.length == this.entries.length) {
+            this.entries = Arrays.copyOf(this.entries, 2 * this.length);
+        }
+        this.entries[this.length] = x;
+        this.length++;
+    }
+
+    /**
+     * Replaces the entry of this at position {@code pos} by {@code x}.
+     *
+     * @param pos
+     *            the position
+     * @param x
+     *            the new entry
+     * @updates this
+     * @requires 0 <= pos < |this|
+     * @ensures this = [#this with the entry at position pos replaced by x]
+     */
+    void replaceEntry(int pos, int x) {
+        assert 0 <= pos && pos < this.length : "Violation of: 0 <= pos < |this|";
+        this.entries[pos] = x;
+    }
+
+    /**
+     * Reports the number of entries of this.
+     *
+     * @return |this|
+     */
+    int length() {
+        return this.length;
+    }
+
+    /**
+     * Returns the entries of this as an array.
+     *
+     * @return the entries of this
+     * @ensures toArray = this
+     */
+    int[] toArray() {
+        return Arrays.copyOf(this.entries, this.length);
+    }
+
+    /**
+     * Returns the first {@code length} entries of {@code cp} as a
+     * {@code Sequence}.
+     *
+     * @param cp
+     *            the entries
+     * @param length
+     *            the number of entries
+     * @return the first length entries of cp
+     * @requires 0 <= length <= |cp|
+     * @ensures toSequence = cp[0, length)
+     */
+    static Sequence<Integer> toSequence(int[] cp, int length) {
+        assert cp != null : "Violation of: cp is not null";
+        assert 0 <= length
+                && length <= cp.length : "Violation of: 0 <= length <= |cp|";
+
+        Sequence<Integer> result = new Sequence1L<Integer>();
+        for (int i = 0; i < length; i++) {
+            result.add(i, cp[i]);
+        }
+        return result;
+    }
+
+}
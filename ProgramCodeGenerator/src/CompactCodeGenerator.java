@@ -0,0 +1,199 @@
+import java.util.Arrays;
+
+import components.program.Program.Instruction;
+import components.utilities.Reporter;
+
+/**
+ * Code generator reading a {@code CompactProgram}: it generates the same code
+ * as {@code Program1GeneratedCode1} in {@code CallMode.INLINE}, but reads the
+ * statements from the flat arrays of the compact representation instead of
+ * taking a {@code Statement} tree apart, so it allocates nothing but the code
+ * and its stack, and several threads can generate code from the same program
+ * at once.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+final class CompactCodeGenerator {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Byte code of {@code JUMP}.
+     */
+    private static final int JUMP = Instruction.JUMP.byteCode();
+
+    /**
+     * Initial capacity of the stack.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Not a primitive instruction, or no instruction.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private CompactCodeGenerator() {
+    }
+
+    /**
+     * Returns the byte code of the primitive instruction named {@code call}.
+     *
+     * @param call
+     *            the name of the instruction
+     * @return the byte code of the primitive instruction, or {@code NONE} if
+     *         call is not the name of a primitive instruction
+     */
+    private static int primitive(String call) {
+        int byteCode = NONE;
+        if (InstructionIndex.isPrimitive(call)) {
+            byteCode = Instruction.valueOf(call.toUpperCase()).byteCode();
+        }
+        return byteCode;
+    }
+
+    /*
+     * Package-private members ------------------------------------------------
+     */
+
+    /**
+     * Generates the compiled program of {@code p}, inlining the body of the
+     * instruction called at every call. The statements are visited with a
+     * stack of their nodes instead of recursively.
+     *
+     * @param p
+     *            the program
+     * @return the compiled program
+     * @ensures <pre>
+     * if [all instructions called in p are either primitive or
+     *     defined in p]  and
+     *    [p does not include any calling cycles, i.e., recursion] then
+     *  generatedCode = [the virtual machine "byte codes" corresponding to p]
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    static int[] generatedCode(CompactProgram p) {
+        assert p != null : "Violation of: p is not null";
+
+        final int dummy = 0;
+        CodeBuffer cp = new CodeBuffer();
+        boolean[] active = new boolean[p.instructionCount()];
+        /*
+         * For each statement on the stack: its node, the number of its parts
+         * visited, and the locations of the jump addresses to fill in (see
+         * Program1GeneratedCode1)
+         */
+        int[] nodes = new int[INITIAL_CAPACITY];
+        int[] positions = new int[INITIAL_CAPACITY];
+        int[] jumps = new int[INITIAL_CAPACITY];
+        int[] starts = new int[INITIAL_CAPACITY];
+        int depth = 1;
+        nodes[0] = p.body();
+        while (depth > 0) {
+            int top = depth - 1;
+            int node = nodes[top];
+            int position = positions[top];
+            int part = NONE;
+            switch (p.kind(node)) {
+                case BLOCK: {
+                    if (position < p.length(node)) {
+                        part = p.child(node, position);
+                    }
+                    break;
+                }
+                case IF: {
+                    if (position == 0) {
+                        cp.append(Program1GeneratedCode1
+                                .conditionalJump(p.condition(node))
+                                .byteCode());
+                        jumps[top] = cp.length();
+                        cp.append(dummy);
+                        part = p.child(node, 0);
+                    } else {
+                        cp.replaceEntry(jumps[top], cp.length());
+                    }
+                    break;
+                }
+                case IF_ELSE: {
+                    if (position == 0) {
+                        cp.append(Program1GeneratedCode1
+                                .conditionalJump(p.condition(node))
+                                .byteCode());
+                        jumps[top] = cp.length();
+                        cp.append(dummy);
+                        part = p.child(node, 0);
+                    } else if (position == 1) {
+                        cp.append(JUMP);
+                        starts[top] = cp.length();
+                        cp.append(dummy);
+                        cp.replaceEntry(jumps[top], cp.length());
+                        part = p.child(node, 1);
+                    } else {
+                        cp.replaceEntry(starts[top], cp.length());
+                    }
+                    break;
+                }
+                case WHILE: {
+                    if (position == 0) {
+                        starts[top] = cp.length();
+                        cp.append(Program1GeneratedCode1
+                                .conditionalJump(p.condition(node))
+                                .byteCode());
+                        jumps[top] = cp.length();
+                        cp.append(dummy);
+                        part = p.child(node, 0);
+                    } else {
+                        cp.append(JUMP);
+                        cp.append(starts[top]);
+                        cp.replaceEntry(jumps[top], cp.length());
+                    }
+                    break;
+                }
+                case CALL: {
+                    int byteCode = primitive(p.call(node));
+                    int instruction = p.calledInstruction(node);
+                    if (byteCode != NONE) {
+                        cp.append(byteCode);
+                    } else if (position == 0) {
+                        // Generate the code of the body in place of the call
+                        Reporter.assertElseFatalError(
+                                instruction != NONE && !active[instruction],
+                                Program1GeneratedCode1.CALL_ERROR);
+                        active[instruction] = true;
+                        part = p.instructionBody(instruction);
+                    } else {
+                        active[instruction] = false;
+                    }
+                    break;
+                }
+                default: {
+                    // this will never happen...
+                    break;
+                }
+            }
+            if (part == NONE) {
+                depth--;
+            } else {
+                positions[top]++;
+                if (depth == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, 2 * depth);
+                    positions = Arrays.copyOf(positions, 2 * depth);
+                    jumps = Arrays.copyOf(jumps, 2 * depth);
+                    starts = Arrays.copyOf(starts, 2 * depth);
+                }
+                nodes[depth] = part;
+                positions[depth] = 0;
+                depth++;
+            }
+        }
+        cp.append(Instruction.HALT.byteCode());
+        return cp.toArray();
+    }
+
+}
@@ -0,0 +1,412 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import components.queue.Queue;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.utilities.Reporter;
+import components.utilities.Tokenizer;
+
+/**
+ * Content-addressed on-disk cache of compiled BL programs.
+ *
+ * <p>
+ * A program is looked up by the SHA-256 hash of its token stream, the
+ * {@code CallMode} and {@code COMPILER_VERSION}, so it is parsed and compiled
+ * again only when its tokens change (not when only its layout does) or when
+ * the code generators do. Entries are files named after the hash, in the
+ * binary format read by the BugsWorld virtual machine loader.
+ * Every hit refreshes the modification time of its entry, and after every
+ * miss the least recently used entries are deleted until the entries take at
+ * most {@code maxBytes}.
+ *
+ * <p>
+ * A cache can be shared by threads and by processes: entries are written to
+ * a temporary file and renamed into place, and an entry that cannot be read
+ * or is corrupt is treated as a miss. Temporary files count against
+ * {@code maxBytes}, and are deleted once they are too old to be still
+ * written. Failing to write an entry or to evict is not an error, since the
+ * compiled program is returned anyway.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class CompileCache {
+
+    /**
+     * Version of the code generated for a program. Change it in the same
+     * commit as any change to the code generated or to the format of the
+     * entries, so that older entries are no longer found:
+     * {@code CompileCacheTest} fails until it is changed whenever the source
+     * of a class the entries depend on changes. The tokens and the parse of a
+     * program come from the OSU component library, so change it too when
+     * upgrading the library.
+     */
+    public static final String COMPILER_VERSION = "Program1GeneratedCode1/6";
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Extension of the entries.
+     */
+    private static final String EXTENSION = ".bo";
+
+    /**
+     * Prefix of the temporary files entries are written to.
+     */
+    private static final String TEMP_PREFIX = "entry";
+
+    /**
+     * Extension of the temporary files entries are written to.
+     */
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /**
+     * Age in milliseconds after which a temporary file is taken to be left
+     * behind by a writer that crashed, instead of being still written.
+     */
+    private static final long STALE_TEMP_MILLIS = 10L * 60 * 1000;
+
+    /**
+     * Digits of hexadecimal numbers.
+     */
+    private static final String HEX_DIGITS = "0123456789abcdef";
+
+    /**
+     * Number of bits in a hexadecimal digit.
+     */
+    private static final int HEX_DIGIT_BITS = 4;
+
+    /**
+     * Mask of a hexadecimal digit.
+     */
+    private static final int HEX_DIGIT_MASK = 0xF;
+
+    /**
+     * The directory of the entries.
+     */
+    private final Path directory;
+
+    /**
+     * Largest total size in bytes of the entries.
+     */
+    private final long maxBytes;
+
+    /**
+     * Number of lookups found in the cache.
+     */
+    private final AtomicInteger hits = new AtomicInteger();
+
+    /**
+     * Number of lookups not found in the cache.
+     */
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * Returns a new SHA-256 message digest.
+     *
+     * @return the message digest
+     */
+    private static MessageDigest sha256() {
+        MessageDigest digest = null;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            Reporter.assertElseFatalError(false, "SHA-256 is not available");
+        }
+        return digest;
+    }
+
+    /**
+     * Returns {@code hash} as hexadecimal digits.
+     *
+     * @param hash
+     *            the hash
+     * @return the hexadecimal digits of hash
+     */
+    private static String hex(byte[] hash) {
+        StringBuilder digits = new StringBuilder(2 * hash.length);
+        for (byte b : hash) {
+            digits.append(
+                    HEX_DIGITS.charAt((b >> HEX_DIGIT_BITS) & HEX_DIGIT_MASK));
+            digits.append(HEX_DIGITS.charAt(b & HEX_DIGIT_MASK));
+        }
+        return digits.toString();
+    }
+
+    /**
+     * Returns the key of the program with the given tokens compiled in the
+     * given mode.
+     *
+     * @param tokens
+     *            the tokens of the program
+     * @param mode
+     *            how the code of calls is generated
+     * @return the key, as hexadecimal digits
+     */
+    private static String key(Queue<String> tokens,
+            Program1GeneratedCode1.CallMode mode) {
+        MessageDigest digest = sha256();
+        digest.update((COMPILER_VERSION + "\n" + mode + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        for (String token : tokens) {
+            /*
+             * Tokens contain no white space, so a newline separates them
+             * unambiguously
+             */
+            digest.update(token.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * Returns the compiled program in the given entry, refreshing its
+     * modification time, or null if it cannot be read or is corrupt.
+     *
+     * @param entry
+     *            the entry
+     * @return the compiled program, or null
+     */
+    private static int[] read(Path entry) {
+        int[] cp = null;
+        try {
+            cp = CompiledProgramFormat.decode(Files.readAllBytes(entry));
+            if (cp != null) {
+                Files.setLastModifiedTime(entry,
+                        FileTime.fromMillis(System.currentTimeMillis()));
+            }
+        } catch (IOException e) {
+            /*
+             * Missing or unreadable: compile the program again
+             */
+            cp = null;
+        }
+        return cp;
+    }
+
+    /**
+     * Writes {@code cp} to the given entry, replacing it atomically.
+     *
+     * @param entry
+     *            the entry
+     * @param cp
+     *            the compiled program
+     */
+    private void write(Path entry, int[] cp) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(this.directory, TEMP_PREFIX,
+                    TEMP_EXTENSION);
+            Files.write(temp, CompiledProgramFormat.encode(cp));
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            /*
+             * The program is compiled anyway; it will be cached next time
+             */
+            if (temp != null) {
+                temp.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes the temporary files left behind by writers that crashed, and
+     * then the least recently used entries until the entries and the
+     * temporary files still being written take at most {@code maxBytes},
+     * keeping {@code keep}.
+     *
+     * @param keep
+     *            the entry just written
+     */
+    private synchronized void evict(Path keep) {
+        List<Path> entries = new ArrayList<>();
+        List<FileTime> times = new ArrayList<>();
+        long total = 0;
+        long staleBefore = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+                this.directory, "{*" + EXTENSION + "," + TEMP_PREFIX + "*"
+                        + TEMP_EXTENSION + "}")) {
+            for (Path entry : stream) {
+                try {
+                    long size = Files.size(entry);
+                    FileTime time = Files.getLastModifiedTime(entry);
+                    if (entry.toString().endsWith(EXTENSION)) {
+                        total += size;
+                        entries.add(entry);
+                        times.add(time);
+                    } else if (time.toMillis() >= staleBefore) {
+                        /*
+                         * Still being written by another thread or process
+                         */
+                        total += size;
+                    } else {
+                        Files.delete(entry);
+                    }
+                } catch (IOException e) {
+                    /*
+                     * Evicted, or renamed into place, by another process in
+                     * the meantime
+                     */
+                    continue;
+                }
+            }
+        } catch (IOException e) {
+            return;
+        }
+        Integer[] order = new Integer[entries.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(times::get));
+        for (int i = 0; i < order.length && total > this.maxBytes; i++) {
+            Path entry = entries.get(order[i]);
+            if (!entry.equals(keep)) {
+                try {
+                    long size = Files.size(entry);
+                    Files.delete(entry);
+                    total -= size;
+                } catch (IOException e) {
+                    /*
+                     * Evicted by another process in the meantime
+                     */
+                    continue;
+                }
+            }
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor.
+     *
+     * @param directory
+     *            the directory of the entries, created if needed
+     * @param maxBytes
+     *            the largest total size in bytes of the entries
+     * @requires maxBytes >= 0
+     * @ensures <pre>
+     * if [directory exists or can be created] then
+     *  [this is a cache keeping its entries in directory]
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    public CompileCache(String directory, long maxBytes) {
+        assert directory != null : "Violation of: directory is not null";
+        assert maxBytes >= 0 : "Violation of: maxBytes >= 0";
+
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(this.directory);
+        } catch (IOException e) {
+            Reporter.assertElseFatalError(false,
+                    "Error creating compile cache directory " + directory);
+        }
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Returns the compiled program of the BL program in the given file, from
+     * the cache if it has been compiled before.
+     *
+     * @param fileName
+     *            the name of the file containing the program
+     * @param mode
+     *            how the code of calls is generated
+     * @return the compiled program
+     * @updates this
+     * @requires [fileName is the name of a file containing a BL program]
+     * @ensures <pre>
+     * if [the program in fileName is valid] then
+     *  compiledCode = [the program in fileName].generatedCodeArray(mode)
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    public int[] compiledCode(String fileName,
+            Program1GeneratedCode1.CallMode mode) {
+        assert fileName != null : "Violation of: fileName is not null";
+        assert mode != null : "Violation of: mode is not null";
+
+        SimpleReader in = new SimpleReader1L(fileName);
+        Queue<String> tokens = Tokenizer.tokens(in);
+        in.close();
+        Path entry = this.directory.resolve(key(tokens, mode) + EXTENSION);
+        int[] cp = read(entry);
+        if (cp != null) {
+            this.hits.incrementAndGet();
+        } else {
+            this.misses.incrementAndGet();
+            Program1GeneratedCode1 p = new Program1GeneratedCode1();
+            p.parse(tokens);
+            cp = p.generatedCodeArray(mode);
+            this.write(entry, cp);
+            this.evict(entry);
+        }
+        return cp;
+    }
+
+    /**
+     * Returns the compiled program of the BL program in the given file,
+     * inlining calls, from the cache if it has been compiled before.
+     *
+     * @param fileName
+     *            the name of the file containing the program
+     * @return the compiled program
+     * @updates this
+     * @requires [fileName is the name of a file containing a BL program]
+     * @ensures <pre>
+     * if [the program in fileName is valid] then
+     *  compiledCode = [the program in fileName].generatedCodeArray()
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    public int[] compiledCode(String fileName) {
+        return this.compiledCode(fileName,
+                Program1GeneratedCode1.CallMode.INLINE);
+    }
+
+    /**
+     * Reports the number of lookups found in this cache.
+     *
+     * @return the number of hits
+     */
+    public int hits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Reports the number of lookups not found in this cache.
+     *
+     * @return the number of misses
+     */
+    public int misses() {
+        return this.misses.get();
+    }
+
+}
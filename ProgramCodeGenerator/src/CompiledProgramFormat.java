@@ -0,0 +1,129 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+
+/**
+ * Encoding of compiled programs in the binary format read by the BugsWorld
+ * virtual machine loader: the magic bytes "BLVM", the format version, the
+ * length of {@code cp}, the entries of {@code cp}, and the CRC-32 of those
+ * entries, all integers little-endian int32.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+final class CompiledProgramFormat {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Magic bytes at the start of a binary compiled program ("BLVM").
+     */
+    private static final byte[] MAGIC = { 'B', 'L', 'V', 'M' };
+
+    /**
+     * Version of the binary compiled program format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size in bytes of the binary header (magic, version, length).
+     */
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     * Size in bytes of the trailer (checksum).
+     */
+    private static final int TRAILER_SIZE = 4;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private CompiledProgramFormat() {
+    }
+
+    /**
+     * Returns the CRC-32 of the entries in {@code bytes}.
+     *
+     * @param bytes
+     *            the encoded program
+     * @param length
+     *            the number of entries
+     * @return the CRC-32 of the entries
+     */
+    private static int checksum(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, HEADER_SIZE, length * Integer.BYTES);
+        return (int) crc.getValue();
+    }
+
+    /*
+     * Package-private members ------------------------------------------------
+     */
+
+    /**
+     * Encodes {@code cp} in the binary format.
+     *
+     * @param cp
+     *            the compiled program
+     * @return the encoded program
+     * @ensures encode = [cp in the binary format]
+     */
+    static byte[] encode(int[] cp) {
+        assert cp != null : "Violation of: cp is not null";
+
+        ByteBuffer buffer = ByteBuffer
+                .allocate(HEADER_SIZE + cp.length * Integer.BYTES
+                        + TRAILER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(cp.length);
+        for (int byteCode : cp) {
+            buffer.putInt(byteCode);
+        }
+        buffer.putInt(checksum(buffer.array(), cp.length));
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a program in the binary format.
+     *
+     * @param bytes
+     *            the encoded program
+     * @return the compiled program, or null if bytes is not a well-formed
+     *         program in the binary format
+     * @ensures <pre>
+     * if [bytes is a well-formed program in the binary format] then
+     *  decode = [the compiled program in bytes]
+     * else
+     *  decode = null
+     * </pre>
+     */
+    static int[] decode(byte[] bytes) {
+        assert bytes != null : "Violation of: bytes is not null";
+
+        int[] cp = null;
+        if (bytes.length >= HEADER_SIZE + TRAILER_SIZE) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            boolean wellFormed = true;
+            for (int i = 0; i < MAGIC.length; i++) {
+                wellFormed &= buffer.get() == MAGIC[i];
+            }
+            wellFormed &= buffer.getInt() == VERSION;
+            int length = buffer.getInt();
+            wellFormed &= length >= 0 && (long) length
+                    * Integer.BYTES == bytes.length - HEADER_SIZE
+                            - TRAILER_SIZE;
+            if (wellFormed && buffer.getInt(HEADER_SIZE
+                    + length * Integer.BYTES) == checksum(bytes, length)) {
+                cp = new int[length];
+                buffer.asIntBuffer().get(cp);
+            }
+        }
+        return cp;
+    }
+
+}
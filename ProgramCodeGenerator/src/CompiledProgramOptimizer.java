@@ -0,0 +1,552 @@
+import java.util.Arrays;
+
+import components.program.Program.Instruction;
+import components.sequence.Sequence;
+
+/**
+ * Peephole and jump-threading optimizer for compiled BL programs, as generated
+ * by {@code generatedCode}.
+ *
+ * <p>
+ * Each pass of the optimizer
+ * <ul>
+ * <li>folds {@code JUMP_IF_NOT_TRUE} instructions, which never jump, away;</li>
+ * <li>threads jumps: a jump to a {@code JUMP} (or to a folded instruction)
+ * goes straight to the final target, and a {@code JUMP} to a {@code HALT}
+ * becomes a {@code HALT};</li>
+ * <li>inverts loops: a {@code JUMP} back to a conditional jump that would exit
+ * to the instruction right after the {@code JUMP} (the end of a
+ * {@code WHILE}) becomes the negated conditional jump back to the start of the
+ * loop body, so every iteration evaluates one instruction instead of two;</li>
+ * <li>removes jumps to the next instruction;</li>
+ * <li>removes code not reachable from address 0 (such as code after an
+ * unconditional jump), and relocates all jump addresses.</li>
+ * </ul>
+ * Passes are repeated until the program no longer changes. The optimized
+ * program executes the same sequence of primitive instructions as the
+ * original one for every sequence of {@code CellState}s seen by the bug, and
+ * draws the same random conditions; only the addresses of instructions
+ * change. A jump chain that is a cycle without primitive instructions is left
+ * as it is.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class CompiledProgramOptimizer {
+
+    /**
+     * Counts of the changes made by {@code optimize}.
+     */
+    public static final class Report {
+
+        /**
+         * Length of the program before optimization.
+         */
+        private final int lengthBefore;
+
+        /**
+         * Length of the program after optimization.
+         */
+        private final int lengthAfter;
+
+        /**
+         * Counts of the changes, indexed by {@code TRUE_FOLDED},
+         * {@code THREADED}, and so on.
+         */
+        private final int[] counts;
+
+        /**
+         * Constructor.
+         *
+         * @param lengthBefore
+         *            length of the program before optimization
+         * @param lengthAfter
+         *            length of the program after optimization
+         * @param counts
+         *            counts of the changes
+         */
+        private Report(int lengthBefore, int lengthAfter, int[] counts) {
+            this.lengthBefore = lengthBefore;
+            this.lengthAfter = lengthAfter;
+            this.counts = counts.clone();
+        }
+
+        /**
+         * Reports the length of the program before optimization.
+         *
+         * @return the length before optimization
+         */
+        public int lengthBefore() {
+            return this.lengthBefore;
+        }
+
+        /**
+         * Reports the length of the program after optimization.
+         *
+         * @return the length after optimization
+         */
+        public int lengthAfter() {
+            return this.lengthAfter;
+        }
+
+        /**
+         * Reports the number of {@code JUMP_IF_NOT_TRUE} instructions folded
+         * away.
+         *
+         * @return the number of folded conditions
+         */
+        public int trueConditionsFolded() {
+            return this.counts[TRUE_FOLDED];
+        }
+
+        /**
+         * Reports the number of jump targets threaded to a later target.
+         *
+         * @return the number of threaded jumps
+         */
+        public int jumpsThreaded() {
+            return this.counts[THREADED];
+        }
+
+        /**
+         * Reports the number of {@code JUMP}s to a {@code HALT} replaced by a
+         * {@code HALT}.
+         *
+         * @return the number of jumps to HALT replaced
+         */
+        public int jumpsToHaltReplaced() {
+            return this.counts[HALT_REPLACED];
+        }
+
+        /**
+         * Reports the number of loops inverted.
+         *
+         * @return the number of inverted loops
+         */
+        public int loopsInverted() {
+            return this.counts[INVERTED];
+        }
+
+        /**
+         * Reports the number of jumps to the next instruction removed.
+         *
+         * @return the number of jumps to the next instruction removed
+         */
+        public int jumpsToNextRemoved() {
+            return this.counts[NEXT_REMOVED];
+        }
+
+        /**
+         * Reports the number of unreachable instructions removed.
+         *
+         * @return the number of unreachable instructions removed
+         */
+        public int unreachableInstructionsRemoved() {
+            return this.counts[UNREACHABLE_REMOVED];
+        }
+
+        @Override
+        public String toString() {
+            return "length " + this.lengthBefore + " -> " + this.lengthAfter
+                    + " (" + (this.lengthBefore - this.lengthAfter)
+                    + " entries removed): " + this.trueConditionsFolded()
+                    + " true conditions folded, " + this.jumpsThreaded()
+                    + " jumps threaded, " + this.jumpsToHaltReplaced()
+                    + " jumps to HALT replaced, " + this.loopsInverted()
+                    + " loops inverted, " + this.jumpsToNextRemoved()
+                    + " jumps to next removed, "
+                    + this.unreachableInstructionsRemoved()
+                    + " unreachable instructions removed";
+        }
+
+    }
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Index of the count of folded {@code JUMP_IF_NOT_TRUE} instructions.
+     */
+    private static final int TRUE_FOLDED = 0;
+
+    /**
+     * Index of the count of threaded jumps.
+     */
+    private static final int THREADED = 1;
+
+    /**
+     * Index of the count of {@code JUMP}s to {@code HALT} replaced.
+     */
+    private static final int HALT_REPLACED = 2;
+
+    /**
+     * Index of the count of inverted loops.
+     */
+    private static final int INVERTED = 3;
+
+    /**
+     * Index of the count of removed jumps to the next instruction.
+     */
+    private static final int NEXT_REMOVED = 4;
+
+    /**
+     * Index of the count of removed unreachable instructions.
+     */
+    private static final int UNREACHABLE_REMOVED = 5;
+
+    /**
+     * Number of counts.
+     */
+    private static final int COUNTS = 6;
+
+    /**
+     * Byte code of {@code JUMP}.
+     */
+    private static final int JUMP = Instruction.JUMP.byteCode();
+
+    /**
+     * Byte code of {@code HALT}.
+     */
+    private static final int HALT = Instruction.HALT.byteCode();
+
+    /**
+     * Byte code of {@code JUMP_IF_NOT_TRUE}.
+     */
+    private static final int TRUE = Instruction.JUMP_IF_NOT_TRUE.byteCode();
+
+    /**
+     * Byte code of {@code JUMP_IF_NOT_RANDOM}.
+     */
+    private static final int RANDOM = Instruction.JUMP_IF_NOT_RANDOM
+            .byteCode();
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private CompiledProgramOptimizer() {
+    }
+
+    /**
+     * Returns whether {@code byteCode} is the byte code of a jump (conditional
+     * or not).
+     *
+     * @param byteCode
+     *            the byte code
+     * @return true iff byteCode is the byte code of a jump
+     */
+    private static boolean isJump(int byteCode) {
+        return JUMP <= byteCode && byteCode <= TRUE;
+    }
+
+    /**
+     * Returns the conditional jump whose condition is the negation of that of
+     * {@code condJump}, or -1 if there is none.
+     *
+     * @param condJump
+     *            the byte code of a conditional jump
+     * @return the byte code of the negated conditional jump, or -1
+     */
+    private static int negated(int condJump) {
+        int result = -1;
+        if (Instruction.JUMP_IF_NOT_NEXT_IS_EMPTY.byteCode() <= condJump
+                && condJump <= Instruction.JUMP_IF_NOT_NEXT_IS_NOT_ENEMY
+                        .byteCode()) {
+            /*
+             * The positive and negated conditions alternate in pairs starting
+             * at JUMP_IF_NOT_NEXT_IS_EMPTY
+             */
+            int offset = condJump
+                    - Instruction.JUMP_IF_NOT_NEXT_IS_EMPTY.byteCode();
+            result = condJump + 1 - 2 * (offset % 2);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the instruction index execution really continues at when it
+     * reaches instruction {@code target}, following {@code JUMP}s and
+     * instructions that do nothing, or {@code target} itself if they form a
+     * cycle, or -1 if they reach instruction {@code avoid}.
+     *
+     * @param ops
+     *            the byte code of each instruction
+     * @param targets
+     *            the target instruction index of each jump
+     * @param noop
+     *            whether each instruction does nothing
+     * @param target
+     *            an instruction index (or the number of instructions)
+     * @param avoid
+     *            an instruction index the chain must not go through, or -1
+     * @return the final target, or -1
+     */
+    private static int finalTarget(int[] ops, int[] targets, boolean[] noop,
+            int target, int avoid) {
+        int t = target;
+        int steps = 0;
+        while (t < ops.length && t != avoid && steps <= ops.length
+                && (noop[t] || ops[t] == JUMP)) {
+            if (noop[t]) {
+                t++;
+            } else {
+                t = targets[t];
+            }
+            steps++;
+        }
+        if (t == avoid) {
+            t = -1;
+        } else if (steps > ops.length) {
+            t = target;
+        }
+        return t;
+    }
+
+    /**
+     * Applies the peephole rules to every instruction.
+     *
+     * @param ops
+     *            the byte code of each instruction
+     * @param targets
+     *            the target instruction index of each jump
+     * @param noop
+     *            whether each instruction does nothing
+     * @param counts
+     *            the counts of changes
+     * @updates ops, targets, noop, counts
+     */
+    private static void peephole(int[] ops, int[] targets, boolean[] noop,
+            int[] counts) {
+        for (int i = 0; i < ops.length; i++) {
+            if (ops[i] == TRUE) {
+                noop[i] = true;
+                counts[TRUE_FOLDED]++;
+            } else if (isJump(ops[i])) {
+                int target = finalTarget(ops, targets, noop, targets[i], -1);
+                if (target != targets[i]) {
+                    targets[i] = target;
+                    counts[THREADED]++;
+                }
+                /*
+                 * Where execution goes on after falling through i; a chain
+                 * through i itself would end where i jumps to now, which the
+                 * rules below change, so it does not count as next
+                 */
+                int next = finalTarget(ops, targets, noop, i + 1, i);
+                if (ops[i] == JUMP && target < ops.length
+                        && ops[target] == HALT) {
+                    ops[i] = HALT;
+                    counts[HALT_REPLACED]++;
+                } else if (ops[i] == JUMP && target < ops.length && next >= 0
+                        && !noop[target] && negated(ops[target]) >= 0
+                        && finalTarget(ops, targets, noop, targets[target],
+                                i) == next) {
+                    ops[i] = negated(ops[target]);
+                    targets[i] = target + 1;
+                    counts[INVERTED]++;
+                } else if (ops[i] != RANDOM && target == next) {
+                    noop[i] = true;
+                    counts[NEXT_REMOVED]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether each instruction is reachable from instruction 0.
+     *
+     * @param ops
+     *            the byte code of each instruction
+     * @param targets
+     *            the target instruction index of each jump
+     * @param noop
+     *            whether each instruction does nothing
+     * @return whether each instruction is reachable
+     */
+    private static boolean[] reachable(int[] ops, int[] targets,
+            boolean[] noop) {
+        boolean[] reached = new boolean[ops.length + 1];
+        int[] stack = new int[2 * ops.length + 1];
+        int size = 0;
+        stack[size] = 0;
+        size++;
+        reached[0] = true;
+        while (size > 0) {
+            size--;
+            int i = stack[size];
+            if (i < ops.length) {
+                int fallThrough = -1;
+                int jump = -1;
+                if (noop[i] || (isJump(ops[i]) && ops[i] != JUMP)
+                        || (!isJump(ops[i]) && ops[i] != HALT)) {
+                    fallThrough = i + 1;
+                }
+                if (!noop[i] && isJump(ops[i])) {
+                    jump = targets[i];
+                }
+                if (fallThrough >= 0 && !reached[fallThrough]) {
+                    reached[fallThrough] = true;
+                    stack[size] = fallThrough;
+                    size++;
+                }
+                if (jump >= 0 && !reached[jump]) {
+                    reached[jump] = true;
+                    stack[size] = jump;
+                    size++;
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Runs one optimization pass over {@code cp}.
+     *
+     * @param cp
+     *            the program
+     * @param counts
+     *            the counts of changes
+     * @return the optimized program
+     * @updates counts
+     * @requires [cp is a valid compiled BL program]
+     */
+    private static int[] pass(int[] cp, int[] counts) {
+        /*
+         * Decode into instructions, with jump targets as instruction indexes
+         */
+        int[] index = new int[cp.length + 1];
+        int m = 0;
+        int loc = 0;
+        while (loc < cp.length) {
+            index[loc] = m;
+            m++;
+            loc += isJump(cp[loc]) ? 2 : 1;
+        }
+        index[cp.length] = m;
+        int[] ops = new int[m];
+        int[] targets = new int[m];
+        loc = 0;
+        for (int i = 0; i < m; i++) {
+            ops[i] = cp[loc];
+            if (isJump(cp[loc])) {
+                targets[i] = index[cp[loc + 1]];
+                loc += 2;
+            } else {
+                loc++;
+            }
+        }
+        /*
+         * Rewrite, then drop what does nothing or cannot be reached
+         */
+        boolean[] noop = new boolean[m];
+        peephole(ops, targets, noop, counts);
+        boolean[] reached = reachable(ops, targets, noop);
+        int[] address = new int[m + 1];
+        int length = 0;
+        for (int i = 0; i < m; i++) {
+            address[i] = length;
+            if (reached[i] && !noop[i]) {
+                length += isJump(ops[i]) ? 2 : 1;
+            } else if (!reached[i] && !noop[i]) {
+                counts[UNREACHABLE_REMOVED]++;
+            }
+        }
+        address[m] = length;
+        /*
+         * Encode; a target that is dropped becomes the first instruction kept
+         * after it, which is where execution falls through to
+         */
+        int[] result = new int[length];
+        int pos = 0;
+        for (int i = 0; i < m; i++) {
+            if (reached[i] && !noop[i]) {
+                result[pos] = ops[i];
+                pos++;
+                if (isJump(ops[i])) {
+                    result[pos] = address[targets[i]];
+                    pos++;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Optimizes {@code cp}, repeating passes until nothing changes.
+     *
+     * @param cp
+     *            the program
+     * @param counts
+     *            the counts of changes
+     * @return the optimized program
+     * @updates counts
+     * @requires [cp is a valid compiled BL program]
+     */
+    private static int[] optimize(int[] cp, int[] counts) {
+        int[] code = cp;
+        int[] previous = new int[COUNTS];
+        do {
+            System.arraycopy(counts, 0, previous, 0, COUNTS);
+            code = pass(code, counts);
+        } while (!Arrays.equals(counts, previous));
+        return code;
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Optimizes the given compiled program and returns a report of the
+     * changes made.
+     *
+     * @param cp
+     *            the compiled program
+     * @return the report of the changes made
+     * @updates cp
+     * @requires [cp is a valid compiled BL program]
+     * @ensures <pre>
+     * [cp is #cp optimized: it executes the same sequence of primitive
+     *  instructions as #cp for every sequence of CellStates]  and
+     * optimize = [report of the changes made]
+     * </pre>
+     */
+    public static Report optimize(Sequence<Integer> cp) {
+        assert cp != null : "Violation of: cp is not null";
+        assert cp.length() > 0 : ""
+                + "Violation of: cp is a valid compiled BL program";
+
+        int[] code = new int[cp.length()];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = cp.entry(i);
+        }
+        int[] counts = new int[COUNTS];
+        int[] optimized = optimize(code, counts);
+        cp.clear();
+        for (int byteCode : optimized) {
+            cp.add(cp.length(), byteCode);
+        }
+        return new Report(code.length, optimized.length, counts);
+    }
+
+    /**
+     * Returns the given compiled program optimized.
+     *
+     * @param cp
+     *            the compiled program
+     * @return cp optimized
+     * @requires [cp is a valid compiled BL program]
+     * @ensures <pre>
+     * [optimized executes the same sequence of primitive instructions as cp
+     *  for every sequence of CellStates]
+     * </pre>
+     */
+    public static int[] optimized(int[] cp) {
+        assert cp != null : "Violation of: cp is not null";
+        assert cp.length > 0 : ""
+                + "Violation of: cp is a valid compiled BL program";
+
+        return optimize(cp, new int[COUNTS]);
+    }
+
+}
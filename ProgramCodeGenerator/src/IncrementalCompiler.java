@@ -0,0 +1,466 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import components.map.Map;
+import components.program.Program;
+import components.program.Program.Instruction;
+import components.statement.Statement;
+import components.utilities.Reporter;
+
+/**
+ * Compiler that keeps the generated code of every user-defined instruction of
+ * a program between compilations, so that after an edit only the code of the
+ * instructions whose source or (transitive) callees changed is generated
+ * again.
+ *
+ * <p>
+ * The code of an instruction is kept in two forms. Its <i>fragment</i> is the
+ * code of its body alone, with jump addresses relative to the start of the
+ * fragment and a one-entry placeholder for every call to a user-defined
+ * instruction. Its <i>expansion</i> is the fragment with the expansions of
+ * the called instructions spliced in at the placeholders and all jump
+ * addresses relocated, that is, the code {@code Program1GeneratedCode1}
+ * inlines at every call. Expansions grow with every level of calls; an
+ * expansion is kept until the fragment of its instruction or of one of its
+ * callees changes. The program body is handled as one more instruction, so
+ * the compiled program is exactly the code of {@code generatedCode}.
+ *
+ * <p>
+ * {@code compiledCode(p)} generates all the fragments from the source, which
+ * costs one pass over it, and finds the changes by comparing them.
+ * {@code compiledCode(p, edited)} is told which instructions were edited and
+ * generates only their fragments, so its cost does not depend on the size of
+ * the rest of the source.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class IncrementalCompiler {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Key of the program body, which is not a valid instruction name.
+     */
+    private static final String BODY = "";
+
+    /**
+     * Byte code of {@code JUMP}.
+     */
+    private static final int JUMP = Instruction.JUMP.byteCode();
+
+    /**
+     * The code of one instruction (or of the program body).
+     */
+    private static final class Code {
+
+        /**
+         * The fragment: byte codes with jump addresses relative to its start
+         * and {@code -1 - i} in place of the i-th call.
+         */
+        private final int[] fragment;
+
+        /**
+         * Names of the instructions called, in order.
+         */
+        private final String[] calls;
+
+        /**
+         * The expansion, or null if it has to be generated again.
+         */
+        private int[] expansion;
+
+        /**
+         * Constructor.
+         *
+         * @param fragment
+         *            the fragment
+         * @param calls
+         *            the names of the instructions called
+         */
+        Code(int[] fragment, String[] calls) {
+            this.fragment = fragment;
+            this.calls = calls;
+            this.expansion = null;
+        }
+
+        /**
+         * Reports whether this has the same fragment and calls as
+         * {@code other}.
+         *
+         * @param other
+         *            the other code
+         * @return true iff the fragments and calls are equal
+         */
+        boolean sameFragment(Code other) {
+            return Arrays.equals(this.fragment, other.fragment)
+                    && Arrays.equals(this.calls, other.calls);
+        }
+
+    }
+
+    /**
+     * Call hook generating a placeholder for every call, and recording the
+     * names of the instructions called.
+     */
+    private static final class Placeholders
+            implements Program1GeneratedCode1.CallHook {
+
+        /**
+         * Names of the instructions called, in order.
+         */
+        private final List<String> calls = new ArrayList<>();
+
+        @Override
+        public Statement enter(String call, CodeBuffer cp) {
+            cp.append(-1 - this.calls.size());
+            this.calls.add(call);
+            return null;
+        }
+
+        @Override
+        public void exit(String call, Statement body) {
+            assert false : "Violation of: no body is generated for a call";
+        }
+
+    }
+
+    /**
+     * The code of every instruction of the program last compiled, and of its
+     * body, by name.
+     */
+    private java.util.Map<String, Code> codes = new HashMap<>();
+
+    /**
+     * Number of expansions generated by the last compilation.
+     */
+    private int expansions;
+
+    /**
+     * Returns the code of {@code s}.
+     *
+     * @param s
+     *            the statement
+     * @return the code of s, without expansion
+     */
+    private static Code code(Statement s) {
+        CodeBuffer cp = new CodeBuffer();
+        Placeholders calls = new Placeholders();
+        Program1GeneratedCode1.generateCodeForStatement(s, calls, cp);
+        return new Code(cp.toArray(), calls.calls.toArray(new String[0]));
+    }
+
+    /**
+     * Returns the names of the instructions in {@code context}, so their
+     * bodies can be taken out of it one at a time instead of being changed
+     * while it is iterated over.
+     *
+     * @param context
+     *            the context
+     * @return the names of the instructions in context
+     */
+    private static List<String> names(Map<String, Statement> context) {
+        List<String> names = new ArrayList<>();
+        for (Map.Pair<String, Statement> instruction : context) {
+            names.add(instruction.key());
+        }
+        return names;
+    }
+
+    /**
+     * Returns the number of entries taken by the instruction with byte code
+     * {@code byteCode}.
+     *
+     * @param byteCode
+     *            the byte code, or a call placeholder
+     * @return the number of entries of the instruction
+     */
+    private static int width(int byteCode) {
+        int width = 1;
+        if (byteCode >= JUMP) {
+            width = 2;
+        }
+        return width;
+    }
+
+    /**
+     * Generates the expansion of the instruction with the given name, and of
+     * the instructions it calls, if they are not up to date.
+     *
+     * @param name
+     *            the name of the instruction, or {@code BODY}
+     * @param active
+     *            the instructions whose expansion is being generated
+     * @updates this, active
+     * @ensures <pre>
+     * if [all instructions called by name are defined and name does not call
+     *     itself, directly or indirectly] then
+     *  [the expansion of name is up to date]
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    private void expand(String name, Set<String> active) {
+        Code code = this.codes.get(name);
+        Reporter.assertElseFatalError(code != null && !active.contains(name),
+                Program1GeneratedCode1.CALL_ERROR);
+        if (code.expansion == null) {
+            active.add(name);
+            int[] fragment = code.fragment;
+            int[] sizes = new int[code.calls.length];
+            /*
+             * starts[i] is the location in the expansion of entry i of the
+             * fragment
+             */
+            int[] starts = new int[fragment.length + 1];
+            int length = 0;
+            int loc = 0;
+            while (loc < fragment.length) {
+                starts[loc] = length;
+                if (fragment[loc] < 0) {
+                    int call = -1 - fragment[loc];
+                    this.expand(code.calls[call], active);
+                    sizes[call] = this.codes.get(code.calls[call]).expansion.length;
+                    length += sizes[call];
+                    loc++;
+                } else {
+                    length += width(fragment[loc]);
+                    loc += width(fragment[loc]);
+                }
+            }
+            starts[fragment.length] = length;
+            int[] expansion = new int[length];
+            loc = 0;
+            while (loc < fragment.length) {
+                int start = starts[loc];
+                if (fragment[loc] < 0) {
+                    int[] callee = this.codes
+                            .get(code.calls[-1 - fragment[loc]]).expansion;
+                    int i = 0;
+                    while (i < callee.length) {
+                        expansion[start + i] = callee[i];
+                        if (callee[i] >= JUMP) {
+                            expansion[start + i + 1] = callee[i + 1] + start;
+                        }
+                        i += width(callee[i]);
+                    }
+                    loc++;
+                } else {
+                    expansion[start] = fragment[loc];
+                    if (fragment[loc] >= JUMP) {
+                        expansion[start + 1] = starts[fragment[loc + 1]];
+                    }
+                    loc += width(fragment[loc]);
+                }
+            }
+            code.expansion = expansion;
+            this.expansions++;
+            active.remove(name);
+        }
+    }
+
+    /**
+     * Makes {@code current} the code of the program, keeping the expansions
+     * of the instructions whose fragments and callees did not change since
+     * the last compilation, and returns the compiled program.
+     *
+     * @param current
+     *            the code of the instructions and body of the program
+     * @return the compiled program
+     * @updates this
+     * @ensures <pre>
+     * if [all instructions called are defined]  and
+     *    [there are no calling cycles] then
+     *  link = [the expansion of the body] * <HALT>
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    private int[] link(java.util.Map<String, Code> current) {
+        java.util.Map<String, Code> old = this.codes;
+        Set<String> changed = new HashSet<>();
+        java.util.Map<String, List<String>> callers = new HashMap<>();
+        for (java.util.Map.Entry<String, Code> entry : current.entrySet()) {
+            Code previous = old.get(entry.getKey());
+            /*
+             * Code reused as is keeps its expansion, unless a callee changed
+             */
+            if (previous != entry.getValue()) {
+                if (previous != null
+                        && previous.sameFragment(entry.getValue())) {
+                    entry.getValue().expansion = previous.expansion;
+                } else {
+                    changed.add(entry.getKey());
+                }
+            }
+            for (String call : entry.getValue().calls) {
+                List<String> list = callers.get(call);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    callers.put(call, list);
+                }
+                list.add(entry.getKey());
+            }
+        }
+        for (String name : old.keySet()) {
+            if (!current.containsKey(name)) {
+                changed.add(name);
+            }
+        }
+        /*
+         * Invalidate the expansions of the callers of changed instructions
+         */
+        Deque<String> work = new ArrayDeque<>(changed);
+        Set<String> invalid = new HashSet<>(changed);
+        while (!work.isEmpty()) {
+            List<String> list = callers.get(work.pop());
+            if (list != null) {
+                for (String caller : list) {
+                    if (invalid.add(caller)) {
+                        work.push(caller);
+                    }
+                }
+            }
+        }
+        for (String name : invalid) {
+            Code code = current.get(name);
+            if (code != null) {
+                code.expansion = null;
+            }
+        }
+        this.codes = current;
+        this.expansions = 0;
+        this.expand(BODY, new HashSet<String>());
+        int[] expansion = current.get(BODY).expansion;
+        int[] cp = Arrays.copyOf(expansion, expansion.length + 1);
+        cp[expansion.length] = Instruction.HALT.byteCode();
+        return cp;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor of a compiler that has not compiled anything yet.
+     */
+    public IncrementalCompiler() {
+        this.expansions = 0;
+    }
+
+    /*
+     * Public members ---------------------------------------------------------
+     */
+
+    /**
+     * Generates and returns the virtual machine instructions ("byte codes")
+     * corresponding to {@code p}, reusing the code of the instructions that
+     * did not change since the last compilation.
+     *
+     * @param p
+     *            the program
+     * @return the compiled program
+     * @updates this
+     * @ensures <pre>
+     * if [all instructions called in p are either primitive or
+     *     defined in its context]  and
+     *    [its context does not include any calling cycles, i.e., recursion]
+     * then
+     *  compiledCode = [p as a Program1GeneratedCode1].generatedCodeArray()
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    public int[] compiledCode(Program p) {
+        assert p != null : "Violation of: p is not null";
+
+        java.util.Map<String, Code> current = new HashMap<>();
+        Map<String, Statement> context = p.newContext();
+        p.swapContext(context);
+        Statement body = p.newBody();
+        p.swapBody(body);
+        for (String name : names(context)) {
+            Map.Pair<String, Statement> instruction = context.remove(name);
+            current.put(name, code(instruction.value()));
+            context.add(instruction.key(), instruction.value());
+        }
+        current.put(BODY, code(body));
+        p.swapContext(context);
+        p.swapBody(body);
+        return this.link(current);
+    }
+
+    /**
+     * Generates and returns the virtual machine instructions ("byte codes")
+     * corresponding to {@code p}, which differs from the program last
+     * compiled only in the instructions named in {@code edited} and in the
+     * instructions added or removed. Unlike {@code compiledCode(p)}, this
+     * does not go through the source of the other instructions and of the
+     * body at all, so its cost depends only on the edited instructions and on
+     * the size of the code of the program.
+     *
+     * @param p
+     *            the program
+     * @param edited
+     *            the names of the instructions whose body was edited
+     * @return the compiled program
+     * @updates this
+     * @requires <pre>
+     * [a program has been compiled by this]  and
+     * [p differs from the program last compiled by this only in the bodies
+     *  of the instructions named in edited, and in instructions added or
+     *  removed]
+     * </pre>
+     * @ensures <pre>
+     * if [all instructions called in p are either primitive or
+     *     defined in its context]  and
+     *    [its context does not include any calling cycles, i.e., recursion]
+     * then
+     *  compiledCode = [p as a Program1GeneratedCode1].generatedCodeArray()
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    public int[] compiledCode(Program p, Set<String> edited) {
+        assert p != null : "Violation of: p is not null";
+        assert edited != null : "Violation of: edited is not null";
+        assert this.codes.containsKey(BODY) : ""
+                + "Violation of: a program has been compiled by this";
+
+        java.util.Map<String, Code> current = new HashMap<>();
+        Map<String, Statement> context = p.newContext();
+        p.swapContext(context);
+        for (String name : names(context)) {
+            Code previous = this.codes.get(name);
+            if (previous == null || edited.contains(name)) {
+                Map.Pair<String, Statement> instruction = context.remove(name);
+                current.put(name, code(instruction.value()));
+                context.add(instruction.key(), instruction.value());
+            } else {
+                current.put(name, previous);
+            }
+        }
+        p.swapContext(context);
+        current.put(BODY, this.codes.get(BODY));
+        return this.link(current);
+    }
+
+    /**
+     * Reports the number of expansions (of instructions and of the body)
+     * generated by the last call of {@code compiledCode}.
+     *
+     * @return the number of expansions generated
+     */
+    public int expansionsGenerated() {
+        return this.expansions;
+    }
+
+}
@@ -1,8 +1,13 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
 import components.map.Map;
 import components.program.Program;
 import components.program.Program1;
 import components.sequence.Sequence;
-import components.sequence.Sequence1L;
 import components.simplereader.SimpleReader;
 import components.simplereader.SimpleReader1L;
 import components.simplewriter.SimpleWriter;
@@ -20,10 +25,105 @@ import components.utilities.Reporter;
  */
 public final class Program1GeneratedCode1 extends Program1 {
 
+    /**
+     * How {@code generatedCode} generates the code of calls to user-defined
+     * instructions.
+     */
+    public enum CallMode {
+        /**
+         * A copy of the body of the instruction at every call.
+         */
+        INLINE,
+        /**
+         * One copy of the body of the instruction shared by all the calls that
+         * continue at the same address (see {@code SharedCodeGenerator}).
+         */
+        SHARE
+    }
+
+    /**
+     * Error message for calls to undefined instructions and recursion.
+     */
+    static final String CALL_ERROR = "Undefined instructions and direct and/or indirect use of recursion.";
+
+    /**
+     * What {@code generateCodeForStatement} generates for a call to a
+     * user-defined instruction.
+     */
+    interface CallHook {
+
+        /**
+         * Starts the code of a call to the user-defined instruction
+         * {@code call}: either appends the code of the call to {@code cp}, or
+         * returns the body whose code is to be generated in place of the call.
+         *
+         * @param call
+         *            the name of the instruction called
+         * @param cp
+         *            the buffer containing the generated code
+         * @return the body to generate in place of the call, or null if the
+         *         code of the call has been appended to cp
+         * @updates cp
+         */
+        Statement enter(String call, CodeBuffer cp);
+
+        /**
+         * Ends the code of a call to {@code call} whose body, returned by
+         * {@code enter}, has been generated in its place.
+         *
+         * @param call
+         *            the name of the instruction called
+         * @param body
+         *            the body returned by enter
+         */
+        void exit(String call, Statement body);
+
+    }
+
     /*
      * Private members --------------------------------------------------------
      */
 
+    /**
+     * Largest total size in bytes of the compile cache used by {@code main}.
+     */
+    private static final long CACHE_SIZE = 16L << 20;
+
+    /**
+     * Call hook generating the body of the instruction called, taken out of
+     * the context while it is generated so a recursive call is reported.
+     */
+    private static final class InlineCalls implements CallHook {
+
+        /**
+         * The context in which to find user-defined instructions.
+         */
+        private final Map<String, Statement> context;
+
+        /**
+         * Constructor.
+         *
+         * @param context
+         *            the context in which to find user-defined instructions
+         */
+        InlineCalls(Map<String, Statement> context) {
+            this.context = context;
+        }
+
+        @Override
+        public Statement enter(String call, CodeBuffer cp) {
+            Reporter.assertElseFatalError(this.context.hasKey(call),
+                    CALL_ERROR);
+            return this.context.remove(call).value();
+        }
+
+        @Override
+        public void exit(String call, Statement body) {
+            this.context.add(call, body);
+        }
+
+    }
+
     /**
      * Constructs into the given {@code Program} the program read from the given
      * input file.
@@ -64,6 +164,35 @@ public final class Program1GeneratedCode1 extends Program1 {
         out.close();
     }
 
+    /**
+     * Saves the given compiled program {@code cp} to the given output file in
+     * the binary format read by the BugsWorld virtual machine loader (see
+     * {@code CompiledProgramFormat}).
+     *
+     * @param fileName
+     *            the name of the file containing the program
+     * @param cp
+     *            the compiled program
+     * @requires <pre>
+     * [fileName is the name of a file to be used to save the compiled program]
+     * </pre>
+     * @ensures [cp is saved to file fileName in the binary format]
+     */
+    private static void saveCompiledProgramBinary(String fileName,
+            Sequence<Integer> cp) {
+        int[] array = new int[cp.length()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = cp.entry(i);
+        }
+        try {
+            Files.write(Paths.get(fileName),
+                    CompiledProgramFormat.encode(array));
+        } catch (IOException e) {
+            Reporter.assertElseFatalError(false,
+                    "Error writing compiled program " + fileName);
+        }
+    }
+
     /**
      * Converts {@code Condition} into corresponding conditional jump
      * instruction byte code.
@@ -77,7 +206,7 @@ public final class Program1GeneratedCode1 extends Program1 {
      *  [conditional jump instruction byte code corresponding to c]
      * </pre>
      */
-    private static Instruction conditionalJump(Condition c) {
+    static Instruction conditionalJump(Condition c) {
         assert c != null : "Violation of: c is not null";
         Instruction result;
         switch (c) {
@@ -125,119 +254,149 @@ public final class Program1GeneratedCode1 extends Program1 {
         return result;
     }
 
+    /**
+     * A statement whose code is being generated.
+     */
+    private static final class Frame extends StatementFrame {
+
+        /**
+         * Location of the address of the conditional jump of an IF, IF_ELSE
+         * or WHILE statement, to fill in.
+         */
+        private int jump;
+
+        /**
+         * Location of the start of a WHILE statement, or of the address of
+         * the jump over the ELSE block of an IF_ELSE statement.
+         */
+        private int start;
+
+        /**
+         * The body generated in place of a CALL statement, while its code is
+         * being generated, or null.
+         */
+        private Statement body;
+
+        /**
+         * Constructor, disassembling {@code s}.
+         *
+         * @param s
+         *            the statement
+         * @updates s
+         */
+        Frame(Statement s) {
+            super(s, false);
+        }
+
+    }
+
     /**
      * Generates the sequence of virtual machine instructions ("byte codes")
-     * corresponding to {@code s} and appends it at the end of {@code cp}.
+     * corresponding to {@code s} and appends it at the end of {@code cp},
+     * leaving the code of calls to user-defined instructions to {@code hook}.
+     *
+     * <p>
+     * The statements nested in {@code s}, and the bodies {@code hook} returns,
+     * are visited with a stack of frames instead of recursively, so the depth
+     * of nesting is limited only by the heap.
      *
      * @param s
      *            the {@code Statement} for which to generate code
-     * @param context
-     *            the {@code Context} in which to find user defined instructions
+     * @param hook
+     *            what to generate for calls to user-defined instructions
      * @param cp
-     *            the {@code Sequence} containing the generated code
+     *            the buffer containing the generated code
      * @updates cp
      * @ensures <pre>
-     * if [all instructions called in s are either primitive or
-     *     defined in context]  and
-     *    [context does not include any calling cycles, i.e., recursion] then
-     *  cp = #cp * s[the sequence of virtual machine "byte codes" corresponding to s]
-     * else
-     *  [reports an appropriate error message to the console and terminates client]
+     * cp = #cp * s[the sequence of virtual machine "byte codes" corresponding to s,
+     *              with the code of each call to a user-defined instruction
+     *              generated by hook]
      * </pre>
      */
-    private static void generateCodeForStatement(Statement s,
-            Map<String, Statement> context, Sequence<Integer> cp) {
+    static void generateCodeForStatement(Statement s, CallHook hook,
+            CodeBuffer cp) {
 
         final int dummy = 0;
 
-        switch (s.kind()) {
-            case BLOCK: {
-
-                // TODO - fill in case
-                Statement position = s.newInstance();
-
-                for (int c = 0; c < s.lengthOfBlock(); c++) {
-                    position = s.removeFromBlock(c);
-                    generateCodeForStatement(position, context, cp);
-                    s.addToBlock(c, position);
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(s));
+        while (!stack.isEmpty()) {
+            Frame f = stack.peek();
+            Statement part = null;
+            switch (f.kind()) {
+                case BLOCK: {
+                    part = f.next();
+                    break;
                 }
-
-                break;
-            }
-            case IF: {
-                Statement b = s.newInstance();
-                Condition c = s.disassembleIf(b);
-                cp.add(cp.length(), conditionalJump(c).byteCode());
-                int jump = cp.length();
-                cp.add(cp.length(), dummy);
-                generateCodeForStatement(b, context, cp);
-                cp.replaceEntry(jump, cp.length());
-                s.assembleIf(c, b);
-                break;
-            }
-            case IF_ELSE: {
-
-                // TODO - fill in case
-                Statement ifBlock = s.newInstance();
-                Statement elseBlock = s.newInstance();
-                Condition con = s.disassembleIfElse(ifBlock, elseBlock);
-
-                cp.add(cp.length(), conditionalJump(con).byteCode());
-                int conLength = cp.length();
-                cp.add(cp.length(), dummy);
-                generateCodeForStatement(ifBlock, context, cp);
-                cp.add(cp.length(), Instruction.JUMP.byteCode());
-                int jumpLength = cp.length();
-                cp.add(cp.length(), dummy);
-                cp.replaceEntry(conLength, cp.length());
-                generateCodeForStatement(elseBlock, context, cp);
-                cp.replaceEntry(jumpLength, cp.length());
-                s.assembleIfElse(con, ifBlock, elseBlock);
-
-                break;
-            }
-            case WHILE: {
-
-                // TODO - fill in case
-                Statement whileBlock = s.newInstance();
-                Condition con = s.disassembleWhile(whileBlock);
-
-                int length = cp.length();
-                cp.add(cp.length(), conditionalJump(con).byteCode());
-                int jumpLength = cp.length();
-                cp.add(cp.length(), dummy);
-                generateCodeForStatement(whileBlock, context, cp);
-                cp.add(cp.length(), Instruction.JUMP.byteCode());
-                cp.add(cp.length(), length);
-                s.assembleWhile(con, whileBlock);
-                cp.replaceEntry(jumpLength, cp.length());
-
-                break;
-            }
-            case CALL: {
-
-                // TODO - fill in case
-                String call = s.disassembleCall();
-
-                if (call.equals("turnleft") || call.equals("turnright")
-                        || call.equals("move") || call.equals("infect")
-                        || call.equals("skip")) {
-                    cp.add(cp.length(),
-                            Instruction.valueOf(call.toUpperCase()).byteCode());
-                } else {
-                    Reporter.assertElseFatalError(context.hasKey(call),
-                            "Undefined instructions and direct and/or indirect use of recursion.");
-                    Statement state = context.remove(call).value();
-                    generateCodeForStatement(state, context, cp);
-                    context.add(call, state);
+                case IF: {
+                    if (f.position() == 0) {
+                        cp.append(conditionalJump(f.condition()).byteCode());
+                        f.jump = cp.length();
+                        cp.append(dummy);
+                    } else {
+                        cp.replaceEntry(f.jump, cp.length());
+                    }
+                    part = f.next();
+                    break;
+                }
+                case IF_ELSE: {
+                    if (f.position() == 0) {
+                        cp.append(conditionalJump(f.condition()).byteCode());
+                        f.jump = cp.length();
+                        cp.append(dummy);
+                    } else if (f.position() == 1) {
+                        cp.append(Instruction.JUMP.byteCode());
+                        f.start = cp.length();
+                        cp.append(dummy);
+                        cp.replaceEntry(f.jump, cp.length());
+                    } else {
+                        cp.replaceEntry(f.start, cp.length());
+                    }
+                    part = f.next();
+                    break;
+                }
+                case WHILE: {
+                    if (f.position() == 0) {
+                        f.start = cp.length();
+                        cp.append(conditionalJump(f.condition()).byteCode());
+                        f.jump = cp.length();
+                        cp.append(dummy);
+                    } else {
+                        cp.append(Instruction.JUMP.byteCode());
+                        cp.append(f.start);
+                        cp.replaceEntry(f.jump, cp.length());
+                    }
+                    part = f.next();
+                    break;
+                }
+                case CALL: {
+                    String call = f.call();
+                    if (InstructionIndex.isPrimitive(call)) {
+                        cp.append(Instruction.valueOf(call.toUpperCase())
+                                .byteCode());
+                        part = f.next();
+                    } else if (f.body == null) {
+                        // Generate the code of the body in place of the call
+                        f.body = hook.enter(call, cp);
+                        part = f.body;
+                        if (part == null) {
+                            part = f.next();
+                        }
+                    } else {
+                        hook.exit(call, f.body);
+                        part = f.next();
+                    }
+                    break;
+                }
+                default: {
+                    // this will never happen...
+                    break;
                 }
-
-                s.assembleCall(call);
-                break;
             }
-            default: {
-                // this will never happen...
-                break;
+            if (part == null) {
+                stack.pop();
+            } else {
+                stack.push(new Frame(part));
             }
         }
     }
@@ -257,28 +416,126 @@ public final class Program1GeneratedCode1 extends Program1 {
      * Public methods ---------------------------------------------------------
      */
 
-    @Override
-    public Sequence<Integer> generatedCode() {
-        Sequence<Integer> cp = new Sequence1L<Integer>();
+    /**
+     * Generates and returns the virtual machine instructions ("byte codes")
+     * corresponding to {@code this}, generating the code of calls to
+     * user-defined instructions as {@code mode} says.
+     *
+     * @param mode
+     *            how to generate the code of calls
+     * @return the compiled program
+     * @ensures <pre>
+     * if [all instructions called in this are either primitive or
+     *     defined in context]  and
+     *    [context does not include any calling cycles, i.e., recursion] then
+     *  [generatedCodeArray = the virtual machine "byte codes" corresponding to
+     *   this, executing the same primitive instructions whatever the mode]
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    public int[] generatedCodeArray(CallMode mode) {
+        assert mode != null : "Violation of: mode is not null";
 
-        // TODO - fill in body
         Map<String, Statement> m = this.newContext();
         this.swapContext(m);
         Statement s = this.newBody();
         this.swapBody(s);
-        generateCodeForStatement(s, m, cp);
-        cp.add(cp.length(), Instruction.HALT.byteCode());
+        int[] cp;
+        if (mode == CallMode.INLINE) {
+            CodeBuffer buffer = new CodeBuffer();
+            generateCodeForStatement(s, new InlineCalls(m), buffer);
+            buffer.append(Instruction.HALT.byteCode());
+            cp = buffer.toArray();
+        } else {
+            cp = SharedCodeGenerator.generatedCode(s, m);
+        }
         this.swapContext(m);
         this.swapBody(s);
         return cp;
     }
 
+    /**
+     * Generates and returns the virtual machine instructions ("byte codes")
+     * corresponding to {@code this}, as an array ready for the virtual
+     * machine.
+     *
+     * @return the compiled program
+     * @ensures <pre>
+     * if [all instructions called in this are either primitive or
+     *     defined in context]  and
+     *    [context does not include any calling cycles, i.e., recursion] then
+     *  generatedCodeArray = [the entries of generatedCode()]
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    public int[] generatedCodeArray() {
+        return this.generatedCodeArray(CallMode.INLINE);
+    }
+
+    /**
+     * Generates and returns the virtual machine instructions ("byte codes")
+     * corresponding to the compact representation {@code p} of a program, as
+     * {@code generatedCodeArray()} does for the program, reading {@code p}
+     * without changing it.
+     *
+     * @param p
+     *            the compact representation of the program
+     * @return the compiled program
+     * @ensures <pre>
+     * if [all instructions called in p are either primitive or
+     *     defined in p]  and
+     *    [p does not include any calling cycles, i.e., recursion] then
+     *  generatedCodeArray = [the virtual machine "byte codes" corresponding to
+     *   the program p represents]
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    public static int[] generatedCodeArray(CompactProgram p) {
+        assert p != null : "Violation of: p is not null";
+        return CompactCodeGenerator.generatedCode(p);
+    }
+
+    /**
+     * Generates and returns the sequence of virtual machine instructions
+     * ("byte codes") corresponding to {@code this}, generating the code of
+     * calls to user-defined instructions as {@code mode} says.
+     *
+     * @param mode
+     *            how to generate the code of calls
+     * @return the compiled program
+     * @ensures <pre>
+     * if [all instructions called in this are either primitive or
+     *     defined in context]  and
+     *    [context does not include any calling cycles, i.e., recursion] then
+     *  generatedCode = [the entries of generatedCodeArray(mode)]
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    public Sequence<Integer> generatedCode(CallMode mode) {
+        int[] cp = this.generatedCodeArray(mode);
+        return CodeBuffer.toSequence(cp, cp.length);
+    }
+
+    @Override
+    public Sequence<Integer> generatedCode() {
+        return this.generatedCode(CallMode.INLINE);
+    }
+
     /*
      * Main test method -------------------------------------------------------
      */
 
     /**
-     * Main method.
+     * Main method. With the arguments {@code -cache directory}, the program is
+     * compiled through a {@code CompileCache} in that directory, so it is
+     * parsed and its code generated only if it changed since it was last
+     * compiled, and the expected output is not generated. With the argument
+     * {@code -optimize}, the actual output is run through
+     * {@code CompiledProgramOptimizer}, and the changes it made are printed.
      *
      * @param args
      *            the command line arguments
@@ -286,42 +543,77 @@ public final class Program1GeneratedCode1 extends Program1 {
     public static void main(String[] args) {
         SimpleReader in = new SimpleReader1L();
         SimpleWriter out = new SimpleWriter1L();
+        CompileCache cache = null;
+        boolean optimize = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-cache") && i + 1 < args.length) {
+                i++;
+                cache = new CompileCache(args[i], CACHE_SIZE);
+            } else if (args[i].equals("-optimize")) {
+                optimize = true;
+            }
+        }
         /*
          * Get input file name
          */
         out.print("Enter valid BL program file name: ");
         String fileName = in.nextLine();
+        Program p1 = null;
+        Program p2 = null;
+        Sequence<Integer> cp2;
+        if (cache == null) {
+            /*
+             * Generate expected output in file "data/expected-output.txt"
+             */
+            out.println("*** Generating expected output ***");
+            p1 = new Program1();
+            loadProgram(fileName, p1);
+            Sequence<Integer> cp1 = p1.generatedCode();
+            saveCompiledProgram("data/expected-output.txt", cp1);
+            /*
+             * Disassemble generated code
+             */
+            out.println("*** Expected disassembled output ***");
+            Program1.disassembleProgram(out, cp1);
+            out.println("*** Generating actual output ***");
+            p2 = new Program1GeneratedCode1();
+            loadProgram(fileName, p2);
+            cp2 = p2.generatedCode();
+        } else {
+            /*
+             * Parse and generate code only if the program changed since it
+             * was last cached
+             */
+            out.println("*** Generating actual output through the compile "
+                    + "cache ***");
+            int[] cp = cache.compiledCode(fileName);
+            cp2 = CodeBuffer.toSequence(cp, cp.length);
+        }
+        if (optimize) {
+            /*
+             * Optimize the actual output
+             */
+            out.println("*** Optimizing actual output ***");
+            out.println(CompiledProgramOptimizer.optimize(cp2));
+        }
         /*
-         * Generate expected output in file "data/expected-output.txt"
-         */
-        out.println("*** Generating expected output ***");
-        Program p1 = new Program1();
-        loadProgram(fileName, p1);
-        Sequence<Integer> cp1 = p1.generatedCode();
-        saveCompiledProgram("data/expected-output.txt", cp1);
-        /*
-         * Disassemble generated code
-         */
-        out.println("*** Expected disassembled output ***");
-        Program1.disassembleProgram(out, cp1);
-        /*
-         * Generate actual output in file "data/actual-output.txt"
+         * Save actual output in files "data/actual-output.txt" and, in the
+         * binary format, "data/actual-output.bo"
          */
-        out.println("*** Generating actual output ***");
-        Program p2 = new Program1GeneratedCode1();
-        loadProgram(fileName, p2);
-        Sequence<Integer> cp2 = p2.generatedCode();
         saveCompiledProgram("data/actual-output.txt", cp2);
+        saveCompiledProgramBinary("data/actual-output.bo", cp2);
         /*
          * Disassemble generated code
          */
         out.println("*** Actual disassembled output ***");
         Program1.disassembleProgram(out, cp2);
-        /*
-         * Check that generatedCode restored the value of the program
-         */
         out.println();
-        if (p2.equals(p1)) {
+        if (cache != null) {
+            out.println("Compile cache " + (cache.hits() > 0 ? "hit" : "miss"));
+        } else if (p2.equals(p1)) {
+            /*
+             * generatedCode restored the value of the program
+             */
             out.println("Program value restored correctly.");
         } else {
             out.println("Error: program value was not restored.");
@@ -0,0 +1,500 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+
+import components.map.Map;
+import components.program.Program.Instruction;
+import components.statement.Statement;
+import components.statement.StatementKernel.Condition;
+import components.utilities.Reporter;
+
+/**
+ * Code generator that shares the code of a user-defined instruction among
+ * the calls to it that continue at the same address, instead of inlining a
+ * copy of its body at every call.
+ *
+ * <p>
+ * The BugsWorld virtual machine has no call or return instruction: the only
+ * state of a bug is its program counter, so two calls can execute the same
+ * copy of a body only if execution goes on at the same place after both, as
+ * for calls at the end of the two branches of an {@code IF_ELSE}, at the end
+ * of a {@code WHILE} body, or at the end of the program. The generator
+ * therefore builds the program backwards, as a graph of instructions in which
+ * each one knows its continuation: the code of a call is keyed by the called
+ * instruction and its continuation and generated once per key, and identical
+ * instructions with identical successors are generated once (so equal code
+ * tails are shared as well). The graph is then laid out into a compiled
+ * program, with a {@code JUMP} wherever an instruction's successor has been
+ * laid out elsewhere.
+ *
+ * <p>
+ * The generated program executes the same primitive instructions as the
+ * inlined one for every sequence of {@code CellState}s and draws the same
+ * random conditions. It holds one copy of the body of an instruction per
+ * distinct continuation of the calls to it, so a straight-line sequence of
+ * calls still needs one copy per call. No layout can do better on this
+ * virtual machine: a location executed twice by a run that tests no
+ * condition in between would be executed forever, so code running N
+ * primitive instructions without testing a condition contains N primitive
+ * instructions. For {@code A0 = move} and {@code Ai = A(i-1) A(i-1)}, a body
+ * calling {@code An} thus compiles to {@code 2^n + 1} entries in either mode.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+final class SharedCodeGenerator {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Byte code of {@code JUMP}.
+     */
+    private static final int JUMP = Instruction.JUMP.byteCode();
+
+    /**
+     * Byte code of {@code HALT}.
+     */
+    private static final int HALT = Instruction.HALT.byteCode();
+
+    /**
+     * Byte code of {@code JUMP_IF_NOT_RANDOM}.
+     */
+    private static final int RANDOM = Instruction.JUMP_IF_NOT_RANDOM
+            .byteCode();
+
+    /**
+     * Initial capacity of the node arrays.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Number of bits of a node in a key.
+     */
+    private static final int NODE_BITS = 29;
+
+    /**
+     * Bound on the fields of a node in a key.
+     */
+    private static final int NODE_LIMIT = 1 << NODE_BITS;
+
+    /**
+     * The node of the {@code HALT} ending the program.
+     */
+    private static final int HALT_NODE = 0;
+
+    /**
+     * No node.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * A statement whose code is being generated, backwards.
+     */
+    private static final class Frame extends StatementFrame {
+
+        /**
+         * The node executed after the statement.
+         */
+        private final int k;
+
+        /**
+         * The node of the code of the statement generated so far: for a
+         * BLOCK, of its statements handed out so far followed by k; for a
+         * WHILE, of its loop head.
+         */
+        private int result;
+
+        /**
+         * The node of the code of the IF block of an IF_ELSE statement.
+         */
+        private int first;
+
+        /**
+         * The body of the user-defined instruction called by a CALL
+         * statement, while its code is being generated, or null.
+         */
+        private Statement body;
+
+        /**
+         * Constructor, disassembling {@code s}.
+         *
+         * @param s
+         *            the statement
+         * @param k
+         *            the node executed after s
+         * @updates s
+         */
+        Frame(Statement s, int k) {
+            super(s, true);
+            this.k = k;
+            this.result = k;
+        }
+
+    }
+
+    /**
+     * The context in which to find user-defined instructions.
+     */
+    private final Map<String, Statement> context;
+
+    /**
+     * Byte code of each node.
+     */
+    private int[] ops;
+
+    /**
+     * Node executed after each node (when the condition holds, for a
+     * conditional jump), or {@code NONE} after {@code HALT}.
+     */
+    private int[] nexts;
+
+    /**
+     * Node a conditional jump jumps to, or {@code NONE}.
+     */
+    private int[] targets;
+
+    /**
+     * Number of nodes.
+     */
+    private int nodes;
+
+    /**
+     * Nodes by byte code, next and target, for sharing identical nodes.
+     */
+    private final HashMap<Long, Integer> shared = new HashMap<>();
+
+    /**
+     * Nodes of the code of calls, by instruction name and continuation node.
+     */
+    private final HashMap<String, HashMap<Integer, Integer>> calls = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param context
+     *            the context in which to find user-defined instructions
+     */
+    private SharedCodeGenerator(Map<String, Statement> context) {
+        this.context = context;
+        this.ops = new int[INITIAL_CAPACITY];
+        this.nexts = new int[INITIAL_CAPACITY];
+        this.targets = new int[INITIAL_CAPACITY];
+        this.newNode(HALT, NONE, NONE);
+    }
+
+    /**
+     * Adds a new node to the graph.
+     *
+     * @param op
+     *            the byte code of the node
+     * @param next
+     *            the node executed after it
+     * @param target
+     *            the node it jumps to
+     * @return the new node
+     */
+    private int newNode(int op, int next, int target) {
+        if (this.nodes == this.ops.length) {
+            this.ops = Arrays.copyOf(this.ops, 2 * this.nodes);
+            this.nexts = Arrays.copyOf(this.nexts, 2 * this.nodes);
+            this.targets = Arrays.copyOf(this.targets, 2 * this.nodes);
+        }
+        int node = this.nodes;
+        this.ops[node] = op;
+        this.nexts[node] = next;
+        this.targets[node] = target;
+        this.nodes++;
+        return node;
+    }
+
+    /**
+     * Returns a node with the given byte code, next and target, adding it to
+     * the graph unless an identical one is already there.
+     *
+     * @param op
+     *            the byte code of the node
+     * @param next
+     *            the node executed after it
+     * @param target
+     *            the node it jumps to, or {@code NONE}
+     * @return the node
+     * @ensures <pre>
+     * if [next and target + 1 fit in NODE_BITS bits] then
+     *  [node = a node with the given byte code, next and target]
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    private int node(int op, int next, int target) {
+        Reporter.assertElseFatalError(
+                next < NODE_LIMIT && target + 1 < NODE_LIMIT,
+                "Compiled program too large to share code.");
+        long key = ((long) op << (2 * NODE_BITS))
+                | ((long) next << NODE_BITS) | (target + 1);
+        Integer node = this.shared.get(key);
+        if (node == null) {
+            node = this.newNode(op, next, target);
+            this.shared.put(key, node);
+        }
+        return node;
+    }
+
+    /**
+     * Returns the node of the code of the conditional jump for {@code c}
+     * continuing with {@code next} if the condition holds and with
+     * {@code target} otherwise.
+     *
+     * @param c
+     *            the condition
+     * @param next
+     *            the node executed if c holds
+     * @param target
+     *            the node executed if c does not hold
+     * @return the node of the conditional jump
+     */
+    private int conditionalJump(Condition c, int next, int target) {
+        int op = Program1GeneratedCode1.conditionalJump(c).byteCode();
+        int result;
+        if (next == target && op != RANDOM) {
+            /*
+             * Nothing depends on the condition, and evaluating it has no
+             * effect
+             */
+            result = next;
+        } else {
+            result = this.node(op, next, target);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the node of the code of {@code s} continuing with {@code k}.
+     * The statements nested in {@code s}, and the bodies of the instructions
+     * it calls, are visited with a stack of frames instead of recursively;
+     * the statements of a BLOCK are visited from the last one, since the
+     * code of each one continues with the code of the next.
+     *
+     * @param s
+     *            the statement
+     * @param k
+     *            the node executed after s
+     * @return the node of the code of s
+     * @ensures <pre>
+     * if [all instructions called in s are either primitive or
+     *     defined in context]  and
+     *    [context does not include any calling cycles, i.e., recursion] then
+     *  [generate = the node of the code of s followed by k]
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    private int generate(Statement s, int k) {
+        /*
+         * returned is the node of the code of the statement whose frame was
+         * popped last
+         */
+        int returned = k;
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(s, k));
+        while (!stack.isEmpty()) {
+            Frame f = stack.peek();
+            int partK = f.k;
+            Statement part = null;
+            switch (f.kind()) {
+                case BLOCK: {
+                    if (f.position() > 0) {
+                        f.result = returned;
+                    }
+                    partK = f.result;
+                    part = f.next();
+                    break;
+                }
+                case IF: {
+                    if (f.position() > 0) {
+                        f.result = this.conditionalJump(f.condition(),
+                                returned, f.k);
+                    }
+                    part = f.next();
+                    break;
+                }
+                case IF_ELSE: {
+                    if (f.position() == 1) {
+                        f.first = returned;
+                    } else if (f.position() == 2) {
+                        f.result = this.conditionalJump(f.condition(),
+                                f.first, returned);
+                    }
+                    part = f.next();
+                    break;
+                }
+                case WHILE: {
+                    if (f.position() == 0) {
+                        /*
+                         * The loop head is its own continuation, so it cannot
+                         * be shared: add it first and fill in its next node
+                         * afterwards
+                         */
+                        f.result = this.newNode(Program1GeneratedCode1
+                                .conditionalJump(f.condition()).byteCode(),
+                                NONE, f.k);
+                        partK = f.result;
+                    } else {
+                        this.nexts[f.result] = returned;
+                    }
+                    part = f.next();
+                    break;
+                }
+                case CALL: {
+                    String call = f.call();
+                    if (InstructionIndex.isPrimitive(call)) {
+                        f.result = this.node(Instruction
+                                .valueOf(call.toUpperCase()).byteCode(), f.k,
+                                NONE);
+                        part = f.next();
+                    } else if (f.body == null) {
+                        Reporter.assertElseFatalError(
+                                this.context.hasKey(call),
+                                Program1GeneratedCode1.CALL_ERROR);
+                        HashMap<Integer, Integer> copies = this.calls
+                                .get(call);
+                        if (copies == null) {
+                            copies = new HashMap<>();
+                            this.calls.put(call, copies);
+                        }
+                        Integer copy = copies.get(f.k);
+                        if (copy == null) {
+                            f.body = this.context.remove(call).value();
+                            part = f.body;
+                        } else {
+                            f.result = copy;
+                            part = f.next();
+                        }
+                    } else {
+                        this.context.add(call, f.body);
+                        this.calls.get(call).put(f.k, returned);
+                        f.result = returned;
+                        part = f.next();
+                    }
+                    break;
+                }
+                default: {
+                    // this will never happen...
+                    break;
+                }
+            }
+            if (part == null) {
+                stack.pop();
+                returned = f.result;
+            } else {
+                stack.push(new Frame(part, partK));
+            }
+        }
+        return returned;
+    }
+
+    /**
+     * Lays out the graph reachable from {@code entry} as a compiled program
+     * starting at {@code entry}.
+     *
+     * @param entry
+     *            the node executed first
+     * @return the compiled program
+     */
+    private int[] layOut(int entry) {
+        int[] addresses = new int[this.nodes];
+        Arrays.fill(addresses, NONE);
+        CodeBuffer cp = new CodeBuffer();
+        /*
+         * Locations of the jump addresses of the conditional jumps and the
+         * nodes they jump to, filled in once everything is laid out; the
+         * nodes also serve as the stack of chains still to lay out
+         */
+        int[] fixups = new int[INITIAL_CAPACITY];
+        int[] pending = new int[INITIAL_CAPACITY];
+        int fixupCount = 0;
+        int next = 0;
+        int chain = entry;
+        while (chain != NONE) {
+            int node = chain;
+            while (node != NONE && addresses[node] == NONE) {
+                addresses[node] = cp.length();
+                cp.append(this.ops[node]);
+                if (this.targets[node] != NONE) {
+                    if (fixupCount == fixups.length) {
+                        fixups = Arrays.copyOf(fixups, 2 * fixupCount);
+                        pending = Arrays.copyOf(pending, 2 * fixupCount);
+                    }
+                    fixups[fixupCount] = cp.length();
+                    pending[fixupCount] = this.targets[node];
+                    fixupCount++;
+                    cp.append(NONE);
+                }
+                node = this.nexts[node];
+            }
+            if (node != NONE) {
+                if (node == HALT_NODE) {
+                    /*
+                     * A HALT is shorter than a jump to one
+                     */
+                    cp.append(HALT);
+                } else {
+                    cp.append(JUMP);
+                    cp.append(addresses[node]);
+                }
+            }
+            /*
+             * Lay out the targets of conditional jumps in order, so each
+             * branch follows the code that jumps to it
+             */
+            chain = NONE;
+            while (chain == NONE && next < fixupCount) {
+                if (addresses[pending[next]] == NONE) {
+                    chain = pending[next];
+                }
+                next++;
+            }
+        }
+        for (int i = 0; i < fixupCount; i++) {
+            cp.replaceEntry(fixups[i], addresses[pending[i]]);
+        }
+        return cp.toArray();
+    }
+
+    /*
+     * Package-private members ------------------------------------------------
+     */
+
+    /**
+     * Generates the compiled program of the given body and context, sharing
+     * the code of calls with the same continuation.
+     *
+     * @param body
+     *            the body of the program
+     * @param context
+     *            the context of the program
+     * @return the compiled program
+     * @ensures <pre>
+     * if [all instructions called in body are either primitive or
+     *     defined in context]  and
+     *    [context does not include any calling cycles, i.e., recursion] then
+     *  [generatedCode = the virtual machine "byte codes" of the program with
+     *   the given body and context, executing the same primitive instructions
+     *   as the inlined code]
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    static int[] generatedCode(Statement body,
+            Map<String, Statement> context) {
+        assert body != null : "Violation of: body is not null";
+        assert context != null : "Violation of: context is not null";
+
+        SharedCodeGenerator generator = new SharedCodeGenerator(context);
+        int entry = generator.generate(body, HALT_NODE);
+        return generator.layOut(entry);
+    }
+
+}
@@ -0,0 +1,180 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code BatchCompiler}'s compile method.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class BatchCompilerTest {
+
+    /**
+     * The name of a file containing a valid BL program.
+     */
+    private static final String VALID = "data/TestProgram1.bl";
+
+    /**
+     * The name of a file containing a BL program calling an undefined
+     * instruction.
+     */
+    private static final String INVALID = "data/TestProgram2.bl";
+
+    /**
+     * Number of copies of each program compiled.
+     */
+    private static final int COPIES = 8;
+
+    /**
+     * Copies the test programs into a new temporary directory.
+     *
+     * @return the names of the copies, valid and invalid alternately
+     * @throws IOException
+     *             if they cannot be copied
+     */
+    private static List<String> copies() throws IOException {
+        Path directory = Files.createTempDirectory("BatchCompilerTest");
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < COPIES; i++) {
+            Path valid = directory.resolve("Valid" + i + ".bl");
+            Files.copy(Paths.get(VALID), valid);
+            files.add(valid.toString());
+            Path invalid = directory.resolve("Invalid" + i + ".bl");
+            Files.copy(Paths.get(INVALID), invalid);
+            files.add(invalid.toString());
+        }
+        return files;
+    }
+
+    /**
+     * Deletes the directory of the given files and everything in it.
+     *
+     * @param files
+     *            the files
+     * @throws IOException
+     *             if they cannot be deleted
+     */
+    private static void delete(List<String> files) throws IOException {
+        Path directory = Paths.get(files.get(0)).getParent();
+        try (DirectoryStream<Path> stream = Files
+                .newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Compiles copies of the test programs and checks the results and the
+     * compiled programs written.
+     *
+     * @param mode
+     *            how the code of calls is generated
+     * @param parallelism
+     *            the number of threads
+     * @param withCache
+     *            whether to use a compile cache
+     * @param optimize
+     *            whether to optimize the compiled programs
+     * @throws IOException
+     *             if the files cannot be handled
+     */
+    private static void check(Program1GeneratedCode1.CallMode mode,
+            int parallelism, boolean withCache, boolean optimize)
+            throws IOException {
+        List<String> files = copies();
+        Path cacheDirectory = Paths.get(files.get(0)).getParent()
+                .resolve("cache");
+        CompileCache cache = null;
+        if (withCache) {
+            cache = new CompileCache(cacheDirectory.toString(), 1L << 20);
+        }
+        BatchCompiler.Result[] results = BatchCompiler.compile(files, mode,
+                cache, optimize, parallelism);
+        int[] expected = TestPrograms.generated(VALID, mode);
+        if (optimize) {
+            expected = CompiledProgramOptimizer.optimized(expected);
+        }
+        assertEquals(files.size(), results.length);
+        for (int i = 0; i < results.length; i++) {
+            assertEquals(files.get(i), results[i].fileName());
+            String compiled = files.get(i).replace(".bl", ".bo");
+            if (i % 2 == 0) {
+                assertNull(results[i].error());
+                assertEquals(expected.length, results[i].length());
+                assertArrayEquals(expected, CompiledProgramFormat
+                        .decode(Files.readAllBytes(Paths.get(compiled))));
+            } else {
+                assertNotNull(results[i].error());
+                assertEquals(-1, results[i].length());
+                assertFalse(Files.exists(Paths.get(compiled)));
+            }
+        }
+        if (withCache) {
+            assertEquals(files.size(), cache.hits() + cache.misses());
+            try (DirectoryStream<Path> stream = Files
+                    .newDirectoryStream(cacheDirectory)) {
+                for (Path file : stream) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(cacheDirectory);
+        }
+        delete(files);
+    }
+
+    @Test
+    public void testSequential() throws IOException {
+        check(Program1GeneratedCode1.CallMode.INLINE, 1, false, false);
+    }
+
+    @Test
+    public void testParallel() throws IOException {
+        final int parallelism = 4;
+        check(Program1GeneratedCode1.CallMode.INLINE, parallelism, false,
+                false);
+    }
+
+    @Test
+    public void testParallelShared() throws IOException {
+        final int parallelism = 4;
+        check(Program1GeneratedCode1.CallMode.SHARE, parallelism, false,
+                false);
+    }
+
+    @Test
+    public void testParallelCached() throws IOException {
+        final int parallelism = 4;
+        check(Program1GeneratedCode1.CallMode.INLINE, parallelism, true,
+                false);
+    }
+
+    @Test
+    public void testParallelCachedOptimized() throws IOException {
+        final int parallelism = 4;
+        check(Program1GeneratedCode1.CallMode.INLINE, parallelism, true,
+                true);
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, BatchCompiler.compile(new ArrayList<String>(),
+                Program1GeneratedCode1.CallMode.INLINE, null, false,
+                1).length);
+    }
+
+}
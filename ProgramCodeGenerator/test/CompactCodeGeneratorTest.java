@@ -0,0 +1,146 @@
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.statement.Statement;
+
+/**
+ * JUnit test fixture for {@code Program1GeneratedCode1}'s generatedCodeArray
+ * method on a {@code CompactProgram}.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class CompactCodeGeneratorTest {
+
+    /**
+     * The name of a file containing a valid BL program.
+     */
+    private static final String FILE_NAME_1 = "data/TestProgram1.bl";
+
+    /**
+     * The name of a file containing a BL program calling an undefined
+     * instruction.
+     */
+    private static final String FILE_NAME_2 = "data/TestProgram2.bl";
+
+    /**
+     * The name of a file containing a directly recursive BL program.
+     */
+    private static final String FILE_NAME_3 = "data/TestProgram3.bl";
+
+    /**
+     * The name of a file containing an indirectly recursive BL program.
+     */
+    private static final String FILE_NAME_4 = "data/TestProgram4.bl";
+
+    /**
+     * Checks that the code generated from the compact representation of
+     * {@code p} is the code generated from p.
+     *
+     * @param p
+     *            the program
+     */
+    private static void checkSameCode(Program1GeneratedCode1 p) {
+        int[] expected = p.generatedCodeArray();
+        assertArrayEquals(expected,
+                Program1GeneratedCode1.generatedCodeArray(CompactProgram.of(p)));
+    }
+
+    @Test
+    public void testTestProgram() {
+        checkSameCode(TestPrograms.load(FILE_NAME_1));
+    }
+
+    @Test
+    public void testEmpty() {
+        checkSameCode(new Program1GeneratedCode1());
+    }
+
+    @Test
+    public void testDeeplyNested() {
+        final int depth = 100_000;
+        StringBuilder text = new StringBuilder(
+                "PROGRAM P IS INSTRUCTION turn IS turnleft turnleft END turn"
+                        + " BEGIN\n");
+        for (int d = 0; d < depth; d++) {
+            text.append(d % 2 == 0 ? "WHILE next-is-wall DO\n"
+                    : "IF next-is-enemy THEN infect ELSE\n");
+        }
+        text.append("turn\n");
+        for (int d = depth - 1; d >= 0; d--) {
+            text.append(d % 2 == 0 ? "END WHILE\n" : "END IF\n");
+        }
+        text.append("END P\n");
+        Program1Parse1 parsed = new Program1Parse1();
+        parsed.parse(new ReaderTokenStream(new StringReader(text.toString())));
+        Program1GeneratedCode1 p = new Program1GeneratedCode1();
+        p.setName(parsed.name());
+        Map<String, Statement> context = parsed.newContext();
+        parsed.swapContext(context);
+        p.swapContext(context);
+        Statement body = parsed.newBody();
+        parsed.swapBody(body);
+        p.swapBody(body);
+        checkSameCode(p);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testCallUndefined() {
+        Program1GeneratedCode1.generatedCodeArray(
+                CompactProgram.of(TestPrograms.load(FILE_NAME_2)));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDirectRecursion() {
+        Program1GeneratedCode1.generatedCodeArray(
+                CompactProgram.of(TestPrograms.load(FILE_NAME_3)));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testIndirectRecursion() {
+        Program1GeneratedCode1.generatedCodeArray(
+                CompactProgram.of(TestPrograms.load(FILE_NAME_4)));
+    }
+
+    /**
+     * Test of generatedCodeArray by several threads at once on the same
+     * program, each generating the same code as one thread alone.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the code
+     * @throws ExecutionException
+     *             if a code generation fails
+     */
+    @Test
+    public void testConcurrently()
+            throws InterruptedException, ExecutionException {
+        final int threads = 8;
+        final int runs = 4 * threads;
+        CompactProgram c = CompactProgram.of(TestPrograms.load(FILE_NAME_1));
+        int[] expected = Program1GeneratedCode1.generatedCodeArray(c);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<int[]>> results = new ArrayList<>();
+            for (int i = 0; i < runs; i++) {
+                results.add(pool.submit(
+                        () -> Program1GeneratedCode1.generatedCodeArray(c)));
+            }
+            for (Future<int[]> result : results) {
+                assertArrayEquals(expected, result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,316 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code CompileCache}.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class CompileCacheTest {
+
+    /**
+     * The name of a file containing a valid BL program.
+     */
+    private static final String FILE_NAME = "data/TestProgram1.bl";
+
+    /**
+     * The source files of the classes the code in the cache entries depends
+     * on, from the project directory.
+     */
+    private static final String[] GENERATOR_SOURCES = {
+            "src/Program1GeneratedCode1.java", "src/SharedCodeGenerator.java",
+            "src/CompactCodeGenerator.java", "src/CodeBuffer.java",
+            "src/CompiledProgramFormat.java",
+            "../BLParser/src/StatementFrame.java",
+            "../BLParser/src/InstructionIndex.java" };
+
+    /**
+     * The hash of {@code GENERATOR_SOURCES} for which
+     * {@code CompileCache.COMPILER_VERSION} was last changed.
+     */
+    private static final String GENERATOR_SOURCES_HASH = "8afc081872eda9c3"
+            + "bf42f8d51c0859fabfc2186cf6c202b434e9370bdc3af9da";
+
+    /**
+     * A large cache size in bytes.
+     */
+    private static final long LARGE = 1L << 20;
+
+    /**
+     * Temporary directory of the cache and programs.
+     */
+    private final Path directory;
+
+    /**
+     * Constructor; creates the temporary directory.
+     *
+     * @throws IOException
+     *             if it cannot be created
+     */
+    public CompileCacheTest() throws IOException {
+        this.directory = Files.createTempDirectory("CompileCacheTest");
+    }
+
+    /**
+     * Deletes the temporary directory and everything in it.
+     *
+     * @throws IOException
+     *             if it cannot be deleted
+     */
+    private void deleteDirectory() throws IOException {
+        Path cache = this.directory.resolve("cache");
+        if (Files.isDirectory(cache)) {
+            deleteFiles(cache);
+            Files.delete(cache);
+        }
+        deleteFiles(this.directory);
+        Files.delete(this.directory);
+    }
+
+    /**
+     * Returns the SHA-256 hash of {@code GENERATOR_SOURCES}, ignoring
+     * carriage returns so the hash does not depend on how line ends are
+     * checked out.
+     *
+     * @return the hash, as hexadecimal digits
+     * @throws IOException
+     *             if a source file cannot be read
+     * @throws NoSuchAlgorithmException
+     *             if SHA-256 is not available
+     */
+    private static String generatorSourcesHash()
+            throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (String source : GENERATOR_SOURCES) {
+            String text = new String(Files.readAllBytes(Paths.get(source)),
+                    StandardCharsets.UTF_8);
+            digest.update(
+                    text.replace("\r", "").getBytes(StandardCharsets.UTF_8));
+        }
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hash.append(String.format("%02x", b));
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Deletes the files in the given directory.
+     *
+     * @param dir
+     *            the directory
+     * @throws IOException
+     *             if they cannot be deleted
+     */
+    private static void deleteFiles(Path dir) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path file : stream) {
+                if (!Files.isDirectory(file)) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries in the cache.
+     *
+     * @return the number of entries
+     * @throws IOException
+     *             if they cannot be listed
+     */
+    private int entries() throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> stream = Files
+                .newDirectoryStream(this.directory.resolve("cache"), "*.bo")) {
+            for (Path entry : stream) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns a new cache in the temporary directory.
+     *
+     * @param maxBytes
+     *            the size of the cache
+     * @return the cache
+     */
+    private CompileCache cache(long maxBytes) {
+        return new CompileCache(this.directory.resolve("cache").toString(),
+                maxBytes);
+    }
+
+    /**
+     * Writes a copy of the test program with the given change to a file.
+     *
+     * @param name
+     *            the name of the file, in the temporary directory
+     * @param target
+     *            the text to replace
+     * @param replacement
+     *            the replacement
+     * @return the name of the file
+     * @throws IOException
+     *             if it cannot be written
+     */
+    private String program(String name, String target, String replacement)
+            throws IOException {
+        String text = new String(
+                Files.readAllBytes(Paths.get(FILE_NAME)),
+                StandardCharsets.UTF_8);
+        Path file = this.directory.resolve(name);
+        Files.write(file, text.replace(target, replacement)
+                .getBytes(StandardCharsets.UTF_8));
+        return file.toString();
+    }
+
+    @Test
+    public void testMissThenHit() throws IOException {
+        CompileCache cache = this.cache(LARGE);
+        int[] expected = TestPrograms.generated(FILE_NAME,
+                Program1GeneratedCode1.CallMode.INLINE);
+        assertArrayEquals(expected, cache.compiledCode(FILE_NAME));
+        assertEquals(0, cache.hits());
+        assertEquals(1, cache.misses());
+        assertArrayEquals(expected, cache.compiledCode(FILE_NAME));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertArrayEquals(expected, this.cache(LARGE).compiledCode(FILE_NAME));
+        assertEquals(1, this.entries());
+        this.deleteDirectory();
+    }
+
+    @Test
+    public void testLayoutChangeHits() throws IOException {
+        CompileCache cache = this.cache(LARGE);
+        cache.compiledCode(FILE_NAME);
+        String reformatted = this.program("Reformatted.bl", "    ", "\t ");
+        cache.compiledCode(reformatted);
+        assertEquals(1, cache.hits());
+        this.deleteDirectory();
+    }
+
+    @Test
+    public void testChangeMisses() throws IOException {
+        CompileCache cache = this.cache(LARGE);
+        cache.compiledCode(FILE_NAME);
+        String changed = this.program("Changed.bl", "turnright", "turnleft");
+        int[] cp = cache.compiledCode(changed);
+        assertEquals(2, cache.misses());
+        assertArrayEquals(
+                TestPrograms.generated(changed,
+                        Program1GeneratedCode1.CallMode.INLINE),
+                cp);
+        this.deleteDirectory();
+    }
+
+    @Test
+    public void testModeMisses() throws IOException {
+        CompileCache cache = this.cache(LARGE);
+        cache.compiledCode(FILE_NAME);
+        int[] cp = cache.compiledCode(FILE_NAME,
+                Program1GeneratedCode1.CallMode.SHARE);
+        assertEquals(2, cache.misses());
+        assertArrayEquals(
+                TestPrograms.generated(FILE_NAME,
+                        Program1GeneratedCode1.CallMode.SHARE),
+                cp);
+        assertEquals(2, this.entries());
+        this.deleteDirectory();
+    }
+
+    @Test
+    public void testCorruptEntryRecompiled() throws IOException {
+        CompileCache cache = this.cache(LARGE);
+        int[] expected = cache.compiledCode(FILE_NAME);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+                this.directory.resolve("cache"), "*.bo")) {
+            for (Path entry : stream) {
+                byte[] bytes = Files.readAllBytes(entry);
+                bytes[bytes.length - 1] ^= 1;
+                Files.write(entry, bytes);
+            }
+        }
+        assertArrayEquals(expected, cache.compiledCode(FILE_NAME));
+        assertEquals(2, cache.misses());
+        assertArrayEquals(expected, cache.compiledCode(FILE_NAME));
+        assertEquals(1, cache.hits());
+        this.deleteDirectory();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws IOException {
+        String a = this.program("A.bl", "turnright", "turnleft");
+        String b = this.program("B.bl", "turnright", "move");
+        String c = this.program("C.bl", "turnright", "infect");
+        CompileCache large = this.cache(LARGE);
+        large.compiledCode(a);
+        large.compiledCode(b);
+        long entrySize;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+                this.directory.resolve("cache"), "*.bo")) {
+            long time = 0;
+            entrySize = 0;
+            for (Path entry : stream) {
+                entrySize = Math.max(entrySize, Files.size(entry));
+                Files.setLastModifiedTime(entry, FileTime.fromMillis(time));
+                time += 1000;
+            }
+        }
+        /*
+         * Touch a, so that b is the least recently used
+         */
+        large.compiledCode(a);
+        CompileCache small = this.cache(2 * entrySize);
+        small.compiledCode(c);
+        assertEquals(2, this.entries());
+        small.compiledCode(a);
+        small.compiledCode(c);
+        assertEquals(2, small.hits());
+        small.compiledCode(b);
+        assertEquals(2, small.misses());
+        assertEquals(2, this.entries());
+        this.deleteDirectory();
+    }
+
+    @Test
+    public void testStaleTempFilesDeleted() throws IOException {
+        CompileCache cache = this.cache(LARGE);
+        Path stale = this.directory.resolve("cache").resolve("entry1.tmp");
+        Files.write(stale, new byte[(int) (2 * LARGE)]);
+        Files.setLastModifiedTime(stale, FileTime.fromMillis(0));
+        Path fresh = this.directory.resolve("cache").resolve("entry2.tmp");
+        Files.write(fresh, new byte[1]);
+        cache.compiledCode(FILE_NAME);
+        assertFalse(Files.exists(stale));
+        assertTrue(Files.exists(fresh));
+        assertEquals(1, this.entries());
+        this.deleteDirectory();
+    }
+
+    @Test
+    public void testCompilerVersionUpToDate()
+            throws IOException, NoSuchAlgorithmException {
+        assertEquals("The sources the cache entries depend on changed: change "
+                + "CompileCache.COMPILER_VERSION, then GENERATOR_SOURCES_HASH",
+                GENERATOR_SOURCES_HASH, generatorSourcesHash());
+    }
+
+}
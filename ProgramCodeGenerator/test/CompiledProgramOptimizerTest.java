@@ -0,0 +1,205 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import components.program.Program.Instruction;
+import components.sequence.Sequence;
+import components.sequence.Sequence1L;
+
+/**
+ * JUnit test fixture for {@code CompiledProgramOptimizer}'s optimize method.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class CompiledProgramOptimizerTest {
+
+    /**
+     * The name of a file containing a valid BL program.
+     */
+    private static final String FILE_NAME = "data/TestProgram1.bl";
+
+    @Test
+    public void testWhileTrue() {
+        /*
+         * WHILE true DO move END WHILE
+         */
+        int[] cp = { 16, 5, 0, 6, 0, 5 };
+        int[] optimized = CompiledProgramOptimizer.optimized(cp);
+        assertArrayEquals(new int[] { 0, 6, 0 }, optimized);
+        CompiledProgramTraces.checkSameBehavior(cp, optimized);
+    }
+
+    @Test
+    public void testWhileInverted() {
+        /*
+         * WHILE next-is-empty DO move END WHILE; turnleft
+         */
+        int[] cp = { 7, 5, 0, 6, 0, 1, 5 };
+        int[] optimized = CompiledProgramOptimizer.optimized(cp);
+        assertArrayEquals(new int[] { 7, 5, 0, 8, 2, 1, 5 }, optimized);
+        CompiledProgramTraces.checkSameBehavior(cp, optimized);
+    }
+
+    @Test
+    public void testIfElseJumpToJump() {
+        /*
+         * WHILE true DO IF next-is-wall THEN turnleft ELSE move END IF END
+         * WHILE
+         */
+        int[] cp = { 16, 11, 9, 7, 1, 6, 8, 0, 6, 0, 5 };
+        Sequence<Integer> seq = new Sequence1L<>();
+        for (int byteCode : cp) {
+            seq.add(seq.length(), byteCode);
+        }
+        CompiledProgramOptimizer.Report report = CompiledProgramOptimizer
+                .optimize(seq);
+        int[] optimized = new int[seq.length()];
+        for (int i = 0; i < optimized.length; i++) {
+            optimized[i] = seq.entry(i);
+        }
+        assertEquals(cp.length, report.lengthBefore());
+        assertEquals(optimized.length, report.lengthAfter());
+        assertEquals(1, report.trueConditionsFolded());
+        assertTrue(report.jumpsThreaded() > 0);
+        assertEquals(1, report.unreachableInstructionsRemoved());
+        assertTrue(optimized.length < cp.length);
+        CompiledProgramTraces.checkSameBehavior(cp, optimized);
+    }
+
+    @Test
+    public void testEmptyLoopKept() {
+        /*
+         * WHILE true DO END WHILE
+         */
+        int[] cp = { 16, 4, 6, 0, 5 };
+        int[] optimized = CompiledProgramOptimizer.optimized(cp);
+        assertArrayEquals(new int[] { 6, 0 }, optimized);
+        CompiledProgramTraces.checkSameBehavior(cp, optimized);
+    }
+
+    @Test
+    public void testJumpToHalt() {
+        /*
+         * IF next-is-empty THEN move ELSE turnleft END IF
+         */
+        int[] cp = { 7, 5, 0, 6, 6, 1, 5 };
+        int[] optimized = CompiledProgramOptimizer.optimized(cp);
+        assertArrayEquals(new int[] { 7, 4, 0, 5, 1, 5 }, optimized);
+        CompiledProgramTraces.checkSameBehavior(cp, optimized);
+    }
+
+    @Test
+    public void testRandomKept() {
+        /*
+         * IF random THEN END IF; move
+         */
+        int[] cp = { 15, 2, 0, 5 };
+        int[] optimized = CompiledProgramOptimizer.optimized(cp);
+        assertArrayEquals(cp, optimized);
+    }
+
+    @Test
+    public void testTestProgram() {
+        int[] cp = TestPrograms.generated(FILE_NAME,
+                Program1GeneratedCode1.CallMode.INLINE);
+        int[] optimized = CompiledProgramOptimizer.optimized(cp);
+        assertTrue(optimized.length <= cp.length);
+        CompiledProgramTraces.checkSameBehavior(cp, optimized);
+        assertArrayEquals(optimized,
+                CompiledProgramOptimizer.optimized(optimized));
+    }
+
+    @Test
+    public void testJumpBackThroughItself() {
+        /*
+         * The JUMP at 8 is followed by a JUMP back to it, so it is not a jump
+         * to the next instruction; a bug seeing a wall reaches the turnright
+         * at 12
+         */
+        int[] cp = { 12, 27, 14, 19, 16, 2, 10, 25, 6, 25, 6, 8, 2, 9, 15,
+                13, 15, 12, 45, 7, 31, 16, 33, 8, 37, 15, 49, 7, 55, 10, 17, 8,
+                17, 9, 31, 7, 41, 9, 29, 6, 0, 9, 15, 10, 55, 11, 29, 12, 47, 9,
+                55, 16, 25, 14, 12, 16, 51, 7, 12, 5 };
+        int[] optimized = CompiledProgramOptimizer.optimized(cp);
+        CompiledProgramTraces.checkSameBehavior(cp, optimized);
+    }
+
+    @Test
+    public void testRandomPrograms() {
+        final int programs = 200;
+        final int maxLength = 40;
+        final int primitives = 6;
+        Random r = new Random(2231);
+        for (int n = 0; n < programs; n++) {
+            int[] cp = randomProgram(r, 2 + r.nextInt(maxLength), primitives);
+            int[] optimized = CompiledProgramOptimizer.optimized(cp);
+            CompiledProgramTraces.checkSameBehavior(cp, optimized);
+        }
+    }
+
+    @Test
+    public void testRandomJumpChains() {
+        final int programs = 500;
+        final int maxLength = 40;
+        final int primitives = 1;
+        Random r = new Random(2231);
+        for (int n = 0; n < programs; n++) {
+            int[] cp = randomProgram(r, 2 + r.nextInt(maxLength), primitives);
+            int[] optimized = CompiledProgramOptimizer.optimized(cp);
+            CompiledProgramTraces.checkSameBehavior(cp, optimized);
+        }
+    }
+
+    /**
+     * Returns a random valid compiled program of about the given length, in
+     * which an instruction is primitive (or {@code HALT}) about
+     * {@code primitives} times in 17.
+     *
+     * @param r
+     *            the source of randomness
+     * @param length
+     *            the approximate length
+     * @param primitives
+     *            the weight of primitive instructions, from 0 to 6
+     * @return the program
+     */
+    private static int[] randomProgram(Random r, int length, int primitives) {
+        final int byteCodes = 17;
+        int[] cp = new int[length + 2];
+        int[] starts = new int[length + 2];
+        int count = 0;
+        int loc = 0;
+        while (loc < length) {
+            starts[count] = loc;
+            count++;
+            int byteCode = r.nextInt(byteCodes);
+            if (byteCode < Instruction.JUMP.byteCode()
+                    && byteCode >= primitives) {
+                byteCode = Instruction.JUMP.byteCode() + 1
+                        + r.nextInt(byteCodes - Instruction.JUMP.byteCode() - 1);
+            }
+            if (byteCode == Instruction.HALT.byteCode() && r.nextBoolean()) {
+                byteCode = Instruction.JUMP.byteCode();
+            }
+            cp[loc] = byteCode;
+            loc += byteCode >= Instruction.JUMP.byteCode() ? 2 : 1;
+        }
+        starts[count] = loc;
+        count++;
+        cp[loc] = Instruction.HALT.byteCode();
+        loc++;
+        for (int i = 0; i < count; i++) {
+            if (cp[starts[i]] >= Instruction.JUMP.byteCode()) {
+                cp[starts[i] + 1] = starts[r.nextInt(count)];
+            }
+        }
+        return Arrays.copyOf(cp, loc);
+    }
+
+}
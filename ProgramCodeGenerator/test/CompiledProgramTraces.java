@@ -0,0 +1,220 @@
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import components.program.Program.Instruction;
+
+/**
+ * Runs compiled programs the way the BugsWorld virtual machine does, to check
+ * that transformed code behaves like the original.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+final class CompiledProgramTraces {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private CompiledProgramTraces() {
+    }
+
+    /**
+     * Number of steps compared.
+     */
+    private static final int STEPS = 2000;
+
+    /**
+     * Jumps followed before giving up on reaching a primitive instruction
+     * that can be reached; large enough that a cycle through random
+     * conditions exits in practice whatever the length of the program.
+     */
+    private static final int MAX_JUMPS = 10000;
+
+    /**
+     * Number of {@code CellState} values.
+     */
+    private static final int CELL_STATES = 4;
+
+    /**
+     * Masks of the cell states for which the condition of each conditional
+     * jump from {@code JUMP_IF_NOT_NEXT_IS_EMPTY} on holds.
+     */
+    private static final int[] MASKS = { 1, 14, 2, 13, 4, 11, 8, 7 };
+
+    /**
+     * Returns whether the jump at {@code loc} falls through to the next
+     * instruction when the bug sees the cell state with ordinal
+     * {@code state}, drawing a random condition from {@code rnd} if it is a
+     * {@code JUMP_IF_NOT_RANDOM}.
+     *
+     * @param cp
+     *            the compiled program
+     * @param loc
+     *            the address of a jump
+     * @param state
+     *            the ordinal of the cell state
+     * @param rnd
+     *            the source of random conditions
+     * @return true iff the jump falls through
+     */
+    private static boolean condition(int[] cp, int loc, int state,
+            Random rnd) {
+        int byteCode = cp[loc];
+        boolean condition;
+        if (byteCode == Instruction.JUMP.byteCode()) {
+            condition = false;
+        } else if (byteCode == Instruction.JUMP_IF_NOT_RANDOM.byteCode()) {
+            condition = rnd.nextBoolean();
+        } else if (byteCode == Instruction.JUMP_IF_NOT_TRUE.byteCode()) {
+            condition = true;
+        } else {
+            condition = ((MASKS[byteCode
+                    - Instruction.JUMP_IF_NOT_NEXT_IS_EMPTY.byteCode()]
+                    >> state) & 1) != 0;
+        }
+        return condition;
+    }
+
+    /**
+     * Returns, for every cell state and address of {@code cp}, whether some
+     * choice of the random conditions leads from that address to a primitive
+     * instruction when the bug sees that cell state.
+     *
+     * @param cp
+     *            the compiled program
+     * @return whether a primitive instruction is reachable, indexed by the
+     *         ordinal of the cell state and the address
+     */
+    private static boolean[][] primitiveReachable(int[] cp) {
+        boolean[] starts = new boolean[cp.length];
+        int loc = 0;
+        while (loc < cp.length) {
+            starts[loc] = true;
+            loc += cp[loc] >= Instruction.JUMP.byteCode() ? 2 : 1;
+        }
+        boolean[][] reachable = new boolean[CELL_STATES][cp.length];
+        for (int state = 0; state < CELL_STATES; state++) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (loc = 0; loc < cp.length; loc++) {
+                    if (starts[loc] && !reachable[state][loc]) {
+                        boolean reached;
+                        if (cp[loc] < Instruction.JUMP.byteCode()) {
+                            reached = true;
+                        } else if (cp[loc] == Instruction.JUMP_IF_NOT_RANDOM
+                                .byteCode()) {
+                            reached = reachable[state][loc + 2]
+                                    || reachable[state][cp[loc + 1]];
+                        } else if (condition(cp, loc, state, null)) {
+                            reached = reachable[state][loc + 2];
+                        } else {
+                            reached = reachable[state][cp[loc + 1]];
+                        }
+                        if (reached) {
+                            reachable[state][loc] = true;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Returns the address of the next primitive instruction reached from
+     * {@code pc} when the bug sees the cell state with ordinal {@code state},
+     * or -1 if none is reachable (or, in practice never, none is reached
+     * within {@code MAX_JUMPS} jumps). No random condition is drawn once no
+     * primitive instruction is reachable, so that the random conditions
+     * drawn do not depend on the length of a cycle that traps the bug.
+     *
+     * @param cp
+     *            the compiled program
+     * @param reachable
+     *            whether a primitive instruction is reachable from each
+     *            address when the bug sees the cell state
+     * @param pc
+     *            the program counter
+     * @param state
+     *            the ordinal of the cell state
+     * @param rnd
+     *            the source of random conditions
+     * @return the address of the next primitive instruction, or -1
+     */
+    private static int nextPrimitive(int[] cp, boolean[] reachable, int pc,
+            int state, Random rnd) {
+        int loc = pc;
+        int jumps = 0;
+        while (cp[loc] >= Instruction.JUMP.byteCode() && reachable[loc]
+                && jumps <= MAX_JUMPS) {
+            if (condition(cp, loc, state, rnd)) {
+                loc += 2;
+            } else {
+                loc = cp[loc + 1];
+            }
+            jumps++;
+        }
+        int result = loc;
+        if (cp[loc] >= Instruction.JUMP.byteCode()) {
+            result = -1;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the byte codes of the primitive instructions executed by a bug
+     * running {@code cp} for {@code STEPS} steps, seeing cell states drawn
+     * from a generator with the given seed. The bug starts over from address
+     * 0 after each {@code HALT} and each step that reaches no primitive
+     * instruction, so that many paths from the start are taken.
+     *
+     * @param cp
+     *            the compiled program
+     * @param seed
+     *            the seed of the cell states and random conditions
+     * @return the byte codes of the primitive instructions executed
+     */
+    static int[] trace(int[] cp, long seed) {
+        Random states = new Random(seed);
+        Random rnd = new Random(~seed);
+        boolean[][] reachable = primitiveReachable(cp);
+        int[] result = new int[STEPS];
+        int pc = 0;
+        for (int step = 0; step < STEPS; step++) {
+            int state = states.nextInt(CELL_STATES);
+            int loc = nextPrimitive(cp, reachable[state], pc, state, rnd);
+            if (loc < 0) {
+                result[step] = -1;
+                pc = 0;
+            } else {
+                result[step] = cp[loc];
+                if (cp[loc] != Instruction.HALT.byteCode()) {
+                    pc = loc + 1;
+                } else {
+                    pc = 0;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks that {@code actual} executes the same primitive instructions as
+     * {@code expected} for the same cell states and random conditions.
+     *
+     * @param expected
+     *            the expected compiled program
+     * @param actual
+     *            the actual compiled program
+     */
+    static void checkSameBehavior(int[] expected, int[] actual) {
+        final int seeds = 20;
+        for (long seed = 0; seed < seeds; seed++) {
+            assertArrayEquals(trace(expected, seed), trace(actual, seed));
+        }
+    }
+
+}
@@ -0,0 +1,204 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import components.program.Program;
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.utilities.Tokenizer;
+
+/**
+ * JUnit test fixture for {@code IncrementalCompiler}'s compiledCode method.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class IncrementalCompilerTest {
+
+    /**
+     * The name of a file containing a valid BL program.
+     */
+    private static final String FILE_NAME_1 = "data/TestProgram1.bl";
+
+    /**
+     * The name of a file containing a BL program calling an undefined
+     * instruction.
+     */
+    private static final String FILE_NAME_2 = "data/TestProgram2.bl";
+
+    /**
+     * The name of a file containing a directly recursive BL program.
+     */
+    private static final String FILE_NAME_3 = "data/TestProgram3.bl";
+
+    /**
+     * The name of a file containing an indirectly recursive BL program.
+     */
+    private static final String FILE_NAME_4 = "data/TestProgram4.bl";
+
+    /**
+     * Text of a program with instructions A, B calling A, and C, before any
+     * edit; "@A", "@B" and "@C" are replaced by the extra statements of each
+     * instruction.
+     */
+    private static final String TEMPLATE = "PROGRAM Edited IS"
+            + " INSTRUCTION A IS WHILE next-is-empty DO move @A END WHILE END A"
+            + " INSTRUCTION B IS IF next-is-enemy THEN infect ELSE A A @B"
+            + " END IF END B"
+            + " INSTRUCTION C IS IF random THEN turnleft ELSE turnright @C"
+            + " END IF END C"
+            + " BEGIN WHILE true DO B C skip B END WHILE END Edited";
+
+    /**
+     * Returns the program of {@code TEMPLATE} with the given extra statements.
+     *
+     * @param a
+     *            extra statements of A
+     * @param b
+     *            extra statements of B
+     * @param c
+     *            extra statements of C
+     * @return the program
+     */
+    private static Program program(String a, String b, String c) {
+        String text = TEMPLATE.replace("@A", a).replace("@B", b).replace("@C",
+                c);
+        Queue<String> tokens = new Queue1L<>();
+        for (String word : text.split("\\s+")) {
+            if (!word.isEmpty()) {
+                tokens.enqueue(word);
+            }
+        }
+        tokens.enqueue(Tokenizer.END_OF_INPUT);
+        Program p = new Program1GeneratedCode1();
+        p.parse(tokens);
+        return p;
+    }
+
+    /**
+     * Compiles {@code p} with {@code compiler} and checks the code against a
+     * full compilation.
+     *
+     * @param compiler
+     *            the compiler
+     * @param p
+     *            the program
+     * @param expansions
+     *            the expected number of expansions generated
+     */
+    private static void check(IncrementalCompiler compiler, Program p,
+            int expansions) {
+        int[] expected = ((Program1GeneratedCode1) p).generatedCodeArray();
+        assertArrayEquals(expected, compiler.compiledCode(p));
+        assertEquals(expansions, compiler.expansionsGenerated());
+    }
+
+    @Test
+    public void testTestProgram() {
+        IncrementalCompiler compiler = new IncrementalCompiler();
+        Program p = TestPrograms.load(FILE_NAME_1);
+        Program pExpected = TestPrograms.load(FILE_NAME_1);
+        /*
+         * InstrB is never called, so only InstrA and the body are expanded
+         */
+        check(compiler, p, 2);
+        assertEquals(pExpected, p);
+        check(compiler, TestPrograms.load(FILE_NAME_1), 0);
+    }
+
+    @Test
+    public void testEditLeaf() {
+        IncrementalCompiler compiler = new IncrementalCompiler();
+        final int all = 4;
+        check(compiler, program("", "", ""), all);
+        /*
+         * C and the body
+         */
+        check(compiler, program("", "", "skip"), 2);
+        check(compiler, program("", "", "skip"), 0);
+    }
+
+    @Test
+    public void testEditCallee() {
+        IncrementalCompiler compiler = new IncrementalCompiler();
+        final int all = 4;
+        final int callers = 3;
+        check(compiler, program("", "", ""), all);
+        /*
+         * A, B calling it, and the body
+         */
+        check(compiler, program("turnleft", "", ""), callers);
+        check(compiler, program("turnleft", "move", ""), 2);
+    }
+
+    @Test
+    public void testEditedOnly() {
+        IncrementalCompiler compiler = new IncrementalCompiler();
+        final int all = 4;
+        final int callers = 3;
+        check(compiler, program("", "", ""), all);
+        Program p = program("skip", "", "");
+        int[] expected = ((Program1GeneratedCode1) p).generatedCodeArray();
+        assertArrayEquals(expected,
+                compiler.compiledCode(p, Collections.singleton("A")));
+        assertEquals(callers, compiler.expansionsGenerated());
+        assertArrayEquals(expected,
+                compiler.compiledCode(p, Collections.<String>emptySet()));
+        assertEquals(0, compiler.expansionsGenerated());
+        assertArrayEquals(expected,
+                compiler.compiledCode(p, Collections.singleton("C")));
+        assertEquals(0, compiler.expansionsGenerated());
+    }
+
+    @Test
+    public void testAddAndRemoveInstruction() {
+        IncrementalCompiler compiler = new IncrementalCompiler();
+        final int all = 4;
+        check(compiler, program("", "", ""), all);
+        Program p = program("", "", "").newInstance();
+        Queue<String> tokens = new Queue1L<>();
+        String text = "PROGRAM Edited IS INSTRUCTION C IS move END C"
+                + " BEGIN C C END Edited";
+        for (String word : text.split(" ")) {
+            tokens.enqueue(word);
+        }
+        tokens.enqueue(Tokenizer.END_OF_INPUT);
+        p.parse(tokens);
+        check(compiler, p, 2);
+        check(compiler, program("", "", ""), all);
+    }
+
+    @Test
+    public void testFixedAfterError() {
+        IncrementalCompiler compiler = new IncrementalCompiler();
+        try {
+            compiler.compiledCode(TestPrograms.load(FILE_NAME_2));
+            fail("A call of an undefined instruction was not reported");
+        } catch (RuntimeException e) {
+            /*
+             * Expected: the program calls an undefined instruction
+             */
+        }
+        check(compiler, TestPrograms.load(FILE_NAME_1), 2);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testCallUndefined() {
+        new IncrementalCompiler().compiledCode(TestPrograms.load(FILE_NAME_2));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDirectRecursion() {
+        new IncrementalCompiler().compiledCode(TestPrograms.load(FILE_NAME_3));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testIndirectRecursion() {
+        new IncrementalCompiler().compiledCode(TestPrograms.load(FILE_NAME_4));
+    }
+
+}
@@ -1,10 +1,24 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
 import components.program.Program;
+import components.program.Program.Instruction;
 import components.program.Program1;
+import components.statement.Statement;
+import components.statement.StatementKernel.Condition;
 
 /**
  * Customized JUnit test fixture for {@code Program1GeneratedCode1}.
  */
-public class Program1GeneratedCode1Test extends ProgramTest {
+public class Program1GeneratedCode1Test extends ProgramGeneratedCodeTest {
+
+    /**
+     * Depth of nesting of the deeply nested program, more than the call
+     * stack of a test can hold for a recursive code generator.
+     */
+    private static final int DEPTH = 100_000;
 
     @Override
     protected final Program constructorTest() {
@@ -16,4 +30,48 @@ public class Program1GeneratedCode1Test extends ProgramTest {
         return new Program1();
     }
 
+    /**
+     * Test of generatedCode on a program whose body is {@code DEPTH} nested
+     * IF statements around a move.
+     */
+    @Test
+    public final void testGeneratedCodeDeeplyNested() {
+        /*
+         * Setup
+         */
+        Program1GeneratedCode1 p = new Program1GeneratedCode1();
+        Statement body = p.newBody();
+        Statement inner = p.newBody();
+        inner.assembleCall("move");
+        body.addToBlock(0, inner);
+        for (int d = 0; d < DEPTH; d++) {
+            Statement s = p.newBody();
+            s.assembleIf(Condition.NEXT_IS_EMPTY, body);
+            body.addToBlock(0, s);
+        }
+        p.swapBody(body);
+        /*
+         * The call
+         */
+        int[] inlined = p.generatedCodeArray();
+        int[] shared = p.generatedCodeArray(
+                Program1GeneratedCode1.CallMode.SHARE);
+        int[] incremental = new IncrementalCompiler().compiledCode(p);
+        /*
+         * Evaluation
+         */
+        final int size = 2 * DEPTH + 2;
+        assertEquals(size, inlined.length);
+        for (int d = 0; d < DEPTH; d++) {
+            assertEquals(Instruction.JUMP_IF_NOT_NEXT_IS_EMPTY.byteCode(),
+                    inlined[2 * d]);
+            assertEquals(size - 1, inlined[2 * d + 1]);
+        }
+        assertEquals(Instruction.MOVE.byteCode(), inlined[size - 2]);
+        assertEquals(Instruction.HALT.byteCode(), inlined[size - 1]);
+        assertEquals(size, shared.length);
+        assertArrayEquals(inlined, incremental);
+        assertArrayEquals(inlined, p.generatedCodeArray());
+    }
+
 }
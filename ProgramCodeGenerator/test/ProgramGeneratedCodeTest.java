@@ -13,7 +13,7 @@ import components.simplereader.SimpleReader1L;
  * @author Paolo Bucci
  *
  */
-public abstract class ProgramTest {
+public abstract class ProgramGeneratedCodeTest {
 
     /**
      * The names of files containing (possibly invalid) BL programs.
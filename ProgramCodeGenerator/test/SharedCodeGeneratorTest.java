@@ -0,0 +1,234 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import components.program.Program;
+import components.program.Program.Instruction;
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.sequence.Sequence;
+import components.utilities.Tokenizer;
+
+/**
+ * JUnit test fixture for {@code Program1GeneratedCode1}'s generatedCode method
+ * in {@code CallMode.SHARE}.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class SharedCodeGeneratorTest {
+
+    /**
+     * The name of a file containing a valid BL program.
+     */
+    private static final String FILE_NAME_1 = "data/TestProgram1.bl";
+
+    /**
+     * The name of a file containing a BL program calling an undefined
+     * instruction.
+     */
+    private static final String FILE_NAME_2 = "data/TestProgram2.bl";
+
+    /**
+     * The name of a file containing a directly recursive BL program.
+     */
+    private static final String FILE_NAME_3 = "data/TestProgram3.bl";
+
+    /**
+     * The name of a file containing an indirectly recursive BL program.
+     */
+    private static final String FILE_NAME_4 = "data/TestProgram4.bl";
+
+    /**
+     * Returns the program with the given text.
+     *
+     * @param text
+     *            the text of a valid BL program
+     * @return the program
+     */
+    private static Program program(String text) {
+        Queue<String> tokens = new Queue1L<>();
+        for (String word : text.split("\\s+")) {
+            if (!word.isEmpty()) {
+                tokens.enqueue(word);
+            }
+        }
+        tokens.enqueue(Tokenizer.END_OF_INPUT);
+        Program p = new Program1GeneratedCode1();
+        p.parse(tokens);
+        return p;
+    }
+
+    /**
+     * Returns the code of {@code p} generated in the given mode.
+     *
+     * @param p
+     *            the program
+     * @param mode
+     *            the mode
+     * @return the code of p
+     */
+    private static int[] code(Program p,
+            Program1GeneratedCode1.CallMode mode) {
+        Sequence<Integer> cp = ((Program1GeneratedCode1) p).generatedCode(mode);
+        int[] result = new int[cp.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = cp.entry(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of occurrences of {@code byteCode} as an instruction
+     * in {@code cp}.
+     *
+     * @param cp
+     *            the compiled program
+     * @param byteCode
+     *            the byte code
+     * @return the number of occurrences
+     */
+    private static int occurrences(int[] cp, int byteCode) {
+        int count = 0;
+        int loc = 0;
+        while (loc < cp.length) {
+            if (cp[loc] == byteCode) {
+                count++;
+            }
+            if (cp[loc] >= Instruction.JUMP.byteCode()) {
+                loc += 2;
+            } else {
+                loc++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks that the shared code of {@code p} behaves like its inlined code,
+     * and is no longer.
+     *
+     * @param p
+     *            the program
+     * @return the shared code
+     */
+    private static int[] checkShared(Program p) {
+        int[] inlined = code(p, Program1GeneratedCode1.CallMode.INLINE);
+        int[] shared = code(p, Program1GeneratedCode1.CallMode.SHARE);
+        assertTrue(shared.length <= inlined.length);
+        CompiledProgramTraces.checkSameBehavior(inlined, shared);
+        return shared;
+    }
+
+    @Test
+    public void testTestProgram() {
+        Program p = TestPrograms.load(FILE_NAME_1);
+        Program pExpected = TestPrograms.load(FILE_NAME_1);
+        int[] shared = checkShared(p);
+        assertEquals(pExpected, p);
+        assertEquals(Instruction.JUMP_IF_NOT_TRUE.byteCode(), shared[0]);
+    }
+
+    @Test
+    public void testEmpty() {
+        Program p = program("PROGRAM Empty IS BEGIN END Empty");
+        int[] shared = checkShared(p);
+        assertEquals(1, shared.length);
+        assertEquals(Instruction.HALT.byteCode(), shared[0]);
+    }
+
+    @Test
+    public void testCallsInBranchesShared() {
+        Program p = program("PROGRAM Branches IS"
+                + " INSTRUCTION Big IS move move move move infect END Big"
+                + " BEGIN WHILE true DO"
+                + " IF next-is-empty THEN Big"
+                + " ELSE IF next-is-wall THEN turnleft Big"
+                + " ELSE turnright Big END IF END IF"
+                + " END WHILE END Branches");
+        int[] shared = checkShared(p);
+        assertEquals(1, occurrences(shared, Instruction.INFECT.byteCode()));
+    }
+
+    @Test
+    public void testNestedCallsShared() {
+        Program p = program("PROGRAM Nested IS"
+                + " INSTRUCTION A IS move infect END A"
+                + " INSTRUCTION B IS IF random THEN A ELSE skip A END IF END B"
+                + " INSTRUCTION C IS IF next-is-enemy THEN B ELSE turnleft B"
+                + " END IF END C"
+                + " BEGIN WHILE next-is-not-wall DO"
+                + " IF next-is-friend THEN C ELSE turnright C END IF"
+                + " END WHILE END Nested");
+        int[] shared = checkShared(p);
+        assertEquals(1, occurrences(shared, Instruction.INFECT.byteCode()));
+        assertEquals(1, occurrences(shared,
+                Instruction.JUMP_IF_NOT_RANDOM.byteCode()));
+    }
+
+    @Test
+    public void testSequentialCallsCopied() {
+        Program p = program("PROGRAM Sequence IS"
+                + " INSTRUCTION A IS move infect END A"
+                + " BEGIN A turnleft A END Sequence");
+        int[] shared = checkShared(p);
+        assertEquals(2, occurrences(shared, Instruction.INFECT.byteCode()));
+    }
+
+    @Test
+    public void testRepeatedCallsDoubling() {
+        /*
+         * A known limitation of CallMode.SHARE: calls in a straight line have
+         * distinct continuations, so the code still doubles at each level,
+         * like the inlined code (see SharedCodeGenerator)
+         */
+        final int levels = 10;
+        StringBuilder text = new StringBuilder("PROGRAM Doubling IS"
+                + " INSTRUCTION A0 IS move END A0");
+        for (int i = 1; i <= levels; i++) {
+            text.append(" INSTRUCTION A" + i + " IS A" + (i - 1) + " A"
+                    + (i - 1) + " END A" + i);
+        }
+        text.append(" BEGIN A" + levels + " END Doubling");
+        Program p = program(text.toString());
+        int[] shared = checkShared(p);
+        assertEquals((1 << levels) + 1, shared.length);
+        assertEquals(1 << levels,
+                occurrences(shared, Instruction.MOVE.byteCode()));
+    }
+
+    @Test
+    public void testEmptyLoops() {
+        Program p = program("PROGRAM Loops IS"
+                + " INSTRUCTION Nothing IS END Nothing"
+                + " BEGIN IF next-is-empty THEN Nothing END IF"
+                + " IF random THEN END IF"
+                + " WHILE next-is-wall DO Nothing END WHILE move"
+                + " END Loops");
+        int[] shared = checkShared(p);
+        assertEquals(0, occurrences(shared,
+                Instruction.JUMP_IF_NOT_NEXT_IS_EMPTY.byteCode()));
+        assertEquals(1, occurrences(shared,
+                Instruction.JUMP_IF_NOT_RANDOM.byteCode()));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testCallUndefined() {
+        code(TestPrograms.load(FILE_NAME_2),
+                Program1GeneratedCode1.CallMode.SHARE);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDirectRecursion() {
+        code(TestPrograms.load(FILE_NAME_3),
+                Program1GeneratedCode1.CallMode.SHARE);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testIndirectRecursion() {
+        code(TestPrograms.load(FILE_NAME_4),
+                Program1GeneratedCode1.CallMode.SHARE);
+    }
+
+}
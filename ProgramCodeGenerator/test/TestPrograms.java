@@ -0,0 +1,47 @@
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+
+/**
+ * Loads the BL programs the tests compile.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+final class TestPrograms {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private TestPrograms() {
+    }
+
+    /**
+     * Returns the program read from the given file.
+     *
+     * @param fileName
+     *            the name of the file
+     * @return the program
+     */
+    static Program1GeneratedCode1 load(String fileName) {
+        Program1GeneratedCode1 p = new Program1GeneratedCode1();
+        SimpleReader in = new SimpleReader1L(fileName);
+        p.parse(in);
+        in.close();
+        return p;
+    }
+
+    /**
+     * Returns the code generated for the program in the given file.
+     *
+     * @param fileName
+     *            the name of the file
+     * @param mode
+     *            how the code of calls is generated
+     * @return the generated code
+     */
+    static int[] generated(String fileName,
+            Program1GeneratedCode1.CallMode mode) {
+        return load(fileName).generatedCodeArray(mode);
+    }
+
+}
@@ -0,0 +1,209 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import components.simplewriter.SimpleWriter;
+import components.utilities.Reporter;
+
+/**
+ * Buffer of the lines printed by {@code Statement1PrettyPrint1}: each line is
+ * put together in a reusable array of characters, its indentation copied from
+ * an array of spaces long enough for the deepest line so far, and the array
+ * is written to the output stream a whole buffer at a time instead of a
+ * character or a string at a time.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+final class PrettyPrintBuffer {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of characters written to the output stream at a time.
+     */
+    private static final int CAPACITY = 8192;
+
+    /**
+     * Initial number of spaces of the indentation array.
+     */
+    private static final int INITIAL_SPACES = 64;
+
+    /**
+     * The characters ending a line, as written by {@code println}.
+     */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /**
+     * The output stream, or null if the buffer writes to a {@code Writer}.
+     */
+    private final SimpleWriter simpleWriter;
+
+    /**
+     * The output stream, or null if the buffer writes to a
+     * {@code SimpleWriter}.
+     */
+    private final Writer writer;
+
+    /**
+     * The characters not yet written to the output stream.
+     */
+    private final char[] chars = new char[CAPACITY];
+
+    /**
+     * The number of characters in {@code chars}.
+     */
+    private int length;
+
+    /**
+     * Spaces the indentation of every line is copied from.
+     */
+    private char[] spaces;
+
+    /**
+     * Constructor.
+     *
+     * @param simpleWriter
+     *            the output stream, or null
+     * @param writer
+     *            the output stream, or null
+     */
+    private PrettyPrintBuffer(SimpleWriter simpleWriter, Writer writer) {
+        this.simpleWriter = simpleWriter;
+        this.writer = writer;
+        this.spaces = new char[INITIAL_SPACES];
+        Arrays.fill(this.spaces, ' ');
+    }
+
+    /**
+     * Appends the first {@code n} characters of {@code source} to the buffer,
+     * writing the buffer out whenever it fills up.
+     *
+     * @param source
+     *            the characters
+     * @param n
+     *            the number of characters
+     * @updates this
+     * @requires 0 <= n <= |source|
+     */
+    private void append(char[] source, int n) {
+        int from = 0;
+        while (from < n) {
+            if (this.length == CAPACITY) {
+                this.flush();
+            }
+            int k = Math.min(n - from, CAPACITY - this.length);
+            System.arraycopy(source, from, this.chars, this.length, k);
+            this.length += k;
+            from += k;
+        }
+    }
+
+    /**
+     * Appends {@code s} to the buffer, writing the buffer out whenever it
+     * fills up.
+     *
+     * @param s
+     *            the characters
+     * @updates this
+     */
+    private void append(String s) {
+        int n = s.length();
+        int from = 0;
+        while (from < n) {
+            if (this.length == CAPACITY) {
+                this.flush();
+            }
+            int k = Math.min(n - from, CAPACITY - this.length);
+            s.getChars(from, from + k, this.chars, this.length);
+            this.length += k;
+            from += k;
+        }
+    }
+
+    /*
+     * Package-private members ------------------------------------------------
+     */
+
+    /**
+     * Returns a buffer writing to {@code out}.
+     *
+     * @param out
+     *            the output stream
+     * @return the buffer
+     * @requires out.is_open
+     */
+    static PrettyPrintBuffer of(SimpleWriter out) {
+        assert out != null : "Violation of: out is not null";
+        assert out.isOpen() : "Violation of: out.is_open";
+
+        return new PrettyPrintBuffer(out, null);
+    }
+
+    /**
+     * Returns a buffer writing to {@code out}.
+     *
+     * @param out
+     *            the output stream
+     * @return the buffer
+     */
+    static PrettyPrintBuffer of(Writer out) {
+        assert out != null : "Violation of: out is not null";
+
+        return new PrettyPrintBuffer(null, out);
+    }
+
+    /**
+     * Appends {@code line}, indented by {@code offset} spaces, to the buffer.
+     *
+     * @param offset
+     *            the number of spaces the line is indented by
+     * @param line
+     *            the text of the line
+     * @updates this
+     * @requires 0 <= offset
+     * @ensures <pre>
+     * [the characters of this, followed by those still to be written to the
+     *  output stream] = [#characters] * [offset spaces] * line *
+     *  [line separator]
+     * </pre>
+     */
+    void println(int offset, String line) {
+        assert offset >= 0 : "Violation of: 0 <= offset";
+
+        if (this.spaces.length < offset) {
+            this.spaces = new char[Math.max(offset, 2 * this.spaces.length)];
+            Arrays.fill(this.spaces, ' ');
+        }
+        this.append(this.spaces, offset);
+        this.append(line);
+        this.append(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes the characters in the buffer to the output stream. The output
+     * stream itself is not flushed.
+     *
+     * @updates this
+     * @ensures [the characters in #this have been written to the output
+     *          stream, in order] and [this is empty]
+     */
+    void flush() {
+        if (this.length > 0) {
+            if (this.simpleWriter != null) {
+                this.simpleWriter.print(new String(this.chars, 0, this.length));
+            } else {
+                try {
+                    this.writer.write(this.chars, 0, this.length);
+                } catch (IOException e) {
+                    Reporter.assertElseFatalError(false,
+                            "Error writing pretty-printed statement");
+                }
+            }
+            this.length = 0;
+        }
+    }
+
+}
@@ -1,3 +1,7 @@
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
 import components.program.Program;
 import components.queue.Queue;
 import components.simplereader.SimpleReader;
@@ -18,6 +22,111 @@ public final class Statement1PrettyPrint1 extends Statement1 {
      * Private members --------------------------------------------------------
      */
 
+    /**
+     * The first line of an IF or IF_ELSE statement, for each condition, by
+     * ordinal.
+     */
+    private static final String[] IF_LINES = lines("IF ", " THEN");
+
+    /**
+     * The first line of a WHILE statement, for each condition, by ordinal.
+     */
+    private static final String[] WHILE_LINES = lines("WHILE ", " DO");
+
+    /**
+     * A statement being printed by {@code prettyPrint}, disassembled while
+     * its parts are printed.
+     */
+    private static final class Frame extends StatementFrame {
+
+        /**
+         * The number of spaces the statement is indented by.
+         */
+        private final int offset;
+
+        /**
+         * Constructor, disassembling {@code s}.
+         *
+         * @param s
+         *            the statement
+         * @param offset
+         *            the number of spaces s is indented by
+         * @updates s
+         */
+        Frame(Statement s, int offset) {
+            super(s, false);
+            this.offset = offset;
+        }
+
+    }
+
+    /**
+     * Visitor printing the statements of a {@code CompactProgram} as
+     * {@code prettyPrint} prints them.
+     */
+    private static final class Printer implements StatementVisitor {
+
+        /**
+         * The buffer of the output stream.
+         */
+        private final PrettyPrintBuffer buffer;
+
+        /**
+         * The number of spaces the next statement is indented by.
+         */
+        private int offset;
+
+        /**
+         * Constructor.
+         *
+         * @param buffer
+         *            the buffer of the output stream
+         * @param offset
+         *            the number of spaces the statement printed is indented
+         *            by
+         */
+        Printer(PrettyPrintBuffer buffer, int offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+
+        @Override
+        public void beginIf(int node, Condition condition) {
+            this.buffer.println(this.offset, IF_LINES[condition.ordinal()]);
+            this.offset += Program.INDENT_SIZE;
+        }
+
+        @Override
+        public void beginElse(int node) {
+            this.buffer.println(this.offset - Program.INDENT_SIZE, "ELSE");
+        }
+
+        @Override
+        public void endIf(int node) {
+            this.offset -= Program.INDENT_SIZE;
+            this.buffer.println(this.offset, "END IF");
+        }
+
+        @Override
+        public void beginWhile(int node, Condition condition) {
+            this.buffer.println(this.offset,
+                    WHILE_LINES[condition.ordinal()]);
+            this.offset += Program.INDENT_SIZE;
+        }
+
+        @Override
+        public void endWhile(int node) {
+            this.offset -= Program.INDENT_SIZE;
+            this.buffer.println(this.offset, "END WHILE");
+        }
+
+        @Override
+        public void call(int node, String call) {
+            this.buffer.println(this.offset, call);
+        }
+
+    }
+
     /**
      * Constructs into the given {@code Statement} the BLOCK statement read from
      * the given input file.
@@ -39,23 +148,6 @@ public final class Statement1PrettyPrint1 extends Statement1 {
         in.close();
     }
 
-    /**
-     * Prints the given number of spaces to the given output stream.
-     *
-     * @param out
-     *            the output stream
-     * @param numSpaces
-     *            the number of spaces to print
-     * @updates out.content
-     * @requires out.is_open and spaces >= 0
-     * @ensures out.content = #out.content * [numSpaces spaces]
-     */
-    private static void printSpaces(SimpleWriter out, int numSpaces) {
-        for (int i = 0; i < numSpaces; i++) {
-            out.print(' ');
-        }
-    }
-
     /**
      * Converts c into the corresponding BL condition.
      *
@@ -116,6 +208,103 @@ public final class Statement1PrettyPrint1 extends Statement1 {
         return result;
     }
 
+    /**
+     * Returns, for each condition, by ordinal, the line made of
+     * {@code prefix}, the BL condition and {@code suffix}.
+     *
+     * @param prefix
+     *            the text before the condition
+     * @param suffix
+     *            the text after the condition
+     * @return the lines
+     */
+    private static String[] lines(String prefix, String suffix) {
+        Condition[] conditions = Condition.values();
+        String[] result = new String[conditions.length];
+        for (Condition c : conditions) {
+            result[c.ordinal()] = prefix + toStringCondition(c) + suffix;
+        }
+        return result;
+    }
+
+    /**
+     * Prints {@code s} to {@code buffer} as {@code prettyPrint} prints it. The
+     * statements nested in s are printed with a stack of frames instead of
+     * recursively, so the depth of nesting is limited only by the heap.
+     *
+     * @param s
+     *            the statement
+     * @param buffer
+     *            the buffer of the output stream
+     * @param offset
+     *            the number of spaces s is indented by
+     * @updates buffer
+     * @requires 0 <= offset
+     * @ensures <pre>
+     * [buffer holds the characters of #buffer followed by s pretty-printed,
+     *  indented by offset spaces, some of them maybe written to the output
+     *  stream]
+     * </pre>
+     */
+    private static void print(Statement s, PrettyPrintBuffer buffer,
+            int offset) {
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(s, offset));
+        while (!stack.isEmpty()) {
+            Frame f = stack.peek();
+            int partOffset = f.offset + Program.INDENT_SIZE;
+            switch (f.kind()) {
+                case BLOCK: {
+                    partOffset = f.offset;
+                    break;
+                }
+                case IF: {
+                    if (f.position() == 0) {
+                        buffer.println(f.offset,
+                                IF_LINES[f.condition().ordinal()]);
+                    } else {
+                        buffer.println(f.offset, "END IF");
+                    }
+                    break;
+                }
+                case IF_ELSE: {
+                    if (f.position() == 0) {
+                        buffer.println(f.offset,
+                                IF_LINES[f.condition().ordinal()]);
+                    } else if (f.position() == 1) {
+                        buffer.println(f.offset, "ELSE");
+                    } else {
+                        buffer.println(f.offset, "END IF");
+                    }
+                    break;
+                }
+                case WHILE: {
+                    if (f.position() == 0) {
+                        buffer.println(f.offset,
+                                WHILE_LINES[f.condition().ordinal()]);
+                    } else {
+                        buffer.println(f.offset, "END WHILE");
+                    }
+                    break;
+                }
+                case CALL: {
+                    buffer.println(f.offset, f.call());
+                    break;
+                }
+                default: {
+                    // this will never happen...
+                    break;
+                }
+            }
+            Statement part = f.next();
+            if (part == null) {
+                stack.pop();
+            } else {
+                stack.push(new Frame(part, partOffset));
+            }
+        }
+    }
+
     /*
      * Constructors -----------------------------------------------------------
      */
@@ -137,92 +326,112 @@ public final class Statement1PrettyPrint1 extends Statement1 {
         assert out.isOpen() : "Violation of: out.is_open";
         assert offset >= 0 : "Violation of: 0 <= offset";
 
-        switch (this.kind()) {
-            case BLOCK: {
-
-                // TODO - fill in case
-                int length = this.lengthOfBlock();
-                for (int i = 0; i < length; i++) {
-                    Statement sub = this.removeFromBlock(i);
-                    sub.prettyPrint(out, offset);
-                    this.addToBlock(i, sub);
-                }
-
-                break;
-            }
-            case IF: {
-
-                // TODO - fill in case
-                Statement subTree = this.newInstance();
-                Condition ifCondition = this.disassembleIf(subTree);
-                printSpaces(out, offset);
-
-                out.println("IF " + toStringCondition(ifCondition));
-                subTree.prettyPrint(out, offset + Program.INDENT_SIZE);
-
-                for (int i = 0; i < offset; i++) {
-                    out.print(" ");
-                }
-                out.println("END IF");
-                this.assembleIf(ifCondition, subTree);
-                break;
-            }
-            case IF_ELSE: {
-
-                // TODO - fill in case
-
-                Statement subTreeIf = this.newInstance();
-                Statement subTreeElse = this.newInstance();
-                Condition ifElseCondition = this.disassembleIfElse(subTreeIf,
-                        subTreeElse);
-                printSpaces(out, offset);
-                out.println(
-                        "IF " + toStringCondition(ifElseCondition) + " THEN");
-                subTreeIf.prettyPrint(out, offset + Program.INDENT_SIZE);
-
-                printSpaces(out, offset);
-                out.println("ELSE");
-                subTreeElse.prettyPrint(out, offset + Program.INDENT_SIZE);
-
-                printSpaces(out, offset);
-                out.println("END IF");
-                this.assembleIfElse(ifElseCondition, subTreeIf, subTreeElse);
-
-                break;
-            }
-            case WHILE: {
+        PrettyPrintBuffer buffer = PrettyPrintBuffer.of(out);
+        print(this, buffer, offset);
+        buffer.flush();
+    }
 
-                // TODO - fill in case
+    /*
+     * Public methods ---------------------------------------------------------
+     */
 
-                Statement subTree = this.newInstance();
-                Condition whileCondition = this.disassembleWhile(subTree);
-                printSpaces(out, offset);
-                out.println(
-                        "WHILE " + toStringCondition(whileCondition) + " DO");
-                subTree.prettyPrint(out, offset + Program.INDENT_SIZE);
+    /**
+     * Prints the statement {@code node} of the compact representation
+     * {@code p} of a program to {@code out}, as {@code prettyPrint} prints the
+     * same statement, reading {@code p} without changing it, so several
+     * threads can print the same program at once.
+     *
+     * @param p
+     *            the compact representation of the program
+     * @param node
+     *            the node of the statement
+     * @param out
+     *            the output stream
+     * @param offset
+     *            the number of spaces the statement is indented by
+     * @updates out.content
+     * @requires <pre>
+     * out.is_open  and  0 <= offset  and  0 <= node < p.nodeCount()
+     * </pre>
+     * @ensures <pre>
+     * out.content = #out.content * [statement node of p pretty-printed,
+     *  indented by offset spaces]
+     * </pre>
+     */
+    public static void prettyPrint(CompactProgram p, int node,
+            SimpleWriter out, int offset) {
+        assert p != null : "Violation of: p is not null";
+        assert out != null : "Violation of: out is not null";
+        assert out.isOpen() : "Violation of: out.is_open";
+        assert offset >= 0 : "Violation of: 0 <= offset";
+        assert 0 <= node && node < p.nodeCount() : ""
+                + "Violation of: 0 <= node < p.nodeCount()";
 
-                printSpaces(out, offset);
-                out.println("END WHILE");
-                this.assembleWhile(whileCondition, subTree);
+        PrettyPrintBuffer buffer = PrettyPrintBuffer.of(out);
+        p.walk(node, new Printer(buffer, offset));
+        buffer.flush();
+    }
 
-                break;
-            }
-            case CALL: {
+    /**
+     * Prints the statement {@code node} of the compact representation
+     * {@code p} of a program to {@code out}, as {@code prettyPrint} prints the
+     * same statement. The characters are written to out a buffer at a time;
+     * out itself is not flushed.
+     *
+     * @param p
+     *            the compact representation of the program
+     * @param node
+     *            the node of the statement
+     * @param out
+     *            the output stream
+     * @param offset
+     *            the number of spaces the statement is indented by
+     * @updates out
+     * @requires 0 <= offset  and  0 <= node < p.nodeCount()
+     * @ensures <pre>
+     * [the statement node of p, pretty-printed and indented by offset
+     *  spaces, has been written to out]
+     * </pre>
+     */
+    public static void prettyPrint(CompactProgram p, int node, Writer out,
+            int offset) {
+        assert p != null : "Violation of: p is not null";
+        assert out != null : "Violation of: out is not null";
+        assert offset >= 0 : "Violation of: 0 <= offset";
+        assert 0 <= node && node < p.nodeCount() : ""
+                + "Violation of: 0 <= node < p.nodeCount()";
 
-                // TODO - fill in case
+        PrettyPrintBuffer buffer = PrettyPrintBuffer.of(out);
+        p.walk(node, new Printer(buffer, offset));
+        buffer.flush();
+    }
 
-                String call = this.disassembleCall();
-                printSpaces(out, offset);
-                out.println(call);
-                this.assembleCall(call);
+    /**
+     * Prints {@code s} to {@code out} as {@code prettyPrint} prints it. The
+     * characters are written to out a buffer at a time; out itself is not
+     * flushed.
+     *
+     * @param s
+     *            the statement
+     * @param out
+     *            the output stream
+     * @param offset
+     *            the number of spaces s is indented by
+     * @updates out
+     * @requires 0 <= offset
+     * @ensures <pre>
+     * [s, pretty-printed and indented by offset spaces, has been written to
+     *  out]
+     * </pre>
+     */
+    public static void prettyPrint(Statement s, Writer out, int offset) {
+        assert s != null : "Violation of: s is not null";
+        assert out != null : "Violation of: out is not null";
+        assert offset >= 0 : "Violation of: 0 <= offset";
 
-                break;
-            }
-            default: {
-                // this will never happen...
-                break;
-            }
-        }
+        PrettyPrintBuffer buffer = PrettyPrintBuffer.of(out);
+        print(s, buffer, offset);
+        buffer.flush();
     }
 
     /*
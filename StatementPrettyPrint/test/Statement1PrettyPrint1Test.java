@@ -0,0 +1,275 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.program.Program;
+import components.queue.Queue;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.statement.Statement;
+import components.utilities.Tokenizer;
+
+/**
+ * JUnit test fixture for the {@code Writer} and {@code CompactProgram}
+ * overloads of {@code Statement1PrettyPrint1}'s prettyPrint method, checked
+ * against the output of prettyPrint to a {@code SimpleWriter}.
+ *
+ * @author Sooyoung Jeon
+ *
+ */
+public final class Statement1PrettyPrint1Test {
+
+    /**
+     * The name of a file containing nested BL statements.
+     */
+    private static final String STATEMENT_FILE = "data/SampleStatement.bl";
+
+    /**
+     * The name of a file containing a BL program with nested statements and
+     * calls, in its body and its instructions.
+     */
+    private static final String PROGRAM_FILE = "test/program1.bl";
+
+    /**
+     * An offset large enough for the output of the sample statement not to
+     * fit in one buffer.
+     */
+    private static final int LARGE_OFFSET = 500;
+
+    /**
+     * Returns the BLOCK statement read from the given file.
+     *
+     * @param fileName
+     *            the name of the file
+     * @return the statement
+     */
+    private static Statement1PrettyPrint1 loadStatement(String fileName) {
+        Statement1PrettyPrint1 s = new Statement1PrettyPrint1();
+        SimpleReader in = new SimpleReader1L(fileName);
+        Queue<String> tokens = Tokenizer.tokens(in);
+        s.parseBlock(tokens);
+        in.close();
+        return s;
+    }
+
+    /**
+     * Returns the program read from the given file.
+     *
+     * @param fileName
+     *            the name of the file
+     * @return the program
+     */
+    private static Program loadProgram(String fileName) {
+        Program p = new Program1Parse1();
+        SimpleReader in = new SimpleReader1L(fileName);
+        p.parse(in);
+        in.close();
+        return p;
+    }
+
+    /**
+     * Returns what prettyPrint prints for {@code s} to a {@code SimpleWriter}.
+     *
+     * @param s
+     *            the statement
+     * @param offset
+     *            the number of spaces s is indented by
+     * @return the output of prettyPrint
+     */
+    private static String simpleWriterOutput(Statement1PrettyPrint1 s,
+            int offset) {
+        String result = null;
+        try {
+            File file = File.createTempFile("prettyprint", ".txt");
+            file.deleteOnExit();
+            SimpleWriter out = new SimpleWriter1L(file.getPath());
+            s.prettyPrint(out, offset);
+            out.close();
+            result = new String(Files.readAllBytes(file.toPath()),
+                    StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return result;
+    }
+
+    /**
+     * Returns what the {@code Writer} overload of prettyPrint prints for
+     * {@code s}.
+     *
+     * @param s
+     *            the statement
+     * @param offset
+     *            the number of spaces s is indented by
+     * @return the output of prettyPrint
+     */
+    private static String writerOutput(Statement s, int offset) {
+        StringWriter out = new StringWriter();
+        Statement1PrettyPrint1.prettyPrint(s, out, offset);
+        return out.toString();
+    }
+
+    /**
+     * Returns what the {@code CompactProgram} overload of prettyPrint prints
+     * to a {@code Writer} for the statement {@code node} of {@code p}.
+     *
+     * @param p
+     *            the compact representation of the program
+     * @param node
+     *            the node of the statement
+     * @param offset
+     *            the number of spaces the statement is indented by
+     * @return the output of prettyPrint
+     */
+    private static String writerOutput(CompactProgram p, int node,
+            int offset) {
+        StringWriter out = new StringWriter();
+        Statement1PrettyPrint1.prettyPrint(p, node, out, offset);
+        return out.toString();
+    }
+
+    /**
+     * Returns what the {@code CompactProgram} overload of prettyPrint prints
+     * to a {@code SimpleWriter} for the statement {@code node} of {@code p}.
+     *
+     * @param p
+     *            the compact representation of the program
+     * @param node
+     *            the node of the statement
+     * @param offset
+     *            the number of spaces the statement is indented by
+     * @return the output of prettyPrint
+     */
+    private static String simpleWriterOutput(CompactProgram p, int node,
+            int offset) {
+        String result = null;
+        try {
+            File file = File.createTempFile("prettyprint", ".txt");
+            file.deleteOnExit();
+            SimpleWriter out = new SimpleWriter1L(file.getPath());
+            Statement1PrettyPrint1.prettyPrint(p, node, out, offset);
+            out.close();
+            result = new String(Files.readAllBytes(file.toPath()),
+                    StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return result;
+    }
+
+    /**
+     * Returns {@code s} as a {@code Statement1PrettyPrint1}.
+     *
+     * @param s
+     *            the statement
+     * @return the statement
+     * @clears s
+     */
+    private static Statement1PrettyPrint1 taken(Statement s) {
+        Statement1PrettyPrint1 result = new Statement1PrettyPrint1();
+        result.transferFrom(s);
+        return result;
+    }
+
+    /**
+     * Checks that the {@code CompactProgram} overloads print each body of the
+     * program in {@code PROGRAM_FILE}, indented by {@code offset}, as the
+     * {@code SimpleWriter} overload prints the same statement.
+     *
+     * @param offset
+     *            the number of spaces the statements are indented by
+     */
+    private static void checkCompactProgram(int offset) {
+        Program p = loadProgram(PROGRAM_FILE);
+        CompactProgram cp = CompactProgram.of(p);
+        Statement body = p.newBody();
+        p.swapBody(body);
+        String expected = simpleWriterOutput(taken(body), offset);
+        assertEquals(expected, writerOutput(cp, cp.body(), offset));
+        assertEquals(expected, simpleWriterOutput(cp, cp.body(), offset));
+        Map<String, Statement> context = p.newContext();
+        p.swapContext(context);
+        assertEquals(context.size(), cp.instructionCount());
+        for (int i = 0; i < cp.instructionCount(); i++) {
+            Statement instruction = context.remove(cp.instructionName(i))
+                    .value();
+            expected = simpleWriterOutput(taken(instruction), offset);
+            assertEquals(expected,
+                    writerOutput(cp, cp.instructionBody(i), offset));
+            assertEquals(expected,
+                    simpleWriterOutput(cp, cp.instructionBody(i), offset));
+        }
+    }
+
+    @Test
+    public void testStatementWriter() {
+        Statement1PrettyPrint1 s = loadStatement(STATEMENT_FILE);
+        Statement1PrettyPrint1 sExpected = loadStatement(STATEMENT_FILE);
+        String expected = simpleWriterOutput(s, 2);
+        assertTrue(expected.startsWith(
+                "  IF next-is-not-enemy THEN" + System.lineSeparator()));
+        assertEquals(expected, writerOutput(s, 2));
+        assertEquals(sExpected, s);
+    }
+
+    @Test
+    public void testStatementWriterLargeOffset() {
+        Statement1PrettyPrint1 s = loadStatement(STATEMENT_FILE);
+        String expected = simpleWriterOutput(s, LARGE_OFFSET);
+        assertEquals(expected, writerOutput(s, LARGE_OFFSET));
+    }
+
+    @Test
+    public void testProgramBodiesWriter() {
+        Program p = loadProgram(PROGRAM_FILE);
+        Statement body = p.newBody();
+        p.swapBody(body);
+        Statement1PrettyPrint1 s = taken(body);
+        assertEquals(simpleWriterOutput(s, 0), writerOutput(s, 0));
+        Map<String, Statement> context = p.newContext();
+        p.swapContext(context);
+        while (context.size() > 0) {
+            s = taken(context.removeAny().value());
+            assertEquals(simpleWriterOutput(s, 4), writerOutput(s, 4));
+        }
+    }
+
+    @Test
+    public void testCompactProgram() {
+        checkCompactProgram(0);
+    }
+
+    @Test
+    public void testCompactProgramOffset() {
+        checkCompactProgram(4);
+    }
+
+    @Test
+    public void testCompactProgramLargeOffset() {
+        checkCompactProgram(LARGE_OFFSET);
+    }
+
+    @Test
+    public void testCompactProgramStatement() {
+        Statement1PrettyPrint1 s = loadStatement(STATEMENT_FILE);
+        String expected = simpleWriterOutput(s, 2);
+        Program p = new Program1Parse1();
+        Statement body = p.newBody();
+        body.transferFrom(s);
+        p.swapBody(body);
+        CompactProgram cp = CompactProgram.of(p);
+        assertEquals(expected, writerOutput(cp, cp.body(), 2));
+        assertEquals(expected, simpleWriterOutput(cp, cp.body(), 2));
+    }
+
+}